@@ -0,0 +1,46 @@
+package in.woowa.tomcat.jdbc.pool.agent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <code>-javaagent:...jar=packages=a.b:c.d</code> 의 옵션 문자열. 옵션 사이는 <code>,</code> 로 구분한다.
+ */
+final class AgentOptions {
+
+    static final String PACKAGES_KEY = "packages";
+
+    private final List<String> packages;
+
+    private AgentOptions(List<String> packages) {
+        this.packages = Collections.unmodifiableList(packages);
+    }
+
+    static AgentOptions parse(String arguments) {
+        List<String> packages = new ArrayList<>();
+        if (arguments != null) {
+            for (String option : arguments.split(",")) {
+                int equals = option.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("agent option '" + option + "' must be key=value.");
+                }
+                String key = option.substring(0, equals).trim();
+                String value = option.substring(equals + 1).trim();
+                if (!PACKAGES_KEY.equals(key)) {
+                    throw new IllegalArgumentException("unknown agent option '" + key + "'. available : [" + PACKAGES_KEY + "]");
+                }
+                for (String name : value.split(":")) {
+                    if (!name.trim().isEmpty()) {
+                        packages.add(name.trim());
+                    }
+                }
+            }
+        }
+        return new AgentOptions(packages);
+    }
+
+    List<String> getPackages() {
+        return packages;
+    }
+}
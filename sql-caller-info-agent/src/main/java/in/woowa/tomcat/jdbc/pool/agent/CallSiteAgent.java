@@ -0,0 +1,68 @@
+package in.woowa.tomcat.jdbc.pool.agent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * 애플리케이션 패키지의 JDBC 호출 지점(<code>Connection.prepareStatement</code>, <code>Statement.execute*</code> 등)에
+ * <code>SimpleClassName.method:line</code> 태그를 클래스 로딩 시점에 심는 Java agent.
+ *
+ * <p>계측된 호출 지점은 호출 직전에 {@link CallSiteTags#set(String)} 으로 상수 태그를 넣고, 호출이 끝나면 예외로 끝나더라도 {@link CallSiteTags#clear()} 한다.
+ * SqlCallerInfoCommentInterceptor 의 <code>{callsite}</code> segment 는 스택을 살펴보지 않고 이 값을 스레드 로컬 읽기 한 번으로 가져온다.</p>
+ *
+ * <pre>-javaagent:sql-caller-info-agent-all.jar=packages=com.example.repository:com.example.dao</pre>
+ *
+ * <p>packages 는 계측할 패키지(또는 클래스) 이름이며 <code>:</code> 로 구분한다.</p>
+ */
+public final class CallSiteAgent {
+
+    static final String TAGS_CLASS = "in/woowa/tomcat/jdbc/pool/agent/CallSiteTags";
+
+    private CallSiteAgent() {
+    }
+
+    public static void premain(String arguments, Instrumentation instrumentation) throws IOException {
+        AgentOptions options = AgentOptions.parse(arguments);
+        if (options.getPackages().isEmpty()) {
+            System.err.println("[sql-caller-info-agent] no packages to instrument. ex) -javaagent:sql-caller-info-agent-all.jar=packages=com.example.repository");
+            return;
+        }
+
+        instrumentation.appendToBootstrapClassLoaderSearch(new JarFile(bootstrapJar()));
+        instrumentation.addTransformer(new CallSiteTransformer(options.getPackages()));
+        System.err.println("[sql-caller-info-agent] instrumenting JDBC call sites in " + options.getPackages());
+    }
+
+    /**
+     * {@link CallSiteTags} 하나만 담은 임시 jar 를 만든다. agent jar 전체(ASM 포함)를 bootstrap 에 올리지 않기 위해서이다.
+     */
+    private static File bootstrapJar() throws IOException {
+        File jar = File.createTempFile("sql-caller-info-agent-bootstrap", ".jar");
+        jar.deleteOnExit();
+        try (InputStream in = CallSiteAgent.class.getResourceAsStream("/" + TAGS_CLASS + ".class");
+             JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            if (in == null) {
+                throw new IOException(TAGS_CLASS + ".class not found in agent jar");
+            }
+            out.putNextEntry(new JarEntry(TAGS_CLASS + ".class"));
+            copy(in, out);
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package in.woowa.tomcat.jdbc.pool.agent;
+
+/**
+ * 계측된 JDBC 호출 지점이 호출 직전에 자기 태그를 넣어 두는 스레드 로컬 저장소.
+ *
+ * <p>애플리케이션 클래스가 어느 ClassLoader 에 있든 같은 클래스를 보도록 {@link CallSiteAgent} 가 bootstrap class path 에 올린다.
+ * 그래서 이 클래스는 다른 agent 클래스를 참조하지 않아야 한다.
+ * interceptor 는 이 클래스를 컴파일 시점에 알지 못하며 MethodHandle 로 {@link #get()} 만 호출한다.</p>
+ */
+public final class CallSiteTags {
+
+    private static final ThreadLocal<String> TAG = new ThreadLocal<>();
+
+    private CallSiteTags() {
+    }
+
+    public static void set(String tag) {
+        TAG.set(tag);
+    }
+
+    public static void clear() {
+        TAG.set(null);
+    }
+
+    /**
+     * @return 현재 스레드에서 실행 중인 계측된 호출 지점의 태그. 없으면 null
+     */
+    public static String get() {
+        return TAG.get();
+    }
+}
@@ -0,0 +1,291 @@
+package in.woowa.tomcat.jdbc.pool.agent;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 지정한 패키지의 클래스에서 SQL 문자열을 넘기는 JDBC 호출을 찾아 앞뒤로 {@link CallSiteTags} 호출을 넣는다.
+ *
+ * <pre>
+ * LDC "UserRepository.findById:42"
+ * INVOKESTATIC CallSiteTags.set(String)
+ * start:
+ * INVOKEINTERFACE java/sql/Connection.prepareStatement(String)
+ * end:
+ * INVOKESTATIC CallSiteTags.clear()
+ * GOTO after
+ * handler:                      // exception table : start ~ end, any
+ * INVOKESTATIC CallSiteTags.clear()
+ * ATHROW
+ * after:
+ * </pre>
+ *
+ * <p>호출이 예외로 끝나도 태그를 지워야 이후 계측되지 않은 호출에 남은 태그가 붙지 않는다. 그래서 호출 하나만 감싸는 finally 를 넣는다.
+ * JVM 은 exception table 을 앞에서부터 찾으므로 이 handler 는 메소드에 원래 있던 try/catch 보다 앞에 있어야 한다.
+ * ClassReader 는 명령어보다 try/catch 를 먼저 알려 주므로, 클래스를 한 번 미리 훑어 메소드마다 계측할 호출 수를 세어 두고
+ * 메소드 시작에서 그만큼의 handler 를 먼저 등록한다. 분기가 생기므로 stack map frame 은 다시 계산한다.</p>
+ *
+ * <p>frame 을 계산하려면 두 타입의 공통 상위 클래스를 알아야 한다. 클래스를 로드하면 정의 중인 클래스를 다시 정의하려 들 수 있으므로
+ * 상위 클래스는 ClassLoader 의 resource 에서 class 파일 헤더만 읽어 찾는다. 찾을 수 없는 타입이 있으면 틀린 frame 을 만드는 대신
+ * 그 클래스를 계측하지 않는다.</p>
+ */
+final class CallSiteTransformer implements ClassFileTransformer {
+
+    private final String[] prefixes;
+
+    CallSiteTransformer(List<String> packages) {
+        this.prefixes = new String[packages.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = packages.get(i).replace('.', '/');
+        }
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (className == null || !matches(className)) {
+            return null;
+        }
+        try {
+            ClassReader reader = new ClassReader(classfileBuffer);
+            SqlCallCounter counter = new SqlCallCounter();
+            reader.accept(counter, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            if (!counter.found) {
+                return null;
+            }
+            ClassWriter writer = new FrameComputingClassWriter(reader, className, loader);
+            reader.accept(new CallSiteClassVisitor(writer, className, counter.counts), ClassReader.SKIP_FRAMES);
+            return writer.toByteArray();
+        } catch (RuntimeException ex) {
+            System.err.println("[sql-caller-info-agent] " + className + " not instrumented : " + ex);
+            return null;
+        }
+    }
+
+    boolean matches(String className) {
+        for (String prefix : prefixes) {
+            if (className.startsWith(prefix)
+                && (className.length() == prefix.length() || className.charAt(prefix.length()) == '/' || className.charAt(prefix.length()) == '$')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SQL 문자열을 첫 인자로 받는 JDBC 인터페이스 호출인지 판단한다.
+     */
+    static boolean isSqlCall(int opcode, String owner, String name, String descriptor) {
+        if (opcode != Opcodes.INVOKEINTERFACE || !descriptor.startsWith("(Ljava/lang/String;")) {
+            return false;
+        }
+        switch (owner) {
+            case "java/sql/Connection":
+                return name.equals("prepareStatement") || name.equals("prepareCall");
+            case "java/sql/Statement":
+            case "java/sql/PreparedStatement":
+            case "java/sql/CallableStatement":
+                return name.startsWith("execute") || name.equals("addBatch");
+            default:
+                return false;
+        }
+    }
+
+    static String tag(String className, String methodName, int line) {
+        String simpleName = className.substring(className.lastIndexOf('/') + 1);
+        StringBuilder tag = new StringBuilder(simpleName.length() + methodName.length() + 8)
+            .append(simpleName).append('.').append(methodName);
+        if (line > 0) {
+            tag.append(':').append(line);
+        }
+        // 클래스/메소드 이름에는 '/' 가 올 수 없으므로 주석을 깨뜨릴 수 있는 것은 제어 문자뿐이다.
+        for (int i = 0; i < tag.length(); i++) {
+            if (tag.charAt(i) < 0x20 || tag.charAt(i) == 0x7f) {
+                tag.setCharAt(i, ' ');
+            }
+        }
+        return tag.toString();
+    }
+
+    /**
+     * 메소드 순서대로 계측할 JDBC 호출 수를 센다.
+     */
+    private static final class SqlCallCounter extends ClassVisitor {
+        private final List<Integer> counts = new ArrayList<>();
+        private boolean found;
+
+        private SqlCallCounter() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            final int method = counts.size();
+            counts.add(0);
+            return new MethodVisitor(Opcodes.ASM9) {
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                    if (isSqlCall(opcode, owner, name, descriptor)) {
+                        counts.set(method, counts.get(method) + 1);
+                        found = true;
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * 계측 대상 클래스의 ClassLoader 에 있는 class 파일로 공통 상위 클래스를 찾는다. 찾지 못하면 {@link TypeNotPresentException}
+     */
+    static final class FrameComputingClassWriter extends ClassWriter {
+        private static final String OBJECT = "java/lang/Object";
+
+        private final ClassLoader loader;
+        private final Map<String, ClassReader> headers = new HashMap<>();
+
+        FrameComputingClassWriter(ClassReader reader, String className, ClassLoader loader) {
+            super(reader, ClassWriter.COMPUTE_FRAMES);
+            this.loader = loader;
+            // 정의 중인 클래스는 resource 와 다를 수 있으므로 넘겨받은 바이트를 쓴다.
+            headers.put(className, reader);
+        }
+
+        @Override
+        protected String getCommonSuperClass(String type1, String type2) {
+            if (type1.equals(type2)) {
+                return type1;
+            }
+            if (isInterface(type1) || isInterface(type2)) {
+                return OBJECT;
+            }
+            Set<String> supers2 = new HashSet<>();
+            for (String type = type2; type != null; type = superName(type)) {
+                supers2.add(type);
+            }
+            for (String type = type1; type != null; type = superName(type)) {
+                if (supers2.contains(type)) {
+                    return type;
+                }
+            }
+            return OBJECT;
+        }
+
+        private boolean isInterface(String type) {
+            return (header(type).getAccess() & Opcodes.ACC_INTERFACE) != 0;
+        }
+
+        /**
+         * @return 상위 클래스. java/lang/Object 이면 null
+         */
+        private String superName(String type) {
+            return OBJECT.equals(type) ? null : header(type).getSuperName();
+        }
+
+        private ClassReader header(String type) {
+            ClassReader header = headers.get(type);
+            if (header == null) {
+                String resource = type + ".class";
+                try (InputStream in = loader != null ? loader.getResourceAsStream(resource) : ClassLoader.getSystemResourceAsStream(resource)) {
+                    if (in == null) {
+                        throw new TypeNotPresentException(type.replace('/', '.'), null);
+                    }
+                    header = new ClassReader(in);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(resource, ex);
+                }
+                headers.put(type, header);
+            }
+            return header;
+        }
+    }
+
+    private static final class CallSiteClassVisitor extends ClassVisitor {
+        private final String className;
+        private final List<Integer> counts;
+        private int method;
+
+        private CallSiteClassVisitor(ClassVisitor next, String className, List<Integer> counts) {
+            super(Opcodes.ASM9, next);
+            this.className = className;
+            this.counts = counts;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            final int count = counts.get(method++);
+            MethodVisitor next = super.visitMethod(access, name, descriptor, signature, exceptions);
+            return next == null || count == 0 ? next : new CallSiteMethodVisitor(next, name, count);
+        }
+
+        private final class CallSiteMethodVisitor extends MethodVisitor {
+            private final String methodName;
+            private final Label[] starts;
+            private final Label[] ends;
+            private final Label[] handlers;
+            private int call;
+            private int line;
+
+            private CallSiteMethodVisitor(MethodVisitor next, String methodName, int count) {
+                super(Opcodes.ASM9, next);
+                this.methodName = methodName;
+                this.starts = new Label[count];
+                this.ends = new Label[count];
+                this.handlers = new Label[count];
+            }
+
+            @Override
+            public void visitCode() {
+                super.visitCode();
+                for (int i = 0; i < handlers.length; i++) {
+                    starts[i] = new Label();
+                    ends[i] = new Label();
+                    handlers[i] = new Label();
+                    super.visitTryCatchBlock(starts[i], ends[i], handlers[i], null);
+                }
+            }
+
+            @Override
+            public void visitLineNumber(int line, Label start) {
+                this.line = line;
+                super.visitLineNumber(line, start);
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                if (!isSqlCall(opcode, owner, name, descriptor)) {
+                    super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+                    return;
+                }
+                final int i = call++;
+                Label after = new Label();
+                super.visitLdcInsn(tag(className, methodName, line));
+                super.visitMethodInsn(Opcodes.INVOKESTATIC, CallSiteAgent.TAGS_CLASS, "set", "(Ljava/lang/String;)V", false);
+                super.visitLabel(starts[i]);
+                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+                super.visitLabel(ends[i]);
+                super.visitMethodInsn(Opcodes.INVOKESTATIC, CallSiteAgent.TAGS_CLASS, "clear", "()V", false);
+                super.visitJumpInsn(Opcodes.GOTO, after);
+                super.visitLabel(handlers[i]);
+                super.visitMethodInsn(Opcodes.INVOKESTATIC, CallSiteAgent.TAGS_CLASS, "clear", "()V", false);
+                super.visitInsn(Opcodes.ATHROW);
+                super.visitLabel(after);
+            }
+        }
+    }
+}
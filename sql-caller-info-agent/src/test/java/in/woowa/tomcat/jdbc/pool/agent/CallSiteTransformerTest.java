@@ -0,0 +1,224 @@
+package in.woowa.tomcat.jdbc.pool.agent;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class CallSiteTransformerTest {
+
+    @Test
+    public void matches() {
+        CallSiteTransformer transformer = new CallSiteTransformer(Arrays.asList("com.example.repository", "com.example.dao.UserDao"));
+
+        assertThat(transformer.matches("com/example/repository/UserRepository")).isTrue();
+        assertThat(transformer.matches("com/example/repository/jpa/UserRepositoryImpl")).isTrue();
+        assertThat(transformer.matches("com/example/dao/UserDao")).isTrue();
+        assertThat(transformer.matches("com/example/dao/UserDao$1")).isTrue();
+
+        assertThat(transformer.matches("com/example/repositoryx/UserRepository")).isFalse();
+        assertThat(transformer.matches("com/example/dao/UserDaoSupport")).isFalse();
+    }
+
+    @Test
+    public void isSqlCall() {
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/Connection", "prepareStatement", "(Ljava/lang/String;)Ljava/sql/PreparedStatement;")).isTrue();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/Connection", "prepareCall", "(Ljava/lang/String;)Ljava/sql/CallableStatement;")).isTrue();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/Statement", "executeQuery", "(Ljava/lang/String;)Ljava/sql/ResultSet;")).isTrue();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/Statement", "addBatch", "(Ljava/lang/String;)V")).isTrue();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/PreparedStatement", "executeLargeUpdate", "(Ljava/lang/String;I)J")).isTrue();
+
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/PreparedStatement", "executeQuery", "()Ljava/sql/ResultSet;")).isFalse();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/Connection", "createStatement", "()Ljava/sql/Statement;")).isFalse();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEINTERFACE, "java/sql/Connection", "nativeSQL", "(Ljava/lang/String;)Ljava/lang/String;")).isFalse();
+        assertThat(CallSiteTransformer.isSqlCall(Opcodes.INVOKEVIRTUAL, "org/h2/jdbc/JdbcConnection", "prepareStatement", "(Ljava/lang/String;)Ljava/sql/PreparedStatement;")).isFalse();
+    }
+
+    @Test
+    public void tag() {
+        assertThat(CallSiteTransformer.tag("com/example/repository/UserRepository", "findById", 42)).isEqualTo("UserRepository.findById:42");
+        assertThat(CallSiteTransformer.tag("UserRepository$1", "run", 0)).isEqualTo("UserRepository$1.run");
+    }
+
+    @Test
+    public void transformed_call_clears_tag_on_exception() throws Exception {
+        List<String> tagsDuringCall = new ArrayList<>();
+        Connection con = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            tagsDuringCall.add(CallSiteTags.get());
+            throw new SQLException("prepare failed");
+        });
+        Class<?> fixture = transform(ThrowingFixture.class);
+
+        try {
+            fixture.getMethod("prepare", Connection.class).invoke(null, con);
+            failBecauseExceptionWasNotThrown(InvocationTargetException.class);
+        } catch (InvocationTargetException ex) {
+            assertThat(ex.getCause()).isInstanceOf(SQLException.class).hasMessage("prepare failed");
+        }
+        assertThat(CallSiteTags.get()).isNull();
+
+        // 원래 있던 catch 보다 태그를 지우는 handler 가 먼저 실행되어야 한다.
+        assertThat(fixture.getMethod("prepareAndCatch", Connection.class).invoke(null, con)).isEqualTo("caught tag=null");
+        assertThat(CallSiteTags.get()).isNull();
+
+        assertThat(tagsDuringCall).hasSize(2);
+        assertThat(tagsDuringCall.get(0)).matches("CallSiteTransformerTest\\$ThrowingFixture\\.prepare:\\d+");
+        assertThat(tagsDuringCall.get(1)).matches("CallSiteTransformerTest\\$ThrowingFixture\\.prepareAndCatch:\\d+");
+    }
+
+    @Test
+    public void transformed_method_keeps_merged_types() throws Exception {
+        List<String> sqls = new ArrayList<>();
+        Connection con = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            sqls.add(CallSiteTags.get() + " " + args[0]);
+            return null;
+        });
+        Class<?> fixture = transform(MergingFixture.class);
+
+        // ById, ByName 이 합쳐진 Finder 를 호출 뒤에도 Finder 로 쓰므로 frame 이 Object 로 계산되면 VerifyError 가 난다.
+        assertThat(fixture.getMethod("find", Connection.class, boolean.class).invoke(null, con, true)).isEqualTo("name");
+        assertThat(fixture.getMethod("find", Connection.class, boolean.class).invoke(null, con, false)).isEqualTo("id");
+        assertThat(sqls).hasSize(2);
+        assertThat(sqls.get(0)).matches("CallSiteTransformerTest\\$MergingFixture\\.find:\\d+ SELECT \\* FROM TESTUSER WHERE NAME = \\?");
+        assertThat(CallSiteTags.get()).isNull();
+    }
+
+    @Test
+    public void common_super_class_is_read_from_class_files() throws IOException {
+        String finder = internalName(MergingFixture.Finder.class);
+        CallSiteTransformer.FrameComputingClassWriter writer = new CallSiteTransformer.FrameComputingClassWriter(
+            new ClassReader(classBytes(MergingFixture.class)), internalName(MergingFixture.class), getClass().getClassLoader());
+
+        assertThat(writer.getCommonSuperClass(internalName(MergingFixture.ById.class), internalName(MergingFixture.ByName.class))).isEqualTo(finder);
+        assertThat(writer.getCommonSuperClass(internalName(MergingFixture.ById.class), finder)).isEqualTo(finder);
+        assertThat(writer.getCommonSuperClass(internalName(MergingFixture.ById.class), "java/lang/String")).isEqualTo("java/lang/Object");
+        assertThat(writer.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList")).isEqualTo("java/util/AbstractList");
+    }
+
+    @Test
+    public void class_with_unknown_super_class_is_not_transformed() throws IOException {
+        String internalName = internalName(MergingFixture.class);
+        // 부모가 bootstrap 뿐인 loader 에서는 MergingFixture 의 중첩 클래스를 찾을 수 없다. Object 로 짐작하지 않고 계측을 건너뛴다.
+        ClassLoader bootstrapOnly = new ClassLoader(null) {
+        };
+
+        assertThat(new CallSiteTransformer(Collections.singletonList(MergingFixture.class.getName()))
+            .transform(bootstrapOnly, internalName, null, null, classBytes(MergingFixture.class))).isNull();
+    }
+
+    @Test
+    public void class_without_sql_call_is_not_transformed() throws IOException {
+        CallSiteTransformer transformer = new CallSiteTransformer(Collections.singletonList(getClass().getName()));
+        String internalName = getClass().getName().replace('.', '/');
+
+        assertThat(transformer.transform(getClass().getClassLoader(), internalName, null, null, classBytes(getClass()))).isNull();
+    }
+
+    @Test
+    public void parse_options() {
+        assertThat(AgentOptions.parse("packages=com.example.repository:com.example.dao").getPackages())
+            .containsExactly("com.example.repository", "com.example.dao");
+        assertThat(AgentOptions.parse(null).getPackages()).isEmpty();
+
+        try {
+            AgentOptions.parse("include=com.example");
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("unknown agent option 'include'. available : [packages]");
+        }
+    }
+
+    private static Class<?> transform(Class<?> type) throws IOException {
+        String internalName = type.getName().replace('.', '/');
+        byte[] transformed = new CallSiteTransformer(Collections.singletonList(type.getName()))
+            .transform(type.getClassLoader(), internalName, null, null, classBytes(type));
+        assertThat(transformed).isNotNull();
+        return new DefiningClassLoader(type.getClassLoader()).define(type.getName(), transformed);
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    private static byte[] classBytes(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream("/" + type.getName().replace('.', '/') + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static final class DefiningClassLoader extends ClassLoader {
+        private DefiningClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    public static class ThrowingFixture {
+        public static void prepare(Connection con) throws SQLException {
+            con.prepareStatement("SELECT 1");
+        }
+
+        public static String prepareAndCatch(Connection con) {
+            try {
+                con.prepareStatement("SELECT 1");
+                return "not thrown";
+            } catch (SQLException ex) {
+                return "caught tag=" + CallSiteTags.get();
+            }
+        }
+    }
+
+    public static class MergingFixture {
+        public static String find(Connection con, boolean byName) throws SQLException {
+            Finder finder = byName ? new ByName() : new ById();
+            con.prepareStatement(finder.sql());
+            return finder.column();
+        }
+
+        // 다른 ClassLoader 로 정의한 MergingFixture 에서 쓰므로 public 이다.
+        public abstract static class Finder {
+            public abstract String column();
+
+            public String sql() {
+                return "SELECT * FROM TESTUSER WHERE " + column().toUpperCase() + " = ?";
+            }
+        }
+
+        public static final class ById extends Finder {
+            @Override
+            public String column() {
+                return "id";
+            }
+        }
+
+        public static final class ByName extends Finder {
+            @Override
+            public String column() {
+                return "name";
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * agent 가 계측하는 애플리케이션 코드 역할. JDBC 호출과 같은 줄에서 스택으로 얻은 <code>클래스.메소드:줄번호</code> 를 기록해 두어
+ * agent 태그와 비교할 수 있게 한다.
+ */
+public class AgentFixtureRepository {
+
+    private final List<String> stackTags;
+
+    public AgentFixtureRepository(List<String> stackTags) {
+        this.stackTags = stackTags;
+    }
+
+    public void findUser(Connection con) throws SQLException {
+        // 줄번호를 비교하기 위해 JDBC 호출과 같은 줄에 둔다.
+        stackTags.add(stackTag()); try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER WHERE ID = ?")) {
+            stmt.setInt(1, 7);
+            stmt.executeQuery().close();
+        }
+    }
+
+    public void updateUser(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stackTags.add(stackTag()); stmt.executeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7");
+        }
+    }
+
+    /**
+     * ById, ByName 이 합쳐진 Finder 를 JDBC 호출 뒤에도 Finder 로 쓴다. agent 가 다시 계산한 frame 이 공통 상위 클래스를 찾지 못하면 VerifyError 가 난다.
+     */
+    public String findUserBy(Connection con, boolean byName) throws SQLException {
+        Finder finder = byName ? new ByName() : new ById();
+        stackTags.add(stackTag()); try (PreparedStatement stmt = con.prepareStatement(finder.sql())) {
+            finder.bind(stmt);
+            stmt.executeQuery().close();
+        }
+        return finder.column();
+    }
+
+    public void findMissingTable(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM NO_SUCH_TABLE")) {
+            stmt.executeQuery().close();
+        }
+    }
+
+    private static String stackTag() {
+        StackTraceElement caller = new Throwable().getStackTrace()[1];
+        String className = caller.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + caller.getMethodName() + ":" + caller.getLineNumber();
+    }
+
+    abstract static class Finder {
+        abstract String column();
+
+        abstract void bind(PreparedStatement stmt) throws SQLException;
+
+        String sql() {
+            return "SELECT * FROM TESTUSER WHERE " + column().toUpperCase() + " = ?";
+        }
+    }
+
+    static final class ById extends Finder {
+        @Override
+        String column() {
+            return "id";
+        }
+
+        @Override
+        void bind(PreparedStatement stmt) throws SQLException {
+            stmt.setInt(1, 7);
+        }
+    }
+
+    static final class ByName extends Finder {
+        @Override
+        String column() {
+            return "name";
+        }
+
+        @Override
+        void bind(PreparedStatement stmt) throws SQLException {
+            stmt.setString(1, "Baemin");
+        }
+    }
+}
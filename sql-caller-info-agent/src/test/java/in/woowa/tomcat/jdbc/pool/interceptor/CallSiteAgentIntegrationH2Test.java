@@ -0,0 +1,113 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+/**
+ * build.gradle 의 test 설정대로 agent 가 {@link AgentFixtureRepository} 만 계측한 상태에서 실행한다.
+ */
+public class CallSiteAgentIntegrationH2Test {
+
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() {
+        dataSource = new DataSource();
+        dataSource.setUrl("jdbc:h2:mem:agent");
+        dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,commentTemplate={callsite} {caller});"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+        dataSource.setInitSQL("DROP TABLE TESTUSER IF EXISTS; CREATE TABLE TESTUSER (ID INT, NAME VARCHAR(50)); INSERT INTO TESTUSER (ID, NAME) VALUES(7, 'Baemin');");
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void agent_is_attached() {
+        assertThat(AgentCallSiteTags.isAvailable()).isTrue();
+    }
+
+    @Test
+    public void agent_tag_matches_stack_walk() throws SQLException {
+        List<String> stackTags = new ArrayList<>();
+        AgentFixtureRepository repository = new AgentFixtureRepository(stackTags);
+
+        try (Connection con = dataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            repository.findUser(con);
+            repository.updateUser(con);
+        }
+
+        assertThat(stackTags).hasSize(2);
+        assertThat(stackTags.get(0)).matches("AgentFixtureRepository\\.findUser:\\d+");
+        assertThat(stackTags.get(1)).matches("AgentFixtureRepository\\.updateUser:\\d+");
+        assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(
+            " /* " + stackTags.get(0) + " AgentFixtureRepository.findUser */ SELECT * FROM TESTUSER WHERE ID = ?",
+            " /* " + stackTags.get(1) + " AgentFixtureRepository.updateUser */ UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7");
+        assertThat(AgentCallSiteTags.get()).isNull();
+    }
+
+    @Test
+    public void method_with_merged_types_is_instrumented() throws SQLException {
+        List<String> stackTags = new ArrayList<>();
+        AgentFixtureRepository repository = new AgentFixtureRepository(stackTags);
+
+        try (Connection con = dataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            assertThat(repository.findUserBy(con, true)).isEqualTo("name");
+            assertThat(repository.findUserBy(con, false)).isEqualTo("id");
+        }
+
+        assertThat(stackTags).hasSize(2);
+        assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(
+            " /* " + stackTags.get(0) + " AgentFixtureRepository.findUserBy */ SELECT * FROM TESTUSER WHERE NAME = ?",
+            " /* " + stackTags.get(1) + " AgentFixtureRepository.findUserBy */ SELECT * FROM TESTUSER WHERE ID = ?");
+    }
+
+    @Test
+    public void not_instrumented_call_falls_back_to_stack_walk() throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            SqlRecordingInterceptor.clear();
+            stmt.execute("SELECT * FROM TESTUSER");
+        }
+
+        assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(
+            " /* CallSiteAgentIntegrationH2Test.not_instrumented_call_falls_back_to_stack_walk"
+                + " CallSiteAgentIntegrationH2Test.not_instrumented_call_falls_back_to_stack_walk */ SELECT * FROM TESTUSER");
+    }
+
+    @Test
+    public void failed_call_clears_tag() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try {
+                new AgentFixtureRepository(new ArrayList<>()).findMissingTable(con);
+                failBecauseExceptionWasNotThrown(SQLException.class);
+            } catch (SQLException expected) {
+                assertThat(AgentCallSiteTags.get()).isNull();
+            }
+
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+                stmt.execute("SELECT * FROM TESTUSER");
+            }
+        }
+
+        assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(
+            " /* CallSiteAgentIntegrationH2Test.failed_call_clears_tag"
+                + " CallSiteAgentIntegrationH2Test.failed_call_clears_tag */ SELECT * FROM TESTUSER");
+    }
+}
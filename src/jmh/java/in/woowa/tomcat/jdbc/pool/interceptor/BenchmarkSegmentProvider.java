@@ -0,0 +1,22 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+
+import java.util.Map;
+
+/**
+ * 벤치마크용 동적 segment. <code>{bench.value:xxx}</code> 는 매번 xxx 를 돌려주지만 동적 segment 로 취급된다.
+ */
+public class BenchmarkSegmentProvider implements CommentSegmentProvider {
+
+    @Override
+    public String getName() {
+        return "bench.value";
+    }
+
+    @Override
+    public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+        final String value = argument == null ? "" : argument;
+        return () -> value;
+    }
+}
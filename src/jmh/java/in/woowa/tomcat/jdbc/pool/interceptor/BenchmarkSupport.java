@@ -0,0 +1,140 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.JdbcInterceptor;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 벤치마크 공용 도구. 실제 DB 없이 interceptor 체인만 측정할 수 있도록 가짜 Connection/Statement 를 제공한다.
+ */
+final class BenchmarkSupport {
+
+    static final String SHORT_SQL = "SELECT 1 FROM DUAL";
+
+    /** Hibernate 가 만들어 내는 형태의 수 KB 짜리 SQL */
+    static final String ORM_SQL = ormSql(80);
+
+    /** IN 절에 bind 변수 수천 개가 들어간 100 KB 안팎의 여러 줄 SQL */
+    static final String LARGE_SQL = largeSql(20000);
+
+    private BenchmarkSupport() {
+    }
+
+    static String sql(String kind) {
+        switch (kind) {
+            case "orm":
+                return ORM_SQL;
+            case "large":
+                return LARGE_SQL;
+            default:
+                return SHORT_SQL;
+        }
+    }
+
+    static String largeSql(int binds) {
+        StringBuilder builder = new StringBuilder("select o.id, o.status, o.created_at\n-- bulk lookup\nfrom order_entity o\nwhere o.id in (");
+        for (int i = 0; i < binds; i++) {
+            if (i > 0) {
+                builder.append(i % 20 == 0 ? ",\n" : ", ");
+            }
+            builder.append('?');
+        }
+        builder.append(")\norder by o.id desc");
+        return builder.toString();
+    }
+
+    static String ormSql(int columns) {
+        StringBuilder builder = new StringBuilder("select ");
+        for (int i = 0; i < columns; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append("orderentit0_.column_name_").append(i).append(" as column_name_").append(i).append("_3_");
+        }
+        builder.append(" from order_entity orderentit0_")
+            .append(" left outer join member_entity memberenti1_ on orderentit0_.member_id=memberenti1_.id")
+            .append(" where orderentit0_.shop_id=? and orderentit0_.status in (?, ?, ?) order by orderentit0_.id desc limit ?");
+        return builder.toString();
+    }
+
+    static Map<String, PoolProperties.InterceptorProperty> properties(String... keyValues) {
+        Map<String, PoolProperties.InterceptorProperty> properties = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            properties.put(keyValues[i], new PoolProperties.InterceptorProperty(keyValues[i], keyValues[i + 1]));
+        }
+        return properties;
+    }
+
+    static <T extends JdbcInterceptor> T chain(T interceptor) {
+        interceptor.setNext(new StatementReturningInterceptor());
+        return interceptor;
+    }
+
+    static Method method(String name, Class<?>... parameterTypes) {
+        try {
+            return java.sql.Connection.class.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 체인의 마지막에서 실제 드라이버 대신 마지막 호출 인자만 기억하는 Statement 를 돌려준다.
+     * 인자를 volatile 필드에 남기므로 JIT 가 Statement 호출 자체를 없애 버리지 못한다.
+     */
+    static class StatementReturningInterceptor extends JdbcInterceptor {
+
+        private volatile Object[] lastStatementArgs;
+
+        private final Object statement = Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[]{CallableStatement.class}, (proxy, method, args) -> {
+                lastStatementArgs = args;
+                return defaultValue(method.getReturnType());
+            });
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return statement;
+        }
+
+        @Override
+        public void reset(ConnectionPool parent, PooledConnection con) {
+            // no op
+        }
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int[].class) {
+            return new int[0];
+        }
+        return null;
+    }
+
+    /**
+     * 요청 하나 동안 같은 trace id 인스턴스를 돌려주는 {@link ContextValueSource}.
+     */
+    public static class TraceContextValueSource implements ContextValueSource {
+        private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+        @Override
+        public String get(String key) {
+            return TRACE_ID;
+        }
+    }
+}
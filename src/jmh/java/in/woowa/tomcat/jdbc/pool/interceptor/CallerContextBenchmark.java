@@ -0,0 +1,131 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 작업 100,000 개를 가상 스레드로 넘기고 각 작업에서 <code>{context:traceId}</code> 를 넣은 commentSql 을 한 번씩 부르는 데 걸리는 시간.
+ *
+ * <ul>
+ * <li><code>callerContext</code> : {@link CallerContextExecutors} 로 감싼 Executor. 넘길 때 문맥 참조 하나만 옮긴다.</li>
+ * <li><code>threadLocalCopy</code> : MDC 를 넘길 때 흔히 하는 방식처럼 Map 을 복사해 ThreadLocal 에 넣고 작업이 끝나면 지운다.</li>
+ * </ul>
+ *
+ * <p>가상 스레드는 Java 21 부터 있으므로 <code>Executors.newVirtualThreadPerTaskExecutor()</code> 를 reflection 으로 찾는다.
+ * 없으면 CPU 개수만큼의 고정 풀로 실행하고 시작할 때 어느 쪽인지 출력한다. ScopedValue 구현은 JDK 25 이상으로 빌드하고 실행해야 쓰인다.
+ * <code>-prof gc</code> 의 <code>gc.alloc.rate.norm</code> 으로 두 방식의 작업당 할당을 비교할 수 있다.</p>
+ *
+ * <p>예산 : <code>callerContext</code> 가 <code>threadLocalCopy</code> 보다 느리지 않아야 한다.</p>
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=CallerContextBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CallerContextBenchmark {
+
+    private static final int TASKS = 100_000;
+
+    private static final ThreadLocal<Map<String, String>> COPIED = new ThreadLocal<>();
+
+    @Param({"callerContext", "threadLocalCopy"})
+    public String carrier;
+
+    private SqlCallerInfoCommentInterceptor interceptor;
+    private ExecutorService executor;
+    private CallerContext context;
+    private Map<String, String> contextMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ContextValueSource source = "callerContext".equals(carrier) ? null : new CopiedContextValueSource();
+        interceptor = new SqlCallerInfoCommentInterceptor();
+        interceptor.setProperties(BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+            SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{project} trace={context:traceId}",
+            SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, source == null ? "" : source.getClass().getName()));
+        executor = virtualThreadExecutor();
+        context = CallerContext.EMPTY.with("traceId", "4bf92f3577b34da6").with("endpoint", "/orders");
+        contextMap = new HashMap<>();
+        contextMap.put("traceId", "4bf92f3577b34da6");
+        contextMap.put("endpoint", "/orders");
+        System.out.println("executor : " + executor.getClass().getName() + ", storage : " + CallerContext.implementation());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public long handoff() throws Exception {
+        CountDownLatch done = new CountDownLatch(TASKS);
+        LongAdder length = new LongAdder();
+        Runnable task = () -> {
+            length.add(interceptor.commentSql(BenchmarkSupport.SHORT_SQL).length());
+            done.countDown();
+        };
+        if ("callerContext".equals(carrier)) {
+            ExecutorService wrapped = CallerContextExecutors.wrap(executor);
+            context.run(() -> {
+                for (int i = 0; i < TASKS; i++) {
+                    wrapped.execute(task);
+                }
+            });
+        } else {
+            for (int i = 0; i < TASKS; i++) {
+                Map<String, String> copy = new HashMap<>(contextMap);
+                executor.execute(() -> {
+                    COPIED.set(copy);
+                    try {
+                        task.run();
+                    } finally {
+                        COPIED.remove();
+                    }
+                });
+            }
+        }
+        done.await();
+        return length.sum();
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public static class CopiedContextValueSource implements ContextValueSource {
+
+        @Override
+        public String get(String key) {
+            Map<String, String> values = COPIED.get();
+            return values == null ? null : values.get(key);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * latencyKey 로 실행 시간을 잴 때(<code>on</code>) PreparedStatement.executeUpdate() 한 번에 더해지는 비용.
+ *
+ * <p>스레드마다 커넥션(interceptor 체인)과 Statement 를 따로 갖지만 설정은 같은 프라퍼티 Map 에서 나오므로 하나의 pool 처럼 통계를 공유한다.
+ * latencyKey 가 <code>{project}</code> 이므로 모든 스레드가 같은 히스토그램에 기록하는 가장 경합이 심한 경우이다.</p>
+ *
+ * <p>예산 : 1~64 스레드 모두에서 <code>on</code> 과 <code>off</code> 의 차이가 실행당 100 ns 이하여야 한다.
+ * <code>System.nanoTime()</code> 두 번과 stripe 에 원자적 증가 두 번이 전부이며 할당은 없다.</p>
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=CallerLatencyBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallerLatencyBenchmark {
+
+    @Param({"off", "on"})
+    public String latency;
+
+    private Map<String, PoolProperties.InterceptorProperty> properties;
+
+    @Setup
+    public void setUp() {
+        properties = "on".equals(latency)
+            ? BenchmarkSupport.properties(
+                SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+                SqlCallerInfoCommentInterceptor.LATENCY_KEY_TEMPLATE_KEY, "{project}")
+            : BenchmarkSupport.properties(
+                SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan");
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private PreparedStatement statement;
+
+        @Setup
+        public void setUp(CallerLatencyBenchmark benchmark) throws Throwable {
+            SqlCallerInfoCommentInterceptor interceptor = BenchmarkSupport.chain(new SqlCallerInfoCommentInterceptor());
+            interceptor.setProperties(benchmark.properties);
+            statement = (PreparedStatement) interceptor.invoke(null, BenchmarkSupport.method("prepareStatement", String.class),
+                new Object[]{"UPDATE ORDER_ITEM SET QUANTITY = ? WHERE ID = ?"});
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int executeUpdate_threads1(Connection connection) throws SQLException {
+        return connection.statement.executeUpdate();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int executeUpdate_threads4(Connection connection) throws SQLException {
+        return connection.statement.executeUpdate();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int executeUpdate_threads16(Connection connection) throws SQLException {
+        return connection.statement.executeUpdate();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int executeUpdate_threads64(Connection connection) throws SQLException {
+        return connection.statement.executeUpdate();
+    }
+}
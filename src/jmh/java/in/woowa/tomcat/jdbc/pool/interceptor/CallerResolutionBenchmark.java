@@ -0,0 +1,86 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>{caller}</code> 를 넣은 commentSql 의 샘플링 비율별 비용.
+ * repository 와 interceptor 사이에 프레임워크 프레임이 frameworkDepth 개, repository 아래에 servlet container 등의 프레임이
+ * containerDepth 개 있는 상황을 재귀 호출로 흉내 낸다. StackWalker 는 repository 를 찾으면 멈추므로 containerDepth 의 영향을 받지 않는다.
+ * <code>baseline</code> 은 같은 깊이에서 <code>{caller}</code> 없이 기본 템플릿만 쓴 경우이다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=CallerResolutionBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallerResolutionBenchmark {
+
+    @Param({"baseline", "0", "1", "100"})
+    public String samplingRate;
+
+    @Param({"20"})
+    public int frameworkDepth;
+
+    @Param({"100"})
+    public int containerDepth;
+
+    private SqlCallerInfoCommentInterceptor interceptor;
+
+    @Setup
+    public void setUp() {
+        interceptor = new SqlCallerInfoCommentInterceptor();
+        if ("baseline".equals(samplingRate)) {
+            interceptor.setProperties(BenchmarkSupport.properties(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan"));
+            return;
+        }
+        interceptor.setProperties(BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+            SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{project} {caller}",
+            SqlCallerInfoCommentInterceptor.CALLER_SKIP_PACKAGES_KEY, Framework.class.getName() + " org.openjdk.jmh",
+            SqlCallerInfoCommentInterceptor.CALLER_SAMPLING_RATE_KEY, samplingRate));
+    }
+
+    @Benchmark
+    public String commentSql() {
+        return Container.handle(interceptor, containerDepth, frameworkDepth);
+    }
+
+    static class Container {
+        static String handle(SqlCallerInfoCommentInterceptor interceptor, int depth, int frameworkDepth) {
+            if (depth > 0) {
+                return handle(interceptor, depth - 1, frameworkDepth);
+            }
+            return Repository.findById(interceptor, frameworkDepth);
+        }
+    }
+
+    static class Repository {
+        static String findById(SqlCallerInfoCommentInterceptor interceptor, int frameworkDepth) {
+            return Framework.execute(interceptor, frameworkDepth);
+        }
+    }
+
+    static class Framework {
+        static String execute(SqlCallerInfoCommentInterceptor interceptor, int depth) {
+            if (depth > 0) {
+                return execute(interceptor, depth - 1);
+            }
+            return interceptor.commentSql(BenchmarkSupport.SHORT_SQL);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * commentPlacement 별 commentSql 비용.
+ * afterKeyword 의 검사는 SQL 앞부분만 보므로 길이와 상관없어야 하고, suffix 의 줄 주석 검사는 벡터화된 indexOf 이므로
+ * <code>large</code>(100 KB 안팎) 에서도 SQL 한 번 복사하는 비용(prefix 의 commentSql) 정도여야 한다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=CommentPlacementBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentPlacementBenchmark {
+
+    @Param({"prefix", "suffix", "afterKeyword"})
+    public String placement;
+
+    @Param({"short", "orm", "large"})
+    public String sqlKind;
+
+    private SqlCallerInfoCommentInterceptor interceptor;
+    private String sql;
+
+    @Setup
+    public void setUp() {
+        sql = BenchmarkSupport.sql(sqlKind);
+        interceptor = new SqlCallerInfoCommentInterceptor();
+        interceptor.setProperties(BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+            SqlCallerInfoCommentInterceptor.COMMENT_PLACEMENT_KEY, placement));
+    }
+
+    @Benchmark
+    public String commentSql() {
+        return interceptor.commentSql(sql);
+    }
+
+    /**
+     * 주석을 넣지 않고 위치만 찾는 비용
+     */
+    @Benchmark
+    public int scan() {
+        switch (placement) {
+            case "suffix":
+                return SqlTokenScanner.mayEndInLineComment(sql) ? -1 : SqlTokenScanner.trailerStart(sql);
+            case "afterKeyword":
+                return SqlTokenScanner.afterFirstKeyword(sql);
+            default:
+                return 0;
+        }
+    }
+}
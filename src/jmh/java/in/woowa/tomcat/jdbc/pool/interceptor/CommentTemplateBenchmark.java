@@ -0,0 +1,70 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * commentTemplate 종류별 commentSql 비용.
+ * 고정 텍스트만 있는 템플릿(<code>static</code>)은 기본 템플릿(<code>default</code>)과 같은 비용이어야 한다.
+ * <code>context</code> 는 같은 trace id 가 반복될 때 {@link RecentSanitizedValues} 덕분에 다시 검사하지 않는 경우이다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=CommentTemplateBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentTemplateBenchmark {
+
+    @Param({"default", "static", "dynamic1", "dynamic3", "context"})
+    public String template;
+
+    @Param({"short", "orm"})
+    public String sqlKind;
+
+    private SqlCallerInfoCommentInterceptor interceptor;
+    private String sql;
+
+    @Setup
+    public void setUp() {
+        sql = BenchmarkSupport.sql(sqlKind);
+        interceptor = new SqlCallerInfoCommentInterceptor();
+        interceptor.setProperties(BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+            SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, template(template),
+            SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, BenchmarkSupport.TraceContextValueSource.class.getName()));
+    }
+
+    private static String template(String kind) {
+        switch (kind) {
+            case "static":
+                return "app={project} env=production zone=ap-northeast-2a";
+            case "dynamic1":
+                return "{project} trace={bench.value:4bf92f3577b34da6a3ce929d0e0e4736}";
+            case "dynamic3":
+                return "{project} trace={bench.value:4bf92f3577b34da6} span={bench.value:00f067aa0ba902b7} user={bench.value:12345}";
+            case "context":
+                return "{project} trace={context:traceId}";
+            default:
+                return CommentTemplate.DEFAULT_TEMPLATE;
+        }
+    }
+
+    @Benchmark
+    public String commentSql() {
+        return interceptor.commentSql(sql);
+    }
+}
@@ -0,0 +1,78 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 키 종류가 capacity 보다 훨씬 많을 때 {@link HeavyHitters#record(String, long)} 한 번의 비용.
+ *
+ * <p>키 65,536 개를 고르게 섞어 기록하므로 거의 모든 실행이 추적 중이 아닌 키이고, 매번 가장 작은 counter 를 넘겨받는다.
+ * 꼬리 키가 많은 ORM SQL 을 <code>topKey={fingerprint}</code> 로 모을 때의 가장 나쁜 경우이다.
+ * 키 문자열은 미리 만들어 두므로 할당은 넘겨받은 counter 와 ConcurrentHashMap 의 node 뿐이다.</p>
+ *
+ * <p>예산 : capacity 4096, 16 스레드에서도 실행당 수 µs 이하. counter 를 넘겨줄 때 키의 stripe 락만 잡고,
+ * 가장 작은 counter 는 기억해 둔 후보에서 고르므로 capacity 만큼 훑는 일은 후보 개수만큼 넘겨준 뒤 한 번뿐이다.</p>
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=HeavyHittersBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeavyHittersBenchmark {
+
+    private static final int KEYS = 65536;
+
+    @Param({"128", "4096"})
+    public int capacity;
+
+    private HeavyHitters heavyHitters;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        heavyHitters = new HeavyHitters(capacity, 10, 0);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "select * from order_item where order_id=? and id=" + i;
+        }
+    }
+
+    private void recordRandom() {
+        heavyHitters.record(keys[ThreadLocalRandom.current().nextInt(KEYS)], 1000L);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void record_threads1() {
+        recordRandom();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record_threads4() {
+        recordRandom();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void record_threads16() {
+        recordRandom();
+    }
+}
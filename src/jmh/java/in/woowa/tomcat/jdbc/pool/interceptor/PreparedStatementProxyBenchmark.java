@@ -0,0 +1,76 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * bind 가 많은 batch insert 에서 PreparedStatement 를 StatementProxy 로 감쌀 때(skipPreparedStatementProxy=false)와
+ * 감싸지 않을 때(true)의 비용을 비교한다. 드라이버는 아무 일도 하지 않는 가짜 Statement 이므로 차이는 proxy 계층 비용이다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=PreparedStatementProxyBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreparedStatementProxyBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final String INSERT_SQL = "INSERT INTO ORDER_ITEM (ORDER_ID, ITEM_ID, NAME, PRICE, QUANTITY) VALUES (?, ?, ?, ?, ?)";
+
+    @Param({"false", "true"})
+    public String skipPreparedStatementProxy;
+
+    private SqlCallerInfoCommentInterceptor interceptor;
+    private Method prepareStatement;
+    private Object[] args;
+
+    @Setup
+    public void setUp() {
+        prepareStatement = BenchmarkSupport.method("prepareStatement", String.class);
+        args = new Object[]{INSERT_SQL};
+
+        interceptor = BenchmarkSupport.chain(new SqlCallerInfoCommentInterceptor());
+        interceptor.setProperties(BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+            SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, skipPreparedStatementProxy));
+    }
+
+    @Benchmark
+    public int[] batchInsert() throws Throwable {
+        PreparedStatement stmt = (PreparedStatement) interceptor.invoke(null, prepareStatement, args);
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                stmt.setLong(1, 1L);
+                stmt.setLong(2, i);
+                stmt.setString(3, "item");
+                stmt.setInt(4, 1000);
+                stmt.setInt(5, 1);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        } finally {
+            close(stmt);
+        }
+    }
+
+    private static void close(PreparedStatement stmt) throws SQLException {
+        stmt.close();
+    }
+}
@@ -0,0 +1,98 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.interceptor.StatementDecoratorInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>invoke -&gt; changeSql -&gt; commentSql</code> 경로의 비용을 아무것도 하지 않는 {@link StatementDecoratorInterceptor} 와 비교한다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=SqlCallerInfoCommentInterceptorBenchmark</pre>
+ * ns/op 는 Score, op 당 할당량은 <code>gc.alloc.rate.norm</code>(B/op) 항목을 본다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlCallerInfoCommentInterceptorBenchmark {
+
+    @Param({"short", "orm"})
+    public String sqlKind;
+
+    private Method prepareStatement;
+    private Method getAutoCommit;
+    private Object[] args;
+
+    private StatementDecoratorInterceptor bareInterceptor;
+    private SqlCallerInfoCommentInterceptor commentInterceptor;
+    private SqlCallerInfoCommentInterceptor cachedCommentInterceptor;
+
+    @Setup
+    public void setUp() {
+        prepareStatement = BenchmarkSupport.method("prepareStatement", String.class);
+        getAutoCommit = BenchmarkSupport.method("getAutoCommit");
+        args = new Object[]{BenchmarkSupport.sql(sqlKind)};
+
+        bareInterceptor = BenchmarkSupport.chain(new StatementDecoratorInterceptor());
+
+        commentInterceptor = BenchmarkSupport.chain(new SqlCallerInfoCommentInterceptor());
+        commentInterceptor.setProperties(BenchmarkSupport.properties(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan"));
+
+        cachedCommentInterceptor = BenchmarkSupport.chain(new SqlCallerInfoCommentInterceptor());
+        cachedCommentInterceptor.setProperties(BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan",
+            SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, "1000"));
+    }
+
+    @Benchmark
+    public Object bareDecoratorPrepareStatement() throws Throwable {
+        return bareInterceptor.invoke(null, prepareStatement, args);
+    }
+
+    @Benchmark
+    public Object commentInterceptorPrepareStatement() throws Throwable {
+        return commentInterceptor.invoke(null, prepareStatement, args);
+    }
+
+    @Benchmark
+    public Object cachedCommentInterceptorPrepareStatement() throws Throwable {
+        return cachedCommentInterceptor.invoke(null, prepareStatement, args);
+    }
+
+    /**
+     * Statement 생성과 무관한 Connection 호출이 interceptor 를 통과하는 비용
+     */
+    @Benchmark
+    public Object bareDecoratorPassThrough() throws Throwable {
+        return bareInterceptor.invoke(null, getAutoCommit, null);
+    }
+
+    @Benchmark
+    public Object commentInterceptorPassThrough() throws Throwable {
+        return commentInterceptor.invoke(null, getAutoCommit, null);
+    }
+
+    @Benchmark
+    public Object changeSql() {
+        return commentInterceptor.changeSql(prepareStatement, args);
+    }
+
+    @Benchmark
+    public String commentSql() {
+        return commentInterceptor.commentSql((String) args[0]);
+    }
+}
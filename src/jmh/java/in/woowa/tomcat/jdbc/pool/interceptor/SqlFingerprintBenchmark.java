@@ -0,0 +1,72 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>{fingerprint}</code> 비용. <code>scan</code> 은 Statement.execute SQL 처럼 매번 훑는 경우이고 SQL 길이에 비례한다.
+ * <code>preparedCached</code> 는 prepareStatement SQL 이 캐시에 있을 때이며 SQL 의 equals 비용만 남는다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=SqlFingerprintBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlFingerprintBenchmark {
+
+    /**
+     * SQL 길이(byte)
+     */
+    @Param({"100", "1000", "10000", "50000"})
+    public int size;
+
+    private String sql;
+    private CommentSegment segment;
+
+    @Setup
+    public void setUp() {
+        sql = literalSql(size);
+        segment = CommentSegmentProviders.get("fingerprint").create(null, BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan"));
+        segment.getValue(sql, true);
+    }
+
+    @Benchmark
+    public long scan() {
+        return SqlFingerprint.hash(sql, false);
+    }
+
+    @Benchmark
+    public String preparedCached() {
+        // 애플리케이션이 같은 SQL 을 다른 String 인스턴스로 넘기는 경우처럼 equals 비교까지 하게 한다.
+        return segment.getValue(new String(sql), true);
+    }
+
+    /**
+     * 문자열/숫자 리터럴, 주석, IN 목록이 섞인 SQL 을 size 길이에 맞춰 만든다.
+     */
+    static String literalSql(int size) {
+        StringBuilder builder = new StringBuilder(size + 64)
+            .append("/* orm */ SELECT o.ID, o.STATUS FROM ORDERS o WHERE o.SHOP_ID = 1024 AND o.ID IN (");
+        int id = 1;
+        while (builder.length() < size - 40) {
+            builder.append(id++).append(", '").append("ord-").append(id).append("', ");
+        }
+        builder.append("0) AND o.NAME <> 'it''s'");
+        return builder.length() > size ? builder.substring(0, size) : builder.toString();
+    }
+}
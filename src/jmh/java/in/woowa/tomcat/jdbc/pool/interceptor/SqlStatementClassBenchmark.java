@@ -0,0 +1,58 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>{rw}</code> 비용. <code>scan</code> 은 Statement.execute SQL 처럼 매번 분류하는 경우이다.
+ * <code>insert</code> 는 첫 단어에서 끝나고, <code>SELECT</code> 로 시작하는 나머지는 잠금 단어를 찾느라 SQL 전체를 한 번 훑는다.
+ * <code>preparedCached</code> 는 prepareStatement SQL 이 캐시에 있을 때이며 SQL 의 equals 비용만 남는다.
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=SqlStatementClassBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlStatementClassBenchmark {
+
+    private static final String INSERT_SQL = "/* orm */ insert into order_entity (id, status, created_at) values (?, ?, ?)";
+
+    @Param({"insert", "short", "orm", "large"})
+    public String kind;
+
+    private String sql;
+    private CommentSegment segment;
+
+    @Setup
+    public void setUp() {
+        sql = "insert".equals(kind) ? INSERT_SQL : BenchmarkSupport.sql(kind);
+        segment = CommentSegmentProviders.get("rw").create(null, BenchmarkSupport.properties(
+            SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "woowahan"));
+        segment.getValue(sql, true);
+    }
+
+    @Benchmark
+    public SqlStatementClass scan() {
+        return SqlStatementClass.classify(sql);
+    }
+
+    @Benchmark
+    public String preparedCached() {
+        // 애플리케이션이 같은 SQL 을 다른 String 인스턴스로 넘기는 경우처럼 equals 비교까지 하게 한다.
+        return segment.getValue(new String(sql), true);
+    }
+}
@@ -0,0 +1,84 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link StatementTracer#record} 의 처리량(레코드/us). 1 이면 초당 백만 레코드이다.
+ *
+ * <p>파일이 차면 계속 다음 파일로 넘어가므로 새 페이지를 처음 건드리는 비용과 파일 교체 비용까지 포함한 지속 처리량이다.
+ * <code>-prof gc</code> 의 <code>gc.alloc.rate.norm</code> 이 0 에 가까워야 한다. 레코드를 쓰는 동안 할당하지 않는다.</p>
+ *
+ * <p>예산 : 1 스레드에서 초당 수백만 레코드 이상. 스레드가 늘면 쓰기 위치 하나를 두고 경합하므로 스레드당 처리량은 줄어든다.
+ * 파일을 바꾸는 동안 버려진 레코드 개수는 끝날 때 출력한다. 쉬지 않고 기록하는 이 벤치마크에서만 눈에 띄는 수준이다.</p>
+ *
+ * <pre>./gradlew jmh -Pjmh.includes=StatementTraceBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementTraceBenchmark {
+
+    private Path directory;
+    private StatementTracer tracer;
+    private long fingerprint;
+    private int tagId;
+    private long elapsed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("statement-trace-benchmark");
+        tracer = new StatementTracer(directory, 256 * 1024 * 1024, 2);
+        tracer.start("benchmark");
+        fingerprint = tracer.fingerprint("UPDATE ORDER_ITEM SET QUANTITY = ? WHERE ID = ?");
+        tagId = tracer.tagId("woowahan OrderItemRepository.updateQuantity");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        tracer.stop();
+        System.out.println("dropped records : " + tracer.getDroppedCount());
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void record_threads1() {
+        tracer.record(fingerprint, tagId, elapsed++, 1L, false);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void record_threads4() {
+        tracer.record(fingerprint, tagId, 1000L, 1L, false);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void record_threads16() {
+        tracer.record(fingerprint, tagId, 1000L, 1L, false);
+    }
+}
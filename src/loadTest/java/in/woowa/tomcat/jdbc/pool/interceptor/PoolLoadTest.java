@@ -0,0 +1,563 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 실제 pool 경합 아래에서 interceptor 가 더하는 비용을 재는 부하 테스트. 마이크로벤치마크로는 보이지 않는 StatementProxy 한 겹,
+ * 커넥션을 빌릴 때마다 부르는 setProperties, SQL 재작성 비용이 pool 대기와 함께 어떻게 드러나는지 본다.
+ *
+ * <p>메모리 H2 에 붙은 tomcat-jdbc DataSource 를 클라이언트 스레드 수(기본 1 ~ 256)마다 새로 만들고, 각 스레드는 커넥션을 빌려
+ * PreparedStatement 조회 70%, 리터럴이 들어간 Statement update 20%, PreparedStatement batch 10% 중 하나를 실행하고 반납한다.
+ * 빌리기부터 반납까지가 작업 하나이다. interceptor 가 없는 <code>baseline</code> 과 기본 설정, 선택 기능을 하나씩 켠 구성을 차례로 실행한다.</p>
+ *
+ * <p>구성과 스레드 수마다 처리량(ops/s), p50/p99 지연, 작업당 할당 byte 와 할당률을 JSON 으로 남긴다.
+ * 같은 스레드 수의 baseline 보다 처리량이 budget(%) 이상 떨어진 구성이 있으면 0 이 아닌 값으로 끝나므로 Gradle 빌드가 실패한다.</p>
+ *
+ * <pre>./gradlew loadTest [-PloadTest.threads=1,16,256] [-PloadTest.seconds=3] [-PloadTest.budget=25,caller=60]</pre>
+ */
+public final class PoolLoadTest {
+
+    static final String BASELINE = "baseline";
+
+    private static final String INTERCEPTOR = SqlCallerInfoCommentInterceptor.class.getName();
+    private static final String SELECT_SQL = "SELECT ID, STATUS, QUANTITY FROM ORDERS WHERE ID = ?";
+    private static final String BATCH_SQL = "UPDATE ORDERS SET STATUS = ? WHERE ID = ?";
+    private static final int ROWS = 10_000;
+    private static final int BATCH_SIZE = 10;
+
+    private static final int WARMUP = 0;
+    private static final int MEASURE = 1;
+    private static final int STOP = 2;
+
+    private PoolLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * @return budget 을 지키면 0, 넘은 구성이 있으면 1
+     */
+    static int run(String[] args, PrintStream out) throws Exception {
+        Options options = Options.parse(args);
+        Path traceDir = Files.createTempDirectory("pool-load-test-trace");
+        List<Result> results = new ArrayList<>();
+        try {
+            out.println(String.format(Locale.ROOT, "%-14s %7s %12s %10s %10s %12s %10s %9s",
+                "variant", "threads", "ops/s", "p50(us)", "p99(us)", "bytes/op", "MB/s", "errors"));
+            // 먼저 실행한 구성만 JIT 이 덜 된 상태에서 재지 않도록 모든 구성을 한 번씩 돌려 두고 결과는 버린다.
+            for (String variant : options.variants) {
+                runLevel(variant, variantProperties(variant, traceDir), options.threads[0], 0, Math.max(1, options.warmupSeconds), options.poolSize);
+            }
+            for (String variant : options.variants) {
+                String properties = variantProperties(variant, traceDir);
+                for (int threads : options.threads) {
+                    Result result = runLevel(variant, properties, threads, options.warmupSeconds, options.seconds, options.poolSize);
+                    results.add(result);
+                    out.println(result.line());
+                }
+            }
+        } finally {
+            deleteRecursively(traceDir);
+        }
+
+        List<String> violations = applyBudget(results, options);
+        Files.createDirectories(options.report.toAbsolutePath().getParent());
+        Files.write(options.report, toJson(results, violations, options).getBytes(StandardCharsets.UTF_8));
+        out.println("report : " + options.report.toAbsolutePath());
+        if (!results.isEmpty() && !options.variants.contains(BASELINE)) {
+            out.println("budget not checked : variant '" + BASELINE + "' was not run.");
+        }
+        if (!violations.isEmpty()) {
+            out.println("overhead budget exceeded :");
+            violations.forEach(violation -> out.println("  " + violation));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 구성 이름마다 interceptor 프라퍼티. baseline 은 interceptor 를 걸지 않는다.
+     */
+    static Map<String, String> variants(Path traceDir) {
+        Map<String, String> variants = new LinkedHashMap<>();
+        variants.put(BASELINE, null);
+        variants.put("default", "projectName=woowahan");
+        variants.put("caller", "projectName=woowahan,commentTemplate={project} {caller}");
+        variants.put("fingerprint", "projectName=woowahan,commentTemplate={project} {fingerprint}");
+        variants.put("context", "projectName=woowahan,commentTemplate={project} trace={context:traceId},maxCommentVariants=16");
+        variants.put("latencyKey", "projectName=woowahan,latencyKey={fingerprint}");
+        variants.put("topKey", "projectName=woowahan,topKey={fingerprint}");
+        variants.put("slowQueryLog", "projectName=woowahan,slowQueryThreshold=10000");
+        variants.put("trace", "projectName=woowahan,traceDir=" + traceDir.toAbsolutePath());
+        return variants;
+    }
+
+    private static String variantProperties(String variant, Path traceDir) {
+        Map<String, String> variants = variants(traceDir);
+        if (!variants.containsKey(variant)) {
+            throw new IllegalArgumentException("variant '" + variant + "' must be one of " + variants.keySet() + ".");
+        }
+        return variants.get(variant);
+    }
+
+    private static Result runLevel(String variant, String properties, int threads, int warmupSeconds, int seconds, int poolSize) throws Exception {
+        String database = "load_" + variant + "_" + threads;
+        String url = "jdbc:h2:mem:" + database + ";LOCK_TIMEOUT=10000";
+        // 이 커넥션이 열려 있는 동안 메모리 DB 가 유지된다.
+        try (Connection keepAlive = DriverManager.getConnection(url)) {
+            createSchema(keepAlive);
+            DataSource dataSource = dataSource(url, database, properties, poolSize);
+            try {
+                return measure(variant, threads, dataSource, warmupSeconds, seconds);
+            } finally {
+                dataSource.close(true);
+            }
+        }
+    }
+
+    private static void createSchema(Connection con) throws SQLException {
+        try (Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE TABLE ORDERS (ID INT PRIMARY KEY, STATUS VARCHAR(20), QUANTITY INT)");
+        }
+        try (PreparedStatement stmt = con.prepareStatement("INSERT INTO ORDERS (ID, STATUS, QUANTITY) VALUES (?, 'READY', 1)")) {
+            for (int id = 0; id < ROWS; id++) {
+                stmt.setInt(1, id);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static DataSource dataSource(String url, String name, String properties, int poolSize) {
+        PoolProperties poolProperties = new PoolProperties();
+        poolProperties.setName(name);
+        poolProperties.setUrl(url);
+        poolProperties.setDriverClassName("org.h2.Driver");
+        poolProperties.setInitialSize(poolSize);
+        poolProperties.setMaxActive(poolSize);
+        poolProperties.setMaxIdle(poolSize);
+        poolProperties.setMinIdle(poolSize);
+        poolProperties.setMaxWait((int) TimeUnit.MINUTES.toMillis(1));
+        if (properties != null) {
+            poolProperties.setJdbcInterceptors(INTERCEPTOR + "(" + properties + ")");
+        }
+        return new DataSource(poolProperties);
+    }
+
+    private static Result measure(String variant, int threads, DataSource dataSource, int warmupSeconds, int seconds) throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Phase phase = new Phase();
+        List<Worker> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(dataSource, histogram, phase, CallerContext.EMPTY.with("traceId", "load-" + i));
+            Thread thread = new Thread(worker, "pool-load-" + i);
+            thread.setDaemon(true);
+            worker.thread = thread;
+            workers.add(worker);
+            thread.start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        long start = System.nanoTime();
+        phase.value = MEASURE;
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        phase.value = STOP;
+        long elapsedNanos = System.nanoTime() - start;
+        long allocated = 0;
+        for (Worker worker : workers) {
+            worker.thread.join();
+            if (worker.failure != null) {
+                throw new IllegalStateException(variant + " at " + threads + " threads : client thread failed.", worker.failure);
+            }
+            allocated = worker.allocatedBytes < 0 || allocated < 0 ? -1 : allocated + worker.allocatedBytes;
+        }
+        return new Result(variant, threads, histogram.snapshot(variant), elapsedNanos, allocated);
+    }
+
+    private static List<String> applyBudget(List<Result> results, Options options) {
+        Map<Integer, Result> baselines = new HashMap<>();
+        for (Result result : results) {
+            if (BASELINE.equals(result.variant)) {
+                baselines.put(result.threads, result);
+            }
+        }
+        List<String> violations = new ArrayList<>();
+        for (Result result : results) {
+            Result baseline = baselines.get(result.threads);
+            if (baseline == null || result == baseline) {
+                continue;
+            }
+            result.throughputOverheadPercent = overheadPercent(baseline.throughput(), result.throughput());
+            result.p99OverheadPercent = baseline.snapshot.getP99Micros() == 0 ? Double.NaN
+                : (result.snapshot.getP99Micros() / baseline.snapshot.getP99Micros() - 1) * 100;
+            double budget = options.budgetOf(result.variant);
+            if (result.throughputOverheadPercent > budget) {
+                violations.add(String.format(Locale.ROOT, "%s at %d threads : throughput %.1f%% below baseline (budget %.1f%%)",
+                    result.variant, result.threads, result.throughputOverheadPercent, budget));
+            }
+        }
+        return violations;
+    }
+
+    private static double overheadPercent(double baseline, double value) {
+        return baseline == 0 ? Double.NaN : (1 - value / baseline) * 100;
+    }
+
+    static String toJson(List<Result> results, List<String> violations, Options options) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"java\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+        json.append("  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"poolSize\": ").append(options.poolSize).append(",\n");
+        json.append("  \"warmupSeconds\": ").append(options.warmupSeconds).append(",\n");
+        json.append("  \"seconds\": ").append(options.seconds).append(",\n");
+        json.append("  \"budgetPercent\": ").append(number(options.defaultBudget)).append(",\n");
+        json.append("  \"variantBudgetPercent\": {");
+        json.append(options.budgets.entrySet().stream().sorted(Map.Entry.comparingByKey())
+            .map(entry -> quote(entry.getKey()) + ": " + number(entry.getValue())).collect(Collectors.joining(", ")));
+        json.append("},\n");
+        json.append("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"variant\": ").append(quote(result.variant))
+                .append(", \"threads\": ").append(result.threads)
+                .append(", \"operations\": ").append(result.snapshot.getCount())
+                .append(", \"errors\": ").append(result.snapshot.getErrorCount())
+                .append(", \"throughput\": ").append(number(result.throughput()))
+                .append(", \"p50Micros\": ").append(number(result.snapshot.getP50Micros()))
+                .append(", \"p99Micros\": ").append(number(result.snapshot.getP99Micros()))
+                .append(", \"allocatedBytesPerOp\": ").append(number(result.bytesPerOp()))
+                .append(", \"allocationRateMBps\": ").append(number(result.allocationRateMBps()))
+                .append(", \"throughputOverheadPercent\": ").append(number(result.throughputOverheadPercent))
+                .append(", \"p99OverheadPercent\": ").append(number(result.p99OverheadPercent))
+                .append('}');
+        }
+        json.append(results.isEmpty() ? "],\n" : "\n  ],\n");
+        json.append("  \"violations\": [");
+        json.append(violations.stream().map(PoolLoadTest::quote).collect(Collectors.joining(", ")));
+        json.append("]\n}\n");
+        return json.toString();
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return "null";
+        }
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static final class Phase {
+        volatile int value = WARMUP;
+    }
+
+    private static final class Worker implements Runnable {
+
+        private final DataSource dataSource;
+        private final LatencyHistogram histogram;
+        private final Phase phase;
+        private final CallerContext context;
+        private Thread thread;
+        /**
+         * 측정 구간에 할당한 byte. 측정 구간 동안 커넥션을 한 번도 얻지 못했으면 0, 잴 수 없는 JVM 이면 -1
+         */
+        private long allocatedBytes;
+        private volatile Throwable failure;
+
+        Worker(DataSource dataSource, LatencyHistogram histogram, Phase phase, CallerContext context) {
+            this.dataSource = dataSource;
+            this.histogram = histogram;
+            this.phase = phase;
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // context 구성 외에는 읽지 않지만 모든 구성이 같은 조건이 되도록 항상 연다.
+                context.run(this::loop);
+            } catch (RuntimeException | Error ex) {
+                failure = ex;
+            }
+        }
+
+        private void loop() {
+            boolean measuring = false;
+            long startBytes = 0;
+            int current;
+            while ((current = phase.value) != STOP) {
+                if (current == MEASURE && !measuring) {
+                    measuring = true;
+                    startBytes = allocatedBytes();
+                }
+                long start = System.nanoTime();
+                boolean failed = false;
+                try {
+                    execute(ThreadLocalRandom.current());
+                } catch (SQLException ex) {
+                    failed = true;
+                }
+                if (measuring) {
+                    histogram.record(System.nanoTime() - start, failed);
+                }
+            }
+            if (measuring) {
+                allocatedBytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+            }
+        }
+
+        private void execute(ThreadLocalRandom random) throws SQLException {
+            int kind = random.nextInt(10);
+            try (Connection con = dataSource.getConnection()) {
+                if (kind < 7) {
+                    try (PreparedStatement stmt = con.prepareStatement(SELECT_SQL)) {
+                        stmt.setInt(1, random.nextInt(ROWS));
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                rs.getString(2);
+                            }
+                        }
+                    }
+                } else if (kind < 9) {
+                    try (Statement stmt = con.createStatement()) {
+                        stmt.executeUpdate("UPDATE ORDERS SET QUANTITY = QUANTITY + 1 WHERE ID = " + random.nextInt(ROWS));
+                    }
+                } else {
+                    try (PreparedStatement stmt = con.prepareStatement(BATCH_SQL)) {
+                        for (int i = 0; i < BATCH_SIZE; i++) {
+                            stmt.setString(1, i % 2 == 0 ? "PAID" : "SHIPPED");
+                            stmt.setInt(2, random.nextInt(ROWS));
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                }
+            }
+        }
+
+        private static long allocatedBytes() {
+            if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!threadMXBean.isThreadAllocatedMemorySupported() || !threadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return -1;
+            }
+            return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+
+    static final class Result {
+
+        final String variant;
+        final int threads;
+        final LatencySnapshot snapshot;
+        final long elapsedNanos;
+        final long allocatedBytes;
+        double throughputOverheadPercent = Double.NaN;
+        double p99OverheadPercent = Double.NaN;
+
+        Result(String variant, int threads, LatencySnapshot snapshot, long elapsedNanos, long allocatedBytes) {
+            this.variant = variant;
+            this.threads = threads;
+            this.snapshot = snapshot;
+            this.elapsedNanos = elapsedNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        double throughput() {
+            return snapshot.getCount() * 1e9 / elapsedNanos;
+        }
+
+        double bytesPerOp() {
+            return allocatedBytes < 0 || snapshot.getCount() == 0 ? Double.NaN : (double) allocatedBytes / snapshot.getCount();
+        }
+
+        double allocationRateMBps() {
+            return allocatedBytes < 0 ? Double.NaN : allocatedBytes * 1e9 / elapsedNanos / (1024 * 1024);
+        }
+
+        String line() {
+            return String.format(Locale.ROOT, "%-14s %7d %12.1f %10.1f %10.1f %12.1f %10.1f %9d",
+                variant, threads, throughput(), snapshot.getP50Micros(), snapshot.getP99Micros(), bytesPerOp(), allocationRateMBps(),
+                snapshot.getErrorCount());
+        }
+    }
+
+    /**
+     * <pre>--threads 1,2,4 --warmup 1 --seconds 3 --pool-size 32 --variants baseline,default --budget 25,caller=60 --report results.json</pre>
+     */
+    static final class Options {
+
+        static final String DEFAULT_THREADS = "1,2,4,8,16,32,64,128,256";
+        static final int MAX_THREADS = 1024;
+
+        int[] threads = parseThreads(DEFAULT_THREADS);
+        int warmupSeconds = 1;
+        int seconds = 3;
+        int poolSize = 32;
+        List<String> variants = new ArrayList<>(variants(Paths.get(".")).keySet());
+        double defaultBudget = 25;
+        Map<String, Double> budgets = defaultBudgets();
+        Path report = Paths.get("build", "reports", "loadTest", "results.json");
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            if (args.length % 2 != 0) {
+                throw new IllegalArgumentException("arguments '" + String.join(" ", args) + "' must be --name value pairs.");
+            }
+            for (int i = 0; i < args.length; i += 2) {
+                String name = args[i];
+                String value = args[i + 1].trim();
+                if (value.isEmpty()) {
+                    continue;
+                }
+                switch (name) {
+                    case "--threads":
+                        options.threads = parseThreads(value);
+                        break;
+                    case "--warmup":
+                        options.warmupSeconds = parseInt("warmup", value, 0);
+                        break;
+                    case "--seconds":
+                        options.seconds = parseInt("seconds", value, 1);
+                        break;
+                    case "--pool-size":
+                        options.poolSize = parseInt("poolSize", value, 1);
+                        break;
+                    case "--variants":
+                        options.variants = Arrays.stream(value.split(",")).map(String::trim).filter(variant -> !variant.isEmpty())
+                            .collect(Collectors.toList());
+                        break;
+                    case "--budget":
+                        options.parseBudget(value);
+                        break;
+                    case "--report":
+                        options.report = Paths.get(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("option '" + name + "' must be one of --threads, --warmup, --seconds, "
+                            + "--pool-size, --variants, --budget, --report.");
+                }
+            }
+            return options;
+        }
+
+        /**
+         * <code>{caller}</code> 는 SQL 마다 스택을 읽으므로 따로 넉넉하게 둔다. 줄이려면 callerSamplingRate 를 낮춘다.
+         */
+        private static Map<String, Double> defaultBudgets() {
+            Map<String, Double> budgets = new HashMap<>();
+            budgets.put("caller", 75.0);
+            return budgets;
+        }
+
+        double budgetOf(String variant) {
+            Double budget = budgets.get(variant);
+            return budget != null ? budget : defaultBudget;
+        }
+
+        private void parseBudget(String value) {
+            for (String entry : value.split(",")) {
+                String trimmed = entry.trim();
+                int separator = trimmed.indexOf('=');
+                if (separator < 0) {
+                    defaultBudget = parsePercent("budget", trimmed);
+                } else {
+                    String variant = trimmed.substring(0, separator).trim();
+                    budgets.put(variant, parsePercent("budget of " + variant, trimmed.substring(separator + 1).trim()));
+                }
+            }
+        }
+
+        private static double parsePercent(String name, String value) {
+            try {
+                double percent = Double.parseDouble(value);
+                if (percent >= 0) {
+                    return percent;
+                }
+            } catch (NumberFormatException ignored) {
+                // 아래에서 같은 메시지로 알린다.
+            }
+            throw new IllegalArgumentException(name + " '" + value + "' must be a non-negative percent.");
+        }
+
+        private static int parseInt(String name, String value, int min) {
+            try {
+                int parsed = Integer.parseInt(value);
+                if (parsed >= min) {
+                    return parsed;
+                }
+            } catch (NumberFormatException ignored) {
+                // 아래에서 같은 메시지로 알린다.
+            }
+            throw new IllegalArgumentException(name + " '" + value + "' must be an integer >= " + min + ".");
+        }
+
+        private static int[] parseThreads(String value) {
+            int[] threads = Arrays.stream(value.split(",")).map(String::trim).filter(count -> !count.isEmpty())
+                .mapToInt(count -> parseInt("threads", count, 1)).toArray();
+            for (int count : threads) {
+                if (count > MAX_THREADS) {
+                    throw new IllegalArgumentException("threads '" + count + "' must be between 1 and " + MAX_THREADS + ".");
+                }
+            }
+            if (threads.length == 0) {
+                throw new IllegalArgumentException("threads '" + value + "' must list at least one thread count.");
+            }
+            return threads;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * sql-caller-info-agent 가 JDBC 호출 지점마다 넣어 둔 태그를 읽는다.
+ *
+ * <p>agent 는 태그 저장소 클래스를 bootstrap class path 에 올리므로 이 라이브러리가 어느 ClassLoader 에 있든 같은 클래스를 찾을 수 있다.
+ * agent 없이도 동작해야 하므로 컴파일 시점에는 참조하지 않고, 처음 한 번 찾아 둔 static final MethodHandle 로 호출한다.
+ * JIT 이 이 호출을 인라인하므로 비용은 ThreadLocal 읽기 한 번이다.</p>
+ */
+final class AgentCallSiteTags {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentCallSiteTags.class);
+
+    static final String TAGS_CLASS = "in.woowa.tomcat.jdbc.pool.agent.CallSiteTags";
+
+    private static final MethodHandle GET = findGetter();
+
+    private AgentCallSiteTags() {
+    }
+
+    private static MethodHandle findGetter() {
+        try {
+            Class<?> tagsClass = Class.forName(TAGS_CLASS, false, null);
+            MethodHandle getter = MethodHandles.publicLookup().findStatic(tagsClass, "get", MethodType.methodType(String.class));
+            log.info("sql-caller-info-agent call site tags found.");
+            return getter;
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            log.warn("sql-caller-info-agent call site tags not available : {}", ex.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return agent 가 동작 중이면 true
+     */
+    static boolean isAvailable() {
+        return GET != null;
+    }
+
+    /**
+     * @return 현재 스레드에서 실행 중인 계측된 호출 지점의 태그. agent 가 없거나 계측되지 않은 호출이면 null
+     */
+    static String get() {
+        if (GET == null) {
+            return null;
+        }
+        try {
+            return (String) GET.invokeExact();
+        } catch (Throwable ex) {
+            return null;
+        }
+    }
+}
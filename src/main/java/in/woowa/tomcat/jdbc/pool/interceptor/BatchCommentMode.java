@@ -0,0 +1,28 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * <code>Statement.addBatch(String)</code> 로 쌓는 SQL 에 주석을 넣는 방식.
+ * <code>batchComment</code> interceptor 프라퍼티로 지정한다.
+ */
+public enum BatchCommentMode {
+
+    /**
+     * 모든 addBatch SQL 에 주석을 넣는다. 기본값.
+     */
+    EVERY,
+
+    /**
+     * executeBatch/clearBatch 이후 첫 번째 addBatch SQL 에만 주석을 넣는다.
+     * 즉 executeBatch 한 번(DB 왕복 한 번)에 주석이 한 번만 실리므로, 큰 batch 에서 같은 주석이 수천 번 전송되지 않는다.
+     */
+    FIRST;
+
+    static BatchCommentMode of(String value) {
+        for (BatchCommentMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("batchComment '" + value + "' must be one of every, first.");
+    }
+}
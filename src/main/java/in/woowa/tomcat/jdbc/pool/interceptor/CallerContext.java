@@ -0,0 +1,190 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.Callable;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * commentTemplate 의 <code>{context:key}</code> 에 들어갈 호출자 문맥(trace id, endpoint 등)을 스레드를 넘어 전달한다.
+ *
+ * <p>MDC 같은 일반 ThreadLocal 값은 DB 작업을 스레드 풀이나 {@link java.util.concurrent.CompletableFuture} 로 넘기면 사라진다.
+ * CallerContext 는 바뀌지 않는 객체이므로 {@link #current()} 로 참조 하나를 읽어 두었다가 다른 스레드에서 {@link #run(Runnable)},
+ * {@link #call(Callable)} 로 그대로 이어 쓰면 된다. 값을 복사하지 않으며, 작업이 끝나면 이전 문맥으로 되돌린다.
+ * 풀 전체를 감쌀 때는 {@link CallerContextExecutors} 를 쓴다.</p>
+ *
+ * <pre>
+ * CallerContext.current().with("traceId", traceId).run(() -&gt; orderService.order(request));
+ *
+ * // 다른 스레드로 넘길 때
+ * Executor executor = CallerContextExecutors.wrap(ioExecutor);
+ * CompletableFuture.supplyAsync(CallerContext.current().wrapSupplier(() -&gt; orderRepository.find(id)), ioExecutor);
+ * </pre>
+ *
+ * <p>Java 8 에서는 ThreadLocal 하나에 현재 문맥의 참조만 둔다. 중첩된 문맥을 되돌릴 때는 참조를 바꿔 끼우기만 하므로 할당이 없고,
+ * 가장 바깥 문맥이 닫히면 항목을 지워 스레드에 남기지 않는다.
+ * Java 25 이상에서는 multi-release JAR 의 <code>META-INF/versions/25</code> 에 있는 구현이 대신 로드되어 ScopedValue 를 쓴다.
+ * 스레드마다 ThreadLocal 항목을 만들지 않으므로 가상 스레드가 수백만 개여도 부담이 없다.</p>
+ *
+ * <p>key 는 몇 개 되지 않는다고 보고 배열에 두고 차례로 비교한다. 값을 바꾸려면 {@link #with(String, String)} 로 새 문맥을 만든다.</p>
+ */
+public final class CallerContext {
+
+    /**
+     * 값이 하나도 없는 문맥. 문맥을 연 적이 없는 스레드의 {@link #current()} 이다.
+     */
+    public static final CallerContext EMPTY = new CallerContext(new String[0], new String[0]);
+
+    private final String[] keys;
+    private final String[] values;
+
+    private CallerContext(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * 현재 스레드의 문맥. 참조 하나를 읽을 뿐이므로 다른 스레드로 넘길 때마다 불러도 된다.
+     *
+     * @return 열려 있는 문맥. 없으면 {@link #EMPTY}
+     */
+    public static CallerContext current() {
+        return CallerContextStorage.current();
+    }
+
+    /**
+     * multi-release JAR 에서 실제로 로드된 저장소 구현. <code>ThreadLocal</code> 또는 <code>ScopedValue</code>
+     */
+    public static String implementation() {
+        return CallerContextStorage.implementation();
+    }
+
+    /**
+     * @return key 의 값. 없으면 null
+     */
+    public String get(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 값이 하나도 없으면 true
+     */
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * 이 문맥은 그대로 두고 key 의 값만 바꾼 새 문맥을 만든다. 현재 스레드에 적용하려면 돌려받은 문맥의 {@link #run(Runnable)} 을 부른다.
+     *
+     * @param value null 이면 key 를 뺀다.
+     */
+    public CallerContext with(String key, String value) {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null.");
+        }
+        int index = indexOf(key);
+        if (value == null) {
+            if (index < 0) {
+                return this;
+            }
+            String[] newKeys = new String[keys.length - 1];
+            String[] newValues = new String[values.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(values, 0, newValues, 0, index);
+            System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+            return newKeys.length == 0 ? EMPTY : new CallerContext(newKeys, newValues);
+        }
+        if (index >= 0) {
+            if (value.equals(values[index])) {
+                return this;
+            }
+            String[] newValues = values.clone();
+            newValues[index] = value;
+            return new CallerContext(keys, newValues);
+        }
+        String[] newKeys = new String[keys.length + 1];
+        String[] newValues = new String[values.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, keys.length);
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        newKeys[keys.length] = key;
+        newValues[values.length] = value;
+        return new CallerContext(newKeys, newValues);
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 이 문맥을 현재 스레드에 연 채로 task 를 실행하고, 끝나면 이전 문맥으로 되돌린다.
+     */
+    public void run(Runnable task) {
+        CallerContextStorage.run(this, task);
+    }
+
+    /**
+     * 이 문맥을 현재 스레드에 연 채로 task 를 실행하고, 끝나면 이전 문맥으로 되돌린다.
+     */
+    public <V> V call(Callable<V> task) throws Exception {
+        return CallerContextStorage.call(this, task);
+    }
+
+    /**
+     * 다른 스레드에서 실행해도 이 문맥이 열리도록 감싼다. 감싸는 비용은 람다 객체 하나이다.
+     */
+    public Runnable wrap(Runnable task) {
+        return () -> run(task);
+    }
+
+    public <V> Callable<V> wrap(Callable<V> task) {
+        return () -> call(task);
+    }
+
+    /**
+     * {@link java.util.concurrent.CompletableFuture#supplyAsync(Supplier, java.util.concurrent.Executor)} 처럼 Supplier 를 받는 곳에 쓴다.
+     * Callable 과 모양이 같아 람다를 넘길 때 헷갈리지 않도록 이름을 따로 둔다.
+     */
+    public <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        return () -> CallerContextStorage.supply(this, supplier);
+    }
+
+    /**
+     * <code>thenApply</code>, <code>thenAccept</code>, <code>handle</code> 처럼 앞 단계의 결과를 받는 CompletableFuture 단계에 쓴다.
+     * 앞 단계를 끝낸 스레드가 어느 것이든 이 문맥에서 실행된다.
+     */
+    public <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+        return argument -> CallerContextStorage.supply(this, () -> function.apply(argument));
+    }
+
+    public <T> Consumer<T> wrapConsumer(Consumer<T> consumer) {
+        return argument -> run(() -> consumer.accept(argument));
+    }
+
+    public <T, U, R> BiFunction<T, U, R> wrapBiFunction(BiFunction<T, U, R> function) {
+        return (first, second) -> CallerContextStorage.supply(this, () -> function.apply(first, second));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CallerContext{");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(keys[i]).append('=').append(values[i]);
+        }
+        return builder.append('}').toString();
+    }
+}
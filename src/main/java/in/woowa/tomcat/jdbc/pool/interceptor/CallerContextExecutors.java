@@ -0,0 +1,196 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 작업을 넘기는 순간의 {@link CallerContext} 를 작업을 실행하는 스레드에서 다시 열어 주는 Executor, CompletableFuture 도우미.
+ *
+ * <p>넘길 때 하는 일은 {@link CallerContext#current()} 참조 하나를 읽어 작업을 감싸는 것뿐이다.
+ * 감싼 Executor 에서 실행된 작업 안에서 또 작업을 넘겨도 같은 문맥이 이어진다.</p>
+ *
+ * <pre>
+ * ExecutorService executor = CallerContextExecutors.wrap(Executors.newFixedThreadPool(8));
+ * executor.submit(() -&gt; orderRepository.find(id));     // 요청 스레드의 {context:traceId} 가 주석에 들어간다.
+ *
+ * CallerContext context = CallerContext.current();
+ * CallerContextExecutors.supplyAsync(() -&gt; orderRepository.find(id), ioExecutor)
+ *     .thenApplyAsync(context.wrapFunction(order -&gt; deliveryRepository.find(order)), ioExecutor);
+ * </pre>
+ *
+ * <p>CompletableFuture 의 다음 단계는 앞 단계가 끝난 뒤, 앞 단계를 실행한 작업의 문맥이 이미 닫힌 상태에서 Executor 로 넘어간다.
+ * 그래서 감싼 Executor 만으로는 두 번째 단계부터 문맥이 이어지지 않는다. 단계를 이을 때는 {@link CallerContext#wrapFunction} 처럼 단계 자체를 감싼다.</p>
+ */
+public final class CallerContextExecutors {
+
+    private CallerContextExecutors() {
+    }
+
+    /**
+     * @return execute 할 때의 문맥으로 작업을 실행하는 Executor
+     */
+    public static Executor wrap(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null.");
+        }
+        if (executor instanceof ContextExecutor) {
+            return executor;
+        }
+        return new ContextExecutor(executor);
+    }
+
+    /**
+     * submit, invokeAll, invokeAny 로 넘긴 작업도 모두 넘긴 스레드의 문맥으로 실행한다. shutdown 등은 그대로 전달한다.
+     */
+    public static ExecutorService wrap(ExecutorService executorService) {
+        if (executorService == null) {
+            throw new IllegalArgumentException("executorService must not be null.");
+        }
+        if (executorService instanceof ContextExecutorService) {
+            return executorService;
+        }
+        return new ContextExecutorService(executorService);
+    }
+
+    /**
+     * {@link CompletableFuture#supplyAsync(Supplier, Executor)} 와 같고 supplier 를 현재 문맥에서 실행한다.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(CallerContext.current().wrapSupplier(supplier), executor);
+    }
+
+    /**
+     * {@link CompletableFuture#supplyAsync(Supplier)} 와 같고 supplier 를 현재 문맥에서 실행한다.
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(CallerContext.current().wrapSupplier(supplier));
+    }
+
+    /**
+     * {@link CompletableFuture#runAsync(Runnable, Executor)} 와 같고 task 를 현재 문맥에서 실행한다.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        return CompletableFuture.runAsync(CallerContext.current().wrap(task), executor);
+    }
+
+    /**
+     * {@link CompletableFuture#runAsync(Runnable)} 와 같고 task 를 현재 문맥에서 실행한다.
+     */
+    public static CompletableFuture<Void> runAsync(Runnable task) {
+        return CompletableFuture.runAsync(CallerContext.current().wrap(task));
+    }
+
+    private static <T> List<Callable<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+        CallerContext context = CallerContext.current();
+        List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            wrapped.add(context.wrap(task));
+        }
+        return wrapped;
+    }
+
+    private static class ContextExecutor implements Executor {
+
+        private final Executor delegate;
+
+        ContextExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(CallerContext.current().wrap(command));
+        }
+
+        @Override
+        public String toString() {
+            return "CallerContextExecutor[" + delegate + "]";
+        }
+    }
+
+    private static final class ContextExecutorService extends ContextExecutor implements ExecutorService {
+
+        private final ExecutorService delegate;
+
+        ContextExecutorService(ExecutorService delegate) {
+            super(delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return delegate.submit(CallerContext.current().wrap(task));
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return delegate.submit(CallerContext.current().wrap(task), result);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return delegate.submit(CallerContext.current().wrap(task));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return delegate.invokeAll(wrapAll(tasks));
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.invokeAll(wrapAll(tasks), timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+            return delegate.invokeAny(wrapAll(tasks));
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.invokeAny(wrapAll(tasks), timeout, unit);
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public String toString() {
+            return "CallerContextExecutorService[" + delegate + "]";
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Java 8 용 {@link CallerContext} 저장소. 스레드마다 ThreadLocal 항목 하나에 현재 문맥의 참조만 둔다.
+ *
+ * <p>중첩된 문맥은 되돌릴 때 바깥 참조를 다시 넣기만 하므로 할당이 없다. 가장 바깥 문맥이 닫히면 {@link ThreadLocal#remove()} 로 항목을 지운다.
+ * 컨테이너의 요청 스레드에 CallerContext 가 남아 웹 애플리케이션을 재배포할 때 ClassLoader 를 붙잡지 않게 하기 위해서이다.
+ * 그래서 가장 바깥 문맥을 열 때마다 ThreadLocalMap 항목 하나를 새로 만든다.</p>
+ *
+ * <p>Java 25 이상에서는 <code>META-INF/versions/25</code> 의 ScopedValue 구현이 대신 로드된다.</p>
+ */
+final class CallerContextStorage {
+
+    private static final ThreadLocal<CallerContext> CURRENT = new ThreadLocal<>();
+
+    private CallerContextStorage() {
+    }
+
+    /** 실제로 로드된 구현 이름. 메소드인 이유는 Java 8 용 CallerFrames 참고 */
+    static String implementation() {
+        return "ThreadLocal";
+    }
+
+    static CallerContext current() {
+        CallerContext context = CURRENT.get();
+        return context == null ? CallerContext.EMPTY : context;
+    }
+
+    /**
+     * @return 이 스레드에 문맥이 열려 있으면 true
+     */
+    static boolean isBound() {
+        return CURRENT.get() != null;
+    }
+
+    static void run(CallerContext context, Runnable task) {
+        CallerContext previous = CURRENT.get();
+        if (previous == context) {
+            task.run();
+            return;
+        }
+        CURRENT.set(context);
+        try {
+            task.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    static <V> V call(CallerContext context, Callable<V> task) throws Exception {
+        CallerContext previous = CURRENT.get();
+        if (previous == context) {
+            return task.call();
+        }
+        CURRENT.set(context);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    static <T> T supply(CallerContext context, Supplier<T> supplier) {
+        CallerContext previous = CURRENT.get();
+        if (previous == context) {
+            return supplier.get();
+        }
+        CURRENT.set(context);
+        try {
+            return supplier.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    private static void restore(CallerContext previous) {
+        if (previous == null || previous == CallerContext.EMPTY) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
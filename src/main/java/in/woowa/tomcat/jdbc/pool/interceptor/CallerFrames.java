@@ -0,0 +1,36 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * Java 8 용 호출 스택 탐색. 전체 스택을 {@link Throwable#getStackTrace()} 로 한 번에 얻은 뒤 앞에서부터 훑는다.
+ *
+ * <p>Java 9 이상에서는 <code>META-INF/versions/9</code> 의 StackWalker 구현이 대신 로드된다.</p>
+ */
+final class CallerFrames {
+
+    private CallerFrames() {
+    }
+
+    /**
+     * 상수로 두면 호출하는 쪽에 인라인되어 multi-release JAR 에서 실제로 로드된 구현을 알 수 없으므로 메소드로 돌려준다.
+     */
+    static String implementation() {
+        return "Throwable";
+    }
+
+    /**
+     * @param resolver 프레임마다 건너뛸지 판단하고 주석에 넣을 이름을 만든다.
+     * @param maxDepth 최대로 살펴볼 프레임 수
+     * @return 건너뛰지 않은 첫 프레임의 이름. 없으면 null
+     */
+    static String find(CallerResolver resolver, int maxDepth) {
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        int depth = Math.min(stackTrace.length, maxDepth);
+        for (int i = 0; i < depth; i++) {
+            String label = resolver.label(stackTrace[i].getClassName(), stackTrace[i].getMethodName());
+            if (label != null) {
+                return label;
+            }
+        }
+        return null;
+    }
+}
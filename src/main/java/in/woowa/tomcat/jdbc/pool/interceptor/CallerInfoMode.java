@@ -0,0 +1,28 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 호출자 정보를 DB 에 전달하는 방식. <code>mode</code> interceptor 프라퍼티로 지정한다.
+ */
+public enum CallerInfoMode {
+
+    /**
+     * SQL 마다 앞에 주석을 붙인다. 기본값.
+     */
+    COMMENT,
+
+    /**
+     * SQL 은 건드리지 않고, 커넥션을 빌려줄 때 commentTemplate 값을 DB 세션 변수에 넣는다. {@link SessionTagDialect} 참고.
+     * SQL 문자열이 바뀌지 않으므로 드라이버/DB 의 statement 캐시와 plan cache 에 영향이 없고, SQL 마다 드는 비용도 없다.
+     * 대신 값은 커넥션을 빌린 시점 기준이며, DBA 는 SQL 본문이 아닌 세션 정보에서 확인해야 한다.
+     */
+    SESSION;
+
+    static CallerInfoMode of(String value) {
+        for (CallerInfoMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("mode '" + value + "' must be one of comment, session.");
+    }
+}
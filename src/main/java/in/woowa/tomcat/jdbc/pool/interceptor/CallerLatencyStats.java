@@ -0,0 +1,152 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * pool 하나의 호출자 키별 SQL 실행 시간 통계. <code>latencyKey</code> interceptor 프라퍼티를 지정하면 만들어진다.
+ *
+ * <p>키는 Statement 를 만들 때 latencyKey 템플릿으로 한 번 정하고, 그 Statement 의 실행마다 해당 {@link LatencyHistogram} 에 기록한다.
+ * 키 종류가 {@link #getMaxCallers()} 를 넘으면 나머지는 <code>-</code> 키 하나에 모은다.</p>
+ *
+ * <p>pool 이 시작될 때 {@link CallerLatencyStatsMXBean} 으로 platform MBeanServer 에 등록되고 pool 이 닫힐 때 해제된다.</p>
+ */
+public final class CallerLatencyStats implements CallerLatencyStatsMXBean {
+
+    public static final String JMX_DOMAIN = PoolMBeanRegistration.JMX_DOMAIN;
+
+    private static final String MBEAN_TYPE = "CallerLatencyStats";
+
+    static final int DEFAULT_MAX_CALLERS = 256;
+    static final int MAX_CALLERS_LIMIT = 4096;
+
+    /**
+     * 키 종류가 한도를 넘었을 때 쓰는 키
+     */
+    static final String OVERFLOW_KEY = CommentTemplate.FALLBACK_VALUE;
+
+    private final int maxCallers;
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LatencyHistogram overflow = new LatencyHistogram();
+
+    private final PoolMBeanRegistration registration = new PoolMBeanRegistration(this, MBEAN_TYPE);
+
+    public CallerLatencyStats(int maxCallers) {
+        if (maxCallers <= 0 || maxCallers > MAX_CALLERS_LIMIT) {
+            throw new IllegalArgumentException("maxCallers must be between 1 and " + MAX_CALLERS_LIMIT + " : " + maxCallers);
+        }
+        this.maxCallers = maxCallers;
+    }
+
+    /**
+     * @param key 호출자 키
+     * @return 키의 히스토그램. 키 종류가 한도를 넘었으면 <code>-</code> 키의 히스토그램
+     */
+    public LatencyHistogram histogram(String key) {
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= maxCallers) {
+            return overflow;
+        }
+        return histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    /**
+     * @param key 호출자 키
+     * @return 키의 통계. 기록이 없는 키이면 null
+     */
+    public LatencySnapshot snapshot(String key) {
+        LatencyHistogram histogram = OVERFLOW_KEY.equals(key) ? overflow : histograms.get(key);
+        return histogram == null ? null : histogram.snapshot(key);
+    }
+
+    @Override
+    public List<LatencySnapshot> getCallers() {
+        List<LatencySnapshot> snapshots = new ArrayList<>(histograms.size() + 1);
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            snapshots.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        LatencySnapshot overflowSnapshot = overflow.snapshot(OVERFLOW_KEY);
+        if (overflowSnapshot.getCount() > 0) {
+            snapshots.add(overflowSnapshot);
+        }
+        snapshots.sort(Comparator.comparingLong(LatencySnapshot::getTotalNanos).reversed());
+        return snapshots;
+    }
+
+    @Override
+    public int getCallerCount() {
+        return histograms.size();
+    }
+
+    @Override
+    public int getMaxCallers() {
+        return maxCallers;
+    }
+
+    @Override
+    public long getTotalCount() {
+        long total = 0;
+        for (LatencySnapshot snapshot : getCallers()) {
+            total += snapshot.getCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalErrorCount() {
+        long total = 0;
+        for (LatencySnapshot snapshot : getCallers()) {
+            total += snapshot.getErrorCount();
+        }
+        return total;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        overflow.reset();
+    }
+
+    /**
+     * platform MBeanServer 에 등록한다. 같은 이름이 이미 있으면 경고만 남긴다.
+     *
+     * @param poolName tomcat jdbc pool 이름
+     */
+    void register(String poolName) {
+        registration.register(poolName);
+    }
+
+    void unregister() {
+        registration.unregister();
+    }
+
+    static ObjectName objectName(String poolName) throws JMException {
+        return PoolMBeanRegistration.objectName(MBEAN_TYPE, poolName);
+    }
+
+    /**
+     * @return 등록된 ObjectName. 등록되지 않았으면 null
+     */
+    public ObjectName getObjectName() {
+        return registration.getObjectName();
+    }
+
+    @Override
+    public String toString() {
+        return "CallerLatencyStats{" +
+            "maxCallers=" + maxCallers +
+            ", callerCount=" + getCallerCount() +
+            ", objectName=" + getObjectName() +
+            '}';
+    }
+}
@@ -0,0 +1,29 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.List;
+
+/**
+ * pool 별 호출자 실행 시간 통계의 JMX 인터페이스. {@link CallerLatencyStats} 참고
+ *
+ * <p>ObjectName : <code>in.woowa.tomcat.jdbc.pool.interceptor:type=CallerLatencyStats,pool="poolName"</code></p>
+ */
+public interface CallerLatencyStatsMXBean {
+
+    /**
+     * @return 호출자별 통계. 누적 실행 시간이 큰 순서
+     */
+    List<LatencySnapshot> getCallers();
+
+    int getCallerCount();
+
+    int getMaxCallers();
+
+    long getTotalCount();
+
+    long getTotalErrorCount();
+
+    /**
+     * 모든 호출자의 기록을 버린다. 호출자 목록은 유지된다.
+     */
+    void reset();
+}
@@ -0,0 +1,173 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SQL 을 실행한 애플리케이션 코드(repository 메소드 등)를 호출 스택에서 찾아 <code>SimpleClassName.method</code> 로 돌려준다.
+ *
+ * <p>스택 위에서부터 JDK, tomcat jdbc pool, 이 interceptor, proxy/CGLIB/lambda 등 생성된 클래스,
+ * 그리고 설정한 프레임워크 패키지(기본값 {@link #DEFAULT_SKIP_PACKAGES})를 건너뛰고 처음 만나는 프레임을 고른다.
+ * 탐색은 {@link CallerFrames} 가 하며 Java 9 이상에서는 StackWalker 로 그 프레임까지만 읽는다.</p>
+ *
+ * <p>클래스마다 건너뛸지 여부와 <code>클래스.메소드</code> 이름(주석용으로 치환된 값)을 캐시하므로,
+ * 같은 호출 위치에서는 프레임당 캐시 조회만 하고 문자열을 새로 만들지 않는다. StackWalker 는 {@link ClassValue} 를,
+ * Java 8 탐색은 클래스 이름을 키로 한 {@link ConcurrentHashMap} 을 쓴다.
+ * 이름 캐시는 클래스 {@link #MAX_CACHED_CLASSES} 개, 클래스당 메소드 {@link #MAX_CACHED_METHODS} 개까지만 저장한다.</p>
+ *
+ * <p>samplingRate 가 1 보다 작으면 그 비율의 SQL 에 대해서만 스택을 살펴보고 나머지는 {@link #UNKNOWN_CALLER} 를 돌려준다.</p>
+ */
+final class CallerResolver {
+
+    static final String UNKNOWN_CALLER = "-";
+
+    static final int DEFAULT_MAX_DEPTH = 128;
+    static final int MAX_CACHED_CLASSES = 4096;
+    static final int MAX_CACHED_METHODS = 256;
+
+    static final String[] DEFAULT_SKIP_PACKAGES = {"org.hibernate", "org.springframework", "org.mybatis", "org.apache.ibatis"};
+
+    private static final String[] ALWAYS_SKIP_PACKAGES = {"java", "javax", "jdk", "sun", "com.sun", "org.apache.tomcat.jdbc"};
+
+    /**
+     * 스택에서 SQL 을 실행한 쪽보다 위에 있는 이 라이브러리 클래스들. 같은 패키지의 다른 클래스(사용자 코드, 테스트)는 건너뛰지 않는다.
+     */
+    private static final String[] OWN_CLASSES = {
+        SqlCallerInfoCommentInterceptor.class.getName(),
+        CommentTemplate.class.getName(),
+        CommentSegment.class.getName(),
+        CommentSegmentProviders.class.getName(),
+        CallerResolver.class.getName(),
+        CallerFrames.class.getName()
+    };
+
+    private final String[] skipPackages;
+    private final int maxDepth;
+    private final double samplingRate;
+
+    private final ConcurrentHashMap<String, CallerClass> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Class 로 프레임을 알려주는 탐색(StackWalker)용 캐시. 클래스가 사라지면 항목도 함께 사라진다.
+     */
+    private final ClassValue<CallerClass> classValues = new ClassValue<CallerClass>() {
+        @Override
+        protected CallerClass computeValue(Class<?> type) {
+            return new CallerClass(type.getName(), isSkipped(type.getName()));
+        }
+    };
+
+    /**
+     * @param skipPackages 건너뛸 패키지 또는 클래스 이름. JDK, tomcat jdbc pool 등은 항상 건너뛴다.
+     * @param maxDepth     최대로 살펴볼 프레임 수
+     * @param samplingRate 스택을 살펴볼 SQL 의 비율. 0 ~ 1
+     */
+    CallerResolver(String[] skipPackages, int maxDepth, double samplingRate) {
+        this.skipPackages = Arrays.copyOf(skipPackages, skipPackages.length);
+        this.maxDepth = maxDepth;
+        this.samplingRate = samplingRate;
+    }
+
+    /**
+     * @return 주석용으로 치환된 <code>SimpleClassName.method</code>. 찾지 못했거나 샘플링에서 빠지면 {@link #UNKNOWN_CALLER}
+     */
+    String resolve() {
+        if (samplingRate < 1.0d && (samplingRate <= 0.0d || ThreadLocalRandom.current().nextDouble() >= samplingRate)) {
+            return UNKNOWN_CALLER;
+        }
+        String label = CallerFrames.find(this, maxDepth);
+        return label == null ? UNKNOWN_CALLER : label;
+    }
+
+    /**
+     * @return 건너뛸 프레임이면 null, 아니면 주석에 넣을 이름
+     */
+    String label(String className, String methodName) {
+        CallerClass callerClass = classes.get(className);
+        if (callerClass == null) {
+            callerClass = new CallerClass(className, isSkipped(className));
+            if (classes.size() < MAX_CACHED_CLASSES) {
+                CallerClass previous = classes.putIfAbsent(className, callerClass);
+                if (previous != null) {
+                    callerClass = previous;
+                }
+            }
+        }
+        return callerClass.skipped ? null : callerClass.label(methodName);
+    }
+
+    boolean isSkipped(Class<?> type) {
+        return classValues.get(type).skipped;
+    }
+
+    /**
+     * @return 주석에 넣을 이름. {@link #isSkipped(Class)} 가 false 인 클래스에 대해서만 호출한다.
+     */
+    String label(Class<?> type, String methodName) {
+        return classValues.get(type).label(methodName);
+    }
+
+    boolean isSkipped(String className) {
+        if (matchesAny(className, ALWAYS_SKIP_PACKAGES) || matchesAny(className, OWN_CLASSES) || matchesAny(className, skipPackages)) {
+            return true;
+        }
+        // java.lang.reflect.Proxy, CGLIB/Javassist/ByteBuddy 등으로 생성된 클래스와 lambda
+        return className.startsWith("$Proxy") || className.contains(".$Proxy") || className.contains("$$");
+    }
+
+    private static boolean matchesAny(String className, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (className.startsWith(prefix)
+                && (className.length() == prefix.length() || className.charAt(prefix.length()) == '.' || className.charAt(prefix.length()) == '$')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    double getSamplingRate() {
+        return samplingRate;
+    }
+
+    @Override
+    public String toString() {
+        return "CallerResolver{" +
+            "implementation=" + CallerFrames.implementation() +
+            ", skipPackages=" + Arrays.toString(skipPackages) +
+            ", maxDepth=" + maxDepth +
+            ", samplingRate=" + samplingRate +
+            '}';
+    }
+
+    private static final class CallerClass {
+        private final String simpleName;
+        private final boolean skipped;
+        private final ConcurrentHashMap<String, String> labels;
+
+        private CallerClass(String className, boolean skipped) {
+            this.simpleName = className.substring(className.lastIndexOf('.') + 1);
+            this.skipped = skipped;
+            this.labels = skipped ? null : new ConcurrentHashMap<>();
+        }
+
+        private String label(String methodName) {
+            String label = labels.get(methodName);
+            if (label != null) {
+                return label;
+            }
+            label = CommentSanitizer.sanitize(simpleName + "." + methodName);
+            if (labels.size() < MAX_CACHED_METHODS) {
+                String previous = labels.putIfAbsent(methodName, label);
+                if (previous != null) {
+                    return previous;
+                }
+            }
+            return label;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * SQL 안에서 주석을 넣을 위치. <code>commentPlacement</code>, <code>callablePlacement</code> interceptor 프라퍼티로 pool 마다 지정한다.
+ *
+ * <p>위치는 {@link SqlTokenScanner} 로 SQL 의 앞부분 또는 마지막 줄만 훑어서 정한다. 이미 같은 주석이 그 자리에 있으면 SQL 을 그대로 돌려준다.</p>
+ */
+public enum CommentPlacement {
+
+    /**
+     * SQL 맨 앞. <code>" /* x *&#47; SELECT ..."</code>. 기본값.
+     */
+    PREFIX("prefix") {
+        @Override
+        String place(String sql, String comment) {
+            return sql.startsWith(comment) ? sql : comment.concat(sql);
+        }
+    },
+
+    /**
+     * SQL 맨 끝. <code>"SELECT ... /* x *&#47;"</code>.
+     * 끝의 <code>;</code> 앞에 넣고, 마지막 줄에 줄 주석이 있으면 줄을 바꿔서 넣는다.
+     * 앞쪽 주석을 떼고 query cache 를 찾는 MySQL/Percona 설정이나, SQL 앞부분만 보여주는 모니터링 도구에 쓴다.
+     */
+    SUFFIX("suffix") {
+        @Override
+        String place(String sql, String comment) {
+            final int end = SqlTokenScanner.trailerStart(sql);
+            // 앞뒤 공백을 뺀 주석이 이미 끝에 있는지 본다. 줄을 바꿔서 넣은 경우도 여기서 걸린다.
+            final int commentLength = comment.length() - 2;
+            if (end >= commentLength && sql.regionMatches(end - commentLength, comment, 1, commentLength)) {
+                return sql;
+            }
+            if (SqlTokenScanner.mayEndInLineComment(sql)) {
+                return sql + '\n' + comment.substring(1, comment.length() - 1);
+            }
+            return insert(sql, end, comment);
+        }
+    },
+
+    /**
+     * 첫 키워드 바로 뒤. <code>"SELECT /* x *&#47; ..."</code>.
+     * 키워드 바로 뒤의 optimizer hint(<code>SELECT /*+ ... *&#47;</code>)는 그대로 두고 그 뒤에 넣는다.
+     * 키워드로 시작하지 않는 SQL 은 {@link #PREFIX} 와 같다.
+     */
+    AFTER_KEYWORD("afterKeyword") {
+        @Override
+        String place(String sql, String comment) {
+            int index = SqlTokenScanner.afterFirstKeyword(sql);
+            if (index < 0) {
+                return PREFIX.place(sql, comment);
+            }
+            String body = comment.substring(0, comment.length() - 1);
+            if (sql.startsWith(body, index)) {
+                return sql;
+            }
+            // 키워드 뒤 공백 하나는 주석 끝의 공백으로 대신한다.
+            int rest = index < sql.length() && Character.isWhitespace(sql.charAt(index)) ? index + 1 : index;
+            return splice(sql, index, comment, rest);
+        }
+    },
+
+    /**
+     * JDBC escape 의 닫는 괄호 앞. <code>"{call proc(?) /* x *&#47;}"</code>.
+     * <code>{call ...}</code> 는 앞에 주석이 붙으면 escape 로 인식되지 않으므로 prepareCall 에 쓴다.
+     * escape 가 아닌 SQL(<code>CALL proc()</code>, <code>EXEC proc</code> 등)은 {@link #SUFFIX} 와 같다.
+     */
+    INSIDE_ESCAPE("insideEscape") {
+        @Override
+        String place(String sql, String comment) {
+            int close = SqlTokenScanner.escapeClose(sql);
+            if (close < 0) {
+                return SUFFIX.place(sql, comment);
+            }
+            return insert(sql, close, comment);
+        }
+    };
+
+    private final String propertyValue;
+
+    CommentPlacement(String propertyValue) {
+        this.propertyValue = propertyValue;
+    }
+
+    /**
+     * @param sql     원본 SQL
+     * @param comment <code>" /* ... *&#47; "</code> 형태의 주석
+     * @return 주석을 넣은 SQL
+     */
+    abstract String place(String sql, String comment);
+
+    /**
+     * end 위치의 앞에 주석 끝 공백을 뺀 <code>" /* x *&#47;"</code> 를 넣는다.
+     */
+    private static String insert(String sql, int end, String comment) {
+        final int bodyLength = comment.length() - 1;
+        if (end >= bodyLength && sql.regionMatches(end - bodyLength, comment, 0, bodyLength)) {
+            return sql;
+        }
+        return splice(sql, end, comment.substring(0, bodyLength), end);
+    }
+
+    /**
+     * <code>sql[0, index) + comment + sql[rest, length)</code>.
+     * <code>StringBuilder.append(CharSequence, int, int)</code> 는 한 글자씩 복사하므로 배열 복사만 하는 substring/concat 을 쓴다.
+     */
+    private static String splice(String sql, int index, String comment, int rest) {
+        if (index == sql.length()) {
+            return sql.concat(comment);
+        }
+        return sql.substring(0, index).concat(comment).concat(sql.substring(rest));
+    }
+
+    public String getPropertyValue() {
+        return propertyValue;
+    }
+
+    static CommentPlacement of(String name, String value) {
+        for (CommentPlacement placement : values()) {
+            if (placement.propertyValue.equalsIgnoreCase(value)) {
+                return placement;
+            }
+        }
+        throw new IllegalArgumentException(name + " '" + value + "' must be one of prefix, suffix, afterKeyword, insideEscape.");
+    }
+}
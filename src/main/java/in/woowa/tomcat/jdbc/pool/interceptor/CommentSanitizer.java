@@ -0,0 +1,87 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 주석에 넣을 값에서 주석을 깨뜨리거나 SQL 을 주입할 수 있는 문자열을 치환한다.
+ *
+ * <ul>
+ * <li><code>*&#47;</code>, <code>/*</code> : 주석 종료/중첩(SQL Server 는 주석 중첩을 허용한다) - 두 문자 사이의 <code>/</code> 를 <code>_</code> 로 바꾼다.</li>
+ * <li>제어 문자(줄바꿈, 탭 등) : 공백으로 바꾼다.</li>
+ * </ul>
+ *
+ * <p>정규식 없이 한 번만 훑으며, 바꿀 문자가 없으면 입력 인스턴스를 그대로 돌려주므로 할당이 없다.</p>
+ *
+ * <p>{@link #sanitize(String)} 는 값 하나만 본다. 값 끝의 <code>*</code> 와 뒤에 붙는 값의 <code>/</code> 처럼 이어 붙이는 경계에서
+ * 생기는 구분자는 {@link #appendJoined(StringBuilder, String)} 로 막는다.</p>
+ */
+public final class CommentSanitizer {
+
+    private CommentSanitizer() {
+    }
+
+    public static String sanitize(String value) {
+        if (value == null) {
+            return "";
+        }
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (needsReplacement(value, i, length)) {
+                return replace(value, i);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return 값을 바꾸지 않아도 되면 true
+     */
+    public static boolean isClean(String value) {
+        return value != null && sanitize(value) == value;
+    }
+
+    /**
+     * 값을 이어 붙인다. builder 의 마지막 문자와 값의 첫 문자가 <code>*&#47;</code> 나 <code>/*</code> 를 이루면
+     * 그 <code>/</code> 를 <code>_</code> 로 바꾼다. 값 자체는 이미 {@link #sanitize(String)} 를 거쳤어야 한다.
+     */
+    public static void appendJoined(StringBuilder builder, String value) {
+        final int last = builder.length() - 1;
+        if (last < 0 || value.isEmpty() || !joinsDelimiter(builder.charAt(last), value.charAt(0))) {
+            builder.append(value);
+            return;
+        }
+        if (builder.charAt(last) == '/') {
+            builder.setCharAt(last, '_');
+            builder.append(value);
+        } else {
+            builder.append('_').append(value, 1, value.length());
+        }
+    }
+
+    /**
+     * @return 두 문자를 이으면 <code>*&#47;</code> 나 <code>/*</code> 가 되면 true
+     */
+    public static boolean joinsDelimiter(char previous, char next) {
+        return (previous == '*' && next == '/') || (previous == '/' && next == '*');
+    }
+
+    private static boolean needsReplacement(String value, int index, int length) {
+        char c = value.charAt(index);
+        if (c < 0x20 || c == 0x7f) {
+            return true;
+        }
+        if (c == '/') {
+            return (index > 0 && joinsDelimiter(value.charAt(index - 1), c)) || (index + 1 < length && joinsDelimiter(c, value.charAt(index + 1)));
+        }
+        return false;
+    }
+
+    private static String replace(String value, int firstIndex) {
+        final int length = value.length();
+        char[] chars = value.toCharArray();
+        for (int i = firstIndex; i < length; i++) {
+            if (needsReplacement(value, i, length)) {
+                chars[i] = chars[i] == '/' ? '_' : ' ';
+            }
+        }
+        return new String(chars);
+    }
+}
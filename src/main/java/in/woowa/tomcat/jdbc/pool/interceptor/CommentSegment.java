@@ -0,0 +1,80 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * SQL 주석 템플릿의 <code>{name}</code> 자리에 들어갈 값. {@link CommentSegmentProvider} 가 만든다.
+ *
+ * <p>{@link #isStatic()} 이 true 이면 템플릿을 컴파일할 때 한 번만 값을 읽어 고정 문자열로 합친다.
+ * false 이면 SQL 마다 {@link #getValue()} 를 호출하므로 가볍게 구현해야 한다.</p>
+ */
+@FunctionalInterface
+public interface CommentSegment {
+
+    /**
+     * @return 주석에 넣을 값. null 이면 빈 문자열로 취급한다. 주석을 깨뜨리는 문자는 호출하는 쪽에서 치환한다.
+     */
+    String getValue();
+
+    /**
+     * SQL 에 따라 값이 달라지는 segment 는 이 메소드를 구현하고 {@link #isSqlDependent()} 에서 true 를 돌려준다.
+     *
+     * @param sql      주석을 넣을 원본 SQL. SQL 없이 값을 만들 때(<code>mode=session</code>, createStatement 로 만든 Statement 의 통계 키)는 null
+     * @param prepared prepareStatement/prepareCall 의 SQL 이면 true. 같은 SQL 이 반복되므로 결과를 캐시해도 된다.
+     * @return 주석에 넣을 값
+     */
+    default String getValue(String sql, boolean prepared) {
+        return getValue();
+    }
+
+    /**
+     * 커넥션 상태에 따라 값이 달라지는 segment 는 이 메소드를 구현하고 {@link #isConnectionDependent()} 에서 true 를 돌려준다.
+     *
+     * @param connection SQL 을 실행하는 커넥션의 상태. 커넥션 없이 값을 만들 때(통계 키 등)는 null
+     * @see #getValue(String, boolean)
+     */
+    default String getValue(String sql, boolean prepared, ConnectionTagState connection) {
+        return getValue(sql, prepared);
+    }
+
+    /**
+     * @return {@link #getValue(String, boolean)} 가 SQL 에 따라 다른 값을 돌려주면 true
+     */
+    default boolean isSqlDependent() {
+        return false;
+    }
+
+    /**
+     * @return {@link #getValue(String, boolean, ConnectionTagState)} 가 커넥션 상태에 따라 다른 값을 돌려주면 true.
+     * 템플릿에 하나라도 있으면 interceptor 가 커넥션 상태를 따라간다.
+     */
+    default boolean isConnectionDependent() {
+        return false;
+    }
+
+    /**
+     * @return 값이 바뀌지 않으면 true
+     */
+    default boolean isStatic() {
+        return false;
+    }
+
+    /**
+     * @return {@link #getValue()} 가 이미 {@link CommentSanitizer} 로 치환된 값을 돌려주면 true. 이 경우 SQL 마다 다시 검사하지 않는다.
+     */
+    default boolean isSanitized() {
+        return false;
+    }
+
+    static CommentSegment staticValue(String value) {
+        return new CommentSegment() {
+            @Override
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public boolean isStatic() {
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+
+import java.util.Map;
+
+/**
+ * commentTemplate 의 <code>{name}</code>, <code>{name:argument}</code> 자리를 채울 {@link CommentSegment} 를 만드는 SPI.
+ *
+ * <p>기본 제공되는 이름 외에 새 segment 를 추가하려면 구현체를
+ * <code>META-INF/services/in.woowa.tomcat.jdbc.pool.interceptor.CommentSegmentProvider</code> 에 등록한다.
+ * {@link #create(String, Map)} 는 pool 당 한 번, 템플릿을 컴파일할 때만 호출된다.</p>
+ */
+public interface CommentSegmentProvider {
+
+    /**
+     * @return 템플릿에서 사용할 이름. 영문자, 숫자, 밑줄, 점만 허용된다.
+     */
+    String getName();
+
+    /**
+     * @param argument   <code>{name:argument}</code> 의 argument. 없으면 null
+     * @param properties pool 의 interceptor 프라퍼티
+     * @return 템플릿에 들어갈 segment
+     * @throws IllegalArgumentException argument 나 프라퍼티가 올바르지 않을 때
+     */
+    CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties);
+}
@@ -0,0 +1,439 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * 기본 제공 {@link CommentSegmentProvider} 와 ServiceLoader 로 등록된 provider 목록.
+ *
+ * <h3>기본 제공 segment</h3>
+ * <ul>
+ * <li><code>{project}</code> : projectName 프라퍼티 값</li>
+ * <li><code>{host}</code> : hostName 프라퍼티 값. 없으면 {@link LocalHostResolver} 가 알아낸 host 이름</li>
+ * <li><code>{ip}</code> : hostAddress 프라퍼티 값. 없으면 {@link LocalHostResolver} 가 알아낸 IP</li>
+ * <li><code>{mdc:key}</code> : SQL 을 실행하는 스레드의 SLF4J MDC 값</li>
+ * <li><code>{context:key}</code> : contextValueSource 프라퍼티로 지정한 {@link ContextValueSource} 의 값. 지정하지 않으면 {@link CallerContext}, 없으면 MDC</li>
+ * <li><code>{caller}</code> : SQL 을 실행한 애플리케이션 코드의 <code>SimpleClassName.method</code>. {@link CallerResolver} 참고</li>
+ * <li><code>{callsite}</code> : sql-caller-info-agent 가 심어 둔 <code>SimpleClassName.method:line</code>. 계측되지 않은 호출이면 <code>{caller}</code> 와 같다.</li>
+ * <li><code>{fingerprint}</code>, <code>{fingerprint:mysql}</code> : 리터럴을 뺀 SQL 모양의 16 자리 hex hash. {@link SqlFingerprint} 참고</li>
+ * <li><code>{rw}</code> : SQL 의 종류. <code>read</code>, <code>write</code>, <code>ddl</code>, <code>other</code>. {@link SqlStatementClass} 참고</li>
+ * <li><code>{readOnly}</code> : 커넥션의 <code>isReadOnly()</code>. <code>true</code>, <code>false</code></li>
+ * <li><code>{tx}</code> : autoCommit 이면 <code>auto</code>, 아니면 트랜잭션 안에서 실행되므로 <code>open</code>. {@link ConnectionTagState} 참고</li>
+ * </ul>
+ */
+final class CommentSegmentProviders {
+
+    private static final Logger log = LoggerFactory.getLogger(CommentSegmentProviders.class);
+
+    static final Pattern NAME_PATTERN = Pattern.compile("[\\w.]+");
+
+    private CommentSegmentProviders() {
+    }
+
+    static CommentSegmentProvider get(String name) {
+        return Holder.PROVIDERS.get(name);
+    }
+
+    static Map<String, CommentSegmentProvider> all() {
+        return Holder.PROVIDERS;
+    }
+
+    private static Map<String, CommentSegmentProvider> load() {
+        Map<String, CommentSegmentProvider> providers = new LinkedHashMap<>();
+        register(providers, new ProjectSegmentProvider());
+        register(providers, new LocalHostSegmentProvider("host", SqlCallerInfoCommentInterceptor.HOST_NAME_KEY, LocalHostResolver::getHostName));
+        register(providers, new LocalHostSegmentProvider("ip", SqlCallerInfoCommentInterceptor.HOST_ADDRESS_KEY, LocalHostResolver::getHostAddress));
+        register(providers, new ContextSegmentProvider("mdc", false));
+        register(providers, new ContextSegmentProvider("context", true));
+        register(providers, new CallerSegmentProvider("caller", false));
+        register(providers, new CallerSegmentProvider("callsite", true));
+        register(providers, new FingerprintSegmentProvider());
+        register(providers, new StatementClassSegmentProvider());
+        register(providers, new ConnectionStateSegmentProvider("readOnly", connection -> connection.isReadOnly() ? "true" : "false"));
+        register(providers, new ConnectionStateSegmentProvider("tx", connection -> connection.isAutoCommit() ? "auto" : "open"));
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = CommentSegmentProviders.class.getClassLoader();
+        }
+        for (CommentSegmentProvider provider : ServiceLoader.load(CommentSegmentProvider.class, classLoader)) {
+            register(providers, provider);
+        }
+        return Collections.unmodifiableMap(providers);
+    }
+
+    private static void register(Map<String, CommentSegmentProvider> providers, CommentSegmentProvider provider) {
+        String name = provider.getName();
+        if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+            log.warn("comment segment provider {} ignored. illegal name : {}", provider.getClass().getName(), name);
+            return;
+        }
+        if (providers.containsKey(name)) {
+            log.warn("comment segment provider {} ignored. '{}' is already provided by {}", provider.getClass().getName(), name, providers.get(name).getClass().getName());
+            return;
+        }
+        providers.put(name, provider);
+    }
+
+    private static final class Holder {
+        private static final Map<String, CommentSegmentProvider> PROVIDERS = load();
+    }
+
+    static final class ProjectSegmentProvider implements CommentSegmentProvider {
+
+        @Override
+        public String getName() {
+            return "project";
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            PoolProperties.InterceptorProperty projectName = properties.get(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY);
+            return CommentSegment.staticValue(projectName == null ? null : projectName.getValue());
+        }
+    }
+
+    /**
+     * 프라퍼티로 값을 지정했으면 그 값을, 아니면 {@link LocalHostResolver} 의 값을 쓴다.
+     * 조회가 이미 끝났으면 고정 segment 가 되고, 아직이면 미리 치환된 volatile 값을 읽는 동적 segment 가 된다.
+     */
+    static final class LocalHostSegmentProvider implements CommentSegmentProvider {
+
+        private final String name;
+        private final String propertyKey;
+        private final Function<LocalHostResolver, String> value;
+
+        LocalHostSegmentProvider(String name, String propertyKey, Function<LocalHostResolver, String> value) {
+            this.name = name;
+            this.propertyKey = propertyKey;
+            this.value = value;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            PoolProperties.InterceptorProperty configured = properties.get(propertyKey);
+            if (configured != null && configured.getValue() != null && !configured.getValue().trim().isEmpty()) {
+                return CommentSegment.staticValue(configured.getValue().trim());
+            }
+
+            final LocalHostResolver resolver = LocalHostResolver.get();
+            if (resolver.isSettled()) {
+                return CommentSegment.staticValue(value.apply(resolver));
+            }
+            return new CommentSegment() {
+                @Override
+                public String getValue() {
+                    return value.apply(resolver);
+                }
+
+                @Override
+                public boolean isSanitized() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * SQL 을 실행하는 스레드의 문맥 값을 읽는다. 값은 {@link RecentSanitizedValues} 를 거쳐 치환된다.
+     */
+    static final class ContextSegmentProvider implements CommentSegmentProvider {
+
+        private static final ContextValueSource MDC_SOURCE = MDC::get;
+
+        /**
+         * contextValueSource 를 지정하지 않은 <code>{context:key}</code> 는 스레드를 넘어 전달되는 {@link CallerContext} 를 먼저 읽고, 없으면 MDC 를 읽는다.
+         */
+        private static final ContextValueSource DEFAULT_CONTEXT_SOURCE = key -> {
+            String value = CallerContext.current().get(key);
+            return value != null ? value : MDC.get(key);
+        };
+
+        private final String name;
+        private final boolean configurable;
+
+        ContextSegmentProvider(String name, boolean configurable) {
+            this.name = name;
+            this.configurable = configurable;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            if (argument == null || argument.trim().isEmpty()) {
+                throw new IllegalArgumentException("commentTemplate segment '{" + name + "}' requires a key. ex) {" + name + ":traceId}");
+            }
+            final String key = argument.trim();
+            final ContextValueSource source = configurable ? contextValueSource(properties) : MDC_SOURCE;
+            final RecentSanitizedValues recentValues = new RecentSanitizedValues();
+            return new CommentSegment() {
+                @Override
+                public String getValue() {
+                    return recentValues.sanitize(source.get(key));
+                }
+
+                @Override
+                public boolean isSanitized() {
+                    return true;
+                }
+            };
+        }
+
+        private static ContextValueSource contextValueSource(Map<String, PoolProperties.InterceptorProperty> properties) {
+            PoolProperties.InterceptorProperty property = properties.get(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY);
+            if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+                return DEFAULT_CONTEXT_SOURCE;
+            }
+            String className = property.getValue().trim();
+            try {
+                ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                if (classLoader == null) {
+                    classLoader = CommentSegmentProviders.class.getClassLoader();
+                }
+                Class<?> sourceClass = Class.forName(className, true, classLoader);
+                if (!ContextValueSource.class.isAssignableFrom(sourceClass)) {
+                    throw new IllegalArgumentException("contextValueSource '" + className + "' must implement " + ContextValueSource.class.getName() + ".");
+                }
+                return (ContextValueSource) sourceClass.getConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                throw new IllegalArgumentException("contextValueSource '" + className + "' must be a class with a public no-arg constructor.", ex);
+            }
+        }
+    }
+
+    /**
+     * callerSkipPackages, callerMaxDepth, callerSamplingRate 프라퍼티로 pool 당 {@link CallerResolver} 하나를 만든다.
+     * <code>{callsite}</code> 는 먼저 {@link AgentCallSiteTags} 를 읽고, 태그가 없을 때만 스택을 살펴본다.
+     */
+    static final class CallerSegmentProvider implements CommentSegmentProvider {
+
+        private final String name;
+        private final boolean agentTag;
+
+        CallerSegmentProvider(String name, boolean agentTag) {
+            this.name = name;
+            this.agentTag = agentTag;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            final CallerResolver resolver = new CallerResolver(
+                parseSkipPackages(properties.get(SqlCallerInfoCommentInterceptor.CALLER_SKIP_PACKAGES_KEY)),
+                SqlCallerInfoCommentConfig.parseIntRange(SqlCallerInfoCommentInterceptor.CALLER_MAX_DEPTH_KEY,
+                    properties.get(SqlCallerInfoCommentInterceptor.CALLER_MAX_DEPTH_KEY), CallerResolver.DEFAULT_MAX_DEPTH, 1, Integer.MAX_VALUE),
+                parseSamplingRate(properties.get(SqlCallerInfoCommentInterceptor.CALLER_SAMPLING_RATE_KEY)));
+            log.info("{} : {}, agent : {}", name, resolver, agentTag && AgentCallSiteTags.isAvailable());
+            final boolean readAgentTag = agentTag;
+            return new CommentSegment() {
+                @Override
+                public String getValue() {
+                    if (readAgentTag) {
+                        String tag = AgentCallSiteTags.get();
+                        if (tag != null) {
+                            return tag;
+                        }
+                    }
+                    return resolver.resolve();
+                }
+
+                @Override
+                public boolean isSanitized() {
+                    return true;
+                }
+            };
+        }
+
+        private static String[] parseSkipPackages(PoolProperties.InterceptorProperty property) {
+            if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+                return CallerResolver.DEFAULT_SKIP_PACKAGES;
+            }
+            // tomcat 이 ',' 와 ';' 를 프라퍼티/interceptor 구분자로 쓰므로 공백으로 구분한다.
+            String[] skipPackages = property.getValue().trim().split("\\s+");
+            for (String skipPackage : skipPackages) {
+                if (!NAME_PATTERN.matcher(skipPackage.replace('$', '_')).matches()) {
+                    throw new IllegalArgumentException("callerSkipPackages '" + property.getValue() + "' must be package or class names separated by spaces.");
+                }
+            }
+            return skipPackages;
+        }
+
+        private static double parseSamplingRate(PoolProperties.InterceptorProperty property) {
+            if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+                return 1.0d;
+            }
+            String value = property.getValue().trim();
+            try {
+                double percent = Double.parseDouble(value);
+                if (percent >= 0.0d && percent <= 100.0d) {
+                    return percent / 100.0d;
+                }
+            } catch (NumberFormatException ex) {
+                // fall through
+            }
+            throw new IllegalArgumentException("callerSamplingRate '" + value + "' must be a percentage between 0 and 100.");
+        }
+    }
+
+    /**
+     * SQL 의 {@link SqlFingerprint}. prepareStatement/prepareCall 의 SQL 은 fingerprintCacheSize 개까지 캐시하여 같은 SQL 은 한 번만 훑는다.
+     * 리터럴이 들어간 Statement.execute SQL 은 매번 달라지므로 캐시하지 않는다.
+     */
+    static final class FingerprintSegmentProvider implements CommentSegmentProvider {
+
+        static final int DEFAULT_CACHE_SIZE = 1024;
+
+        @Override
+        public String getName() {
+            return "fingerprint";
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            if (argument != null && !"mysql".equals(argument.trim())) {
+                throw new IllegalArgumentException("commentTemplate segment '{fingerprint:" + argument + "}' argument must be mysql or omitted.");
+            }
+            final boolean mysql = argument != null;
+            final int cacheSize = SqlCallerInfoCommentConfig.parseIntRange(SqlCallerInfoCommentInterceptor.FINGERPRINT_CACHE_SIZE_KEY,
+                properties.get(SqlCallerInfoCommentInterceptor.FINGERPRINT_CACHE_SIZE_KEY), DEFAULT_CACHE_SIZE, 0, Integer.MAX_VALUE);
+            final CommentedSqlCache cache = cacheSize > 0 ? new CommentedSqlCache(cacheSize) : null;
+            final UnaryOperator<String> fingerprint = sql -> SqlFingerprint.toHex(SqlFingerprint.hash(sql, mysql));
+            return new CommentSegment() {
+                @Override
+                public String getValue() {
+                    return CommentTemplate.FALLBACK_VALUE;
+                }
+
+                @Override
+                public String getValue(String sql, boolean prepared) {
+                    if (sql == null) {
+                        return CommentTemplate.FALLBACK_VALUE;
+                    }
+                    return prepared && cache != null ? cache.get(sql, fingerprint) : fingerprint.apply(sql);
+                }
+
+                @Override
+                public boolean isSqlDependent() {
+                    return true;
+                }
+
+                @Override
+                public boolean isSanitized() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * SQL 의 {@link SqlStatementClass}. prepareStatement/prepareCall 의 SQL 은 statementClassCacheSize 개까지 캐시하여 같은 SQL 은 한 번만 훑는다.
+     */
+    static final class StatementClassSegmentProvider implements CommentSegmentProvider {
+
+        static final int DEFAULT_CACHE_SIZE = 1024;
+
+        @Override
+        public String getName() {
+            return "rw";
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            final int cacheSize = SqlCallerInfoCommentConfig.parseIntRange(SqlCallerInfoCommentInterceptor.STATEMENT_CLASS_CACHE_SIZE_KEY,
+                properties.get(SqlCallerInfoCommentInterceptor.STATEMENT_CLASS_CACHE_SIZE_KEY), DEFAULT_CACHE_SIZE, 0, Integer.MAX_VALUE);
+            final CommentedSqlCache cache = cacheSize > 0 ? new CommentedSqlCache(cacheSize) : null;
+            final UnaryOperator<String> classifier = sql -> SqlStatementClass.classify(sql).getTagValue();
+            return new CommentSegment() {
+                @Override
+                public String getValue() {
+                    return CommentTemplate.FALLBACK_VALUE;
+                }
+
+                @Override
+                public String getValue(String sql, boolean prepared) {
+                    if (sql == null) {
+                        return CommentTemplate.FALLBACK_VALUE;
+                    }
+                    return prepared && cache != null ? cache.get(sql, classifier) : classifier.apply(sql);
+                }
+
+                @Override
+                public boolean isSqlDependent() {
+                    return true;
+                }
+
+                @Override
+                public boolean isSanitized() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * SQL 을 실행하는 커넥션의 상태. 커넥션 없이 값을 만들거나 상태를 아직 모르면 <code>-</code> 이다.
+     */
+    static final class ConnectionStateSegmentProvider implements CommentSegmentProvider {
+
+        private final String name;
+        private final Function<ConnectionTagState, String> value;
+
+        ConnectionStateSegmentProvider(String name, Function<ConnectionTagState, String> value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+            return new CommentSegment() {
+                @Override
+                public String getValue() {
+                    return CommentTemplate.FALLBACK_VALUE;
+                }
+
+                @Override
+                public String getValue(String sql, boolean prepared, ConnectionTagState connection) {
+                    return connection == null || !connection.isKnown() ? CommentTemplate.FALLBACK_VALUE : value.apply(connection);
+                }
+
+                @Override
+                public boolean isConnectionDependent() {
+                    return true;
+                }
+
+                @Override
+                public boolean isSanitized() {
+                    return true;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * commentTemplate 프라퍼티를 컴파일한 결과.
+ *
+ * <p>템플릿은 pool 당 한 번 컴파일된다. 이때 고정 텍스트와 {@link CommentSegment#isStatic()} 인 segment 값은 미리 치환(sanitize)하여
+ * 하나의 문자열로 합치고, 나머지 동적 segment 만 남긴다. 그래서 SQL 마다 하는 일은 동적 segment 당 append 한 번뿐이며
+ * 템플릿 해석은 다시 하지 않는다. 동적 segment 가 없으면 {@link #getStaticPrefix()} 하나로 끝난다.</p>
+ *
+ * <p>템플릿 문법 : <code>{name}</code> 또는 <code>{name:argument}</code>. 나머지는 그대로 주석에 들어간다.
+ * 예) <code>{project} host={host} trace={mdc:traceId}</code></p>
+ */
+public final class CommentTemplate {
+
+    public static final String DEFAULT_TEMPLATE = "{project}";
+
+    static final String COMMENT_START = " /* ";
+    static final String COMMENT_END = " */ ";
+
+    /**
+     * 동적 segment 값 길이 예상치. StringBuilder 초기 크기 계산용이다.
+     */
+    private static final int DYNAMIC_VALUE_LENGTH_HINT = 32;
+
+    /**
+     * {@link CommentVariantGuard} 가 막은 주석에서 동적 segment 자리에 들어가는 값
+     */
+    static final String FALLBACK_VALUE = "-";
+
+    private final String source;
+
+    /**
+     * 동적 segment 사이사이의 고정 텍스트. texts[0] 은 주석 시작을, 마지막은 주석 끝을 포함한다.
+     * texts.length == dynamicSegments.length + 1
+     */
+    private final String[] texts;
+    private final CommentSegment[] dynamicSegments;
+    private final boolean[] sanitized;
+    private final int textsLength;
+
+    /**
+     * 주석 종류 제한. 없으면 null
+     */
+    private final CommentVariantGuard variantGuard;
+
+    /**
+     * 동적 segment 를 모두 {@link #FALLBACK_VALUE} 로 채운 고정 주석
+     */
+    private final String fallbackPrefix;
+
+    /**
+     * {@link #fallbackPrefix} 에서 주석 구분자를 뺀 값
+     */
+    private final String fallbackTag;
+
+    /**
+     * 고정 템플릿일 때 {@link #renderTag()} 결과. 동적 segment 가 있으면 null
+     */
+    private final String staticTag;
+
+    /**
+     * SQL 에 따라 값이 달라지는 segment 가 있으면 true
+     */
+    private final boolean sqlDependent;
+
+    /**
+     * 커넥션 상태에 따라 값이 달라지는 segment 가 있으면 true
+     */
+    private final boolean connectionDependent;
+
+    private CommentTemplate(String source, String[] texts, CommentSegment[] dynamicSegments, CommentVariantGuard variantGuard) {
+        this.source = source;
+        this.texts = texts;
+        this.dynamicSegments = dynamicSegments;
+        this.variantGuard = variantGuard;
+        this.fallbackPrefix = String.join(FALLBACK_VALUE, texts);
+        this.fallbackTag = fallbackPrefix.substring(COMMENT_START.length(), fallbackPrefix.length() - COMMENT_END.length());
+        this.staticTag = dynamicSegments.length == 0
+            ? texts[0].substring(COMMENT_START.length(), texts[0].length() - COMMENT_END.length()) : null;
+        this.sanitized = new boolean[dynamicSegments.length];
+        boolean anySqlDependent = false;
+        boolean anyConnectionDependent = false;
+        for (int i = 0; i < dynamicSegments.length; i++) {
+            sanitized[i] = dynamicSegments[i].isSanitized();
+            anySqlDependent |= dynamicSegments[i].isSqlDependent();
+            anyConnectionDependent |= dynamicSegments[i].isConnectionDependent();
+        }
+        this.sqlDependent = anySqlDependent;
+        this.connectionDependent = anyConnectionDependent;
+        int length = 0;
+        for (String text : texts) {
+            length += text.length();
+        }
+        this.textsLength = length;
+    }
+
+    /**
+     * @param template   템플릿 원문
+     * @param properties pool 의 interceptor 프라퍼티. segment 생성에 쓰인다.
+     * @return 컴파일된 템플릿
+     * @throws IllegalArgumentException 문법 오류, 알 수 없는 segment, 주석 구분자가 들어간 고정 텍스트
+     */
+    public static CommentTemplate compile(String template, Map<String, PoolProperties.InterceptorProperty> properties) {
+        List<String> texts = new ArrayList<>();
+        List<CommentSegment> dynamicSegments = new ArrayList<>();
+        StringBuilder text = new StringBuilder(COMMENT_START);
+
+        int index = 0;
+        final int length = template.length();
+        while (index < length) {
+            int open = template.indexOf('{', index);
+            String literal = open < 0 ? template.substring(index) : template.substring(index, open);
+            if (!CommentSanitizer.isClean(literal)
+                || (!literal.isEmpty() && text.length() > 0 && CommentSanitizer.joinsDelimiter(text.charAt(text.length() - 1), literal.charAt(0)))) {
+                throw new IllegalArgumentException("commentTemplate '" + template + "' must not contain comment delimiters or control characters.");
+            }
+            text.append(literal);
+            if (open < 0) {
+                break;
+            }
+
+            int close = template.indexOf('}', open);
+            if (close < 0) {
+                throw new IllegalArgumentException("commentTemplate '" + template + "' has unclosed '{'.");
+            }
+            CommentSegment segment = createSegment(template, template.substring(open + 1, close), properties);
+            if (segment.isStatic()) {
+                CommentSanitizer.appendJoined(text, CommentSanitizer.sanitize(segment.getValue()));
+            } else {
+                texts.add(text.toString());
+                text.setLength(0);
+                dynamicSegments.add(segment);
+            }
+            index = close + 1;
+        }
+        text.append(COMMENT_END);
+        texts.add(text.toString());
+
+        return new CommentTemplate(template, texts.toArray(new String[0]), dynamicSegments.toArray(new CommentSegment[0]), null);
+    }
+
+    /**
+     * @param variantGuard 원본 SQL 당 주석 종류 제한
+     * @return 동적 segment 가 있으면 제한을 적용한 템플릿. 고정 템플릿은 주석이 한 종류뿐이므로 그대로 돌려준다.
+     */
+    CommentTemplate withVariantGuard(CommentVariantGuard variantGuard) {
+        if (isStatic()) {
+            return this;
+        }
+        return new CommentTemplate(source, texts, dynamicSegments, variantGuard);
+    }
+
+    private static CommentSegment createSegment(String template, String token, Map<String, PoolProperties.InterceptorProperty> properties) {
+        int colon = token.indexOf(':');
+        String name = colon < 0 ? token : token.substring(0, colon);
+        String argument = colon < 0 ? null : token.substring(colon + 1);
+
+        CommentSegmentProvider provider = CommentSegmentProviders.get(name);
+        if (provider == null) {
+            throw new IllegalArgumentException("commentTemplate '" + template + "' has unknown segment '{" + token + "}'. available : " + CommentSegmentProviders.all().keySet());
+        }
+        CommentSegment segment = provider.create(argument, properties);
+        if (segment == null) {
+            throw new IllegalArgumentException("commentTemplate '" + template + "' segment '{" + token + "}' is not available.");
+        }
+        return segment;
+    }
+
+    /**
+     * @return 동적 segment 가 없으면 true
+     */
+    public boolean isStatic() {
+        return dynamicSegments.length == 0;
+    }
+
+    /**
+     * @return SQL 에 따라 값이 달라지는 segment(<code>{fingerprint}</code> 등)가 있으면 true
+     */
+    public boolean isSqlDependent() {
+        return sqlDependent;
+    }
+
+    /**
+     * @return 커넥션 상태에 따라 값이 달라지는 segment(<code>{readOnly}</code>, <code>{tx}</code> 등)가 있으면 true
+     */
+    public boolean isConnectionDependent() {
+        return connectionDependent;
+    }
+
+    /**
+     * @return 동적 segment 가 없을 때 완성된 <code>" /* ... *&#47; "</code> 주석. 동적 segment 가 있으면 null
+     */
+    public String getStaticPrefix() {
+        return isStatic() ? texts[0] : null;
+    }
+
+    /**
+     * 동적 segment 값을 채워 주석을 만들고 SQL 앞에 붙인다.
+     * 템플릿 앞부분의 고정 텍스트로 이미 시작하는 SQL 은 그대로 돌려준다. 템플릿이 동적 segment 로 시작하면
+     * 이번에 만든 주석이나 {@link #getFallbackPrefix()} 로 이미 시작하는 SQL 을 그대로 돌려준다.
+     * {@link CommentVariantGuard} 가 있고 이 SQL 의 주석 종류가 한도를 넘으면 {@link #getFallbackPrefix()} 를 붙인다.
+     */
+    public String render(String sql) {
+        return render(sql, false);
+    }
+
+    /**
+     * @param prepared prepareStatement 의 SQL 이면 true. {@link CommentSegment#getValue(String, boolean)} 참고
+     * @see #render(String)
+     */
+    public String render(String sql, boolean prepared) {
+        return render(sql, prepared, null);
+    }
+
+    /**
+     * @param connection SQL 을 실행하는 커넥션의 상태. 모르면 null
+     * @see #render(String, boolean)
+     */
+    public String render(String sql, boolean prepared, ConnectionTagState connection) {
+        final String head = texts[0];
+        final boolean staticHead = head.length() > COMMENT_START.length();
+        if (staticHead && sql.startsWith(head)) {
+            return sql;
+        }
+
+        StringBuilder builder = new StringBuilder(textsLength + dynamicSegments.length * DYNAMIC_VALUE_LENGTH_HINT + sql.length());
+        int commentHash = appendComment(builder, sql, prepared, connection);
+        // 동적 segment 로 시작하는 템플릿은 고정 텍스트가 주석 시작뿐이라 만든 주석과 비교한다.
+        if (!staticHead && (startsWith(sql, builder) || sql.startsWith(fallbackPrefix))) {
+            return sql;
+        }
+        if (variantGuard != null && !variantGuard.admit(sql, commentHash)) {
+            return fallbackPrefix.concat(sql);
+        }
+        return builder.append(sql).toString();
+    }
+
+    private static boolean startsWith(String sql, CharSequence prefix) {
+        final int length = prefix.length();
+        if (sql.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (sql.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@link #render(String)} 와 같은 주석을 SQL 에 붙이지 않고 돌려준다. {@link CommentPlacement} 가 넣을 위치를 정한다.
+     *
+     * @param sql 주석을 넣을 원본 SQL. {@link CommentVariantGuard} 의 키로만 쓰인다.
+     * @return <code>" /* ... *&#47; "</code> 형태의 주석
+     */
+    public String renderComment(String sql) {
+        return renderComment(sql, false);
+    }
+
+    /**
+     * @param prepared prepareStatement/prepareCall 의 SQL 이면 true. {@link CommentSegment#getValue(String, boolean)} 참고
+     * @see #renderComment(String)
+     */
+    public String renderComment(String sql, boolean prepared) {
+        return renderComment(sql, prepared, null);
+    }
+
+    /**
+     * @param connection SQL 을 실행하는 커넥션의 상태. 모르면 null
+     * @see #renderComment(String, boolean)
+     */
+    public String renderComment(String sql, boolean prepared, ConnectionTagState connection) {
+        if (isStatic()) {
+            return texts[0];
+        }
+        StringBuilder builder = new StringBuilder(textsLength + dynamicSegments.length * DYNAMIC_VALUE_LENGTH_HINT);
+        int commentHash = appendComment(builder, sql, prepared, connection);
+        if (variantGuard != null && !variantGuard.admit(sql, commentHash)) {
+            return fallbackPrefix;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 동적 segment 값을 채운 주석 내용을 주석 구분자 없이 돌려준다. <code>mode=session</code> 에서 세션 변수에 넣을 값이다.
+     * SQL 이 없으므로 {@link CommentVariantGuard} 는 적용하지 않는다.
+     */
+    public String renderTag() {
+        return renderTag(null, false);
+    }
+
+    /**
+     * 통계 키처럼 SQL 에 따라 달라지는 값을 주석 구분자 없이 만든다. {@link CommentVariantGuard} 는 적용하지 않는다.
+     *
+     * @param sql      원본 SQL. 없으면 null
+     * @param prepared prepareStatement/prepareCall 의 SQL 이면 true
+     */
+    public String renderTag(String sql, boolean prepared) {
+        if (isStatic()) {
+            return staticTag;
+        }
+        StringBuilder builder = new StringBuilder(textsLength + dynamicSegments.length * DYNAMIC_VALUE_LENGTH_HINT);
+        appendComment(builder, sql, prepared, null);
+        return builder.substring(COMMENT_START.length(), builder.length() - COMMENT_END.length());
+    }
+
+    /**
+     * 값과 뒤따르는 고정 텍스트는 {@link CommentSanitizer#appendJoined(StringBuilder, String)} 로 이어 붙여
+     * 경계에서 <code>*&#47;</code> 가 생기지 않게 한다.
+     *
+     * @return 동적 segment 값들의 hash
+     */
+    private int appendComment(StringBuilder builder, String sql, boolean prepared, ConnectionTagState connection) {
+        builder.append(texts[0]);
+        int commentHash = 1;
+        for (int i = 0; i < dynamicSegments.length; i++) {
+            String value = dynamicSegments[i].getValue(sql, prepared, connection);
+            if (!sanitized[i]) {
+                value = CommentSanitizer.sanitize(value);
+            }
+            commentHash = commentHash * 31 + value.hashCode();
+            CommentSanitizer.appendJoined(builder, value);
+            CommentSanitizer.appendJoined(builder, texts[i + 1]);
+        }
+        return commentHash;
+    }
+
+    /**
+     * @return 동적 segment 를 모두 <code>-</code> 로 채운 고정 주석
+     */
+    public String getFallbackPrefix() {
+        return fallbackPrefix;
+    }
+
+    /**
+     * @return {@link #getFallbackPrefix()} 를 주석 구분자 없이. <code>taggingLevel=static</code> 의 <code>mode=session</code> 세션 변수 값이다.
+     */
+    public String getFallbackTag() {
+        return fallbackTag;
+    }
+
+    /**
+     * @return 주석 종류 제한. 설정하지 않았거나 고정 템플릿이면 null
+     */
+    public CommentVariantGuard getVariantGuard() {
+        return variantGuard;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "CommentTemplate{" + source + '}';
+    }
+}
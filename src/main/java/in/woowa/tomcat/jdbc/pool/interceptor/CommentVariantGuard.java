@@ -0,0 +1,137 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 원본 SQL 하나가 만들어 내는 주석 종류(variant) 수를 제한한다.
+ *
+ * <p>SQL Server 의 plan cache, MySQL 의 digest/서버 측 prepared statement 캐시는 주석을 포함한 SQL 전문을 키로 쓴다.
+ * trace id 처럼 값이 계속 바뀌는 segment 를 주석에 넣으면 같은 SQL 이 주석마다 따로 컴파일되어 CPU 와 캐시 메모리를 낭비한다.
+ * 그래서 SQL 마다 이미 내보낸 주석 종류를 기억해 두고, {@link #getMaxVariants()} 를 넘는 새 주석은
+ * {@link CommentTemplate} 의 고정 fallback 주석으로 바꾸게 한다. 이미 내보낸 주석은 계속 허용한다.</p>
+ *
+ * <p>메모리는 고정 크기이다. SQL 의 hash 로 {@link #TRACKED_SLOTS} 개 중 한 칸을 고르고, 칸마다
+ * (SQL hash, 주석 hash) 조합을 lock-free open addressing 집합에 최대 maxVariants 개까지 저장한다.
+ * 칸은 SQL 전문을 키로 쓰지 않고 비우지도 않는다. 그래서 hash 가 같은 칸에 떨어진 SQL 들은 칸 하나의 한도를 나눠 쓴다.
+ * 예를 들어 한도가 16 일 때 두 SQL 이 같은 칸이면 한쪽이 주석 16 종류를 먼저 내보낸 뒤에는 다른 쪽은 처음 보는 주석부터 fallback 이 된다.
+ * 원본 SQL 종류가 칸 수에 가까워지면 이런 칸이 많아지지만, 칸 하나가 DB 에 내보내는 주석 종류는 한도를 넘지 않으므로
+ * plan cache 를 지키는 목적은 그대로이다. 칸을 SQL 별로 비우고 다시 쓰면 서로 밀어내는 SQL 들이 비울 때마다 한도만큼 새 주석을 내보낼 수 있어 그렇게 하지 않았다.
+ * fallback 이 예상보다 많으면 {@link TaggingControlMXBean#getCommentFallbackCount()} 로 확인하고 동적 segment 를 줄이거나 한도를 높인다.</p>
+ */
+public final class CommentVariantGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(CommentVariantGuard.class);
+
+    static final int TRACKED_SLOTS = 4096;
+    public static final int MAX_VARIANTS_LIMIT = 1024;
+
+    private final int maxVariants;
+    private final int variantCapacity;
+    private final AtomicReferenceArray<VariantSet> slots = new AtomicReferenceArray<>(TRACKED_SLOTS);
+
+    private final LongAdder fallbackCount = new LongAdder();
+    private final AtomicBoolean fallbackLogged = new AtomicBoolean();
+
+    public CommentVariantGuard(int maxVariants) {
+        if (maxVariants <= 0 || maxVariants > MAX_VARIANTS_LIMIT) {
+            throw new IllegalArgumentException("maxVariants must be between 1 and " + MAX_VARIANTS_LIMIT + " : " + maxVariants);
+        }
+        this.maxVariants = maxVariants;
+        this.variantCapacity = Integer.highestOneBit(maxVariants * 2 - 1) << 1;
+    }
+
+    /**
+     * @param sql         원본 SQL
+     * @param commentHash 동적 segment 값들로 만든 hash
+     * @return 이 주석을 그대로 써도 되면 true. false 이면 fallback 주석을 써야 한다.
+     */
+    boolean admit(String sql, int commentHash) {
+        int sqlHash = spread(sql.hashCode());
+        int key = spread(sqlHash * 31 + commentHash);
+        if (key == 0) {
+            key = 1;
+        }
+
+        int slot = sqlHash & (TRACKED_SLOTS - 1);
+        VariantSet variants = slots.get(slot);
+        if (variants == null) {
+            slots.compareAndSet(slot, null, new VariantSet(variantCapacity));
+            variants = slots.get(slot);
+        }
+        if (variants.add(key, maxVariants)) {
+            return true;
+        }
+
+        fallbackCount.increment();
+        if (fallbackLogged.compareAndSet(false, true)) {
+            log.warn("comment variants exceeded maxCommentVariants {}. further variants use the fallback comment. sql : {}", maxVariants, sql);
+        }
+        return false;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    public int getMaxVariants() {
+        return maxVariants;
+    }
+
+    /**
+     * @return 한도를 넘어 fallback 주석으로 바꾼 횟수
+     */
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CommentVariantGuard{" +
+            "maxVariants=" + maxVariants +
+            ", fallbackCount=" + getFallbackCount() +
+            '}';
+    }
+
+    /**
+     * 0 을 빈 칸으로 쓰는 int 집합. 크기는 한도의 두 배 이상이므로 탐색은 항상 빈 칸에서 끝난다.
+     */
+    private static final class VariantSet {
+        private final AtomicIntegerArray keys;
+        private final AtomicInteger size = new AtomicInteger();
+        private final int mask;
+
+        private VariantSet(int capacity) {
+            this.keys = new AtomicIntegerArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        private boolean add(int key, int maxSize) {
+            int index = key & mask;
+            while (true) {
+                int current = keys.get(index);
+                if (current == key) {
+                    return true;
+                }
+                if (current != 0) {
+                    index = (index + 1) & mask;
+                    continue;
+                }
+                if (size.incrementAndGet() > maxSize) {
+                    size.decrementAndGet();
+                    return false;
+                }
+                if (keys.compareAndSet(index, 0, key)) {
+                    return true;
+                }
+                size.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * 원본 SQL 을 주석이 추가된 SQL 로 매핑해 두는 크기 제한 캐시.
+ *
+ * <p>같은 원본 SQL 에 대해 항상 같은 String 인스턴스를 돌려주므로, 드라이버의 PreparedStatement 캐시(MySQL <code>cachePrepStmts</code> 등)나
+ * tomcat 의 StatementCache 가 매번 새 문자열의 hashCode 를 계산하고 비교할 필요가 없어진다.</p>
+ *
+ * <p>조회는 {@link ConcurrentHashMap} 의 lock-free get 한 번이다. 최대 크기를 넘으면 한 스레드만 CLOCK(second chance) 방식으로
+ * 최근에 조회되지 않은 항목들을 최대 크기의 90% 까지 한꺼번에 제거한다. 제거 중에는 잠시 최대 크기를 넘을 수 있다.
+ * 시계 바늘은 ConcurrentHashMap 의 iterator 하나로, 제거할 때마다 지난번에 멈춘 자리부터 이어서 돌고 끝에 닿으면 처음부터 다시 돈다.
+ * iterator 는 weakly consistent 하므로 그 사이에 들어온 항목은 이번 바퀴에 보이지 않을 수 있다.</p>
+ *
+ * <p>조회, 생성, 제거 횟수는 pool 의 sqlCacheSize 캐시이면 {@link TaggingControlMXBean} 으로 볼 수 있다.</p>
+ */
+public class CommentedSqlCache {
+
+    private final int maxSize;
+    private final int evictTargetSize;
+
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    /**
+     * CLOCK 의 바늘. evicting 을 얻은 스레드만 읽고 쓴다.
+     */
+    private Iterator<Map.Entry<String, Entry>> hand;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public CommentedSqlCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive : " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.evictTargetSize = maxSize - Math.max(1, maxSize / 10);
+        this.entries = new ConcurrentHashMap<>(Math.min(maxSize, 1024) * 4 / 3 + 1);
+    }
+
+    /**
+     * 캐시된 주석 SQL 을 돌려주고, 없으면 commenter 로 만들어 저장한다.
+     *
+     * @param sql       원본 SQL
+     * @param commenter 캐시에 없을 때 주석 SQL 을 만드는 함수
+     * @return 주석이 추가된 SQL. 같은 원본 SQL 이 캐시에 남아 있는 동안에는 같은 인스턴스이다.
+     */
+    public String get(String sql, UnaryOperator<String> commenter) {
+        Entry entry = entries.get(sql);
+        if (entry != null) {
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            hitCount.increment();
+            return entry.commentedSql;
+        }
+
+        missCount.increment();
+        Entry created = new Entry(commenter.apply(sql));
+        Entry previous = entries.putIfAbsent(sql, created);
+        if (previous != null) {
+            return previous.commentedSql;
+        }
+        if (size.incrementAndGet() > maxSize) {
+            evict();
+        }
+        return created.commentedSql;
+    }
+
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (size.get() > evictTargetSize) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = entries.entrySet().iterator();
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<String, Entry> candidate = hand.next();
+                Entry entry = candidate.getValue();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                    continue;
+                }
+                if (entries.remove(candidate.getKey(), entry)) {
+                    size.decrementAndGet();
+                    evictionCount.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CommentedSqlCache{" +
+            "maxSize=" + maxSize +
+            ", size=" + size() +
+            ", hitCount=" + getHitCount() +
+            ", missCount=" + getMissCount() +
+            ", evictionCount=" + getEvictionCount() +
+            '}';
+    }
+
+    private static final class Entry {
+        private final String commentedSql;
+        private volatile boolean referenced;
+
+        private Entry(String commentedSql) {
+            this.commentedSql = commentedSql;
+        }
+    }
+}
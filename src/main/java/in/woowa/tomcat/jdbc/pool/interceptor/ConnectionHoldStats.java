@@ -0,0 +1,364 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * pool 하나의 호출자 키별 커넥션 점유 통계. <code>holdKey</code> 나 <code>holdWarnThreshold</code> interceptor 프라퍼티를 지정하면 만들어진다.
+ *
+ * <p>키는 커넥션을 빌려줄 때 holdKey 템플릿으로 한 번 정한다. 빌린 뒤 <code>Connection.close()</code> 까지의 시간, 그동안 실행한 Statement 수와
+ * 변경된 row 수를 반납할 때 그 키의 counter 에 한 번에 더한다. Statement 를 실행할 때는 커넥션마다 따로 둔 필드만 바꾸고,
+ * 반납할 때도 스레드 id 로 고른 stripe 에 원자적 덧셈만 하므로 잠금이 없다. 키 종류가 {@link #getMaxCallers()} 를 넘으면 나머지는
+ * <code>-</code> 키 하나에 모은다.</p>
+ *
+ * <p>빌려준 커넥션은 반납할 때까지 목록에 두고, daemon 스레드 하나가 주기적으로 훑어 {@link #getHoldWarnThresholdMillis()} 보다 오래
+ * 쥐고 있는 커넥션의 키와 스레드를 WARN 로그로 한 번 남긴다. pool 을 고갈시키는 호출자를 찾는 데 쓴다. removeAbandoned 처럼 close 없이
+ * pool 이 회수한 커넥션도 이때 정리하여 점유 시간에 넣는다.</p>
+ *
+ * <p>pool 이 시작될 때 {@link ConnectionHoldStatsMXBean} 으로 platform MBeanServer 에 등록되고 pool 이 닫힐 때 해제된다.</p>
+ */
+public final class ConnectionHoldStats implements ConnectionHoldStatsMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionHoldStats.class);
+
+    private static final String MBEAN_TYPE = "ConnectionHoldStats";
+
+    static final int DEFAULT_MAX_CALLERS = CallerLatencyStats.DEFAULT_MAX_CALLERS;
+    static final int MAX_CALLERS_LIMIT = CallerLatencyStats.MAX_CALLERS_LIMIT;
+
+    /**
+     * 키 종류가 한도를 넘었을 때 쓰는 키
+     */
+    static final String OVERFLOW_KEY = CommentTemplate.FALLBACK_VALUE;
+
+    /**
+     * holdWarnThreshold 를 지정하지 않았을 때 회수된 커넥션을 정리하는 주기(ms)
+     */
+    private static final long SWEEP_INTERVAL_MILLIS = 1000L;
+    private static final long MIN_SWEEP_INTERVAL_MILLIS = 10L;
+
+    private final int maxCallers;
+    private final long warnThresholdMillis;
+    private final ConcurrentHashMap<String, HoldCounter> counters = new ConcurrentHashMap<>();
+    private final HoldCounter overflow = new HoldCounter();
+    private final Set<Hold> holds = ConcurrentHashMap.newKeySet();
+    private final LongAdder longHoldCount = new LongAdder();
+
+    private final PoolMBeanRegistration registration = new PoolMBeanRegistration(this, MBEAN_TYPE);
+
+    private ScheduledExecutorService watchdog;
+
+    /**
+     * @param maxCallers          구분할 최대 키 개수
+     * @param warnThresholdMillis 이 시간(ms) 이상 쥐고 있는 커넥션을 로그로 남긴다. 0 이면 남기지 않는다.
+     */
+    public ConnectionHoldStats(int maxCallers, long warnThresholdMillis) {
+        if (maxCallers <= 0 || maxCallers > MAX_CALLERS_LIMIT) {
+            throw new IllegalArgumentException("maxCallers must be between 1 and " + MAX_CALLERS_LIMIT + " : " + maxCallers);
+        }
+        if (warnThresholdMillis < 0) {
+            throw new IllegalArgumentException("warnThresholdMillis must not be negative : " + warnThresholdMillis);
+        }
+        this.maxCallers = maxCallers;
+        this.warnThresholdMillis = warnThresholdMillis;
+    }
+
+    /**
+     * 커넥션을 빌려줄 때 부른다. 반납되지 않은 이전 점유가 남아 있으면 먼저 끝낸다.
+     *
+     * @param hold       이 물리 커넥션의 점유 기록. 처음이면 null
+     * @param key        호출자 키
+     * @param connection 빌려준 커넥션. pool 이 close 없이 회수했는지 알아보는 데 쓴다.
+     * @return 이 물리 커넥션의 점유 기록. 다음 대여 때 다시 넘긴다.
+     */
+    Hold borrowed(Hold hold, String key, PooledConnection connection) {
+        if (hold == null) {
+            hold = new Hold();
+        } else {
+            returned(hold);
+        }
+        hold.key = key;
+        hold.counter = counter(key);
+        hold.threadName = Thread.currentThread().getName();
+        hold.connection = connection;
+        hold.statements = 0;
+        hold.rows = 0;
+        hold.startNanos = System.nanoTime();
+        hold.held.set(true);
+        holds.add(hold);
+        return hold;
+    }
+
+    /**
+     * <code>Connection.close()</code> 에서 부른다. 이미 끝난 점유이면 아무것도 하지 않는다.
+     */
+    void returned(Hold hold) {
+        if (hold.held.compareAndSet(true, false)) {
+            finish(hold, System.nanoTime());
+        }
+    }
+
+    private void finish(Hold hold, long endNanos) {
+        hold.counter.record(endNanos - hold.startNanos, hold.statements, hold.rows);
+        holds.remove(hold);
+    }
+
+    private HoldCounter counter(String key) {
+        if (OVERFLOW_KEY.equals(key)) {
+            return overflow;
+        }
+        HoldCounter counter = counters.get(key);
+        if (counter != null) {
+            return counter;
+        }
+        if (counters.size() >= maxCallers) {
+            return overflow;
+        }
+        return counters.computeIfAbsent(key, k -> new HoldCounter());
+    }
+
+    /**
+     * @param key 호출자 키
+     * @return 키의 통계. 기록이 없는 키이면 null
+     */
+    public HoldSnapshot snapshot(String key) {
+        HoldCounter counter = OVERFLOW_KEY.equals(key) ? overflow : counters.get(key);
+        return counter == null ? null : counter.snapshot(key);
+    }
+
+    @Override
+    public List<HoldSnapshot> getCallers() {
+        List<HoldSnapshot> snapshots = new ArrayList<>(counters.size() + 1);
+        for (Map.Entry<String, HoldCounter> entry : counters.entrySet()) {
+            snapshots.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        HoldSnapshot overflowSnapshot = overflow.snapshot(OVERFLOW_KEY);
+        if (overflowSnapshot.getHoldCount() > 0) {
+            snapshots.add(overflowSnapshot);
+        }
+        snapshots.sort(Comparator.comparingLong(HoldSnapshot::getTotalHoldNanos).reversed());
+        return snapshots;
+    }
+
+    @Override
+    public List<HeldConnection> getHeldConnections() {
+        final long now = System.nanoTime();
+        List<HeldConnection> held = new ArrayList<>(holds.size());
+        for (Hold hold : holds) {
+            if (hold.held.get()) {
+                held.add(new HeldConnection(hold.key, hold.threadName, now - hold.startNanos, hold.statements));
+            }
+        }
+        held.sort(Comparator.comparingLong(HeldConnection::getHeldNanos).reversed());
+        return held;
+    }
+
+    @Override
+    public int getCallerCount() {
+        return counters.size();
+    }
+
+    @Override
+    public int getMaxCallers() {
+        return maxCallers;
+    }
+
+    @Override
+    public long getHoldWarnThresholdMillis() {
+        return warnThresholdMillis;
+    }
+
+    @Override
+    public long getLongHoldCount() {
+        return longHoldCount.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (HoldCounter counter : counters.values()) {
+            counter.reset();
+        }
+        overflow.reset();
+        longHoldCount.reset();
+    }
+
+    /**
+     * MXBean 을 등록하고 빌려준 커넥션을 훑는 스레드를 시작한다.
+     *
+     * @param poolName tomcat jdbc pool 이름
+     */
+    synchronized void start(String poolName) {
+        registration.register(poolName);
+        if (watchdog == null) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sql-caller-info-hold-watchdog-" + poolName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long interval = warnThresholdMillis > 0
+                ? Math.max(MIN_SWEEP_INTERVAL_MILLIS, Math.min(warnThresholdMillis / 2, SWEEP_INTERVAL_MILLIS)) : SWEEP_INTERVAL_MILLIS;
+            watchdog.scheduleWithFixedDelay(() -> sweep(poolName), interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        registration.unregister();
+        if (watchdog != null) {
+            watchdog.shutdownNow();
+            watchdog = null;
+        }
+        holds.clear();
+    }
+
+    /**
+     * threshold 를 넘긴 점유를 점유마다 한 번만 로그로 남기고, close 없이 pool 이 회수한 점유를 끝낸다.
+     */
+    void sweep(String poolName) {
+        try {
+            final long now = System.nanoTime();
+            final long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(warnThresholdMillis);
+            for (Hold hold : holds) {
+                final long startNanos = hold.startNanos;
+                if (hold.connection.isReleased()) {
+                    if (hold.held.compareAndSet(true, false)) {
+                        log.warn("connection released by pool {} without close : {}, thread {}, held {}ms", poolName, hold.key,
+                            hold.threadName, TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+                        finish(hold, now);
+                    } else {
+                        holds.remove(hold);
+                    }
+                    continue;
+                }
+                if (thresholdNanos > 0 && hold.held.get() && now - startNanos >= thresholdNanos && hold.reportedStartNanos != startNanos) {
+                    hold.reportedStartNanos = startNanos;
+                    longHoldCount.increment();
+                    log.warn("connection held {}ms by {} : thread {}, statements {}, pool {}", TimeUnit.NANOSECONDS.toMillis(now - startNanos),
+                        hold.key, hold.threadName, hold.statements, poolName);
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("connection hold watchdog failed : {}", ex.toString());
+        }
+    }
+
+    static ObjectName objectName(String poolName) throws JMException {
+        return PoolMBeanRegistration.objectName(MBEAN_TYPE, poolName);
+    }
+
+    /**
+     * @return 등록된 ObjectName. 등록되지 않았으면 null
+     */
+    public ObjectName getObjectName() {
+        return registration.getObjectName();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionHoldStats{" +
+            "maxCallers=" + maxCallers +
+            ", holdWarnThresholdMillis=" + warnThresholdMillis +
+            ", callerCount=" + getCallerCount() +
+            ", objectName=" + getObjectName() +
+            '}';
+    }
+
+    /**
+     * 물리 커넥션 하나의 현재 점유. interceptor 가 하나씩 가지고 빌려줄 때마다 다시 쓴다.
+     *
+     * <p>statements, rows 는 커넥션을 빌린 스레드만 바꾸므로 원자적 연산 없이 더한다. watchdog 과 JMX 가 읽는 값은 조금 늦을 수 있다.</p>
+     */
+    static final class Hold {
+
+        final AtomicBoolean held = new AtomicBoolean();
+
+        volatile long startNanos;
+        volatile String key;
+        volatile String threadName;
+        volatile PooledConnection connection;
+        HoldCounter counter;
+
+        long statements;
+        long rows;
+
+        /**
+         * watchdog 이 마지막으로 로그를 남긴 점유의 startNanos. watchdog 스레드만 읽고 쓴다.
+         */
+        long reportedStartNanos;
+
+        /**
+         * Statement 실행 한 번을 더한다.
+         *
+         * @param rows 변경된 row 수. 알 수 없으면 음수
+         */
+        void executed(long rows) {
+            statements++;
+            if (rows > 0) {
+                this.rows += rows;
+            }
+        }
+    }
+
+    /**
+     * 키 하나의 누적값. 스레드 id 로 고른 stripe({@link StripedLongArray})에 더하며, stripe 는 처음 쓰일 때 만든다.
+     * 조회는 모든 stripe 를 더하므로 기록과 동시에 읽으면 값끼리 조금 어긋날 수 있다.
+     */
+    static final class HoldCounter {
+
+        private static final int HOLDS = 0;
+        private static final int HOLD_NANOS = 1;
+        private static final int MAX_HOLD_NANOS = 2;
+        private static final int STATEMENTS = 3;
+        private static final int ROWS = 4;
+
+        /**
+         * 이웃한 stripe 의 값이 같은 cache line 에 놓이지 않도록 128 byte 로 잡는다.
+         */
+        private static final int STRIPE_LENGTH = 16;
+
+        private final StripedLongArray stripes = new StripedLongArray(STRIPE_LENGTH);
+
+        void record(long holdNanos, long statements, long rows) {
+            AtomicLongArray stripe = stripes.stripe();
+            stripe.incrementAndGet(HOLDS);
+            stripe.addAndGet(HOLD_NANOS, holdNanos);
+            if (statements > 0) {
+                stripe.addAndGet(STATEMENTS, statements);
+            }
+            if (rows > 0) {
+                stripe.addAndGet(ROWS, rows);
+            }
+            long max = stripe.get(MAX_HOLD_NANOS);
+            while (holdNanos > max && !stripe.compareAndSet(MAX_HOLD_NANOS, max, holdNanos)) {
+                max = stripe.get(MAX_HOLD_NANOS);
+            }
+        }
+
+        /**
+         * 지금까지 기록을 버린다. {@link StripedLongArray#reset()} 참고
+         */
+        void reset() {
+            stripes.reset();
+        }
+
+        HoldSnapshot snapshot(String key) {
+            return new HoldSnapshot(key, stripes.sum(HOLDS), stripes.sum(HOLD_NANOS), stripes.max(MAX_HOLD_NANOS),
+                stripes.sum(STATEMENTS), stripes.sum(ROWS));
+        }
+    }
+}
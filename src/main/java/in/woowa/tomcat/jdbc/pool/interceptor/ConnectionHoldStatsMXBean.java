@@ -0,0 +1,40 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.List;
+
+/**
+ * pool 별 호출자 커넥션 점유 통계의 JMX 인터페이스. {@link ConnectionHoldStats} 참고
+ *
+ * <p>ObjectName : <code>in.woowa.tomcat.jdbc.pool.interceptor:type=ConnectionHoldStats,pool="poolName"</code></p>
+ */
+public interface ConnectionHoldStatsMXBean {
+
+    /**
+     * @return 호출자별 통계. 누적 점유 시간이 큰 순서
+     */
+    List<HoldSnapshot> getCallers();
+
+    /**
+     * @return 지금 빌려준 커넥션. 오래 쥐고 있는 순서
+     */
+    List<HeldConnection> getHeldConnections();
+
+    int getCallerCount();
+
+    int getMaxCallers();
+
+    /**
+     * @return 이 시간(ms) 이상 쥐고 있는 커넥션을 로그로 남긴다. 0 이면 남기지 않는다.
+     */
+    long getHoldWarnThresholdMillis();
+
+    /**
+     * @return holdWarnThreshold 를 넘겨 로그로 남긴 점유 횟수
+     */
+    long getLongHoldCount();
+
+    /**
+     * 모든 호출자의 기록을 버린다. 호출자 목록과 지금 빌려준 커넥션은 유지된다.
+     */
+    void reset();
+}
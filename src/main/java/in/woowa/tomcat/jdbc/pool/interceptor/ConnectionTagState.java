@@ -0,0 +1,22 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * SQL 을 실행하는 커넥션의 상태. commentTemplate 의 <code>{readOnly}</code>, <code>{tx}</code> 값이며
+ * {@link CommentSegment#getValue(String, boolean, ConnectionTagState)} 로 전달된다.
+ *
+ * <p>{@link SqlCallerInfoCommentInterceptor} 는 커넥션을 빌려줄 때마다 첫 SQL 에서 드라이버에게 한 번 묻고, 이후에는 애플리케이션이 pool 의
+ * Connection 으로 부르는 <code>setReadOnly</code>, <code>setAutoCommit</code> 을 지켜보며 따라간다. SQL 마다 드라이버에 묻지 않는다.
+ * 그래서 대여 중에 <code>SET TRANSACTION READ ONLY</code> 같은 SQL 로 바꾼 상태는 알지 못한다.
+ * ConnectionState interceptor 처럼 빌려줄 때 드라이버 커넥션을 직접 되돌리는 설정은 다음 대여의 첫 SQL 에서 반영된다.</p>
+ */
+public interface ConnectionTagState {
+
+    /**
+     * @return 드라이버에서 상태를 읽었으면 true. false 이면 {@link #isReadOnly()}, {@link #isAutoCommit()} 값은 의미가 없다.
+     */
+    boolean isKnown();
+
+    boolean isReadOnly();
+
+    boolean isAutoCommit();
+}
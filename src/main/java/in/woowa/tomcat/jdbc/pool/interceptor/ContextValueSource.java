@@ -0,0 +1,17 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * commentTemplate 의 <code>{context:key}</code> 값을 현재 스레드 문맥(요청 trace id, endpoint 등)에서 읽어 온다.
+ *
+ * <p>기본 구현은 스레드를 넘어 전달되는 {@link CallerContext} 를 먼저 읽고 값이 없으면 SLF4J MDC 를 읽는다. 다른 저장소를 쓰려면 구현 클래스 이름을 <code>contextValueSource</code> 프라퍼티로 지정한다.
+ * 구현체는 public 기본 생성자가 있어야 하며 pool 당 한 번 생성된다. SQL 마다 호출되므로 가볍게 구현해야 한다.</p>
+ */
+@FunctionalInterface
+public interface ContextValueSource {
+
+    /**
+     * @param key 템플릿에 지정한 key
+     * @return 현재 스레드의 값. 없으면 null
+     */
+    String get(String key);
+}
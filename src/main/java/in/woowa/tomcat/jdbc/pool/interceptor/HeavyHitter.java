@@ -0,0 +1,60 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * {@link HeavyHitters} 가 추적 중인 키 하나의 추정값. 실제 값은 <code>getCount() - getCountError()</code> 이상 <code>getCount()</code> 이하이다.
+ */
+public final class HeavyHitter {
+
+    private final String key;
+    private final long count;
+    private final long countError;
+    private final long totalNanos;
+    private final long totalNanosError;
+
+    HeavyHitter(String key, long count, long countError, long totalNanos, long totalNanosError) {
+        this.key = key;
+        this.count = count;
+        this.countError = countError;
+        this.totalNanos = totalNanos;
+        this.totalNanosError = totalNanosError;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 추정 실행 횟수. 실제보다 작지 않다.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return {@link #getCount()} 의 최대 과대 추정치. 처음부터 추적한 키이면 0
+     */
+    public long getCountError() {
+        return countError;
+    }
+
+    public double getTotalMillis() {
+        return totalNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return {@link #getTotalMillis()} 의 최대 과대 추정치
+     */
+    public double getTotalMillisError() {
+        return totalNanosError / 1_000_000.0;
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return key + " count=" + count + (countError > 0 ? "(-" + countError + ")" : "") +
+            " totalMillis=" + String.format("%.3f", getTotalMillis());
+    }
+}
@@ -0,0 +1,160 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * pool 하나에서 실행 횟수와 누적 실행 시간이 큰 호출자 키를 고정된 메모리로 추적한다. <code>topKey</code> interceptor 프라퍼티를 지정하면 만들어진다.
+ *
+ * <p>ORM 이 만드는 SQL 처럼 키 종류가 수천 개여도 실행 횟수 기준, 실행 시간 기준 {@link SpaceSavingSketch} 가 각각
+ * {@link #getCapacity()} 개의 counter 만 가진다. 키는 Statement 를 만들 때 topKey 템플릿으로 한 번 정한다.</p>
+ *
+ * <p>pool 이 시작될 때 {@link HeavyHittersMXBean} 으로 platform MBeanServer 에 등록되고 pool 이 닫힐 때 해제된다.
+ * <code>topLogInterval</code> 을 지정하면 그 주기(초)마다 상위 키를 INFO 로그로 남긴다.</p>
+ */
+public final class HeavyHitters implements HeavyHittersMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HeavyHitters.class);
+
+    private static final String MBEAN_TYPE = "HeavyHitters";
+
+    static final int DEFAULT_CAPACITY = 128;
+    static final int MAX_CAPACITY = 4096;
+    static final int DEFAULT_TOP_K = 10;
+
+    private final int topK;
+    private final long logIntervalSeconds;
+    private final SpaceSavingSketch byCount;
+    private final SpaceSavingSketch byTime;
+    private final LongAdder totalCount = new LongAdder();
+
+    private final PoolMBeanRegistration registration = new PoolMBeanRegistration(this, MBEAN_TYPE);
+
+    private ScheduledExecutorService logExecutor;
+
+    /**
+     * @param capacity           기준별로 추적할 최대 키 개수
+     * @param topK               JMX 와 로그로 보여줄 상위 키 개수. capacity 이하
+     * @param logIntervalSeconds 상위 키를 로그로 남길 주기(초). 0 이면 남기지 않는다.
+     */
+    public HeavyHitters(int capacity, int topK, long logIntervalSeconds) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY + " : " + capacity);
+        }
+        if (topK <= 0 || topK > capacity) {
+            throw new IllegalArgumentException("topK must be between 1 and capacity " + capacity + " : " + topK);
+        }
+        if (logIntervalSeconds < 0) {
+            throw new IllegalArgumentException("logIntervalSeconds must not be negative : " + logIntervalSeconds);
+        }
+        this.topK = topK;
+        this.logIntervalSeconds = logIntervalSeconds;
+        this.byCount = new SpaceSavingSketch(SpaceSavingSketch.Rank.COUNT, capacity);
+        this.byTime = new SpaceSavingSketch(SpaceSavingSketch.Rank.TIME, capacity);
+    }
+
+    /**
+     * @param key   호출자 키
+     * @param nanos 실행 시간
+     */
+    public void record(String key, long nanos) {
+        byCount.add(key, nanos);
+        byTime.add(key, nanos);
+        totalCount.increment();
+    }
+
+    @Override
+    public List<HeavyHitter> getTopByCount() {
+        return byCount.top(topK);
+    }
+
+    @Override
+    public List<HeavyHitter> getTopByTime() {
+        return byTime.top(topK);
+    }
+
+    @Override
+    public int getTopK() {
+        return topK;
+    }
+
+    @Override
+    public int getCapacity() {
+        return byCount.getCapacity();
+    }
+
+    @Override
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    @Override
+    public void reset() {
+        byCount.clear();
+        byTime.clear();
+        totalCount.reset();
+    }
+
+    /**
+     * MXBean 을 등록하고, logIntervalSeconds 가 0 보다 크면 주기적인 로그를 시작한다.
+     *
+     * @param poolName tomcat jdbc pool 이름
+     */
+    synchronized void start(String poolName) {
+        registration.register(poolName);
+        if (logIntervalSeconds > 0 && logExecutor == null) {
+            logExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sql-caller-info-heavy-hitters-" + poolName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            logExecutor.scheduleAtFixedRate(() -> logTop(poolName), logIntervalSeconds, logIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    synchronized void stop() {
+        registration.unregister();
+        if (logExecutor != null) {
+            logExecutor.shutdownNow();
+            logExecutor = null;
+        }
+    }
+
+    void logTop(String poolName) {
+        try {
+            log.info("heavy hitters of pool {} (total {})\n  by count : {}\n  by time  : {}", poolName, getTotalCount(),
+                getTopByCount(), getTopByTime());
+        } catch (RuntimeException ex) {
+            log.warn("heavy hitters log failed : {}", ex.toString());
+        }
+    }
+
+    static ObjectName objectName(String poolName) throws JMException {
+        return PoolMBeanRegistration.objectName(MBEAN_TYPE, poolName);
+    }
+
+    /**
+     * @return 등록된 ObjectName. 등록되지 않았으면 null
+     */
+    public ObjectName getObjectName() {
+        return registration.getObjectName();
+    }
+
+    @Override
+    public String toString() {
+        return "HeavyHitters{" +
+            "capacity=" + getCapacity() +
+            ", topK=" + topK +
+            ", logIntervalSeconds=" + logIntervalSeconds +
+            ", objectName=" + getObjectName() +
+            '}';
+    }
+}
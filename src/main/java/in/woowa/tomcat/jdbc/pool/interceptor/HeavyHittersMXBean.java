@@ -0,0 +1,35 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.List;
+
+/**
+ * pool 별 상위 호출자 추적의 JMX 인터페이스. {@link HeavyHitters} 참고
+ *
+ * <p>ObjectName : <code>in.woowa.tomcat.jdbc.pool.interceptor:type=HeavyHitters,pool="poolName"</code></p>
+ */
+public interface HeavyHittersMXBean {
+
+    /**
+     * @return 실행 횟수가 많은 순서의 상위 topK 개
+     */
+    List<HeavyHitter> getTopByCount();
+
+    /**
+     * @return 누적 실행 시간이 큰 순서의 상위 topK 개
+     */
+    List<HeavyHitter> getTopByTime();
+
+    int getTopK();
+
+    int getCapacity();
+
+    /**
+     * @return 기록된 전체 실행 횟수
+     */
+    long getTotalCount();
+
+    /**
+     * 추적 중인 키를 모두 버린다.
+     */
+    void reset();
+}
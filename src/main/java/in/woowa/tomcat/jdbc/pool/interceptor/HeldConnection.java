@@ -0,0 +1,47 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 지금 빌려준 커넥션 하나. {@link ConnectionHoldStats#getHeldConnections()} 를 부른 시점의 값이다.
+ */
+public final class HeldConnection {
+
+    private final String caller;
+    private final String threadName;
+    private final long heldNanos;
+    private final long statementCount;
+
+    HeldConnection(String caller, String threadName, long heldNanos, long statementCount) {
+        this.caller = caller;
+        this.threadName = threadName;
+        this.heldNanos = heldNanos;
+        this.statementCount = statementCount;
+    }
+
+    public String getCaller() {
+        return caller;
+    }
+
+    /**
+     * @return 커넥션을 빌린 스레드 이름
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public double getHeldMillis() {
+        return heldNanos / 1_000_000.0;
+    }
+
+    public long getStatementCount() {
+        return statementCount;
+    }
+
+    long getHeldNanos() {
+        return heldNanos;
+    }
+
+    @Override
+    public String toString() {
+        return caller + " thread=" + threadName + " heldMillis=" + String.format("%.3f", getHeldMillis()) + " statements=" + statementCount;
+    }
+}
@@ -0,0 +1,78 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 한 호출자 키의 커넥션 점유 누적값을 한 시점에 모은 불변 결과. {@link ConnectionHoldStats} 참고
+ */
+public final class HoldSnapshot {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String caller;
+    private final long holdCount;
+    private final long totalHoldNanos;
+    private final long maxHoldNanos;
+    private final long statementCount;
+    private final long rowCount;
+
+    HoldSnapshot(String caller, long holdCount, long totalHoldNanos, long maxHoldNanos, long statementCount, long rowCount) {
+        this.caller = caller;
+        this.holdCount = holdCount;
+        this.totalHoldNanos = totalHoldNanos;
+        this.maxHoldNanos = maxHoldNanos;
+        this.statementCount = statementCount;
+        this.rowCount = rowCount;
+    }
+
+    public String getCaller() {
+        return caller;
+    }
+
+    /**
+     * @return 빌렸다가 반납한 횟수
+     */
+    public long getHoldCount() {
+        return holdCount;
+    }
+
+    public double getTotalHoldMillis() {
+        return totalHoldNanos / NANOS_PER_MILLI;
+    }
+
+    public double getMeanHoldMillis() {
+        return holdCount == 0 ? 0 : totalHoldNanos / NANOS_PER_MILLI / holdCount;
+    }
+
+    public double getMaxHoldMillis() {
+        return maxHoldNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return 빌린 동안 실행한 Statement 수. executeBatch 는 한 번으로 센다.
+     */
+    public long getStatementCount() {
+        return statementCount;
+    }
+
+    /**
+     * @return executeUpdate, executeBatch 가 돌려준 변경된 row 수의 합
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    long getTotalHoldNanos() {
+        return totalHoldNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HoldSnapshot{" +
+            "caller='" + caller + '\'' +
+            ", holdCount=" + holdCount +
+            ", totalHoldMillis=" + getTotalHoldMillis() +
+            ", maxHoldMillis=" + getMaxHoldMillis() +
+            ", statementCount=" + statementCount +
+            ", rowCount=" + rowCount +
+            '}';
+    }
+}
@@ -0,0 +1,90 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * SQL 실행 시간을 모으는 lock-free log bucket 히스토그램.
+ *
+ * <p>2 의 거듭제곱 구간마다 {@link #SUB_BUCKETS} 개로 나눈 bucket 에 개수만 센다. bucket 경계와 실제 값의 차이는 최대 1/8(12.5%)이며,
+ * {@link #MAX_EXPONENT} 를 넘는 값(약 18분 이상)은 마지막 bucket 에 들어간다.</p>
+ *
+ * <p>기록은 스레드 id 로 고른 stripe({@link StripedLongArray})의 {@link AtomicLongArray} 에 원자적 증가 두 번이다. stripe 는 처음 쓰일 때 만들어지므로
+ * 한두 스레드만 쓰는 키는 stripe 하나 분량(약 2.5 KB)만 차지한다. 조회는 모든 stripe 를 더하므로 기록과 동시에 읽으면
+ * 개수와 합계가 서로 조금 어긋날 수 있다.</p>
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private static final int ERRORS = BUCKET_COUNT;
+    private static final int TOTAL_NANOS = BUCKET_COUNT + 1;
+
+    private final StripedLongArray stripes = new StripedLongArray(BUCKET_COUNT + 2);
+
+    /**
+     * @param nanos  실행 시간
+     * @param failed 예외로 끝났으면 true
+     */
+    public void record(long nanos, boolean failed) {
+        AtomicLongArray stripe = stripes.stripe();
+        stripe.incrementAndGet(bucketIndex(nanos));
+        stripe.addAndGet(TOTAL_NANOS, nanos);
+        if (failed) {
+            stripe.incrementAndGet(ERRORS);
+        }
+    }
+
+    /**
+     * 지금까지 기록을 버린다. {@link StripedLongArray#reset()} 참고
+     */
+    public void reset() {
+        stripes.reset();
+    }
+
+    /**
+     * @param key 스냅샷에 붙일 이름
+     */
+    public LatencySnapshot snapshot(String key) {
+        long[] buckets = new long[BUCKET_COUNT];
+        long errorCount = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < stripes.stripeCount(); i++) {
+            AtomicLongArray stripe = stripes.stripe(i);
+            if (stripe == null) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets[bucket] += stripe.get(bucket);
+            }
+            errorCount += stripe.get(ERRORS);
+            totalNanos += stripe.get(TOTAL_NANOS);
+        }
+        return new LatencySnapshot(key, buckets, errorCount, totalNanos);
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return nanos < 0 ? 0 : (int) nanos;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return bucket 에 들어가는 가장 큰 값
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,98 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 한 호출자 키의 {@link LatencyHistogram} 를 한 시점에 모은 불변 결과. 시간 단위는 µs 이며 bucket 상한값 기준이다.
+ */
+public final class LatencySnapshot {
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private final String caller;
+    private final long[] buckets;
+    private final long count;
+    private final long errorCount;
+    private final long totalNanos;
+
+    LatencySnapshot(String caller, long[] buckets, long errorCount, long totalNanos) {
+        this.caller = caller;
+        this.buckets = buckets;
+        long sum = 0;
+        for (long bucket : buckets) {
+            sum += bucket;
+        }
+        this.count = sum;
+        this.errorCount = errorCount;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * @param percentile 0 보다 크고 1 이하. 예) 0.99
+     * @return 해당 백분위 값이 들어 있는 bucket 의 상한(ns). 기록이 없으면 0
+     */
+    public long percentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return LatencyHistogram.bucketUpperBound(i);
+            }
+        }
+        return LatencyHistogram.bucketUpperBound(buckets.length - 1);
+    }
+
+    public String getCaller() {
+        return caller;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public double getTotalMillis() {
+        return totalNanos / 1_000_000.0;
+    }
+
+    public double getMeanMicros() {
+        return count == 0 ? 0 : totalNanos / NANOS_PER_MICRO / count;
+    }
+
+    public double getP50Micros() {
+        return percentileNanos(0.5) / NANOS_PER_MICRO;
+    }
+
+    public double getP99Micros() {
+        return percentileNanos(0.99) / NANOS_PER_MICRO;
+    }
+
+    public double getP999Micros() {
+        return percentileNanos(0.999) / NANOS_PER_MICRO;
+    }
+
+    public double getMaxMicros() {
+        return percentileNanos(1.0) / NANOS_PER_MICRO;
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{" +
+            "caller='" + caller + '\'' +
+            ", count=" + count +
+            ", errorCount=" + errorCount +
+            ", p50Micros=" + getP50Micros() +
+            ", p99Micros=" + getP99Micros() +
+            ", p999Micros=" + getP999Micros() +
+            '}';
+    }
+}
@@ -0,0 +1,157 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 주석에 넣을 호출자 host 이름과 IP 를 JVM 당 한 번 알아낸다.
+ *
+ * <p>컨테이너 등에서 DNS 설정이 좋지 않으면 {@link InetAddress#getLocalHost()} 가 수 초 동안 멈출 수 있다.
+ * interceptor 는 최초 getConnection() 시점에 초기화되므로 여기서 기다리면 첫 커넥션 획득이 그만큼 늦어진다.
+ * 그래서 생성 즉시 네트워크 인터페이스 주소와 환경 변수(HOSTNAME, COMPUTERNAME)로 대체값을 정해 두고,
+ * 실제 조회는 daemon 스레드에서 최대 {@link #DEFAULT_TIMEOUT_MILLIS} 까지만 기다린다. 제한 시간 안에 끝나지 않으면 대체값을 계속 사용한다.</p>
+ *
+ * <p>값은 주석용으로 치환(sanitize)된 상태로 volatile 필드에 보관되므로 SQL 마다 드는 비용은 volatile 읽기 한 번이다.</p>
+ */
+final class LocalHostResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalHostResolver.class);
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 5000L;
+
+    private static final String UNKNOWN = "unknown";
+
+    private static volatile LocalHostResolver instance;
+
+    private volatile String hostName;
+    private volatile String hostAddress;
+    private volatile boolean settled;
+
+    /**
+     * @param lookup        실제 조회. 기본은 {@link InetAddress#getLocalHost()}
+     * @param timeoutMillis 조회를 기다리는 최대 시간
+     */
+    LocalHostResolver(Callable<InetAddress> lookup, long timeoutMillis) {
+        String interfaceAddress = scanInterfaceAddress();
+        this.hostAddress = CommentSanitizer.sanitize(interfaceAddress == null ? UNKNOWN : interfaceAddress);
+        this.hostName = CommentSanitizer.sanitize(environmentHostName(interfaceAddress));
+
+        Thread resolver = new Thread(() -> resolve(lookup, timeoutMillis), "sql-caller-info-host-resolver");
+        resolver.setDaemon(true);
+        resolver.start();
+    }
+
+    static LocalHostResolver get() {
+        LocalHostResolver resolver = instance;
+        if (resolver == null) {
+            synchronized (LocalHostResolver.class) {
+                resolver = instance;
+                if (resolver == null) {
+                    resolver = new LocalHostResolver(InetAddress::getLocalHost, DEFAULT_TIMEOUT_MILLIS);
+                    instance = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * 테스트에서 느린 조회 등을 흉내 내기 위해 JVM 단위 인스턴스를 바꾼다.
+     */
+    static void install(LocalHostResolver resolver) {
+        instance = resolver;
+    }
+
+    private void resolve(Callable<InetAddress> lookup, long timeoutMillis) {
+        FutureTask<InetAddress> task = new FutureTask<>(lookup);
+        Thread lookupThread = new Thread(task, "sql-caller-info-host-lookup");
+        lookupThread.setDaemon(true);
+        lookupThread.start();
+
+        try {
+            InetAddress localHost = task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            hostName = CommentSanitizer.sanitize(localHost.getHostName());
+            hostAddress = CommentSanitizer.sanitize(localHost.getHostAddress());
+            log.info("local host resolved : {} / {}", hostName, hostAddress);
+        } catch (TimeoutException ex) {
+            task.cancel(true);
+            log.warn("local host lookup did not finish in {}ms. using {} / {}", timeoutMillis, hostName, hostAddress);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.warn("local host lookup failed. using {} / {} : {}", hostName, hostAddress, ex.toString());
+        } finally {
+            settled = true;
+        }
+    }
+
+    private static String environmentHostName(String interfaceAddress) {
+        String name = System.getenv("HOSTNAME");
+        if (name == null || name.isEmpty()) {
+            name = System.getenv("COMPUTERNAME");
+        }
+        if (name == null || name.isEmpty()) {
+            name = interfaceAddress == null ? UNKNOWN : interfaceAddress;
+        }
+        return name;
+    }
+
+    /**
+     * DNS 조회 없이 네트워크 인터페이스에서 주소를 고른다. site local IPv4 를 우선한다.
+     */
+    static String scanInterfaceAddress() {
+        String candidate = null;
+        try {
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback() || networkInterface.isVirtual()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address.isLoopbackAddress() || address.isLinkLocalAddress()) {
+                        continue;
+                    }
+                    if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                        return address.getHostAddress();
+                    }
+                    if (candidate == null || address instanceof Inet4Address) {
+                        candidate = address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException | RuntimeException ex) {
+            log.debug("network interface scan failed", ex);
+        }
+        return candidate;
+    }
+
+    /**
+     * @return 주석용으로 치환된 host 이름
+     */
+    String getHostName() {
+        return hostName;
+    }
+
+    /**
+     * @return 주석용으로 치환된 IP
+     */
+    String getHostAddress() {
+        return hostAddress;
+    }
+
+    /**
+     * @return 조회가 끝났거나 포기해서 값이 더 이상 바뀌지 않으면 true
+     */
+    boolean isSettled() {
+        return settled;
+    }
+}
@@ -0,0 +1,110 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * JDBC {@link Method} 를 처리 방식({@link Action})으로 분류해 두는 identity 기반 조회 테이블.
+ *
+ * <p>java.lang.reflect.Proxy 는 proxy 클래스마다 고정된 Method 인스턴스를 invoke 에 넘겨준다. 그래서 처음 본 Method 만
+ * 이름/파라미터로 분류하고, 이후에는 {@link IdentityHashMap} 조회 한 번으로 처리 방식을 결정한다.
+ * 테이블은 copy-on-write 이므로 조회에는 락이 없다.</p>
+ *
+ * <p>매번 새로 얻은 Method 인스턴스(<code>Class.getMethod</code> 결과 등)가 들어와도 테이블이 무한히 커지지 않도록
+ * {@link #MAX_SIZE} 를 넘으면 더 이상 저장하지 않고 분류만 한다.</p>
+ */
+final class MethodDispatchTable {
+
+    static final int MAX_SIZE = 1024;
+
+    enum Action {
+        /** 아무것도 하지 않고 다음 단계로 넘긴다. */
+        PASS_THROUGH,
+        /** 첫 번째 인자인 SQL 에 주석을 넣는다. */
+        REWRITE_SQL,
+        /** Connection.prepareCall - callablePlacement 를 지정했으면 첫 번째 인자인 SQL 에 주석을 넣고, 생성된 Statement 를 감싼다. */
+        REWRITE_CALL_SQL,
+        /** Statement.addBatch(String) - {@link BatchCommentMode} 에 따라 첫 번째 인자인 SQL 에 주석을 넣는다. */
+        REWRITE_BATCH_SQL,
+        /** PreparedStatement.execute, executeQuery, executeUpdate, executeLargeUpdate - SQL 인자 없이 실행한다. */
+        EXECUTE,
+        /** Statement.executeBatch, executeLargeBatch - 쌓아 둔 batch 를 실행한다. */
+        EXECUTE_BATCH,
+        /** Statement.clearBatch - 쌓아 둔 batch 가 실행 없이 끝난다. */
+        END_BATCH,
+        /** PreparedStatement.setXxx(int, ...) - slowQueryThreshold 를 지정했으면 bind 값을 기억한다. */
+        BIND,
+        /** PreparedStatement.clearParameters - 기억한 bind 값을 지운다. */
+        CLEAR_BINDS,
+        /** Connection.setReadOnly - 호출이 성공하면 {@link ConnectionTagState} 를 바꾼다. */
+        SET_READ_ONLY,
+        /** Connection.setAutoCommit - 호출이 성공하면 {@link ConnectionTagState} 를 바꾼다. */
+        SET_AUTO_COMMIT,
+        /** Connection.close */
+        CLOSE,
+        /** SQL 은 그대로 두고 생성된 Statement 만 감싼다. */
+        DECORATE;
+
+        boolean rewritesSql() {
+            return this == REWRITE_SQL || this == REWRITE_BATCH_SQL;
+        }
+
+        /**
+         * @return DB 에 SQL 을 실행하는 Statement 메소드이면 true
+         */
+        boolean executes() {
+            return this == REWRITE_SQL || this == EXECUTE || this == EXECUTE_BATCH;
+        }
+    }
+
+    private final Function<Method, Action> classifier;
+
+    private volatile Map<Method, Action> actions = new IdentityHashMap<>();
+
+    MethodDispatchTable(Function<Method, Action> classifier) {
+        this.classifier = classifier;
+    }
+
+    Action actionOf(Method method) {
+        Action action = actions.get(method);
+        if (action != null) {
+            return action;
+        }
+        return register(method);
+    }
+
+    private synchronized Action register(Method method) {
+        Map<Method, Action> current = actions;
+        Action action = current.get(method);
+        if (action != null) {
+            return action;
+        }
+
+        action = classifier.apply(method);
+        if (current.size() < MAX_SIZE) {
+            Map<Method, Action> copy = new IdentityHashMap<>(current);
+            copy.put(method, action);
+            actions = copy;
+        }
+        return action;
+    }
+
+    int size() {
+        return actions.size();
+    }
+
+    static boolean hasSqlArgument(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        return parameterTypes.length > 0 && parameterTypes[0] == String.class;
+    }
+
+    /**
+     * @return <code>setInt(int, int)</code> 처럼 bind 번호와 값을 받는 PreparedStatement 의 setXxx 이면 true
+     */
+    static boolean isParameterSetter(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        return parameterTypes.length >= 2 && parameterTypes[0] == int.class && method.getName().startsWith("set");
+    }
+}
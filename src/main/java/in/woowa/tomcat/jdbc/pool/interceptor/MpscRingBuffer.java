@@ -0,0 +1,100 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 여러 스레드가 넣고 한 스레드만 꺼내는 크기 고정 lock-free 큐.
+ *
+ * <p>슬롯마다 sequence 를 두는 D. Vyukov 의 bounded queue 방식이다. 생산자는 tail 을 CAS 로 하나 올려 슬롯을 차지하고,
+ * 값을 쓴 뒤 sequence 를 올려 소비자에게 넘긴다. 가득 차면 기다리지 않고 {@link #offer(Object)} 가 false 를 돌려준다.
+ * 소비자는 한 스레드뿐이므로 head 는 일반 필드이다.</p>
+ *
+ * @param <E> 원소 타입
+ */
+final class MpscRingBuffer<E> {
+
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * 소비자 스레드만 읽고 쓴다.
+     */
+    private long head;
+
+    /**
+     * @param capacity 최대 원소 개수. 2 의 거듭제곱으로 올림한다.
+     */
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY + " : " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return 넣었으면 true, 가득 찼으면 false. 기다리지 않는다.
+     */
+    boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long position = tail.get();
+        for (; ; ) {
+            int index = (int) position & mask;
+            long distance = sequences.get(index) - position;
+            if (distance == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (distance < 0) {
+                // 한 바퀴 전의 원소를 소비자가 아직 꺼내지 않았다.
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 소비자 스레드에서만 호출한다.
+     *
+     * @return 가장 오래된 원소. 비어 있으면 null
+     */
+    E poll() {
+        int index = (int) head & mask;
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * 소비자 스레드에서만 호출한다.
+     */
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,68 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * pool 단위 통계 MXBean 하나를 platform MBeanServer 에 등록/해제한다.
+ *
+ * <p>ObjectName 은 <code>in.woowa.tomcat.jdbc.pool.interceptor:type=&lt;type&gt;,pool="poolName"</code> 이다.
+ * 등록에 실패해도 pool 시작을 막지 않고 경고만 남긴다.</p>
+ */
+final class PoolMBeanRegistration {
+
+    private static final Logger log = LoggerFactory.getLogger(PoolMBeanRegistration.class);
+
+    static final String JMX_DOMAIN = "in.woowa.tomcat.jdbc.pool.interceptor";
+
+    private final Object mbean;
+    private final String type;
+
+    private ObjectName objectName;
+
+    PoolMBeanRegistration(Object mbean, String type) {
+        this.mbean = mbean;
+        this.type = type;
+    }
+
+    synchronized void register(String poolName) {
+        if (objectName != null) {
+            return;
+        }
+        try {
+            ObjectName name = objectName(type, poolName);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+            objectName = name;
+            log.info("{} registered : {}", type, name);
+        } catch (JMException ex) {
+            log.warn("{} not registered : pool {}, {}", type, poolName, ex.toString());
+        }
+    }
+
+    synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            log.debug("{} unregister failed : {}", type, objectName, ex);
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return 등록된 ObjectName. 등록되지 않았으면 null
+     */
+    synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    static ObjectName objectName(String type, String poolName) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=" + type + ",pool=" + ObjectName.quote(poolName));
+    }
+}
@@ -0,0 +1,64 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 최근에 치환(sanitize)한 값을 기억해 두는 작은 direct-mapped 캐시.
+ *
+ * <p>MDC 의 trace id, endpoint 이름 같은 값은 한 요청 동안 같은 String 인스턴스가 SQL 마다 반복해서 들어온다.
+ * 그래서 hash 로 고른 칸 하나만 보고 같은 인스턴스(또는 같은 값)이면 치환 결과를 그대로 돌려준다.
+ * 칸이 겹치면 덮어쓰며, 락 없이 경쟁하는 쓰기는 서로 덮어써도 결과가 틀리지 않는다(불변 항목만 저장한다).</p>
+ */
+final class RecentSanitizedValues {
+
+    static final int DEFAULT_SIZE = 64;
+
+    private final Entry[] entries;
+    private final int mask;
+
+    RecentSanitizedValues() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @param size 칸 수. 2의 거듭제곱으로 올림한다.
+     */
+    RecentSanitizedValues(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive : " + size);
+        }
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size) {
+            capacity <<= 1;
+        }
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return {@link CommentSanitizer#sanitize(String)} 와 같은 결과
+     */
+    String sanitize(String value) {
+        if (value == null) {
+            return "";
+        }
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        Entry entry = entries[index];
+        if (entry != null && (entry.value == value || entry.value.equals(value))) {
+            return entry.sanitized;
+        }
+
+        String sanitized = CommentSanitizer.sanitize(value);
+        entries[index] = new Entry(value, sanitized);
+        return sanitized;
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final String sanitized;
+
+        private Entry(String value, String sanitized) {
+            this.value = value;
+            this.sanitized = sanitized;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * <code>mode=session</code> 에서 호출자 정보를 DB 세션에 남기는 방법. <code>sessionDialect</code> interceptor 프라퍼티로 지정하며,
+ * 지정하지 않으면 커넥션의 <code>DatabaseMetaData.getDatabaseProductName()</code> 으로 고른다.
+ *
+ * <p>모두 드라이버 커넥션에 직접 실행하므로 다른 interceptor 를 거치지 않는다.</p>
+ */
+public enum SessionTagDialect {
+
+    /**
+     * <code>SET @SQL_CALLER_INFO = ?</code>. 같은 세션에서 <code>SELECT @SQL_CALLER_INFO</code> 로 확인한다.
+     */
+    H2("h2", "SET @SQL_CALLER_INFO = ?"),
+
+    /**
+     * MySQL, MariaDB : <code>SET @sql_caller_info = ?</code>.
+     * DBA 는 <code>performance_schema.user_variables_by_thread</code> 에서 확인한다.
+     */
+    MYSQL("mysql", "SET @sql_caller_info = ?"),
+
+    /**
+     * SQL Server : <code>CONTEXT_INFO</code> 에 최대 128 byte 를 넣는다.
+     * DBA 는 <code>sys.dm_exec_sessions</code>, <code>sys.dm_exec_requests</code> 의 <code>context_info</code> 를 VARCHAR 로 바꿔 확인한다.
+     */
+    SQLSERVER("sqlserver", "DECLARE @sql_caller_info VARBINARY(128) = CAST(CAST(? AS VARCHAR(128)) AS VARBINARY(128)); SET CONTEXT_INFO @sql_caller_info"),
+
+    /**
+     * 그 밖의 DB : JDBC 표준 <code>Connection.setClientInfo("ApplicationName", tag)</code>.
+     * PostgreSQL 은 <code>application_name</code> 으로 보이며, 지원하지 않는 드라이버는 무시하거나 경고만 남긴다.
+     */
+    CLIENT_INFO("clientInfo", null) {
+        @Override
+        void apply(Connection connection, String tag) throws SQLException {
+            connection.setClientInfo(CLIENT_INFO_NAME, tag);
+        }
+    };
+
+    static final String CLIENT_INFO_NAME = "ApplicationName";
+
+    private final String propertyValue;
+    private final String sql;
+
+    SessionTagDialect(String propertyValue, String sql) {
+        this.propertyValue = propertyValue;
+        this.sql = sql;
+    }
+
+    /**
+     * @param connection 드라이버 커넥션
+     * @param tag        commentTemplate 으로 만든 값. 주석 구분자 없이 치환(sanitize)된 상태이다.
+     */
+    void apply(Connection connection, String tag) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, tag);
+            statement.execute();
+        }
+    }
+
+    /**
+     * @param value <code>sessionDialect</code> 프라퍼티 값
+     * @return 지정한 dialect. <code>auto</code> 이면 null
+     */
+    static SessionTagDialect of(String value) {
+        if ("auto".equalsIgnoreCase(value)) {
+            return null;
+        }
+        for (SessionTagDialect dialect : values()) {
+            if (dialect.propertyValue.equalsIgnoreCase(value)) {
+                return dialect;
+            }
+        }
+        throw new IllegalArgumentException("sessionDialect '" + value + "' must be one of auto, h2, mysql, sqlserver, clientInfo.");
+    }
+
+    /**
+     * @param productName <code>DatabaseMetaData.getDatabaseProductName()</code>
+     */
+    static SessionTagDialect detect(String productName) {
+        if (productName == null) {
+            return CLIENT_INFO;
+        }
+        String name = productName.toLowerCase(Locale.ROOT);
+        if (name.startsWith("h2")) {
+            return H2;
+        }
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        }
+        if (name.contains("sql server")) {
+            return SQLSERVER;
+        }
+        return CLIENT_INFO;
+    }
+}
@@ -0,0 +1,80 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * {@link SlowQueryLog} 가 {@link SlowQueryListener} 에 넘기는 느린 Statement 실행 한 건.
+ *
+ * <p>모든 값은 Statement 를 실행한 스레드에서 만들어 두므로, 다른 스레드에서 읽어도 Statement 상태와 무관하다.</p>
+ */
+public final class SlowQuery {
+
+    private final long timestampMillis;
+    private final String threadName;
+    private final String tag;
+    private final String sql;
+    private final long elapsedNanos;
+    private final boolean failed;
+    private final String binds;
+
+    SlowQuery(long timestampMillis, String threadName, String tag, String sql, long elapsedNanos, boolean failed, String binds) {
+        this.timestampMillis = timestampMillis;
+        this.threadName = threadName;
+        this.tag = tag;
+        this.sql = sql;
+        this.elapsedNanos = elapsedNanos;
+        this.failed = failed;
+        this.binds = binds;
+    }
+
+    /**
+     * @return 실행이 끝난 시각(epoch millis)
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * @return commentTemplate 값. 주석 기호 없이 SQL 주석에 넣는 내용과 같다.
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @return 주석을 넣기 전 SQL. SQL 인자 없는 executeBatch 이면 null
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1_000_000.0;
+    }
+
+    /**
+     * @return 실행이 예외로 끝났으면 true
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * @return <code>[1=10, 2='abc']</code> 형태의 bind 값. PreparedStatement 가 아니거나 slowQueryMaxBinds=0 이면 null
+     */
+    public String getBinds() {
+        return binds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3f", getElapsedMillis()) + "ms" + (failed ? " failed" : "") +
+            " [" + tag + "] " + sql + (binds == null ? "" : " binds=" + binds) + " thread=" + threadName;
+    }
+}
@@ -0,0 +1,14 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * slowQueryThreshold 를 넘은 Statement 실행을 받는다.
+ *
+ * <p>기본 구현은 SLF4J WARN 로그이다. 다른 곳으로 보내려면 구현 클래스 이름을 <code>slowQueryListener</code> 프라퍼티로 지정한다.
+ * 구현체는 public 기본 생성자가 있어야 하며 pool 당 한 번 생성된다. JDBC 스레드가 아닌 {@link SlowQueryLog} 의 배경 스레드 하나에서만 호출되므로
+ * 동기화는 필요 없지만, 오래 걸리면 그동안 쌓인 이벤트가 버려질 수 있다.</p>
+ */
+@FunctionalInterface
+public interface SlowQueryListener {
+
+    void onSlowQuery(SlowQuery slowQuery);
+}
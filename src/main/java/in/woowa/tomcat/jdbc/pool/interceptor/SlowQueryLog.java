@@ -0,0 +1,310 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * pool 하나의 느린 Statement 실행을 배경 스레드에서 {@link SlowQueryListener} 로 넘긴다. <code>slowQueryThreshold</code> interceptor 프라퍼티를 지정하면 만들어진다.
+ *
+ * <p>JDBC 스레드는 실행 시간이 threshold 이상일 때만 호출자 태그와 bind 값을 문자열로 만들어 {@link MpscRingBuffer} 에 넣고 바로 돌아간다.
+ * 로그 I/O 는 pool 당 daemon 스레드 하나가 맡는다. 버퍼가 가득 차면 기다리지 않고 이벤트를 버린 뒤 개수만 세고,
+ * 배경 스레드가 버려진 개수를 WARN 로그로 남긴다.</p>
+ *
+ * <p>배경 스레드는 버퍼가 비면 잠들고, 생산자가 깨운다. 깨우는 신호를 놓쳐도 {@link #IDLE_PARK_NANOS} 뒤에는 다시 살펴본다.</p>
+ *
+ * <p>{@link MpscRingBuffer} 는 꺼내는 스레드가 하나여야 한다. listener 가 오래 걸려 stop 에서 기다리는 동안 배경 스레드가 끝나지 않으면
+ * 그 스레드를 계속 기억해 두고, 끝날 때까지 start 는 새 스레드를 만들지 않는다. 멈춤 flag 는 start 마다 따로 두므로
+ * 다음 start 가 끝나 가는 스레드를 되살리지 않는다.</p>
+ */
+public final class SlowQueryLog {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    static final int DEFAULT_BUFFER_SIZE = 1024;
+    static final int MAX_BUFFER_SIZE = 65536;
+    static final int DEFAULT_MAX_BINDS = 32;
+    static final int MAX_BINDS_LIMIT = 1024;
+
+    /**
+     * bind 값 하나를 로그에 남길 최대 글자 수
+     */
+    static final int MAX_BIND_LENGTH = 100;
+
+    static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * stop, start 에서 이전 배경 스레드가 끝나기를 기다리는 최대 시간(ms)
+     */
+    static final long JOIN_TIMEOUT_MILLIS = TimeUnit.NANOSECONDS.toMillis(IDLE_PARK_NANOS) * 10;
+
+    /**
+     * setNull 로 지정한 bind 값. 아직 지정하지 않은 자리(null)와 구분한다.
+     */
+    static final Object NULL = new Object();
+
+    static final SlowQueryListener LOGGING_LISTENER = slowQuery -> log.warn("slow query {}", slowQuery);
+
+    private final long thresholdNanos;
+    private final int maxBinds;
+    private final SlowQueryListener listener;
+    private final MpscRingBuffer<SlowQuery> buffer;
+
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder deliveredCount = new LongAdder();
+
+    /**
+     * 배경 스레드만 쓴다.
+     */
+    private long reportedDroppedCount;
+
+    /**
+     * 지금 버퍼를 꺼내는 배경 스레드. stop 했지만 아직 끝나지 않은 스레드일 수도 있다.
+     */
+    private volatile Drainer drainer;
+
+    /**
+     * @param thresholdMillis 이 시간(ms) 이상 걸린 실행을 남긴다. 0 이면 모든 실행을 남긴다.
+     * @param bufferSize      배경 스레드에 넘기기 전 쌓아 둘 최대 이벤트 개수. 2 의 거듭제곱으로 올림한다.
+     * @param maxBinds        Statement 당 남길 최대 bind 개수. 0 이면 bind 값을 남기지 않는다.
+     * @param listener        이벤트를 받을 곳
+     */
+    public SlowQueryLog(long thresholdMillis, int bufferSize, int maxBinds, SlowQueryListener listener) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("thresholdMillis must not be negative : " + thresholdMillis);
+        }
+        if (bufferSize <= 0 || bufferSize > MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException("bufferSize must be between 1 and " + MAX_BUFFER_SIZE + " : " + bufferSize);
+        }
+        if (maxBinds < 0 || maxBinds > MAX_BINDS_LIMIT) {
+            throw new IllegalArgumentException("maxBinds must be between 0 and " + MAX_BINDS_LIMIT + " : " + maxBinds);
+        }
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.maxBinds = maxBinds;
+        this.listener = listener == null ? LOGGING_LISTENER : listener;
+        this.buffer = new MpscRingBuffer<>(bufferSize);
+    }
+
+    /**
+     * @return elapsedNanos 가 threshold 이상이면 true
+     */
+    boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /**
+     * 기다리지 않고 이벤트를 넘긴다.
+     *
+     * @return 버퍼가 가득 차서 버렸으면 false
+     */
+    boolean offer(SlowQuery slowQuery) {
+        if (!buffer.offer(slowQuery)) {
+            droppedCount.increment();
+            return false;
+        }
+        final Drainer current = drainer;
+        if (current != null && current.parked) {
+            LockSupport.unpark(current.thread);
+        }
+        return true;
+    }
+
+    /**
+     * 배경 스레드를 시작한다. 시작 전에 들어온 이벤트는 버퍼 크기만큼 남아 있다가 넘겨진다.
+     * stop 한 이전 스레드가 아직 끝나지 않았으면 {@link #JOIN_TIMEOUT_MILLIS} 까지 기다리고, 그래도 남아 있으면 시작하지 않는다.
+     *
+     * @param poolName tomcat jdbc pool 이름
+     */
+    synchronized void start(String poolName) {
+        final Drainer previous = drainer;
+        if (previous != null) {
+            if (previous.running) {
+                return;
+            }
+            if (!previous.await()) {
+                log.warn("slow query log not restarted. previous thread {} is still running", previous.thread.getName());
+                return;
+            }
+        }
+        Drainer started = new Drainer("sql-caller-info-slow-query-" + poolName);
+        drainer = started;
+        started.thread.start();
+    }
+
+    /**
+     * 배경 스레드를 멈춘다. 남은 이벤트는 배경 스레드가 끝나기 전에 넘긴다.
+     * {@link #JOIN_TIMEOUT_MILLIS} 안에 끝나지 않으면 그 스레드를 기억해 두고 다음 start 에서 다시 기다린다.
+     */
+    synchronized void stop() {
+        final Drainer current = drainer;
+        if (current == null) {
+            return;
+        }
+        current.running = false;
+        LockSupport.unpark(current.thread);
+        if (current.await()) {
+            drainer = null;
+        } else {
+            log.warn("slow query log thread {} did not stop in {}ms", current.thread.getName(), JOIN_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * 쌓인 이벤트를 모두 listener 에 넘긴다. 꺼내는 쪽은 한 스레드여야 하므로 배경 스레드를 시작하지 않았을 때(테스트)만 직접 호출한다.
+     *
+     * @return 넘긴 이벤트 개수
+     */
+    int drain() {
+        int drained = 0;
+        SlowQuery slowQuery;
+        while ((slowQuery = buffer.poll()) != null) {
+            try {
+                listener.onSlowQuery(slowQuery);
+                deliveredCount.increment();
+            } catch (RuntimeException ex) {
+                log.warn("slowQueryListener failed : {}", ex.toString());
+            }
+            drained++;
+        }
+        reportDropped();
+        return drained;
+    }
+
+    private void reportDropped() {
+        long dropped = droppedCount.sum();
+        if (dropped != reportedDroppedCount) {
+            log.warn("{} slow query events dropped. buffer {} was full (total {})", dropped - reportedDroppedCount, buffer.capacity(), dropped);
+            reportedDroppedCount = dropped;
+        }
+    }
+
+    /**
+     * bind 값을 <code>[1=10, 2='abc', 3=NULL]</code> 형태로 만든다. 지정하지 않은 자리는 <code>?</code> 이다.
+     *
+     * @param binds 1 번 bind 부터 담긴 값
+     * @param count 지정된 가장 큰 bind 번호. binds 길이보다 크면 남은 개수만 표시한다.
+     */
+    static String formatBinds(Object[] binds, int count) {
+        int shown = binds == null ? 0 : Math.min(count, binds.length);
+        StringBuilder builder = new StringBuilder(2 + shown * 8).append('[');
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(i + 1).append('=');
+            appendBind(builder, binds[i]);
+        }
+        if (count > shown) {
+            builder.append(shown > 0 ? ", " : "").append("...(").append(count - shown).append(" more)");
+        }
+        return builder.append(']').toString();
+    }
+
+    private static void appendBind(StringBuilder builder, Object value) {
+        if (value == null) {
+            builder.append('?');
+        } else if (value == NULL) {
+            builder.append("NULL");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        } else if (value instanceof CharSequence || value instanceof Character || value instanceof Date
+            || value instanceof TemporalAccessor || value instanceof UUID || value instanceof Enum) {
+            String text = value.toString();
+            builder.append('\'');
+            if (text.length() > MAX_BIND_LENGTH) {
+                builder.append(text, 0, MAX_BIND_LENGTH).append("...");
+            } else {
+                builder.append(text);
+            }
+            builder.append('\'');
+        } else if (value instanceof byte[]) {
+            builder.append("byte[").append(((byte[]) value).length).append(']');
+        } else {
+            // Stream, Blob 등은 읽으면 상태가 바뀌고, 그 밖의 객체는 toString 비용을 알 수 없으므로 타입만 남긴다.
+            builder.append('<').append(value.getClass().getSimpleName()).append('>');
+        }
+    }
+
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public int getMaxBinds() {
+        return maxBinds;
+    }
+
+    public int getBufferSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * @return 버퍼가 가득 차서 버린 이벤트 개수
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    /**
+     * @return listener 에 넘긴 이벤트 개수
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.sum();
+    }
+
+    /**
+     * start 한 번에 하나씩 만드는 배경 스레드와 그 멈춤 flag
+     */
+    private final class Drainer implements Runnable {
+        private final Thread thread;
+        private volatile boolean running = true;
+        private volatile boolean parked;
+
+        private Drainer(String name) {
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (drain() == 0) {
+                    parked = true;
+                    if (running && buffer.isEmpty()) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    parked = false;
+                }
+            }
+            drain();
+        }
+
+        /**
+         * @return 스레드가 끝났으면 true
+         */
+        private boolean await() {
+            try {
+                thread.join(JOIN_TIMEOUT_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return !thread.isAlive();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SlowQueryLog{" +
+            "thresholdMillis=" + getThresholdMillis() +
+            ", bufferSize=" + getBufferSize() +
+            ", maxBinds=" + maxBinds +
+            ", droppedCount=" + getDroppedCount() +
+            ", deliveredCount=" + getDeliveredCount() +
+            '}';
+    }
+}
@@ -0,0 +1,240 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 키 종류가 많아도 고정된 개수({@link #getCapacity()})의 counter 만으로 상위 키를 추적하는 Space-Saving sketch.
+ *
+ * <p>이미 추적 중인 키는 counter 에 원자적으로 더하기만 하므로 락이 없다. 추적 중이 아닌 키가 들어오면 키의 stripe 락만 잡고
+ * 그 stripe 에서 순위 기준({@link Rank}) 값이 가장 작은 counter 를 새 키에 넘겨준다. 새 counter 는 밀려난 counter 의 값에서 시작하고,
+ * 그 값을 과대 추정 오차(error)로 기억한다. 그래서 실제 값은 <code>count - countError</code> 이상 <code>count</code> 이하이다.</p>
+ *
+ * <p>counter 는 키 hash 로 나눈 최대 {@link #MAX_STRIPES} 개의 stripe 에 나누어 두고, stripe 마다 따로 Space-Saving 을 한다.
+ * 키 종류가 capacity 보다 많아 꼬리 키마다 counter 를 넘겨받아야 할 때 스레드들이 한 락에 줄 서지 않게 하기 위해서이다.
+ * stripe 하나는 {@link #MIN_STRIPE_CAPACITY} 개 이상의 counter 를 가지며, 실제 값이 자기 stripe 에 들어온 실행의
+ * 1/(stripe 의 counter 개수) 를 넘는 키는 항상 추적된다. 키가 stripe 에 고르게 퍼지면 전체의 1/capacity 와 거의 같다.</p>
+ *
+ * <p>가장 작은 counter 는 매번 모두 훑지 않는다. 한 번 훑을 때 작은 순서로 {@link #CANDIDATES} 개의 slot 을 후보로 기억하고,
+ * 후보가 아닌 counter 값의 하한을 함께 기억한다. 값은 늘기만 하므로 후보 중 가장 작은 값이 그 하한 이하이면 그것이 stripe 의
+ * 가장 작은 counter 이다. 넘겨받은 counter 는 같은 slot 에 들어가 후보로 남는다. 후보가 모두 하한을 넘으면 다시 훑는다.
+ * counter 를 넘기는 순간 밀려나는 counter 에 동시에 더해진 값은 버려질 수 있으므로, 여러 스레드가 기록할 때는 위 범위가 그만큼 어긋날 수 있다.</p>
+ */
+final class SpaceSavingSketch {
+
+    static final int MAX_STRIPES = 16;
+    static final int MIN_STRIPE_CAPACITY = 64;
+    static final int CANDIDATES = 16;
+
+    /**
+     * 순위 기준. 자리를 내줄 counter 도 이 기준으로 고른다.
+     */
+    enum Rank {
+        /** 실행 횟수 */
+        COUNT {
+            @Override
+            long weight(Counter counter) {
+                return counter.count;
+            }
+        },
+        /** 누적 실행 시간 */
+        TIME {
+            @Override
+            long weight(Counter counter) {
+                return counter.nanos;
+            }
+        };
+
+        abstract long weight(Counter counter);
+    }
+
+    private static final AtomicLongFieldUpdater<Counter> COUNT = AtomicLongFieldUpdater.newUpdater(Counter.class, "count");
+    private static final AtomicLongFieldUpdater<Counter> NANOS = AtomicLongFieldUpdater.newUpdater(Counter.class, "nanos");
+
+    private final Rank rank;
+    private final int capacity;
+    private final ConcurrentHashMap<String, Counter> counters;
+    private final Stripe[] stripes;
+
+    SpaceSavingSketch(Rank rank, int capacity) {
+        this.rank = rank;
+        this.capacity = capacity;
+        this.counters = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && capacity / (stripeCount * 2) >= MIN_STRIPE_CAPACITY) {
+            stripeCount *= 2;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    void add(String key, long nanos) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = stripe(key).admit(key);
+        }
+        COUNT.incrementAndGet(counter);
+        NANOS.addAndGet(counter, nanos);
+    }
+
+    private Stripe stripe(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * @param limit 최대 개수
+     * @return 순위 기준 값이 큰 순서의 상위 키
+     */
+    List<HeavyHitter> top(int limit) {
+        List<HeavyHitter> hitters = new ArrayList<>(counters.size());
+        for (Counter counter : counters.values()) {
+            hitters.add(new HeavyHitter(counter.key, counter.count, counter.countError, counter.nanos, counter.nanosError));
+        }
+        hitters.sort(rank == Rank.COUNT
+            ? Comparator.comparingLong(HeavyHitter::getCount).reversed()
+            : Comparator.comparingLong(HeavyHitter::getTotalNanos).reversed());
+        return hitters.size() > limit ? new ArrayList<>(hitters.subList(0, limit)) : hitters;
+    }
+
+    void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * 키 hash 로 나눈 counter 묶음. counter 를 넘겨주는 일은 stripe 락 안에서만 한다.
+     */
+    private final class Stripe {
+        private final Counter[] slots;
+        private int size;
+
+        /*
+         * 가장 작은 counter 후보의 slot 번호. 후보가 아닌 slot 의 counter 값은 모두 threshold 이상이다.
+         */
+        private final int[] candidates = new int[CANDIDATES];
+        private int candidateCount;
+        private long threshold;
+
+        /*
+         * scan 에서만 쓰는 작업 공간
+         */
+        private final int[] keptSlots;
+        private final long[] keptWeights;
+
+        private Stripe(int capacity) {
+            this.slots = new Counter[capacity];
+            this.keptSlots = new int[Math.min(CANDIDATES + 1, capacity)];
+            this.keptWeights = new long[keptSlots.length];
+        }
+
+        synchronized Counter admit(String key) {
+            Counter counter = counters.get(key);
+            if (counter != null) {
+                return counter;
+            }
+            int slot;
+            if (size < slots.length) {
+                slot = size++;
+                counter = new Counter(key, 0, 0);
+            } else {
+                slot = minSlot();
+                Counter min = slots[slot];
+                counters.remove(min.key);
+                counter = new Counter(key, min.count, min.nanos);
+            }
+            slots[slot] = counter;
+            counters.put(key, counter);
+            return counter;
+        }
+
+        /**
+         * @return 값이 가장 작은 counter 의 slot
+         */
+        private int minSlot() {
+            int min = -1;
+            long minWeight = Long.MAX_VALUE;
+            for (int i = 0; i < candidateCount; i++) {
+                long weight = rank.weight(slots[candidates[i]]);
+                if (weight < minWeight) {
+                    min = candidates[i];
+                    minWeight = weight;
+                }
+            }
+            return min >= 0 && minWeight <= threshold ? min : scan();
+        }
+
+        /**
+         * 모든 slot 을 훑어 값이 작은 순서로 후보를 다시 고른다.
+         *
+         * @return 값이 가장 작은 counter 의 slot
+         */
+        private int scan() {
+            // 작은 순서로 정렬된 후보 CANDIDATES 개와, 후보에 들지 못한 값 중 가장 작은 값 하나
+            final int kept = keptSlots.length;
+            int count = 0;
+            for (int slot = 0; slot < slots.length; slot++) {
+                long weight = rank.weight(slots[slot]);
+                if (count == kept && weight >= keptWeights[kept - 1]) {
+                    continue;
+                }
+                int index = count == kept ? kept - 1 : count++;
+                while (index > 0 && keptWeights[index - 1] > weight) {
+                    keptSlots[index] = keptSlots[index - 1];
+                    keptWeights[index] = keptWeights[index - 1];
+                    index--;
+                }
+                keptSlots[index] = slot;
+                keptWeights[index] = weight;
+            }
+            candidateCount = Math.min(count, CANDIDATES);
+            System.arraycopy(keptSlots, 0, candidates, 0, candidateCount);
+            threshold = count > CANDIDATES ? keptWeights[CANDIDATES] : Long.MAX_VALUE;
+            return keptSlots[0];
+        }
+
+        synchronized void clear() {
+            for (int i = 0; i < size; i++) {
+                counters.remove(slots[i].key);
+                slots[i] = null;
+            }
+            size = 0;
+            candidateCount = 0;
+        }
+    }
+
+    static final class Counter {
+        private final String key;
+        private final long countError;
+        private final long nanosError;
+        // AtomicLongFieldUpdater 가 바깥 클래스에서 접근하므로 private 이 아니다.
+        volatile long count;
+        volatile long nanos;
+
+        private Counter(String key, long countError, long nanosError) {
+            this.key = key;
+            this.countError = countError;
+            this.nanosError = nanosError;
+            this.count = countError;
+            this.nanos = nanosError;
+        }
+    }
+}
@@ -0,0 +1,656 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.BATCH_COMMENT_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.CALLABLE_PLACEMENT_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.COMMENT_PLACEMENT_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.HOLD_KEY_TEMPLATE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.HOLD_MAX_KEYS_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.HOLD_WARN_THRESHOLD_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.LATENCY_KEY_TEMPLATE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.LATENCY_MAX_KEYS_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.MAX_COMMENT_VARIANTS_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.MODE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SESSION_DIALECT_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SLOW_QUERY_BUFFER_SIZE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SLOW_QUERY_LISTENER_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SLOW_QUERY_MAX_BINDS_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TAGGING_LEVEL_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TAGGING_STEP_DOWN_WAIT_COUNT_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TOP_CAPACITY_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TOP_KEY_TEMPLATE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TOP_K_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TOP_LOG_INTERVAL_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TRACE_DIR_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TRACE_FILE_SIZE_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.TRACE_MAX_FILES_KEY;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor.VALIDATION_PATTERN;
+
+/**
+ * {@link SqlCallerInfoCommentInterceptor} 의 interceptor 프라퍼티를 해석/검증한 불변 설정.
+ *
+ * <p>tomcat jdbc pool 은 커넥션을 만들 때마다 interceptor 를 새로 생성하고 {@link SqlCallerInfoCommentInterceptor#setProperties(Map)} 를 호출한다.
+ * 하지만 프라퍼티 Map 인스턴스는 pool 의 <code>InterceptorDefinition</code> 이 들고 있는 것이 매번 그대로 전달되므로,
+ * 그 Map 의 identity 를 키로 해석 결과를 재사용한다. 따라서 정규식 검증, 로그 출력은 pool 당 한 번만 일어난다.</p>
+ *
+ * <p>Map 은 약한 참조로만 잡고 있으므로 pool 이 사라지면 설정도 함께 정리된다.</p>
+ */
+public final class SqlCallerInfoCommentConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlCallerInfoCommentConfig.class);
+
+    private static final ConcurrentMap<PropertiesKey, SqlCallerInfoCommentConfig> CONFIGS = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Object> STALE_PROPERTIES = new ReferenceQueue<>();
+
+    /**
+     * 프라퍼티를 실제로 해석한 횟수. 테스트에서 커넥션 획득 경로가 재해석을 하지 않는지 확인하는 용도이다.
+     */
+    private static final AtomicLong parseCount = new AtomicLong();
+
+    private final String projectName;
+
+    /**
+     * 컴파일된 commentTemplate
+     */
+    private final CommentTemplate commentTemplate;
+
+    /**
+     * <code>" /* projectName *&#47; "</code> 형태로 미리 만들어 둔 주석 prefix. 템플릿에 동적 segment 가 있거나 commentPlacement 가 prefix 가 아니면 null
+     */
+    private final String commentPrefix;
+
+    /**
+     * prepareStatement SQL 캐시. sqlCacheSize 를 지정하지 않았거나 템플릿에 동적 segment 가 있으면 null
+     */
+    private final CommentedSqlCache sqlCache;
+
+    /**
+     * true 이면 prepareStatement/prepareCall 결과를 StatementProxy 로 감싸지 않는다.
+     */
+    private final boolean skipPreparedStatementProxy;
+
+    private final BatchCommentMode batchComment;
+
+    private final CommentPlacement commentPlacement;
+
+    /**
+     * prepareCall SQL 의 주석 위치. 주석을 넣지 않으면 null
+     */
+    private final CommentPlacement callablePlacement;
+
+    private final CallerInfoMode mode;
+
+    /**
+     * 실행 시간 통계의 호출자 키 템플릿. latencyKey 를 지정하지 않았으면 null
+     */
+    private final CommentTemplate latencyKeyTemplate;
+
+    /**
+     * 호출자별 실행 시간 통계. latencyKey 를 지정하지 않았으면 null
+     */
+    private final CallerLatencyStats latencyStats;
+
+    /**
+     * 상위 호출자 추적의 키 템플릿. topKey 를 지정하지 않았으면 null
+     */
+    private final CommentTemplate topKeyTemplate;
+
+    /**
+     * 상위 호출자 추적. topKey 를 지정하지 않았으면 null
+     */
+    private final HeavyHitters heavyHitters;
+
+    /**
+     * 느린 실행 로그. slowQueryThreshold 를 지정하지 않았으면 null
+     */
+    private final SlowQueryLog slowQueryLog;
+
+    /**
+     * Statement 실행 trace. traceDir 를 지정하지 않았으면 null
+     */
+    private final StatementTracer tracer;
+
+    /**
+     * 실행 중에 바꿀 수 있는 주석 수준
+     */
+    private final TaggingControl taggingControl;
+
+    /**
+     * 커넥션 점유 통계의 호출자 키 템플릿. holdKey, holdWarnThreshold 를 모두 지정하지 않았으면 null
+     */
+    private final CommentTemplate holdKeyTemplate;
+
+    /**
+     * 호출자별 커넥션 점유 통계. holdKey, holdWarnThreshold 를 모두 지정하지 않았으면 null
+     */
+    private final ConnectionHoldStats holdStats;
+
+    /**
+     * mode=session 에서 쓸 dialect. 커넥션에서 알아내야 하면 null
+     */
+    private final SessionTagDialect sessionDialect;
+
+    private SqlCallerInfoCommentConfig(String projectName, CommentTemplate commentTemplate, CommentedSqlCache sqlCache,
+                                       boolean skipPreparedStatementProxy, BatchCommentMode batchComment,
+                                       CommentPlacement commentPlacement, CommentPlacement callablePlacement,
+                                       CallerInfoMode mode, SessionTagDialect sessionDialect,
+                                       CommentTemplate latencyKeyTemplate, int latencyMaxKeys,
+                                       CommentTemplate topKeyTemplate, HeavyHitters heavyHitters, SlowQueryLog slowQueryLog,
+                                       StatementTracer tracer, TaggingControl taggingControl,
+                                       CommentTemplate holdKeyTemplate, ConnectionHoldStats holdStats) {
+        this.projectName = projectName;
+        this.commentTemplate = commentTemplate;
+        this.commentPrefix = commentPlacement == CommentPlacement.PREFIX ? commentTemplate.getStaticPrefix() : null;
+        this.sqlCache = sqlCache;
+        // 실행 시간과 bind 값은 StatementProxy 에서 얻으므로 통계, 느린 실행 로그, trace, 점유 통계를 켜면 PreparedStatement 도 감싼다.
+        this.skipPreparedStatementProxy = skipPreparedStatementProxy && latencyKeyTemplate == null && topKeyTemplate == null
+            && slowQueryLog == null && tracer == null && holdStats == null;
+        this.batchComment = batchComment;
+        this.commentPlacement = commentPlacement;
+        this.callablePlacement = callablePlacement;
+        this.mode = mode;
+        this.sessionDialect = sessionDialect;
+        this.latencyKeyTemplate = latencyKeyTemplate;
+        this.latencyStats = latencyKeyTemplate == null ? null : new CallerLatencyStats(latencyMaxKeys);
+        this.topKeyTemplate = topKeyTemplate;
+        this.heavyHitters = heavyHitters;
+        this.slowQueryLog = slowQueryLog;
+        this.tracer = tracer;
+        this.taggingControl = taggingControl;
+        this.holdKeyTemplate = holdKeyTemplate;
+        this.holdStats = holdStats;
+    }
+
+    /**
+     * 같은 프라퍼티 Map 인스턴스에 대해서는 이미 해석해 둔 설정을 돌려준다.
+     *
+     * @param properties pool 의 interceptor 프라퍼티
+     * @return 해석된 설정
+     * @throws IllegalArgumentException 프라퍼티가 올바르지 않을 때. 실패한 결과는 캐시하지 않는다.
+     */
+    public static SqlCallerInfoCommentConfig of(Map<String, PoolProperties.InterceptorProperty> properties) {
+        SqlCallerInfoCommentConfig config = CONFIGS.get(new PropertiesKey(properties));
+        if (config != null) {
+            return config;
+        }
+
+        expungeStaleEntries();
+        SqlCallerInfoCommentConfig parsed = parse(properties);
+        config = CONFIGS.putIfAbsent(new PropertiesKey(properties, STALE_PROPERTIES), parsed);
+        return config == null ? parsed : config;
+    }
+
+    /**
+     * 캐시를 거치지 않고 프라퍼티를 해석한다.
+     */
+    static SqlCallerInfoCommentConfig parse(Map<String, PoolProperties.InterceptorProperty> properties) {
+        parseCount.incrementAndGet();
+
+        PoolProperties.InterceptorProperty projectNameProperty = properties.get(PROJECT_NAME_KEY);
+
+        if (projectNameProperty == null || projectNameProperty.getValue() == null || projectNameProperty.getValue().trim().isEmpty()) {
+            throw new IllegalArgumentException("projectName property must be set.");
+        }
+        String projectName = projectNameProperty.getValue();
+        log.info("projectName : {}", projectName);
+
+        if (!VALIDATION_PATTERN.matcher(projectName).matches()) {
+            throw new IllegalArgumentException("projectName '" + projectName + "' contains illegal chars. projectName must contain only alpha numerics, spaces and underscores.");
+        }
+
+        CommentTemplate commentTemplate = CommentTemplate.compile(parseCommentTemplate(properties.get(COMMENT_TEMPLATE_KEY)), properties);
+        log.info("commentTemplate : {}", commentTemplate.getSource());
+
+        int maxCommentVariants = parseIntRange(MAX_COMMENT_VARIANTS_KEY, properties.get(MAX_COMMENT_VARIANTS_KEY), 0, 0, CommentVariantGuard.MAX_VARIANTS_LIMIT);
+        if (maxCommentVariants > 0) {
+            commentTemplate = commentTemplate.withVariantGuard(new CommentVariantGuard(maxCommentVariants));
+            log.info("maxCommentVariants : {}, fallback comment : {}", maxCommentVariants, commentTemplate.getFallbackPrefix());
+        }
+
+        int sqlCacheSize = parseIntRange(SQL_CACHE_SIZE_KEY, properties.get(SQL_CACHE_SIZE_KEY), 0, 0, Integer.MAX_VALUE);
+        if (sqlCacheSize > 0 && !commentTemplate.isStatic()) {
+            log.warn("sqlCacheSize ignored. commentTemplate '{}' has dynamic segments.", commentTemplate.getSource());
+        }
+        CommentedSqlCache sqlCache = sqlCacheSize > 0 && commentTemplate.isStatic() ? new CommentedSqlCache(sqlCacheSize) : null;
+        boolean skipPreparedStatementProxy = parseBoolean(properties.get(SKIP_PREPARED_STATEMENT_PROXY_KEY));
+        BatchCommentMode batchComment = parseBatchComment(properties.get(BATCH_COMMENT_KEY));
+        CommentPlacement commentPlacement = parseCommentPlacement(properties.get(COMMENT_PLACEMENT_KEY));
+        CommentPlacement callablePlacement = parseCallablePlacement(properties.get(CALLABLE_PLACEMENT_KEY));
+        if (commentPlacement != CommentPlacement.PREFIX || callablePlacement != null) {
+            log.info("commentPlacement : {}, callablePlacement : {}", commentPlacement.getPropertyValue(),
+                callablePlacement == null ? "none" : callablePlacement.getPropertyValue());
+        }
+
+        CallerInfoMode mode = parseMode(properties.get(MODE_KEY));
+        SessionTagDialect sessionDialect = parseSessionDialect(properties.get(SESSION_DIALECT_KEY));
+        if (mode == CallerInfoMode.SESSION) {
+            log.info("mode : session, sessionDialect : {}", sessionDialect == null ? "auto" : sessionDialect);
+        }
+
+        CommentTemplate latencyKeyTemplate = parseKeyTemplate(properties.get(LATENCY_KEY_TEMPLATE_KEY), properties);
+        int latencyMaxKeys = parseIntRange(LATENCY_MAX_KEYS_KEY, properties.get(LATENCY_MAX_KEYS_KEY),
+            CallerLatencyStats.DEFAULT_MAX_CALLERS, 1, CallerLatencyStats.MAX_CALLERS_LIMIT);
+        if (latencyKeyTemplate != null) {
+            log.info("latencyKey : {}, latencyMaxKeys : {}", latencyKeyTemplate.getSource(), latencyMaxKeys);
+            if (mode == CallerInfoMode.SESSION) {
+                log.warn("latencyKey ignored. mode=session does not wrap statements.");
+            }
+            if (skipPreparedStatementProxy) {
+                log.warn("skipPreparedStatementProxy ignored. latencyKey needs statement proxies to time executions.");
+            }
+        }
+
+        CommentTemplate topKeyTemplate = parseKeyTemplate(properties.get(TOP_KEY_TEMPLATE_KEY), properties);
+        int topCapacity = parseIntRange(TOP_CAPACITY_KEY, properties.get(TOP_CAPACITY_KEY), HeavyHitters.DEFAULT_CAPACITY, 1, HeavyHitters.MAX_CAPACITY);
+        int topK = parseIntRange(TOP_K_KEY, properties.get(TOP_K_KEY), Math.min(HeavyHitters.DEFAULT_TOP_K, topCapacity), 1, topCapacity);
+        int topLogInterval = parseIntRange(TOP_LOG_INTERVAL_KEY, properties.get(TOP_LOG_INTERVAL_KEY), 0, 0, Integer.MAX_VALUE);
+        HeavyHitters heavyHitters = null;
+        if (topKeyTemplate != null) {
+            log.info("topKey : {}, topCapacity : {}, topK : {}, topLogInterval : {}", topKeyTemplate.getSource(), topCapacity, topK, topLogInterval);
+            if (mode == CallerInfoMode.SESSION) {
+                log.warn("topKey ignored. mode=session does not wrap statements.");
+            }
+            if (skipPreparedStatementProxy) {
+                log.warn("skipPreparedStatementProxy ignored. topKey needs statement proxies to time executions.");
+            }
+            heavyHitters = new HeavyHitters(topCapacity, topK, topLogInterval);
+        }
+
+        int slowQueryThreshold = parseIntRange(SLOW_QUERY_THRESHOLD_KEY, properties.get(SLOW_QUERY_THRESHOLD_KEY), -1, 0, Integer.MAX_VALUE);
+        int slowQueryBufferSize = parseIntRange(SLOW_QUERY_BUFFER_SIZE_KEY, properties.get(SLOW_QUERY_BUFFER_SIZE_KEY),
+            SlowQueryLog.DEFAULT_BUFFER_SIZE, 1, SlowQueryLog.MAX_BUFFER_SIZE);
+        int slowQueryMaxBinds = parseIntRange(SLOW_QUERY_MAX_BINDS_KEY, properties.get(SLOW_QUERY_MAX_BINDS_KEY),
+            SlowQueryLog.DEFAULT_MAX_BINDS, 0, SlowQueryLog.MAX_BINDS_LIMIT);
+        SlowQueryListener slowQueryListener = parseSlowQueryListener(properties.get(SLOW_QUERY_LISTENER_KEY));
+        SlowQueryLog slowQueryLog = null;
+        if (slowQueryThreshold >= 0) {
+            slowQueryLog = new SlowQueryLog(slowQueryThreshold, slowQueryBufferSize, slowQueryMaxBinds, slowQueryListener);
+            log.info("slowQueryThreshold : {}ms, slowQueryBufferSize : {}, slowQueryMaxBinds : {}, slowQueryListener : {}", slowQueryThreshold,
+                slowQueryLog.getBufferSize(), slowQueryMaxBinds, slowQueryListener == null ? "log" : slowQueryListener.getClass().getName());
+            if (mode == CallerInfoMode.SESSION) {
+                log.warn("slowQueryThreshold ignored. mode=session does not wrap statements.");
+            }
+            if (skipPreparedStatementProxy) {
+                log.warn("skipPreparedStatementProxy ignored. slowQueryThreshold needs statement proxies to time executions.");
+            }
+        }
+
+        StatementTracer tracer = parseTracer(properties);
+        if (tracer != null) {
+            log.info("traceDir : {}, traceFileSize : {}MB, traceMaxFiles : {}", tracer.getDirectory(),
+                tracer.getFileSize() / (1024 * 1024), tracer.getMaxFiles());
+            if (mode == CallerInfoMode.SESSION) {
+                log.warn("traceDir ignored. mode=session does not wrap statements.");
+            }
+            if (skipPreparedStatementProxy) {
+                log.warn("skipPreparedStatementProxy ignored. traceDir needs statement proxies to time executions.");
+            }
+        }
+
+        TaggingLevel taggingLevel = parseTaggingLevel(properties.get(TAGGING_LEVEL_KEY));
+        int taggingStepDownWaitCount = parseIntRange(TAGGING_STEP_DOWN_WAIT_COUNT_KEY, properties.get(TAGGING_STEP_DOWN_WAIT_COUNT_KEY),
+            0, 0, Integer.MAX_VALUE);
+        if (taggingLevel != TaggingLevel.FULL || taggingStepDownWaitCount > 0) {
+            log.info("taggingLevel : {}, taggingStepDownWaitCount : {}, static comment : {}", taggingLevel.getPropertyValue(),
+                taggingStepDownWaitCount, commentTemplate.getFallbackPrefix());
+        }
+        TaggingControl taggingControl = new TaggingControl(taggingLevel, taggingStepDownWaitCount, commentTemplate.getVariantGuard(), sqlCache);
+
+        CommentTemplate holdKeyTemplate = parseKeyTemplate(properties.get(HOLD_KEY_TEMPLATE_KEY), properties);
+        int holdMaxKeys = parseIntRange(HOLD_MAX_KEYS_KEY, properties.get(HOLD_MAX_KEYS_KEY),
+            ConnectionHoldStats.DEFAULT_MAX_CALLERS, 1, ConnectionHoldStats.MAX_CALLERS_LIMIT);
+        int holdWarnThreshold = parseIntRange(HOLD_WARN_THRESHOLD_KEY, properties.get(HOLD_WARN_THRESHOLD_KEY), 0, 0, Integer.MAX_VALUE);
+        ConnectionHoldStats holdStats = null;
+        if (holdKeyTemplate != null || holdWarnThreshold > 0) {
+            if (holdKeyTemplate == null) {
+                holdKeyTemplate = commentTemplate;
+            }
+            holdStats = new ConnectionHoldStats(holdMaxKeys, holdWarnThreshold);
+            log.info("holdKey : {}, holdMaxKeys : {}, holdWarnThreshold : {}ms", holdKeyTemplate.getSource(), holdMaxKeys, holdWarnThreshold);
+            if (holdKeyTemplate.isSqlDependent()) {
+                log.warn("holdKey '{}' is rendered without SQL when a connection is borrowed. segments depending on SQL become '-'.",
+                    holdKeyTemplate.getSource());
+            }
+            if (mode == CallerInfoMode.SESSION) {
+                log.warn("holdKey statement counts ignored. mode=session does not wrap statements.");
+            }
+            if (skipPreparedStatementProxy) {
+                log.warn("skipPreparedStatementProxy ignored. holdKey needs statement proxies to count executions.");
+            }
+        }
+        return new SqlCallerInfoCommentConfig(projectName, commentTemplate, sqlCache, skipPreparedStatementProxy, batchComment,
+            commentPlacement, callablePlacement, mode, sessionDialect, latencyKeyTemplate, latencyMaxKeys, topKeyTemplate, heavyHitters,
+            slowQueryLog, tracer, taggingControl, holdKeyTemplate, holdStats);
+    }
+
+    private static String parseCommentTemplate(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return CommentTemplate.DEFAULT_TEMPLATE;
+        }
+        return property.getValue().trim();
+    }
+
+    private static BatchCommentMode parseBatchComment(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return BatchCommentMode.EVERY;
+        }
+        return BatchCommentMode.of(property.getValue().trim());
+    }
+
+    private static CommentTemplate parseKeyTemplate(PoolProperties.InterceptorProperty property,
+                                                           Map<String, PoolProperties.InterceptorProperty> properties) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return null;
+        }
+        return CommentTemplate.compile(property.getValue().trim(), properties);
+    }
+
+    /**
+     * 정수 프라퍼티를 읽는다. interceptor 프라퍼티로 받는 정수는 모두 이 메소드로 읽어 같은 형식의 오류 메시지를 낸다.
+     *
+     * @param name         오류 메시지에 넣을 프라퍼티 이름
+     * @param defaultValue 프라퍼티가 없거나 비어 있을 때 쓸 값
+     * @param max          {@link Integer#MAX_VALUE} 이면 상한 없음
+     */
+    static int parseIntRange(String name, PoolProperties.InterceptorProperty property, int defaultValue, int min, int max) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return defaultValue;
+        }
+        String value = property.getValue().trim();
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        if (max == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " '" + value + "' must be " + (min == 0 ? "0 or a positive integer." : min + " or greater."));
+        }
+        throw new IllegalArgumentException(name + " '" + value + "' must be between " + min + " and " + max + ".");
+    }
+
+    private static StatementTracer parseTracer(Map<String, PoolProperties.InterceptorProperty> properties) {
+        int traceFileSize = parseIntRange(TRACE_FILE_SIZE_KEY, properties.get(TRACE_FILE_SIZE_KEY),
+            StatementTracer.DEFAULT_FILE_SIZE_MB, 1, StatementTracer.MAX_FILE_SIZE_MB);
+        int traceMaxFiles = parseIntRange(TRACE_MAX_FILES_KEY, properties.get(TRACE_MAX_FILES_KEY),
+            StatementTracer.DEFAULT_MAX_FILES, 1, StatementTracer.MAX_FILES_LIMIT);
+        PoolProperties.InterceptorProperty property = properties.get(TRACE_DIR_KEY);
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return null;
+        }
+        String value = property.getValue().trim();
+        try {
+            return new StatementTracer(Paths.get(value), traceFileSize * 1024 * 1024, traceMaxFiles);
+        } catch (InvalidPathException ex) {
+            throw new IllegalArgumentException("traceDir '" + value + "' must be a valid directory path.", ex);
+        }
+    }
+
+    private static SlowQueryListener parseSlowQueryListener(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return null;
+        }
+        String className = property.getValue().trim();
+        try {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (classLoader == null) {
+                classLoader = SqlCallerInfoCommentConfig.class.getClassLoader();
+            }
+            Class<?> listenerClass = Class.forName(className, true, classLoader);
+            if (!SlowQueryListener.class.isAssignableFrom(listenerClass)) {
+                throw new IllegalArgumentException("slowQueryListener '" + className + "' must implement " + SlowQueryListener.class.getName() + ".");
+            }
+            return (SlowQueryListener) listenerClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            throw new IllegalArgumentException("slowQueryListener '" + className + "' must be a class with a public no-arg constructor.", ex);
+        }
+    }
+
+    private static CommentPlacement parseCommentPlacement(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return CommentPlacement.PREFIX;
+        }
+        return CommentPlacement.of(COMMENT_PLACEMENT_KEY, property.getValue().trim());
+    }
+
+    private static CommentPlacement parseCallablePlacement(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return null;
+        }
+        String value = property.getValue().trim();
+        if ("none".equalsIgnoreCase(value)) {
+            return null;
+        }
+        return CommentPlacement.of(CALLABLE_PLACEMENT_KEY, value);
+    }
+
+    private static CallerInfoMode parseMode(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return CallerInfoMode.COMMENT;
+        }
+        return CallerInfoMode.of(property.getValue().trim());
+    }
+
+    private static TaggingLevel parseTaggingLevel(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return TaggingLevel.FULL;
+        }
+        return TaggingLevel.of(property.getValue().trim());
+    }
+
+    private static SessionTagDialect parseSessionDialect(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return null;
+        }
+        return SessionTagDialect.of(property.getValue().trim());
+    }
+
+    private static boolean parseBoolean(PoolProperties.InterceptorProperty property) {
+        if (property == null || property.getValue() == null || property.getValue().trim().isEmpty()) {
+            return false;
+        }
+        String value = property.getValue().trim();
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException(property.getName() + " '" + value + "' must be true or false.");
+    }
+
+    private static void expungeStaleEntries() {
+        Reference<?> stale;
+        while ((stale = STALE_PROPERTIES.poll()) != null) {
+            CONFIGS.remove(stale);
+        }
+    }
+
+    static long getParseCount() {
+        return parseCount.get();
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public CommentTemplate getCommentTemplate() {
+        return commentTemplate;
+    }
+
+    public String getCommentPrefix() {
+        return commentPrefix;
+    }
+
+    public CommentedSqlCache getSqlCache() {
+        return sqlCache;
+    }
+
+    public boolean isSkipPreparedStatementProxy() {
+        return skipPreparedStatementProxy;
+    }
+
+    public BatchCommentMode getBatchComment() {
+        return batchComment;
+    }
+
+    public CommentPlacement getCommentPlacement() {
+        return commentPlacement;
+    }
+
+    /**
+     * @return prepareCall SQL 의 주석 위치. 주석을 넣지 않으면(기본값) null
+     */
+    public CommentPlacement getCallablePlacement() {
+        return callablePlacement;
+    }
+
+    public CallerInfoMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return sessionDialect 로 지정한 dialect. 지정하지 않았으면 null
+     */
+    public SessionTagDialect getSessionDialect() {
+        return sessionDialect;
+    }
+
+    /**
+     * @return 실행 시간 통계의 호출자 키 템플릿. latencyKey 를 지정하지 않았으면 null
+     */
+    public CommentTemplate getLatencyKeyTemplate() {
+        return latencyKeyTemplate;
+    }
+
+    /**
+     * @return 호출자별 실행 시간 통계. latencyKey 를 지정하지 않았으면 null
+     */
+    public CallerLatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    /**
+     * @return 상위 호출자 추적의 키 템플릿. topKey 를 지정하지 않았으면 null
+     */
+    public CommentTemplate getTopKeyTemplate() {
+        return topKeyTemplate;
+    }
+
+    /**
+     * @return 상위 호출자 추적. topKey 를 지정하지 않았으면 null
+     */
+    public HeavyHitters getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    /**
+     * @return 느린 실행 로그. slowQueryThreshold 를 지정하지 않았으면 null
+     */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * @return Statement 실행 trace. traceDir 를 지정하지 않았으면 null
+     */
+    public StatementTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @return 실행 중에 바꿀 수 있는 주석 수준. pool 마다 하나이다.
+     */
+    public TaggingControl getTaggingControl() {
+        return taggingControl;
+    }
+
+    /**
+     * @return 커넥션 점유 통계의 호출자 키 템플릿. holdKey 없이 holdWarnThreshold 만 지정했으면 commentTemplate. 둘 다 지정하지 않았으면 null
+     */
+    public CommentTemplate getHoldKeyTemplate() {
+        return holdKeyTemplate;
+    }
+
+    /**
+     * @return 호출자별 커넥션 점유 통계. holdKey, holdWarnThreshold 를 모두 지정하지 않았으면 null
+     */
+    public ConnectionHoldStats getHoldStats() {
+        return holdStats;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlCallerInfoCommentConfig{" +
+            "projectName='" + projectName + '\'' +
+            ", commentTemplate=" + commentTemplate +
+            ", sqlCache=" + sqlCache +
+            ", skipPreparedStatementProxy=" + skipPreparedStatementProxy +
+            ", batchComment=" + batchComment +
+            ", commentPlacement=" + commentPlacement +
+            ", callablePlacement=" + callablePlacement +
+            ", mode=" + mode +
+            ", sessionDialect=" + sessionDialect +
+            ", latencyStats=" + latencyStats +
+            ", heavyHitters=" + heavyHitters +
+            ", slowQueryLog=" + slowQueryLog +
+            ", tracer=" + tracer +
+            ", taggingControl=" + taggingControl +
+            ", holdStats=" + holdStats +
+            '}';
+    }
+
+    /**
+     * 프라퍼티 Map 을 identity 로 비교하는 약한 참조 키.
+     */
+    private static final class PropertiesKey extends WeakReference<Object> {
+        private final int hash;
+
+        private PropertiesKey(Object properties) {
+            super(properties);
+            this.hash = System.identityHashCode(properties);
+        }
+
+        private PropertiesKey(Object properties, ReferenceQueue<Object> queue) {
+            super(properties, queue);
+            this.hash = System.identityHashCode(properties);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PropertiesKey)) {
+                return false;
+            }
+            Object properties = get();
+            return properties != null && properties == ((PropertiesKey) obj).get();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package in.woowa.tomcat.jdbc.pool.interceptor;
 
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
 import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
 import org.apache.tomcat.jdbc.pool.interceptor.StatementDecoratorInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,24 +10,67 @@ import org.slf4j.LoggerFactory;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 /**
  * DB 쿼리 요청자에 관한 정보를 Statement SQL에 주석으로 삽입해 주는 Interceptor - DBA 등이 이 주석을 보고 호출한 프로젝트를 판별할 수 있게 해준다.
  *
- * <h3>SQL 에 남기는 주석 내용</h3>
+ * <h2>SQL 에 남기는 주석 내용</h2>
  * <ul>
- * <li>호출자 IP</li>
+ * <li>호출한 코드 : commentTemplate 에 <code>{caller}</code> 를 넣으면 SQL 을 실행한 repository 등의 <code>클래스.메소드</code> 가 남는다.
+ * sql-caller-info-agent 를 쓰면 <code>{callsite}</code> 로 스택을 살펴보지 않고 <code>클래스.메소드:줄번호</code> 를 남길 수 있다.</li>
+ * <li>호출자 IP : commentTemplate 에 <code>{ip}</code>, <code>{host}</code> 를 넣으면 남는다.</li>
  * <li>호출자 애플리케이션 이름 : projectName 키로 DataSource property 에 지정해준다. 숫자, 영문자, 밑줄, 공백만 허용된다.(SQL Injection 방어)</li>
  * </ul>
  *
- * <h3>설정</h3>
+ * <h2>설정</h2>
  * <a href="https://tomcat.apache.org/tomcat-8.0-doc/jdbc-pool.html">tomcat jdbc connection pool</a>을 사용하여 SQL을 조작한다.
  * <pre>dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=[YourProjectName])");</pre>
  *
+ * <h2>선택 설정</h2>
+ * <ul>
+ * <li>commentTemplate : 주석 내용 템플릿. 기본값 <code>{project}</code>. {@link CommentTemplate}, {@link CommentSegmentProvider} 참고</li>
+ * <li>sqlCacheSize : 0 보다 크면 prepareStatement SQL 의 주석 결과를 최대 이 개수만큼 캐시한다. 기본값 0(사용 안 함). {@link CommentedSqlCache} 참고</li>
+ * <li>skipPreparedStatementProxy : true 이면 createStatement 결과만 StatementProxy 로 감싸고,
+ * prepareStatement/prepareCall 결과는 드라이버 Statement 를 그대로 돌려준다. 기본값 false.
+ * pool 의 <code>useStatementFacade=false</code> 와 함께 쓰면 <code>PreparedStatement.getConnection()</code> 이 pool 의 proxy 가 아닌
+ * 드라이버 커넥션을 돌려주므로 주의한다.</li>
+ * <li>batchComment : <code>every</code>(기본값) 이면 모든 addBatch(String) SQL 에, <code>first</code> 이면 executeBatch 마다 첫 SQL 에만 주석을 넣는다.
+ * {@link BatchCommentMode} 참고</li>
+ * <li>hostName, hostAddress : commentTemplate 의 <code>{host}</code>, <code>{ip}</code> 값을 직접 지정한다.
+ * 지정하지 않으면 첫 커넥션 획득을 막지 않도록 백그라운드에서 조회한 값을 쓴다. {@link LocalHostResolver} 참고</li>
+ * <li>maxCommentVariants : 0 보다 크면 원본 SQL 하나당 주석 종류를 이 개수까지만 허용하고, 넘으면 동적 segment 를 <code>-</code> 로 채운
+ * 고정 주석을 쓴다. DB 의 plan cache 가 주석마다 따로 쌓이지 않게 한다. 기본값 0(제한 없음). {@link CommentVariantGuard} 참고</li>
+ * <li>callerSkipPackages, callerMaxDepth, callerSamplingRate : <code>{caller}</code> 를 찾는 방식. {@link CallerResolver} 참고</li>
+ * <li>contextValueSource : commentTemplate 의 <code>{context:key}</code> 값을 읽을 {@link ContextValueSource} 구현 클래스. 기본값은 {@link CallerContext}, 없으면 SLF4J MDC</li>
+ * <li>fingerprintCacheSize : <code>{fingerprint}</code> 가 prepareStatement/prepareCall SQL 의 fingerprint 를 캐시할 개수. 기본값 1024. {@link SqlFingerprint} 참고</li>
+ * <li>statementClassCacheSize : <code>{rw}</code> 가 prepareStatement/prepareCall SQL 의 분류 결과를 캐시할 개수. 기본값 1024. {@link SqlStatementClass} 참고</li>
+ * <li>commentPlacement : SQL 안에서 주석을 넣을 위치. <code>prefix</code>(기본값), <code>suffix</code>, <code>afterKeyword</code>.
+ * {@link CommentPlacement} 참고</li>
+ * <li>callablePlacement : prepareCall SQL 에 주석을 넣을 위치. 기본값 <code>none</code>(넣지 않음). <code>{call ...}</code> 에는 <code>insideEscape</code></li>
+ * <li>latencyKey, latencyMaxKeys : 지정하면 Statement 실행 시간을 호출자 키별 히스토그램으로 모아 JMX 로 보여준다.
+ * {@link CallerLatencyStats} 참고</li>
+ * <li>topKey, topCapacity, topK, topLogInterval : 지정하면 실행 횟수와 누적 실행 시간이 큰 호출자 키를 고정된 메모리로 추적해
+ * JMX 와 주기적인 로그로 보여준다. {@link HeavyHitters} 참고</li>
+ * <li>slowQueryThreshold, slowQueryBufferSize, slowQueryMaxBinds, slowQueryListener : 지정하면 threshold(ms) 이상 걸린 Statement 실행을
+ * 호출자 태그, SQL, bind 값과 함께 배경 스레드에서 로그로 남긴다. {@link SlowQueryLog} 참고</li>
+ * <li>traceDir, traceFileSize, traceMaxFiles : 지정하면 모든 Statement 실행을 시각, 호출자 태그 id, SQL fingerprint, 실행 시간, row 수,
+ * 실패 여부의 고정 길이 레코드로 memory-mapped 파일에 남긴다. {@link StatementTracer}, {@link StatementTraceReader} 참고</li>
+ * <li>mode : <code>comment</code>(기본값) 이면 SQL 에 주석을 넣고, <code>session</code> 이면 SQL 은 그대로 두고 커넥션을 빌려줄 때
+ * commentTemplate 값을 DB 세션 변수에 넣는다. {@link CallerInfoMode} 참고</li>
+ * <li>sessionDialect : mode=session 에서 세션 변수를 넣는 방법. 기본값 <code>auto</code>. {@link SessionTagDialect} 참고</li>
+ * <li>taggingLevel, taggingStepDownWaitCount : 주석 수준. <code>full</code>(기본값), <code>static</code>, <code>off</code>.
+ * pool 마다 JMX 로 실행 중에 바꿀 수 있고, 커넥션을 기다리는 스레드가 많으면 자동으로 static 으로 낮출 수 있다. {@link TaggingControl} 참고</li>
+ * <li>holdKey, holdMaxKeys, holdWarnThreshold : 지정하면 커넥션을 빌려서 close 할 때까지의 시간, 그동안 실행한 Statement 수와 변경된 row 수를
+ * 호출자 키별로 모아 JMX 로 보여주고, threshold(ms) 이상 쥐고 있는 커넥션의 호출자를 로그로 남긴다. {@link ConnectionHoldStats} 참고</li>
+ * </ul>
+ *
  * @see <a href="https://tomcat.apache.org/tomcat-8.0-doc/jdbc-pool.html">tomcat jdbc connection pool</a>
  */
 public class SqlCallerInfoCommentInterceptor extends StatementDecoratorInterceptor {
@@ -43,38 +88,462 @@ public class SqlCallerInfoCommentInterceptor extends StatementDecoratorIntercept
     public static final Pattern VALIDATION_PATTERN = Pattern.compile("[\\w ]+");
 
     /**
-     * PROJECT_NAME_PROPERTY 로 설정한 프로젝트명
+     * 주석 내용 템플릿. 예) <code>{project} host={host}</code>
+     */
+    public static final String COMMENT_TEMPLATE_KEY = "commentTemplate";
+
+    /**
+     * commentTemplate 의 <code>{host}</code> 값을 직접 지정한다. 지정하지 않으면 JVM 당 한 번 알아낸 host 이름을 쓴다.
+     */
+    public static final String HOST_NAME_KEY = "hostName";
+
+    /**
+     * commentTemplate 의 <code>{ip}</code> 값을 직접 지정한다. 지정하지 않으면 JVM 당 한 번 알아낸 IP 를 쓴다.
+     */
+    public static final String HOST_ADDRESS_KEY = "hostAddress";
+
+    /**
+     * commentTemplate 의 <code>{context:key}</code> 값을 읽을 {@link ContextValueSource} 구현 클래스 이름. 지정하지 않으면 {@link CallerContext}, 없으면 SLF4J MDC
+     */
+    public static final String CONTEXT_VALUE_SOURCE_KEY = "contextValueSource";
+
+    /**
+     * <code>{fingerprint}</code> segment 가 prepareStatement/prepareCall SQL 의 fingerprint 를 캐시할 개수. 기본값 1024, 0 이면 캐시하지 않는다.
+     */
+    public static final String FINGERPRINT_CACHE_SIZE_KEY = "fingerprintCacheSize";
+
+    /**
+     * <code>{rw}</code> segment 가 prepareStatement/prepareCall SQL 의 분류 결과를 캐시할 개수. 기본값 1024, 0 이면 캐시하지 않는다.
+     */
+    public static final String STATEMENT_CLASS_CACHE_SIZE_KEY = "statementClassCacheSize";
+
+    /**
+     * 0 보다 크면 원본 SQL 하나에 붙는 주석 종류를 이 개수로 제한한다. 동적 segment 가 없으면 무시된다. {@link CommentVariantGuard} 참고
+     */
+    public static final String MAX_COMMENT_VARIANTS_KEY = "maxCommentVariants";
+
+    /**
+     * commentTemplate 의 <code>{caller}</code> 를 찾을 때 건너뛸 프레임워크 패키지(또는 클래스). 공백으로 구분한다.
+     * 기본값 <code>org.hibernate org.springframework org.mybatis org.apache.ibatis</code>
+     */
+    public static final String CALLER_SKIP_PACKAGES_KEY = "callerSkipPackages";
+
+    /**
+     * commentTemplate 의 <code>{caller}</code> 를 찾을 때 살펴볼 최대 프레임 수. 기본값 128
+     */
+    public static final String CALLER_MAX_DEPTH_KEY = "callerMaxDepth";
+
+    /**
+     * commentTemplate 의 <code>{caller}</code> 를 찾을 SQL 의 비율(%). 기본값 100. 빠진 SQL 에는 <code>-</code> 가 들어간다.
+     */
+    public static final String CALLER_SAMPLING_RATE_KEY = "callerSamplingRate";
+
+    /**
+     * prepareStatement SQL 주석 결과 캐시의 최대 크기. 0 이면 캐시하지 않는다. 템플릿에 동적 segment 가 있으면 무시된다.
+     */
+    public static final String SQL_CACHE_SIZE_KEY = "sqlCacheSize";
+
+    /**
+     * true 이면 prepareStatement/prepareCall 결과를 StatementProxy 로 감싸지 않는다. SQL 은 이미 changeSql 에서 바뀌었으므로
+     * 이후 setXxx, addBatch, executeQuery() 호출마다 proxy 를 한 번 더 거칠 필요가 없다.
+     */
+    public static final String SKIP_PREPARED_STATEMENT_PROXY_KEY = "skipPreparedStatementProxy";
+
+    /**
+     * Statement.addBatch(String) SQL 에 주석을 넣는 방식. {@link BatchCommentMode}
+     */
+    public static final String BATCH_COMMENT_KEY = "batchComment";
+
+    /**
+     * SQL 안에서 주석을 넣을 위치. <code>prefix</code>(기본값), <code>suffix</code>, <code>afterKeyword</code>, <code>insideEscape</code>.
+     * {@link CommentPlacement}
+     */
+    public static final String COMMENT_PLACEMENT_KEY = "commentPlacement";
+
+    /**
+     * prepareCall SQL 에 주석을 넣을 위치. 기본값 <code>none</code> 이면 넣지 않는다. <code>{call ...}</code> 에는 <code>insideEscape</code> 를 쓴다.
+     * {@link CommentPlacement}
+     */
+    public static final String CALLABLE_PLACEMENT_KEY = "callablePlacement";
+
+    /**
+     * 지정하면 Statement 실행 시간을 이 템플릿으로 만든 호출자 키별로 모아 JMX 로 보여준다. commentTemplate 과 같은 문법이다.
+     * 예) <code>{caller}</code>, <code>{callsite}</code>, <code>{project}</code>. {@link CallerLatencyStats}
+     */
+    public static final String LATENCY_KEY_TEMPLATE_KEY = "latencyKey";
+
+    /**
+     * latencyKey 로 구분할 호출자 키의 최대 개수. 기본값 256. 넘는 키는 <code>-</code> 하나로 모은다.
+     */
+    public static final String LATENCY_MAX_KEYS_KEY = "latencyMaxKeys";
+
+    /**
+     * 지정하면 이 템플릿으로 만든 호출자 키 중 실행 횟수와 누적 실행 시간이 큰 키를 고정된 메모리로 추적해 JMX 로 보여준다.
+     * latencyKey 와 같은 문법이다. {@link HeavyHitters}
+     */
+    public static final String TOP_KEY_TEMPLATE_KEY = "topKey";
+
+    /**
+     * topKey 로 추적할 최대 키 개수. 기본값 128, 최대 4096
+     */
+    public static final String TOP_CAPACITY_KEY = "topCapacity";
+
+    /**
+     * topKey 의 JMX 와 로그로 보여줄 상위 키 개수. 기본값 10, topCapacity 이하
+     */
+    public static final String TOP_K_KEY = "topK";
+
+    /**
+     * topKey 의 상위 키를 INFO 로그로 남길 주기(초). 기본값 0 은 남기지 않는다.
+     */
+    public static final String TOP_LOG_INTERVAL_KEY = "topLogInterval";
+
+    /**
+     * 지정하면 이 시간(ms) 이상 걸린 Statement 실행을 호출자 태그, SQL, bind 값과 함께 배경 스레드에서 로그로 남긴다. 0 이면 모든 실행을 남긴다.
+     * {@link SlowQueryLog}
+     */
+    public static final String SLOW_QUERY_THRESHOLD_KEY = "slowQueryThreshold";
+
+    /**
+     * 배경 스레드가 꺼내기 전 쌓아 둘 느린 실행 이벤트의 최대 개수. 기본값 1024. 넘으면 버리고 개수만 센다.
+     */
+    public static final String SLOW_QUERY_BUFFER_SIZE_KEY = "slowQueryBufferSize";
+
+    /**
+     * PreparedStatement 당 남길 최대 bind 개수. 기본값 32, 0 이면 bind 값을 남기지 않는다.
+     */
+    public static final String SLOW_QUERY_MAX_BINDS_KEY = "slowQueryMaxBinds";
+
+    /**
+     * 느린 실행을 받을 {@link SlowQueryListener} 구현 클래스 이름. 지정하지 않으면 WARN 로그로 남긴다.
+     */
+    public static final String SLOW_QUERY_LISTENER_KEY = "slowQueryListener";
+
+    /**
+     * 지정하면 모든 Statement 실행을 고정 길이 binary 레코드로 이 디렉토리의 memory-mapped 파일에 남긴다. {@link StatementTracer}
+     */
+    public static final String TRACE_DIR_KEY = "traceDir";
+
+    /**
+     * traceDir 파일 하나의 크기(MB). 기본값 64, 최대 1024
+     */
+    public static final String TRACE_FILE_SIZE_KEY = "traceFileSize";
+
+    /**
+     * traceDir 에 남겨 둘 최대 파일 개수. 기본값 8. 넘으면 오래된 파일부터 지운다.
+     */
+    public static final String TRACE_MAX_FILES_KEY = "traceMaxFiles";
+
+    /**
+     * 호출자 정보를 전달하는 방식. <code>comment</code>(기본값) 또는 <code>session</code>. {@link CallerInfoMode}
+     */
+    public static final String MODE_KEY = "mode";
+
+    /**
+     * mode=session 에서 세션 변수를 넣는 방법. <code>auto</code>(기본값), <code>h2</code>, <code>mysql</code>, <code>sqlserver</code>,
+     * <code>clientInfo</code>. {@link SessionTagDialect}
+     */
+    public static final String SESSION_DIALECT_KEY = "sessionDialect";
+
+    /**
+     * 처음 주석 수준. <code>full</code>(기본값), <code>static</code>, <code>off</code>. 실행 중에는 JMX 로 바꾼다. {@link TaggingLevel}
+     */
+    public static final String TAGGING_LEVEL_KEY = "taggingLevel";
+
+    /**
+     * 커넥션을 빌려줄 때 pool 에서 기다리는 스레드가 이 수 이상이면 full 을 static 으로 낮춘다. 기본값 0 은 낮추지 않는다. {@link TaggingControl}
+     */
+    public static final String TAGGING_STEP_DOWN_WAIT_COUNT_KEY = "taggingStepDownWaitCount";
+
+    /**
+     * 지정하면 커넥션 점유 시간, Statement 수, 변경된 row 수를 이 템플릿으로 만든 호출자 키별로 모아 JMX 로 보여준다.
+     * 키는 커넥션을 빌려줄 때 한 번 만든다. 예) <code>{caller}</code>, <code>{context:endpoint}</code>. {@link ConnectionHoldStats}
      */
-    private String projectName;
+    public static final String HOLD_KEY_TEMPLATE_KEY = "holdKey";
+
+    /**
+     * holdKey 로 구분할 호출자 키의 최대 개수. 기본값 256. 넘는 키는 <code>-</code> 하나로 모은다.
+     */
+    public static final String HOLD_MAX_KEYS_KEY = "holdMaxKeys";
+
+    /**
+     * 커넥션을 이 시간(ms) 이상 쥐고 있으면 호출자 키와 스레드 이름을 WARN 로그로 남긴다. 기본값 0 은 남기지 않는다.
+     * holdKey 를 지정하지 않으면 commentTemplate 으로 키를 만든다.
+     */
+    public static final String HOLD_WARN_THRESHOLD_KEY = "holdWarnThreshold";
+
+    protected static final String EXECUTE_LARGE_UPDATE = "executeLargeUpdate";
+    protected static final String ADD_BATCH = "addBatch";
+    protected static final String EXECUTE_LARGE_BATCH = "executeLargeBatch";
+    protected static final String CLEAR_BATCH = "clearBatch";
+    protected static final String CLEAR_PARAMETERS = "clearParameters";
+    protected static final String SET_NULL = "setNull";
+
+    /**
+     * mode=session 에서 taggingLevel 이 off 일 때 넣는 값. 지난 대여의 값을 지운다.
+     */
+    static final String SESSION_TAG_OFF = "";
+
+    /**
+     * java.sql.Connection 메소드별 처리 방식
+     */
+    private static final MethodDispatchTable CONNECTION_METHODS = new MethodDispatchTable(SqlCallerInfoCommentInterceptor::classifyConnectionMethod);
+
+    /**
+     * java.sql.Statement 메소드별 처리 방식
+     */
+    private static final MethodDispatchTable STATEMENT_METHODS = new MethodDispatchTable(SqlCallerInfoCommentInterceptor::classifyStatementMethod);
+
+    /**
+     * pool 단위로 한 번만 해석하여 공유하는 설정
+     */
+    private SqlCallerInfoCommentConfig config;
+
+    private final UnaryOperator<String> commenter = this::commentSql;
+
+    /**
+     * prepareStatement/prepareCall 의 주석을 넣기 전 SQL. {@link #createDecorator} 가 통계 키를 원본 SQL 로 만들 수 있도록
+     * 드라이버 호출 동안만 보관한다.
+     */
+    private String preparingSql;
+
+    /*
+     * mode=session 에서 마지막으로 세션 변수를 넣은 드라이버 커넥션과 값.
+     * interceptor 는 물리 커넥션마다 하나씩 만들어져 빌릴 때마다 재사용되고, 빌린 스레드만 reset 을 호출하므로 동기화하지 않는다.
+     */
+    private Connection taggedConnection;
+    private String appliedSessionTag;
+    private SessionTagDialect sessionDialect;
+
+    /**
+     * commentTemplate 의 <code>{readOnly}</code>, <code>{tx}</code> 값. 대여마다 드라이버에서 한 번 읽고 이후에는 이 커넥션의 변경을 따라간다.
+     */
+    private final TrackedConnectionState connectionState = new TrackedConnectionState();
+
+    /**
+     * holdKey 를 지정했을 때 이 물리 커넥션의 현재 점유. 처음 빌려줄 때 만들어 재사용한다.
+     */
+    private ConnectionHoldStats.Hold hold;
 
     public String getProjectName() {
-        return projectName;
+        return config.getProjectName();
+    }
+
+    public SqlCallerInfoCommentConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return prepareStatement SQL 캐시. sqlCacheSize 를 지정하지 않았으면 null
+     */
+    public CommentedSqlCache getSqlCache() {
+        return config.getSqlCache();
     }
 
     /**
      * {@inheritDoc}
+     *
+     * <p>Method 별 처리 방식은 {@link #CONNECTION_METHODS} 에서 한 번의 identity 조회로 결정한다.
+     * Statement 생성/close 가 아닌 호출은 상위 클래스의 이름 비교 없이 바로 다음 interceptor 로 넘긴다.</p>
+     *
+     * <p>Statement 를 만들 때는 {@link TaggingControl} 의 주석 수준을 한 번만 읽어 끝까지 쓴다.
+     * <code>off</code> 이면 Statement 를 감싸지 않고 그대로 다음 interceptor 로 넘긴다. 단 holdKey 를 지정했으면 실행 횟수를 세야 하므로
+     * SQL 은 바꾸지 않고 감싼다.</p>
      */
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (compare(CLOSE_VAL, method)) {
-            return super.invoke(proxy, method, args);
+        if (config.getMode() == CallerInfoMode.SESSION) {
+            if (hold != null && CLOSE_VAL.equals(method.getName())) {
+                closeInvoked();
+            }
+            return getNext().invoke(proxy, method, args);
+        }
+        final MethodDispatchTable.Action action = CONNECTION_METHODS.actionOf(method);
+        if (action == MethodDispatchTable.Action.PASS_THROUGH) {
+            return getNext().invoke(proxy, method, args);
+        }
+        if (action == MethodDispatchTable.Action.SET_READ_ONLY || action == MethodDispatchTable.Action.SET_AUTO_COMMIT) {
+            Object result = getNext().invoke(proxy, method, args);
+            connectionState.update(action, (Boolean) args[0]);
+            return result;
+        }
+        final TaggingLevel level = config.getTaggingControl().getLevel();
+        if (level == TaggingLevel.OFF && action != MethodDispatchTable.Action.CLOSE && config.getHoldStats() == null) {
+            return getNext().invoke(proxy, method, args);
+        }
+        switch (action) {
+            case REWRITE_SQL:
+                preparingSql = args == null ? null : (String) args[0];
+                try {
+                    return super.invoke(proxy, method, changeSql(method, args, level));
+                } finally {
+                    preparingSql = null;
+                }
+            case REWRITE_CALL_SQL:
+                preparingSql = args == null ? null : (String) args[0];
+                try {
+                    return super.invoke(proxy, method, changeCallSql(method, args, level));
+                } finally {
+                    preparingSql = null;
+                }
+            default:
+                return super.invoke(proxy, method, args);
         }
+    }
 
-        boolean process = false;
-        process = isStatement(method, process);
-        if (!process) {
-            return super.invoke(proxy, method, args);
+    /**
+     * latencyKey, topKey, holdKey 를 지정했으면 통계를 JMX 에 등록하고, slowQueryThreshold 를 지정했으면 로그 스레드를, traceDir 를 지정했으면 trace 파일을 시작한다. tomcat jdbc pool 은 pool 시작 시 interceptor 를 새로 만들어
+     * setProperties 뒤에 이 메소드를 부르므로, pool 의 설정을 그대로 얻는다.
+     */
+    @Override
+    public void poolStarted(ConnectionPool pool) {
+        super.poolStarted(pool);
+        CallerLatencyStats latencyStats = config.getLatencyStats();
+        if (latencyStats != null) {
+            latencyStats.register(pool.getName());
+        }
+        HeavyHitters heavyHitters = config.getHeavyHitters();
+        if (heavyHitters != null) {
+            heavyHitters.start(pool.getName());
         }
+        SlowQueryLog slowQueryLog = config.getSlowQueryLog();
+        if (slowQueryLog != null) {
+            slowQueryLog.start(pool.getName());
+        }
+        StatementTracer tracer = config.getTracer();
+        if (tracer != null) {
+            tracer.start(pool.getName());
+        }
+        config.getTaggingControl().start(pool.getName());
+        ConnectionHoldStats holdStats = config.getHoldStats();
+        if (holdStats != null) {
+            holdStats.start(pool.getName());
+        }
+    }
 
-        Object[] changedArgs = changeSql(method, args);
-        return super.invoke(proxy, method, changedArgs);
+    @Override
+    public void poolClosed(ConnectionPool pool) {
+        super.poolClosed(pool);
+        CallerLatencyStats latencyStats = config.getLatencyStats();
+        if (latencyStats != null) {
+            latencyStats.unregister();
+        }
+        HeavyHitters heavyHitters = config.getHeavyHitters();
+        if (heavyHitters != null) {
+            heavyHitters.stop();
+        }
+        SlowQueryLog slowQueryLog = config.getSlowQueryLog();
+        if (slowQueryLog != null) {
+            slowQueryLog.stop();
+        }
+        StatementTracer tracer = config.getTracer();
+        if (tracer != null) {
+            tracer.stop();
+        }
+        config.getTaggingControl().stop();
+        ConnectionHoldStats holdStats = config.getHoldStats();
+        if (holdStats != null) {
+            holdStats.stop();
+        }
+    }
+
+    /**
+     * mode=session 이면 커넥션을 빌려줄 때마다 commentTemplate 값을 세션 변수에 넣는다.
+     * 같은 드라이버 커넥션에 지난번과 같은 값을 이미 넣었다면 DB 왕복 없이 넘어간다.
+     * 반납 시에는 con 이 null 로 호출된다.
+     *
+     * <p>빌려줄 때 pool 에서 기다리는 스레드 수를 {@link TaggingControl} 에 알려 주석 수준을 자동으로 낮추거나 되돌린다.
+     * taggingLevel 이 <code>off</code> 이면 빈 값을 넣어 지난 대여의 값이 다른 호출자의 것으로 보이지 않게 한다.
+     * 같은 드라이버 커넥션에 이미 빈 값을 넣었으면 DB 왕복은 없다.</p>
+     *
+     * <p>commentTemplate 에 <code>{readOnly}</code>, <code>{tx}</code> 가 있으면 빌려줄 때마다 알던 상태를 버린다.
+     * ConnectionState interceptor 의 defaultReadOnly, defaultAutoCommit 처럼 드라이버 커넥션을 직접 되돌리는 설정이 있으므로,
+     * 이번 대여의 첫 SQL 에서 드라이버에게 다시 묻는다. 이 interceptor 보다 뒤에 있는 interceptor 의 reset 이 바꾼 값도 읽도록 reset 에서 바로 묻지 않는다.</p>
+     *
+     * <p>holdKey 를 지정했으면 호출자 키를 만들고 점유를 시작한다. 점유는 {@link #closeInvoked()} 에서 끝난다.</p>
+     */
+    @Override
+    public void reset(ConnectionPool parent, PooledConnection con) {
+        super.reset(parent, con);
+        if (con == null) {
+            return;
+        }
+        final ConnectionHoldStats holdStats = config.getHoldStats();
+        if (holdStats != null) {
+            hold = holdStats.borrowed(hold, config.getHoldKeyTemplate().renderTag(), con);
+        }
+        if (config.getCommentTemplate().isConnectionDependent()) {
+            connectionState.borrowed(con.getConnection());
+        }
+        final TaggingControl taggingControl = config.getTaggingControl();
+        if (parent != null) {
+            taggingControl.onBorrow(parent.getWaitCount());
+        }
+        if (config.getMode() != CallerInfoMode.SESSION) {
+            return;
+        }
+        applySessionTag(con.getConnection());
+    }
+
+    /**
+     * 세션 변수 설정에 실패해도 커넥션 획득은 막지 않는다. 다음 대여 때 다시 시도한다.
+     *
+     * @param connection 드라이버 커넥션
+     * @return 실제로 DB 에 값을 넣었으면 true
+     */
+    boolean applySessionTag(Connection connection) {
+        final String tag;
+        switch (config.getTaggingControl().getLevel()) {
+            case OFF:
+                tag = SESSION_TAG_OFF;
+                break;
+            case STATIC:
+                tag = config.getCommentTemplate().getFallbackTag();
+                break;
+            default:
+                tag = config.getCommentTemplate().renderTag();
+        }
+        if (connection == taggedConnection && tag.equals(appliedSessionTag)) {
+            return false;
+        }
+
+        taggedConnection = null;
+        appliedSessionTag = null;
+        try {
+            if (sessionDialect == null) {
+                sessionDialect = config.getSessionDialect() != null
+                    ? config.getSessionDialect() : SessionTagDialect.detect(connection.getMetaData().getDatabaseProductName());
+            }
+            sessionDialect.apply(connection, tag);
+            taggedConnection = connection;
+            appliedSessionTag = tag;
+            if (log.isDebugEnabled()) {
+                log.debug("session tag applied : {}, {}", sessionDialect, tag);
+            }
+            return true;
+        } catch (SQLException | RuntimeException ex) {
+            log.warn("session tag not applied : {}, {}", sessionDialect, ex.toString());
+            return false;
+        }
+    }
+
+    /**
+     * skipPreparedStatementProxy 가 켜져 있으면 createStatement 결과만 감싼다.
+     * createStatement 로 만든 Statement 는 실행 시점에 SQL 을 받으므로 항상 감싸야 한다.
+     */
+    @Override
+    public Object createStatement(Object proxy, Method method, Object[] args, Object statement, long time) {
+        if (config.isSkipPreparedStatementProxy() && !compare(CREATE_STATEMENT, method)) {
+            return statement;
+        }
+        return super.createStatement(proxy, method, args, statement, time);
     }
 
     @Override
     protected Object createDecorator(Object proxy, Method method, Object[] args, Object statement, Constructor<?> constructor, String sql) throws InstantiationException, IllegalAccessException, InvocationTargetException {
         Object result = null;
         SqlChangeStatementProxy<Statement> statementProxy =
-            new SqlChangeStatementProxy<>((Statement) statement, sql);
+            new SqlChangeStatementProxy<>((Statement) statement, sql, preparingSql);
         result = constructor.newInstance(new Object[]{statementProxy});
         statementProxy.setActualProxy(result);
         statementProxy.setConnection(proxy);
@@ -94,93 +563,536 @@ public class SqlCallerInfoCommentInterceptor extends StatementDecoratorIntercept
      * Connection.prepareStatement 를 위한 Sql 변경
      */
     protected Object[] changeSql(Method method, Object[] args) {
-        if (args == null) {
-            log.debug("sql not changed {}", method);
+        return changeSql(method, args, null);
+    }
 
+    /**
+     * @param level 호출한 쪽에서 이미 읽은 주석 수준. null 이면 SQL 을 바꿀 때 읽는다.
+     */
+    private Object[] changeSql(Method method, Object[] args, TaggingLevel level) {
+        if (args == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("sql not changed {}", method);
+            }
             return null;
         }
 
-        final String methodName = method.getName();
-        Object[] changedArgs = Arrays.copyOf(args, args.length);
+        // PREPARE_CALL does not support comment prefix. see changeCallSql
+        if (CONNECTION_METHODS.actionOf(method) != MethodDispatchTable.Action.REWRITE_SQL) {
+            if (log.isDebugEnabled()) {
+                log.debug("sql not changed {}", method);
+            }
+            return args;
+        }
 
-        // PREPARE_CALL does not support comment prefix
-        if (compare(PREPARE_STATEMENT, methodName)) {
-            changedArgs[0] = commentSql((String) args[0]);
+        // args 배열은 앞단 interceptor(StatementCache 등)와 공유되므로 직접 바꾸지 않고 복사한다.
+        Object[] changedArgs = Arrays.copyOf(args, args.length);
+        if (level == null) {
+            level = config.getTaggingControl().getLevel();
+        }
+        CommentedSqlCache sqlCache = config.getSqlCache();
+        changedArgs[0] = sqlCache == null || level != TaggingLevel.FULL
+            ? commentSql((String) args[0], true, level) : sqlCache.get((String) args[0], commenter);
+        if (log.isDebugEnabled()) {
             log.debug("sql changed : {}, {}", method, changedArgs[0]);
-        } else {
-            log.debug("sql not changed {}", method);
+        }
+        return changedArgs;
+    }
+
+    /**
+     * Connection.prepareCall 을 위한 Sql 변경. callablePlacement 를 지정하지 않았으면 그대로 둔다.
+     * <code>{call ...}</code> escape 는 앞에 주석이 붙으면 인식되지 않으므로 commentPlacement 와 따로 지정한다.
+     */
+    protected Object[] changeCallSql(Method method, Object[] args) {
+        return changeCallSql(method, args, config.getTaggingControl().getLevel());
+    }
+
+    private Object[] changeCallSql(Method method, Object[] args, TaggingLevel level) {
+        final CommentPlacement placement = config.getCallablePlacement();
+        if (args == null || placement == null || level == TaggingLevel.OFF) {
+            if (log.isDebugEnabled()) {
+                log.debug("sql not changed {}", method);
+            }
             return args;
         }
+
+        Object[] changedArgs = Arrays.copyOf(args, args.length);
+        String sql = (String) args[0];
+        changedArgs[0] = placement.place(sql, level == TaggingLevel.STATIC
+            ? config.getCommentTemplate().getFallbackPrefix() : config.getCommentTemplate().renderComment(sql, true, connectionState));
+        if (log.isDebugEnabled()) {
+            log.debug("sql changed : {}, {}", method, changedArgs[0]);
+        }
         return changedArgs;
     }
 
     /**
-     * Statement.executeQuery, executeUpdate 를 위한 Sql 변경
+     * Statement.executeQuery, executeUpdate, execute, executeLargeUpdate, addBatch 를 위한 Sql 변경
      */
     protected Object[] changeExecuteSql(Method method, Object[] args) {
-        if (args == null) {
-            log.debug("sql not changed {}", method);
+        return changeExecuteSql(method, args, null);
+    }
+
+    /**
+     * @param level 호출한 쪽에서 이미 읽은 주석 수준. null 이면 SQL 을 바꿀 때 읽는다.
+     */
+    private Object[] changeExecuteSql(Method method, Object[] args, TaggingLevel level) {
+        if (args == null || level == TaggingLevel.OFF) {
+            if (log.isDebugEnabled()) {
+                log.debug("sql not changed {}", method);
+            }
             return args;
         }
 
-        if (!isExecuteQuery(method) && !isExecuteUpdate(method)) {
-            log.debug("sql not changed {}", method);
+        if (!STATEMENT_METHODS.actionOf(method).rewritesSql()) {
+            if (log.isDebugEnabled()) {
+                log.debug("sql not changed {}", method);
+            }
             return args;
         }
 
         Object[] changedArgs = Arrays.copyOf(args, args.length);
-        changedArgs[0] = commentSql((String) args[0]);
-        log.debug("sql changed : {}, {}", method, changedArgs[0]);
+        changedArgs[0] = commentSql((String) args[0], false, level == null ? config.getTaggingControl().getLevel() : level);
+        if (log.isDebugEnabled()) {
+            log.debug("sql changed : {}, {}", method, changedArgs[0]);
+        }
         return changedArgs;
     }
 
+    private static MethodDispatchTable.Action classifyConnectionMethod(Method method) {
+        final String name = method.getName();
+        if (CLOSE_VAL.equals(name)) {
+            return MethodDispatchTable.Action.CLOSE;
+        }
+        if ("setReadOnly".equals(name) && method.getParameterCount() == 1) {
+            return MethodDispatchTable.Action.SET_READ_ONLY;
+        }
+        if ("setAutoCommit".equals(name) && method.getParameterCount() == 1) {
+            return MethodDispatchTable.Action.SET_AUTO_COMMIT;
+        }
+        if (PREPARE_STATEMENT.equals(name)) {
+            return MethodDispatchTable.Action.REWRITE_SQL;
+        }
+        if (PREPARE_CALL.equals(name)) {
+            return MethodDispatchTable.Action.REWRITE_CALL_SQL;
+        }
+        if (CREATE_STATEMENT.equals(name)) {
+            return MethodDispatchTable.Action.DECORATE;
+        }
+        return MethodDispatchTable.Action.PASS_THROUGH;
+    }
+
+    private static MethodDispatchTable.Action classifyStatementMethod(Method method) {
+        final String name = method.getName();
+        if (MethodDispatchTable.hasSqlArgument(method)) {
+            if (EXECUTE.equals(name) || EXECUTE_QUERY.equals(name) || EXECUTE_UPDATE.equals(name) || EXECUTE_LARGE_UPDATE.equals(name)) {
+                return MethodDispatchTable.Action.REWRITE_SQL;
+            }
+            if (ADD_BATCH.equals(name)) {
+                return MethodDispatchTable.Action.REWRITE_BATCH_SQL;
+            }
+        }
+        if (EXECUTE_BATCH.equals(name) || EXECUTE_LARGE_BATCH.equals(name)) {
+            return MethodDispatchTable.Action.EXECUTE_BATCH;
+        }
+        if (CLEAR_BATCH.equals(name)) {
+            return MethodDispatchTable.Action.END_BATCH;
+        }
+        if (EXECUTE.equals(name) || EXECUTE_QUERY.equals(name) || EXECUTE_UPDATE.equals(name) || EXECUTE_LARGE_UPDATE.equals(name)) {
+            return MethodDispatchTable.Action.EXECUTE;
+        }
+        if (MethodDispatchTable.isParameterSetter(method)) {
+            return MethodDispatchTable.Action.BIND;
+        }
+        if (CLEAR_PARAMETERS.equals(name)) {
+            return MethodDispatchTable.Action.CLEAR_BINDS;
+        }
+        return MethodDispatchTable.Action.PASS_THROUGH;
+    }
+
+    /**
+     * holdKey 를 지정했으면 커넥션 점유를 끝내고 호출자 키의 counter 에 더한다.
+     */
     @Override
     public void closeInvoked() {
-        // no op
+        if (hold != null) {
+            config.getHoldStats().returned(hold);
+        }
     }
 
     /**
-     * 실질적인 주석 넣기를 수행한다.
+     * 실질적인 주석 넣기를 수행한다. 이미 같은 주석이 commentPlacement 위치에 있는 SQL 은 그대로 돌려준다.
      *
      * @param sql 원본 SQL
      * @return 주석이 추가된 SQL
      */
     protected String commentSql(String sql) {
-        StringBuilder builder = new StringBuilder();
-        builder.append(" /* ")
-            .append(projectName)
-            .append(" */ ")
-            .append(sql);
-        return builder.toString();
+        return commentSql(sql, false);
+    }
+
+    /**
+     * @param prepared prepareStatement 의 SQL 이면 true. <code>{fingerprint}</code> 등이 결과를 캐시한다.
+     */
+    protected String commentSql(String sql, boolean prepared) {
+        final String commentPrefix = config.getCommentPrefix();
+        if (commentPrefix == null) {
+            final CommentPlacement placement = config.getCommentPlacement();
+            if (placement == CommentPlacement.PREFIX) {
+                return config.getCommentTemplate().render(sql, prepared, connectionState);
+            }
+            return placement.place(sql, config.getCommentTemplate().renderComment(sql, prepared, connectionState));
+        }
+        if (sql.startsWith(commentPrefix)) {
+            return sql;
+        }
+        // String.concat 은 결과 길이만큼 한 번만 할당/복사한다.
+        return commentPrefix.concat(sql);
+    }
+
+    /**
+     * taggingLevel 에 따라 주석을 넣는다. <code>static</code> 이면 동적 segment 를 <code>-</code> 로 채운 고정 주석을 넣는다.
+     */
+    private String commentSql(String sql, boolean prepared, TaggingLevel level) {
+        switch (level) {
+            case OFF:
+                return sql;
+            case STATIC:
+                final String staticComment = config.getCommentTemplate().getFallbackPrefix();
+                final CommentPlacement placement = config.getCommentPlacement();
+                if (placement != CommentPlacement.PREFIX) {
+                    return placement.place(sql, staticComment);
+                }
+                return sql.startsWith(staticComment) ? sql : staticComment.concat(sql);
+            default:
+                return commentSql(sql, prepared);
+        }
     }
 
+    /**
+     * 프라퍼티 해석/검증은 pool 당 한 번만 수행하고, 이후 생성되는 interceptor 는 {@link SqlCallerInfoCommentConfig} 를 재사용한다.
+     */
     @Override
     public void setProperties(Map<String, PoolProperties.InterceptorProperty> properties) {
         super.setProperties(properties);
+        config = SqlCallerInfoCommentConfig.of(properties);
+    }
 
-        PoolProperties.InterceptorProperty projectNameProperty = properties.get(PROJECT_NAME_KEY);
+    /**
+     * 물리 커넥션 하나의 readOnly, autoCommit. 커넥션을 빌린 스레드만 읽고 쓰므로 동기화하지 않는다.
+     */
+    private static final class TrackedConnectionState implements ConnectionTagState {
 
-        if (projectNameProperty == null || projectNameProperty.getValue() == null || projectNameProperty.getValue().trim().isEmpty()) {
-            throw new IllegalArgumentException("projectName property must be set.");
+        /**
+         * 상태를 읽을 드라이버 커넥션. 빌려줄 때 바뀐다.
+         */
+        private Connection connection;
+        private boolean loaded;
+        private boolean known;
+        private boolean readOnly;
+        private boolean autoCommit;
+
+        /**
+         * 알던 상태를 버린다. 다음 {@link #isKnown()} 에서 드라이버에게 다시 묻는다.
+         */
+        void borrowed(Connection connection) {
+            this.connection = connection;
+            loaded = false;
+            known = false;
+        }
+
+        private void load() {
+            loaded = true;
+            if (connection == null) {
+                return;
+            }
+            try {
+                readOnly = connection.isReadOnly();
+                autoCommit = connection.getAutoCommit();
+                known = true;
+            } catch (SQLException | RuntimeException ex) {
+                log.warn("connection state not loaded : {}", ex.toString());
+            }
+        }
+
+        /**
+         * 아직 읽지 않았으면 아무것도 하지 않는다. 나중에 읽는 드라이버 값에 이미 반영되어 있다.
+         */
+        void update(MethodDispatchTable.Action action, boolean value) {
+            if (!known) {
+                return;
+            }
+            if (action == MethodDispatchTable.Action.SET_READ_ONLY) {
+                readOnly = value;
+            } else {
+                autoCommit = value;
+            }
+        }
+
+        @Override
+        public boolean isKnown() {
+            if (!loaded) {
+                load();
+            }
+            return known;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return readOnly;
         }
-        projectName = projectNameProperty.getValue();
-        log.info("projectName : {}", projectName);
 
-        if (!VALIDATION_PATTERN.matcher(projectName).matches()) {
-            throw new IllegalArgumentException("projectName '" + projectName + "' contains illegal chars. projectName must contain only alpha numerics, spaces and underscores.");
+        @Override
+        public boolean isAutoCommit() {
+            return autoCommit;
         }
     }
 
     protected class SqlChangeStatementProxy<T extends java.sql.Statement> extends StatementProxy<T> {
 
+        /**
+         * batchComment=first 일 때, 현재 batch 에 이미 주석을 넣었는지 여부
+         */
+        private boolean batchCommented;
+
+        /**
+         * 이 Statement 의 실행 시간을 기록할 히스토그램. latencyKey 를 지정하지 않았거나 실행할 때마다 정하면 null
+         */
+        private final LatencyHistogram latencyHistogram;
+
+        /**
+         * 이 Statement 의 상위 호출자 추적 키. topKey 를 지정하지 않았거나 실행할 때마다 정하면 null
+         */
+        private final String topKey;
+
+        /**
+         * createStatement 로 만든 Statement 에서 키 템플릿에 <code>{fingerprint}</code> 처럼 SQL 에 따른 값이 있으면 true.
+         * 이때는 실행할 때마다 그 SQL 로 키를 만든다. SQL 인자가 없는 executeBatch 는 <code>-</code> 키가 된다.
+         */
+        private final boolean latencyKeyPerExecution;
+        private final boolean topKeyPerExecution;
+
+        /**
+         * 실행 시간을 재야 하면 true
+         */
+        private final boolean timed;
+
+        /**
+         * 주석을 넣기 전 SQL. createStatement 이면 null
+         */
+        private final String originalSql;
+
+        /*
+         * slowQueryThreshold 를 지정했을 때 기억해 두는 bind 값. 처음 setXxx 가 불릴 때 slowQueryMaxBinds 크기로 한 번 만들어 재사용한다.
+         * bindCount 는 지정된 가장 큰 bind 번호이다. Statement 는 한 스레드에서만 쓰므로 동기화하지 않는다.
+         */
+        private Object[] binds;
+        private int bindCount;
+
+        /*
+         * traceDir 를 지정했을 때 Statement 를 만들 때 한 번 정해 두는 SQL fingerprint 와 태그 id.
+         * createStatement 로 만든 Statement 는 실행할 때마다 정하므로 traceFingerprint 가 0 이다.
+         */
+        private final long traceFingerprint;
+        private final int traceTagId;
+        private final boolean traceTagPerExecution;
+
+        /**
+         * holdKey 를 지정했을 때 실행 횟수와 변경된 row 수를 더할 커넥션 점유
+         */
+        private final ConnectionHoldStats.Hold hold;
+
         public SqlChangeStatementProxy(T delegate, String sql) {
+            this(delegate, sql, sql);
+        }
+
+        /**
+         * @param sql         드라이버에 넘긴 SQL. createStatement 이면 null
+         * @param originalSql 주석을 넣기 전 SQL. 통계 키를 만드는 데 쓴다.
+         */
+        public SqlChangeStatementProxy(T delegate, String sql, String originalSql) {
             super(delegate, sql);
+            CallerLatencyStats latencyStats = config.getLatencyStats();
+            this.latencyKeyPerExecution = latencyStats != null && originalSql == null && config.getLatencyKeyTemplate().isSqlDependent();
+            this.latencyHistogram = latencyStats == null || latencyKeyPerExecution
+                ? null : latencyStats.histogram(config.getLatencyKeyTemplate().renderTag(originalSql, true));
+            this.topKeyPerExecution = config.getHeavyHitters() != null && originalSql == null && config.getTopKeyTemplate().isSqlDependent();
+            this.topKey = config.getHeavyHitters() == null || topKeyPerExecution
+                ? null : config.getTopKeyTemplate().renderTag(originalSql, true);
+            final StatementTracer tracer = config.getTracer();
+            this.traceFingerprint = tracer == null ? 0L : tracer.fingerprint(originalSql);
+            this.traceTagPerExecution = tracer != null && originalSql == null && config.getCommentTemplate().isSqlDependent();
+            this.traceTagId = tracer == null || traceTagPerExecution ? 0 : tracer.tagId(config.getCommentTemplate().renderTag(originalSql, true));
+            this.timed = latencyStats != null || config.getHeavyHitters() != null || config.getSlowQueryLog() != null || tracer != null;
+            this.originalSql = originalSql;
+            this.hold = SqlCallerInfoCommentInterceptor.this.hold;
         }
 
+        /**
+         * 주석 수준은 호출마다 한 번만 읽는다. <code>off</code> 이면 SQL 을 바꾸지 않고 실행 시간도 재지 않는다.
+         * 커넥션 점유의 실행 횟수와 row 수는 주석 수준과 상관없이 센다.
+         */
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            Object[] changedArgs = changeExecuteSql(method, args);
-            return super.invoke(proxy, method, changedArgs);
+            final MethodDispatchTable.Action action = STATEMENT_METHODS.actionOf(method);
+            final TaggingLevel level = config.getTaggingControl().getLevel();
+            if (!action.executes()) {
+                return dispatch(action, level, proxy, method, args);
+            }
+            if (!timed || level == TaggingLevel.OFF) {
+                if (hold == null) {
+                    return dispatch(action, level, proxy, method, args);
+                }
+                Object result = null;
+                try {
+                    result = dispatch(action, level, proxy, method, args);
+                    return result;
+                } finally {
+                    hold.executed(rows(result));
+                }
+            }
+
+            LatencyHistogram histogram = latencyHistogram;
+            String key = topKey;
+            if (latencyKeyPerExecution || topKeyPerExecution) {
+                final String sql = action == MethodDispatchTable.Action.REWRITE_SQL && args != null ? (String) args[0] : null;
+                if (latencyKeyPerExecution) {
+                    histogram = config.getLatencyStats().histogram(config.getLatencyKeyTemplate().renderTag(sql, false));
+                }
+                if (topKeyPerExecution) {
+                    key = config.getTopKeyTemplate().renderTag(sql, false);
+                }
+            }
+
+            final long start = System.nanoTime();
+            boolean failed = true;
+            Object result = null;
+            try {
+                result = dispatch(action, level, proxy, method, args);
+                failed = false;
+                return result;
+            } finally {
+                final long elapsed = System.nanoTime() - start;
+                if (hold != null) {
+                    hold.executed(rows(result));
+                }
+                if (histogram != null) {
+                    histogram.record(elapsed, failed);
+                }
+                if (key != null) {
+                    config.getHeavyHitters().record(key, elapsed);
+                }
+                final SlowQueryLog slowQueryLog = config.getSlowQueryLog();
+                if (slowQueryLog != null && slowQueryLog.isSlow(elapsed)) {
+                    slowQueryLog.offer(slowQuery(action, args, elapsed, failed));
+                }
+                final StatementTracer tracer = config.getTracer();
+                if (tracer != null) {
+                    trace(tracer, action, args, elapsed, result, failed);
+                }
+            }
+        }
+
+        private void trace(StatementTracer tracer, MethodDispatchTable.Action action, Object[] args, long elapsed, Object result, boolean failed) {
+            long fingerprint = traceFingerprint;
+            int tagId = traceTagId;
+            if (originalSql == null) {
+                final String sql = action == MethodDispatchTable.Action.REWRITE_SQL && args != null ? (String) args[0] : null;
+                fingerprint = tracer.fingerprint(sql);
+                if (traceTagPerExecution) {
+                    tagId = tracer.tagId(config.getCommentTemplate().renderTag(sql, false));
+                }
+            }
+            tracer.record(fingerprint, tagId, elapsed, rows(result), failed);
+        }
+
+        /**
+         * 느린 실행 이벤트를 이 스레드에서 만든다. bind 버퍼는 재사용되므로 문자열로 옮겨 둔다.
+         */
+        private SlowQuery slowQuery(MethodDispatchTable.Action action, Object[] args, long elapsed, boolean failed) {
+            final boolean prepared = originalSql != null;
+            final String sql = prepared ? originalSql
+                : action == MethodDispatchTable.Action.REWRITE_SQL && args != null ? (String) args[0] : null;
+            return new SlowQuery(System.currentTimeMillis(), Thread.currentThread().getName(),
+                config.getCommentTemplate().renderTag(sql, prepared), sql, elapsed, failed,
+                prepared && config.getSlowQueryLog().getMaxBinds() > 0 ? SlowQueryLog.formatBinds(binds, bindCount) : null);
+        }
+
+        /**
+         * @return executeUpdate, executeBatch 결과의 변경된 row 수. ResultSet 이나 boolean 처럼 알 수 없으면 -1
+         */
+        private long rows(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return ((Number) result).longValue();
+            }
+            long rows = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    if (count < 0) {
+                        return -1L;
+                    }
+                    rows += count;
+                }
+                return rows;
+            }
+            if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    if (count < 0) {
+                        return -1L;
+                    }
+                    rows += count;
+                }
+                return rows;
+            }
+            return -1L;
+        }
+
+        private void captureBind(Method method, Object[] args) {
+            final int index = (Integer) args[0];
+            if (index <= 0) {
+                return;
+            }
+            if (index > bindCount) {
+                bindCount = index;
+            }
+            final int maxBinds = config.getSlowQueryLog().getMaxBinds();
+            if (index > maxBinds) {
+                return;
+            }
+            if (binds == null) {
+                binds = new Object[maxBinds];
+            }
+            binds[index - 1] = args[1] == null || SET_NULL.equals(method.getName()) ? SlowQueryLog.NULL : args[1];
+        }
+
+        private Object dispatch(MethodDispatchTable.Action action, TaggingLevel level, Object proxy, Method method, Object[] args) throws Throwable {
+            switch (action) {
+                case REWRITE_SQL:
+                    return super.invoke(proxy, method, changeExecuteSql(method, args, level));
+                case REWRITE_BATCH_SQL:
+                    if (level == TaggingLevel.OFF || batchCommented && config.getBatchComment() == BatchCommentMode.FIRST) {
+                        return super.invoke(proxy, method, args);
+                    }
+                    Object result = super.invoke(proxy, method, changeExecuteSql(method, args, level));
+                    batchCommented = true;
+                    return result;
+                case EXECUTE_BATCH:
+                case END_BATCH:
+                    batchCommented = false;
+                    return super.invoke(proxy, method, args);
+                case BIND:
+                    if (config.getSlowQueryLog() != null && args != null) {
+                        captureBind(method, args);
+                    }
+                    return super.invoke(proxy, method, args);
+                case CLEAR_BINDS:
+                    if (binds != null) {
+                        Arrays.fill(binds, null);
+                    }
+                    bindCount = 0;
+                    return super.invoke(proxy, method, args);
+                default:
+                    return super.invoke(proxy, method, args);
+            }
         }
 
     }
@@ -0,0 +1,345 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * 리터럴 값만 다른 SQL 을 같은 값으로 묶는 64 bit fingerprint. 정규식 없이 SQL 을 한 번 훑으면서 정규화와 hash 계산을 함께 한다.
+ *
+ * <p>정규화 규칙</p>
+ * <ul>
+ * <li>문자열/숫자 리터럴과 bind 변수 <code>?</code> 는 <code>?</code> 가 된다. <code>N'...'</code>, <code>X'...'</code>, <code>_utf8mb4'...'</code> 도 리터럴이다.</li>
+ * <li>괄호를 여는 <code>?</code> 목록은 길이와 관계없이 <code>(?+)</code> 가 되고, 이어지는 같은 모양의 행(<code>VALUES (..),(..)</code>)은 하나로 합친다.</li>
+ * <li>주석(<code>/* *&#47;</code>, <code>--</code>)은 무시하고, 공백은 단어 사이에만 하나 남긴다. 따옴표 없는 이름은 소문자로 바꾼다.</li>
+ * <li>따옴표로 감싼 이름(<code>"..."</code>, <code>`...`</code>, <code>[...]</code>)은 그대로 둔다.</li>
+ * <li>mysql 이면 <code>#</code> 줄 주석, 문자열 안의 <code>\</code> escape, <code>"..."</code> 문자열을 MySQL 방식으로 해석한다.
+ * 아니면 <code>#</code> 는 SQL Server 임시 테이블처럼 이름의 일부이다.</li>
+ * </ul>
+ *
+ * <p>hash 는 정규화된 문자열을 만들지 않고 문자마다 FNV-1a 로 바로 계산하므로 SQL 길이와 관계없이 할당이 없다.</p>
+ */
+final class SqlFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 괄호 안 ? 목록을 합치는 상태. _DEFER 로 끝나는 상태는 아직 내보내지 않은 문자가 있다.
+    private static final int NONE = 0;
+    /** 마지막으로 '(' 를 내보냈다. */
+    private static final int OPEN = 1;
+    /** "(?+" 를 내보냈다. */
+    private static final int RUN = 2;
+    /** "(?+" 뒤의 "," 를 미뤘다. */
+    private static final int RUN_COMMA_DEFER = 3;
+    /** "(?+)" 를 내보냈다. */
+    private static final int ROW_END = 4;
+    /** "(?+)" 뒤의 "," 를 미뤘다. */
+    private static final int ROW_COMMA_DEFER = 5;
+    /** "(?+)" 뒤의 ",(" 를 미뤘다. */
+    private static final int ROW_OPEN_DEFER = 6;
+    /** "(?+)" 뒤의 ",(?+" 를 미뤘다. */
+    private static final int ROW_RUN_DEFER = 7;
+    /** "(?+)" 뒤의 ",(?+," 를 미뤘다. */
+    private static final int ROW_RUN_COMMA_DEFER = 8;
+
+    private final String sql;
+    private final boolean mysql;
+    private final StringBuilder text;
+
+    private long hash = FNV_OFFSET_BASIS;
+    private boolean lastWord;
+    private int state = NONE;
+
+    private SqlFingerprint(String sql, boolean mysql, StringBuilder text) {
+        this.sql = sql;
+        this.mysql = mysql;
+        this.text = text;
+    }
+
+    /**
+     * @param sql   SQL
+     * @param mysql MySQL 문법으로 해석하려면 true
+     * @return 정규화된 SQL 의 64 bit hash
+     */
+    static long hash(String sql, boolean mysql) {
+        SqlFingerprint fingerprint = new SqlFingerprint(sql, mysql, null);
+        fingerprint.scan();
+        return fingerprint.hash;
+    }
+
+    /**
+     * @return hash 를 계산한 정규화된 SQL. 테스트와 디버깅용이다.
+     */
+    static String normalize(String sql, boolean mysql) {
+        SqlFingerprint fingerprint = new SqlFingerprint(sql, mysql, new StringBuilder(sql.length()));
+        fingerprint.scan();
+        return fingerprint.text.toString();
+    }
+
+    /**
+     * @return 16 자리 소문자 hex
+     */
+    static String toHex(long hash) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) (hash & 0xF)];
+            hash >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    private void scan() {
+        final int length = sql.length();
+        int index = 0;
+        while (index < length) {
+            final char c = sql.charAt(index);
+            final char next = index + 1 < length ? sql.charAt(index + 1) : 0;
+            if (c <= ' ') {
+                index++;
+            } else if (c == '/' && next == '*') {
+                int end = sql.indexOf("*/", index + 2);
+                index = end < 0 ? length : end + 2;
+            } else if ((c == '-' && next == '-') || (c == '#' && mysql)) {
+                index = lineEnd(index + 1);
+            } else if (c == '\'') {
+                index = quotedEnd(index, '\'', mysql);
+                placeholder();
+            } else if (c == '"' && mysql) {
+                index = quotedEnd(index, '"', true);
+                placeholder();
+            } else if (c == '"' || c == '`' || (c == '[' && !mysql)) {
+                int end = quotedEnd(index, c == '[' ? ']' : c, false);
+                word(index, end, false);
+                index = end;
+            } else if (isDigit(c) || (c == '.' && isDigit(next) && !lastWord)) {
+                index = numberEnd(index);
+                placeholder();
+            } else if (c == '?') {
+                index++;
+                placeholder();
+            } else if (isIdentifierPart(c) && !isDigit(c)) {
+                int end = identifierEnd(index);
+                if (end < length && sql.charAt(end) == '\'' && isLiteralIntroducer(index, end)) {
+                    index = quotedEnd(end, '\'', mysql);
+                    placeholder();
+                } else {
+                    word(index, end, true);
+                    index = end;
+                }
+            } else {
+                punctuation(c);
+                index++;
+            }
+        }
+        flush();
+    }
+
+    private int lineEnd(int from) {
+        final int length = sql.length();
+        for (int i = from; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return 닫는 따옴표 다음 위치. 닫히지 않았으면 SQL 끝
+     */
+    private int quotedEnd(int open, char close, boolean backslashEscape) {
+        final int length = sql.length();
+        int i = open + 1;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\\' && backslashEscape) {
+                i += 2;
+            } else if (c == close) {
+                if (i + 1 < length && sql.charAt(i + 1) == close) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private int numberEnd(int start) {
+        final int length = sql.length();
+        int i = start;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (isIdentifierPart(c) || c == '.') {
+                i++;
+            } else if ((c == '+' || c == '-') && (sql.charAt(i - 1) | 0x20) == 'e' && !isHex(start)) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private boolean isHex(int start) {
+        return sql.charAt(start) == '0' && start + 1 < sql.length() && (sql.charAt(start + 1) | 0x20) == 'x';
+    }
+
+    private int identifierEnd(int start) {
+        final int length = sql.length();
+        int i = start + 1;
+        while (i < length && isIdentifierPart(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * <code>N'..'</code>, <code>X'..'</code>, <code>B'..'</code>, <code>_charset'..'</code>
+     */
+    private boolean isLiteralIntroducer(int start, int end) {
+        if (end - start == 1) {
+            char c = (char) (sql.charAt(start) | 0x20);
+            return c == 'n' || c == 'x' || c == 'b';
+        }
+        return sql.charAt(start) == '_';
+    }
+
+    private boolean isIdentifierPart(char c) {
+        if (c < 0x80) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c)
+                || c == '_' || c == '$' || c == '@' || (c == '#' && !mysql);
+        }
+        return Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private void placeholder() {
+        switch (state) {
+            case OPEN:
+                emit('?');
+                emit('+');
+                state = RUN;
+                lastWord = false;
+                return;
+            case RUN_COMMA_DEFER:
+                state = RUN;
+                return;
+            case ROW_OPEN_DEFER:
+            case ROW_RUN_COMMA_DEFER:
+                state = ROW_RUN_DEFER;
+                return;
+            default:
+                flush();
+                if (lastWord) {
+                    emit(' ');
+                }
+                emit('?');
+                lastWord = true;
+                state = NONE;
+        }
+    }
+
+    private void punctuation(char c) {
+        switch (state) {
+            case RUN:
+                if (c == ',') {
+                    state = RUN_COMMA_DEFER;
+                    return;
+                }
+                if (c == ')') {
+                    emit(')');
+                    state = ROW_END;
+                    return;
+                }
+                break;
+            case ROW_END:
+                if (c == ',') {
+                    state = ROW_COMMA_DEFER;
+                    return;
+                }
+                break;
+            case ROW_COMMA_DEFER:
+                if (c == '(') {
+                    state = ROW_OPEN_DEFER;
+                    return;
+                }
+                break;
+            case ROW_RUN_DEFER:
+                if (c == ',') {
+                    state = ROW_RUN_COMMA_DEFER;
+                    return;
+                }
+                if (c == ')') {
+                    // 앞 행과 같은 모양이므로 버린다.
+                    state = ROW_END;
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        flush();
+        emit(c);
+        lastWord = false;
+        state = c == '(' ? OPEN : NONE;
+    }
+
+    private void word(int start, int end, boolean lowerCase) {
+        flush();
+        if (lastWord) {
+            emit(' ');
+        }
+        for (int i = start; i < end; i++) {
+            char c = sql.charAt(i);
+            emit(lowerCase && c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c);
+        }
+        lastWord = true;
+        state = NONE;
+    }
+
+    /**
+     * 미뤄 둔 문자를 내보내고 상태를 초기화한다.
+     */
+    private void flush() {
+        switch (state) {
+            case RUN_COMMA_DEFER:
+            case ROW_COMMA_DEFER:
+                emit(',');
+                break;
+            case ROW_OPEN_DEFER:
+                emit(',');
+                emit('(');
+                break;
+            case ROW_RUN_DEFER:
+                emit(',');
+                emit('(');
+                emit('?');
+                emit('+');
+                break;
+            case ROW_RUN_COMMA_DEFER:
+                emit(',');
+                emit('(');
+                emit('?');
+                emit('+');
+                emit(',');
+                break;
+            default:
+                return;
+        }
+        state = NONE;
+        lastWord = false;
+    }
+
+    private void emit(char c) {
+        hash = (hash ^ c) * FNV_PRIME;
+        if (text != null) {
+            text.append(c);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * SQL 의 종류. commentTemplate 의 <code>{rw}</code> 값이며, 주석을 읽는 proxy 가 SQL 을 다시 파싱하지 않고 replica 로 보낼지 정하는 데 쓴다.
+ *
+ * <p>파서 없이 앞의 공백, 주석(<code>/* *&#47;</code>, <code>--</code>, <code>#</code>), <code>( ; { ? =</code> 를 건너뛰고 첫 단어로 분류한다.</p>
+ * <ul>
+ * <li>read : <code>SELECT</code>, <code>WITH</code>, <code>VALUES</code>, <code>TABLE</code>, <code>SHOW</code>, <code>DESCRIBE</code>, <code>DESC</code>,
+ * <code>EXPLAIN</code>, <code>HELP</code></li>
+ * <li>ddl : <code>CREATE</code>, <code>ALTER</code>, <code>DROP</code>, <code>TRUNCATE</code>, <code>RENAME</code>, <code>COMMENT</code>,
+ * <code>GRANT</code>, <code>REVOKE</code></li>
+ * <li>other : 세션/트랜잭션 제어. <code>SET</code>, <code>USE</code>, <code>BEGIN</code>, <code>START</code>, <code>COMMIT</code>,
+ * <code>ROLLBACK</code>, <code>SAVEPOINT</code>, <code>RELEASE</code>. SQL 이 비어 있어도 other 이다.</li>
+ * <li>write : 그 밖의 모든 SQL. <code>INSERT</code>, <code>UPDATE</code>, <code>DELETE</code>, <code>MERGE</code>, <code>REPLACE</code>,
+ * <code>CALL</code>, <code>EXEC</code>, <code>DECLARE</code> 등 모르는 단어도 write 로 본다.</li>
+ * </ul>
+ *
+ * <p>read 로 시작해도 잠금을 잡거나 값을 바꾸는 SQL 은 write 이다. <code>SELECT</code>, <code>WITH</code>, <code>VALUES</code>, <code>TABLE</code> 은
+ * 나머지 단어도 한 번 훑어 <code>INSERT</code>, <code>UPDATE</code>(<code>FOR UPDATE</code>), <code>DELETE</code>, <code>MERGE</code>,
+ * <code>INTO</code>(<code>SELECT ... INTO</code>), <code>FOR SHARE</code>, <code>LOCK IN SHARE MODE</code>, SQL Server 의 <code>UPDLOCK</code>,
+ * <code>XLOCK</code>, <code>HOLDLOCK</code>, <code>TABLOCKX</code>, 시퀀스를 올리는 <code>NEXT VALUE FOR</code>, <code>NEXTVAL</code>,
+ * <code>SETVAL</code>, MySQL 의 <code>GET_LOCK</code> 이 있으면 write 로 바꾼다.
+ * 이때 문자열 리터럴과 주석 안의 단어도 세므로 틀리더라도 read 를 write 로 보는 쪽으로만 틀린다.
+ * <code>EXPLAIN ANALYZE</code> 는 실제로 실행되므로 뒤의 SQL 로 분류한다.</p>
+ *
+ * <p>여러 SQL 을 이어 보낸 batch 는 첫 SQL 로만 분류한다. 할당 없이 SQL 을 한 번 훑는다.</p>
+ */
+enum SqlStatementClass {
+
+    READ("read"),
+    WRITE("write"),
+    DDL("ddl"),
+    OTHER("other");
+
+    private final String tagValue;
+
+    SqlStatementClass(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    /**
+     * @return 주석에 넣을 소문자 이름
+     */
+    String getTagValue() {
+        return tagValue;
+    }
+
+    static SqlStatementClass classify(String sql) {
+        return classify(sql, 0);
+    }
+
+    private static SqlStatementClass classify(String sql, int from) {
+        final int start = skipIgnorable(sql, from);
+        final int end = wordEnd(sql, start);
+        if (start == end) {
+            return OTHER;
+        }
+        switch (Character.toUpperCase(sql.charAt(start))) {
+            case 'A':
+                return keyword(sql, start, end, "ALTER") ? DDL : WRITE;
+            case 'B':
+                return keyword(sql, start, end, "BEGIN") ? OTHER : WRITE;
+            case 'C':
+                if (keyword(sql, start, end, "CREATE") || keyword(sql, start, end, "COMMENT")) {
+                    return DDL;
+                }
+                return keyword(sql, start, end, "COMMIT") ? OTHER : WRITE;
+            case 'D':
+                if (keyword(sql, start, end, "DESC") || keyword(sql, start, end, "DESCRIBE")) {
+                    return READ;
+                }
+                return keyword(sql, start, end, "DROP") ? DDL : WRITE;
+            case 'E':
+                return keyword(sql, start, end, "EXPLAIN") ? explain(sql, end) : WRITE;
+            case 'G':
+                return keyword(sql, start, end, "GRANT") ? DDL : WRITE;
+            case 'H':
+                return keyword(sql, start, end, "HELP") ? READ : WRITE;
+            case 'R':
+                if (keyword(sql, start, end, "RENAME") || keyword(sql, start, end, "REVOKE")) {
+                    return DDL;
+                }
+                return keyword(sql, start, end, "ROLLBACK") || keyword(sql, start, end, "RELEASE") ? OTHER : WRITE;
+            case 'S':
+                if (keyword(sql, start, end, "SELECT")) {
+                    return readUnlessModifying(sql, end);
+                }
+                if (keyword(sql, start, end, "SHOW")) {
+                    return READ;
+                }
+                return keyword(sql, start, end, "SET") || keyword(sql, start, end, "START") || keyword(sql, start, end, "SAVEPOINT")
+                    ? OTHER : WRITE;
+            case 'T':
+                if (keyword(sql, start, end, "TABLE")) {
+                    return readUnlessModifying(sql, end);
+                }
+                return keyword(sql, start, end, "TRUNCATE") ? DDL : WRITE;
+            case 'U':
+                return keyword(sql, start, end, "USE") ? OTHER : WRITE;
+            case 'V':
+                return keyword(sql, start, end, "VALUES") ? readUnlessModifying(sql, end) : WRITE;
+            case 'W':
+                return keyword(sql, start, end, "WITH") ? readUnlessModifying(sql, end) : WRITE;
+            default:
+                return WRITE;
+        }
+    }
+
+    /**
+     * <code>EXPLAIN ANALYZE</code>(PostgreSQL, H2 등)는 SQL 을 실제로 실행하므로 뒤의 SQL 로 분류한다.
+     */
+    private static SqlStatementClass explain(String sql, int from) {
+        final int start = skipIgnorable(sql, from);
+        final int end = wordEnd(sql, start);
+        if (keyword(sql, start, end, "ANALYZE") || keyword(sql, start, end, "ANALYSE")) {
+            return classify(sql, end);
+        }
+        return READ;
+    }
+
+    /**
+     * 나머지 단어 중 값을 바꾸거나 잠금을 잡는 단어가 있으면 write 이다. 문자열과 주석도 그대로 훑는다.
+     */
+    private static SqlStatementClass readUnlessModifying(String sql, int from) {
+        final int length = sql.length();
+        int previousStart = -1;
+        int previousEnd = -1;
+        int i = from;
+        while (i < length) {
+            if (!isWordChar(sql.charAt(i))) {
+                i++;
+                continue;
+            }
+            final int start = i;
+            final int end = wordEnd(sql, start);
+            if (modifies(sql, start, end, previousStart, previousEnd)) {
+                return WRITE;
+            }
+            previousStart = start;
+            previousEnd = end;
+            i = end;
+        }
+        return READ;
+    }
+
+    private static boolean modifies(String sql, int start, int end, int previousStart, int previousEnd) {
+        switch (Character.toUpperCase(sql.charAt(start))) {
+            case 'D':
+                return keyword(sql, start, end, "DELETE");
+            case 'G':
+                return keyword(sql, start, end, "GET_LOCK");
+            case 'H':
+                return keyword(sql, start, end, "HOLDLOCK");
+            case 'I':
+                return keyword(sql, start, end, "INSERT") || keyword(sql, start, end, "INTO");
+            case 'M':
+                return keyword(sql, start, end, "MERGE");
+            case 'N':
+                return keyword(sql, start, end, "NEXTVAL");
+            case 'S':
+                if (keyword(sql, start, end, "SETVAL")) {
+                    return true;
+                }
+                // FOR SHARE, FOR KEY SHARE, LOCK IN SHARE MODE
+                return keyword(sql, start, end, "SHARE") && (keyword(sql, previousStart, previousEnd, "FOR")
+                    || keyword(sql, previousStart, previousEnd, "KEY") || keyword(sql, previousStart, previousEnd, "IN"));
+            case 'T':
+                return keyword(sql, start, end, "TABLOCKX");
+            case 'U':
+                return keyword(sql, start, end, "UPDATE") || keyword(sql, start, end, "UPDLOCK");
+            case 'V':
+                // NEXT VALUE FOR
+                return keyword(sql, start, end, "VALUE") && keyword(sql, previousStart, previousEnd, "NEXT");
+            case 'X':
+                return keyword(sql, start, end, "XLOCK");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return from 부터 공백, 주석, 여는 괄호, <code>;</code>, JDBC escape 의 <code>{</code>, <code>? =</code> 를 건너뛴 위치
+     */
+    static int skipIgnorable(String sql, int from) {
+        final int length = sql.length();
+        int i = from;
+        while (i < length) {
+            final char c = sql.charAt(i);
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-' || c == '#') {
+                i = sql.indexOf('\n', i);
+                if (i < 0) {
+                    return length;
+                }
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                i = sql.indexOf("*/", i + 2);
+                if (i < 0) {
+                    return length;
+                }
+                i += 2;
+            } else if (Character.isWhitespace(c) || c == '(' || c == ';' || c == '{' || c == '?' || c == '=') {
+                i++;
+            } else {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static int wordEnd(String sql, int start) {
+        final int length = sql.length();
+        int i = start;
+        while (i < length && isWordChar(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * <code>@update</code>, <code>#temp</code>, <code>seq$1</code> 처럼 이름에 붙는 문자도 단어의 일부로 본다.
+     */
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '$' || c == '@' || c == '#'
+            || c > 0x7f && Character.isLetterOrDigit(c);
+    }
+
+    /**
+     * @param keyword 대문자
+     */
+    private static boolean keyword(String sql, int start, int end, String keyword) {
+        return end - start == keyword.length() && sql.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+}
@@ -0,0 +1,122 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * {@link CommentPlacement} 가 주석 넣을 위치를 찾는 데 쓰는 최소한의 토큰 검사.
+ *
+ * <p>SQL 을 파싱하지 않는다. 앞부분은 공백/주석과 첫 키워드까지만 문자 단위로 훑으므로 SQL 길이와 상관없고,
+ * 뒷부분은 줄 주석 표시 문자만 {@link String#indexOf(int, int)} 로 찾으므로 SQL 을 한 번 복사하는 것과 비슷한 비용이다.
+ * 정규식과 할당은 쓰지 않는다.</p>
+ */
+final class SqlTokenScanner {
+
+    private SqlTokenScanner() {
+    }
+
+    /**
+     * @return index 부터 공백, <code>/* *&#47;</code>, <code>--</code> 주석을 건너뛴 위치. 끝까지 공백/주석이면 sql.length()
+     */
+    static int skipBlanksAndComments(String sql, int index) {
+        final int length = sql.length();
+        while (index < length) {
+            char c = sql.charAt(index);
+            if (Character.isWhitespace(c)) {
+                index++;
+            } else if (c == '/' && index + 1 < length && sql.charAt(index + 1) == '*') {
+                int close = sql.indexOf("*/", index + 2);
+                if (close < 0) {
+                    return length;
+                }
+                index = close + 2;
+            } else if (c == '-' && index + 1 < length && sql.charAt(index + 1) == '-') {
+                int newline = sql.indexOf('\n', index + 2);
+                if (newline < 0) {
+                    return length;
+                }
+                index = newline + 1;
+            } else {
+                return index;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 첫 키워드(<code>SELECT</code>, <code>UPDATE</code>, <code>WITH</code> 등) 바로 뒤 위치를 찾는다.
+     * 키워드 바로 뒤에 optimizer hint(<code>/*+ ... *&#47;</code>)가 있으면 hint 는 키워드 바로 뒤에 있어야 하므로 hint 뒤 위치를 돌려준다.
+     *
+     * @return 주석을 넣을 위치. SQL 이 키워드로 시작하지 않으면(괄호, escape 등) -1
+     */
+    static int afterFirstKeyword(String sql) {
+        final int length = sql.length();
+        final int start = skipBlanksAndComments(sql, 0);
+        int index = start;
+        while (index < length && isAsciiLetter(sql.charAt(index))) {
+            index++;
+        }
+        if (index == start) {
+            return -1;
+        }
+
+        int next = index;
+        while (next < length && Character.isWhitespace(sql.charAt(next))) {
+            next++;
+        }
+        if (sql.startsWith("/*+", next)) {
+            int close = sql.indexOf("*/", next + 3);
+            return close < 0 ? -1 : close + 2;
+        }
+        return index;
+    }
+
+    /**
+     * @return 끝에 붙은 공백과 <code>;</code> 를 뺀 SQL 의 끝 위치
+     */
+    static int trailerStart(String sql) {
+        int end = sql.length();
+        while (end > 0) {
+            char c = sql.charAt(end - 1);
+            if (c != ';' && !Character.isWhitespace(c)) {
+                break;
+            }
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 마지막 줄에 <code>--</code> 또는 <code>#</code>(MySQL) 이 있으면 뒤에 붙인 주석이 줄 주석에 묻힐 수 있다.
+     * 문자열 리터럴 안의 것까지 구분하지는 않으므로 true 가 잘못 나올 수 있지만, 그 경우에도 줄바꿈 하나가 더 들어갈 뿐이다.
+     *
+     * <p>한 줄짜리 긴 ORM SQL 을 뒤에서부터 한 글자씩 훑지 않도록, JIT 가 벡터화하는 {@link String#indexOf(int, int)} 로
+     * 마지막 표시 문자를 찾고 그 뒤에 줄바꿈이 있는지만 본다.</p>
+     */
+    static boolean mayEndInLineComment(String sql) {
+        int marker = -1;
+        for (int index = sql.indexOf('#'); index >= 0; index = sql.indexOf('#', index + 1)) {
+            marker = index;
+        }
+        for (int index = sql.indexOf('-', marker + 1); index >= 0; index = sql.indexOf('-', index + 1)) {
+            if (index + 1 < sql.length() && sql.charAt(index + 1) == '-') {
+                marker = index;
+                index++;
+            }
+        }
+        return marker >= 0 && sql.indexOf('\n', marker) < 0 && sql.indexOf('\r', marker) < 0;
+    }
+
+    /**
+     * @return SQL 이 JDBC escape(<code>{call ...}</code>, <code>{? = call ...}</code>)이면 닫는 <code>}</code> 위치, 아니면 -1
+     */
+    static int escapeClose(String sql) {
+        int start = skipBlanksAndComments(sql, 0);
+        if (start >= sql.length() || sql.charAt(start) != '{') {
+            return -1;
+        }
+        int close = sql.lastIndexOf('}');
+        return close > start ? close : -1;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+}
@@ -0,0 +1,328 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link StatementTracer} 가 남긴 파일을 읽어 호출자 태그와 fingerprint 별로 모은다. 애플리케이션 밖에서 실행하는 도구이며 SLF4J 도 필요 없다.
+ *
+ * <pre>java -cp tomcat-jdbc-pool-sql-caller-info-comment.jar in.woowa.tomcat.jdbc.pool.interceptor.StatementTraceReader [--top 20] [--sort time|count|rows] &lt;traceDir 또는 .trace 파일&gt;...</pre>
+ *
+ * <p>태그 id 는 JVM 실행마다 다르므로 파일마다 같은 prefix 의 <code>.dict</code> 파일로 태그 문자열을 찾은 뒤, 문자열로 모은다.
+ * 사전에 없는 fingerprint 는 hex 로 보여준다.</p>
+ */
+public final class StatementTraceReader {
+
+    private static final Pattern TRACE_FILE_NAME = Pattern.compile("(.+)-\\d+" + Pattern.quote(StatementTracer.TRACE_SUFFIX));
+
+    private static final int DEFAULT_TOP = 20;
+
+    private StatementTraceReader() {
+    }
+
+    /**
+     * 레코드 하나씩 받는다.
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long timestampMillis, long fingerprint, long elapsedNanos, long rows, int tagId, boolean failed);
+    }
+
+    /**
+     * 파일 하나의 완전히 쓰인 레코드를 순서대로 넘긴다. 쓰는 도중 멈춘 레코드는 건너뛴다.
+     *
+     * @return 넘긴 레코드 개수
+     * @throws IOException trace 파일이 아니거나 읽을 수 없을 때
+     */
+    public static long read(Path traceFile, RecordVisitor visitor) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(traceFile, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < StatementTracer.HEADER_SIZE || buffer.getInt(0) != StatementTracer.MAGIC) {
+            throw new IOException("not a statement trace file : " + traceFile);
+        }
+        if (buffer.getInt(4) != StatementTracer.VERSION) {
+            throw new IOException("unsupported statement trace version " + buffer.getInt(4) + " : " + traceFile);
+        }
+        final int recordSize = buffer.getInt(8);
+        final int headerSize = buffer.getInt(12);
+
+        long count = 0;
+        for (int offset = headerSize; offset + recordSize <= buffer.limit(); offset += recordSize) {
+            final int flags = buffer.getInt(offset + 36);
+            if ((flags & StatementTracer.FLAG_COMMITTED) == 0) {
+                continue;
+            }
+            visitor.visit(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16), buffer.getLong(offset + 24),
+                buffer.getInt(offset + 32), (flags & StatementTracer.FLAG_FAILED) != 0);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return trace 파일과 같은 prefix 의 사전 파일 경로. 이름 규칙에 맞지 않으면 null
+     */
+    static Path dictionaryOf(Path traceFile) {
+        Matcher matcher = TRACE_FILE_NAME.matcher(traceFile.getFileName().toString());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return traceFile.resolveSibling(matcher.group(1) + StatementTracer.DICTIONARY_SUFFIX);
+    }
+
+    /**
+     * 사전 파일을 읽는다. 파일이 없으면 빈 사전이다. 마지막 항목이 쓰다 만 것이면 무시한다.
+     */
+    public static Dictionary readDictionary(Path dictionaryFile) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        if (dictionaryFile == null || !Files.exists(dictionaryFile)) {
+            return dictionary;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(dictionaryFile)).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() >= 1 + 8 + 4) {
+            byte kind = buffer.get();
+            long key = buffer.getLong();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            if (kind == StatementTracer.DICTIONARY_TAG) {
+                dictionary.tags.put((int) key, value);
+            } else if (kind == StatementTracer.DICTIONARY_SQL) {
+                dictionary.sqls.put(key, value);
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * 여러 파일의 레코드를 (태그, fingerprint) 별로 모은다.
+     *
+     * @return 누적 실행 시간이 큰 순서
+     */
+    public static List<Summary> summarize(List<Path> traceFiles) throws IOException {
+        Map<Path, Dictionary> dictionaries = new HashMap<>();
+        Map<String, Summary> summaries = new HashMap<>();
+        for (Path traceFile : traceFiles) {
+            Path dictionaryFile = dictionaryOf(traceFile);
+            Dictionary dictionary = dictionaryFile == null ? new Dictionary() : dictionaries.get(dictionaryFile);
+            if (dictionary == null) {
+                dictionary = readDictionary(dictionaryFile);
+                dictionaries.put(dictionaryFile, dictionary);
+            }
+            final Dictionary fileDictionary = dictionary;
+            read(traceFile, (timestampMillis, fingerprint, elapsedNanos, rows, tagId, failed) -> {
+                String tag = fileDictionary.tag(tagId);
+                Summary summary = summaries.computeIfAbsent(tag + '\u0000' + fingerprint,
+                    ignored -> new Summary(tag, fingerprint, fileDictionary.sql(fingerprint)));
+                summary.add(timestampMillis, elapsedNanos, rows, failed);
+            });
+        }
+        List<Summary> result = new ArrayList<>(summaries.values());
+        result.sort(Comparator.comparingLong(Summary::getTotalNanos).reversed());
+        return result;
+    }
+
+    /**
+     * @param paths traceDir 또는 .trace 파일
+     * @return 이름 순으로 정렬한 .trace 파일
+     */
+    static List<Path> traceFiles(List<Path> paths) throws IOException {
+        List<Path> traceFiles = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + StatementTracer.TRACE_SUFFIX)) {
+                    for (Path traceFile : stream) {
+                        traceFiles.add(traceFile);
+                    }
+                }
+            } else {
+                traceFiles.add(path);
+            }
+        }
+        Collections.sort(traceFiles);
+        return traceFiles;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) throws IOException {
+        int top = DEFAULT_TOP;
+        Comparator<Summary> order = Comparator.comparingLong(Summary::getTotalNanos).reversed();
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--top".equals(args[i]) && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else if ("--sort".equals(args[i]) && i + 1 < args.length) {
+                String sort = args[++i];
+                if ("count".equals(sort)) {
+                    order = Comparator.comparingLong(Summary::getCount).reversed();
+                } else if ("rows".equals(sort)) {
+                    order = Comparator.comparingLong(Summary::getRows).reversed();
+                } else if (!"time".equals(sort)) {
+                    err.println("--sort must be time, count or rows : " + sort);
+                    return 1;
+                }
+            } else {
+                paths.add(Paths.get(args[i]));
+            }
+        }
+        if (paths.isEmpty()) {
+            err.println("usage : StatementTraceReader [--top 20] [--sort time|count|rows] <traceDir or .trace file>...");
+            return 1;
+        }
+
+        List<Path> traceFiles = traceFiles(paths);
+        List<Summary> summaries = summarize(traceFiles);
+        summaries.sort(order);
+
+        long records = 0;
+        long failed = 0;
+        for (Summary summary : summaries) {
+            records += summary.getCount();
+            failed += summary.getFailedCount();
+        }
+        out.printf("%d files, %d records, %d failed, %d (tag, fingerprint) groups%n", traceFiles.size(), records, failed, summaries.size());
+        out.printf("%10s %8s %12s %10s %10s %10s  %s%n", "count", "failed", "total ms", "avg ms", "max ms", "rows", "tag | sql");
+        for (Summary summary : summaries.subList(0, Math.min(top, summaries.size()))) {
+            out.printf("%10d %8d %12.3f %10.3f %10.3f %10d  %s | %s%n", summary.getCount(), summary.getFailedCount(),
+                summary.getTotalNanos() / 1_000_000.0, summary.getTotalNanos() / 1_000_000.0 / summary.getCount(),
+                summary.getMaxNanos() / 1_000_000.0, summary.getRows(), summary.getTag(), summary.getSql());
+        }
+        return 0;
+    }
+
+    /**
+     * 사전 파일 하나의 태그 id, fingerprint 에 대한 문자열
+     */
+    public static final class Dictionary {
+        private final Map<Integer, String> tags = new HashMap<>();
+        private final Map<Long, String> sqls = new HashMap<>();
+
+        /**
+         * @return 태그 문자열. 사전에 없으면 <code>#id</code>
+         */
+        public String tag(int tagId) {
+            String tag = tags.get(tagId);
+            return tag != null ? tag : tagId == StatementTracer.OVERFLOW_TAG_ID ? CommentTemplate.FALLBACK_VALUE : "#" + tagId;
+        }
+
+        /**
+         * @return 정규화 SQL. 사전에 없으면 fingerprint 의 hex
+         */
+        public String sql(long fingerprint) {
+            String sql = sqls.get(fingerprint);
+            return sql != null ? sql : fingerprint == 0L ? CommentTemplate.FALLBACK_VALUE : SqlFingerprint.toHex(fingerprint);
+        }
+    }
+
+    /**
+     * (태그, fingerprint) 하나의 집계
+     */
+    public static final class Summary {
+        private final String tag;
+        private final long fingerprint;
+        private final String sql;
+        private long count;
+        private long failedCount;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+        private long firstMillis = Long.MAX_VALUE;
+        private long lastMillis = Long.MIN_VALUE;
+
+        Summary(String tag, long fingerprint, String sql) {
+            this.tag = tag;
+            this.fingerprint = fingerprint;
+            this.sql = sql;
+        }
+
+        void add(long timestampMillis, long elapsedNanos, long rows, boolean failed) {
+            count++;
+            if (failed) {
+                failedCount++;
+            }
+            totalNanos += elapsedNanos;
+            maxNanos = Math.max(maxNanos, elapsedNanos);
+            if (rows > 0) {
+                this.rows += rows;
+            }
+            firstMillis = Math.min(firstMillis, timestampMillis);
+            lastMillis = Math.max(lastMillis, timestampMillis);
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailedCount() {
+            return failedCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @return 변경된 row 수의 합. row 수를 알 수 없는 실행은 빠진다.
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        public long getFirstMillis() {
+            return firstMillis;
+        }
+
+        public long getLastMillis() {
+            return lastMillis;
+        }
+
+        @Override
+        public String toString() {
+            return tag + " | " + sql + " count=" + count + " failed=" + failedCount +
+                " totalMillis=" + String.format("%.3f", totalNanos / 1_000_000.0) + " rows=" + rows;
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * pool 하나의 모든 Statement 실행을 고정 길이 binary 레코드로 memory-mapped 파일에 남긴다. <code>traceDir</code> interceptor 프라퍼티를 지정하면 만들어진다.
+ *
+ * <p>레코드 하나는 {@link #RECORD_SIZE} byte 이며 little endian 으로 다음 값을 담는다. 장애 후 {@link StatementTraceReader} 로 모아 본다.</p>
+ * <pre>
+ *  0 long 실행이 끝난 시각(epoch millis)
+ *  8 long SQL fingerprint ({@link SqlFingerprint#hash(String, boolean)}). SQL 인자 없는 executeBatch 이면 0
+ * 16 long 실행 시간(ns)
+ * 24 long 변경된 row 수. executeUpdate, executeBatch 의 결과이며 알 수 없으면 -1
+ * 32 int  호출자 태그 id. commentTemplate 값을 사전 파일에 한 번만 남기고 id 로 가리킨다.
+ * 36 int  flag. {@link #FLAG_FAILED}, 마지막에 쓰는 {@link #FLAG_COMMITTED}
+ * </pre>
+ *
+ * <p>기록하는 스레드는 현재 파일의 쓰기 위치를 {@link AtomicLong} 으로 한 번 올려 자리를 차지하고, 그 자리에 절대 위치 put 만 하므로
+ * 락도 할당도 없다. 파일이 절반 차면 그 자리를 차지한 스레드가 배경 스레드를 깨우고, 배경 스레드가 다음 파일을 만들어 map 해 둔다.
+ * 파일이 차면 자리를 넘긴 스레드 하나가 미리 만들어 둔 파일로 바꾸기만 한다. 바꾸는 짧은 동안 들어온 레코드는 기다리지 않고 버린 뒤 개수만 센다.
+ * 배경 스레드가 절반을 채우는 동안에도 다음 파일을 만들지 못했을 때만 바꾸는 스레드가 직접 만든다.
+ * 파일은 <code>traceMaxFiles</code> 개까지만 남기고 오래된 것부터 배경 스레드가 지운다.</p>
+ *
+ * <p>파일 이름은 <code>&lt;pool&gt;-&lt;시작 시각&gt;-000001.trace</code> 이고, 태그 문자열과 fingerprint 의 정규화 SQL 은
+ * 같은 prefix 의 <code>.dict</code> 파일에 처음 나올 때 한 번 남긴다. 사전 파일 쓰기도 큐에 넣어 배경 스레드가 맡으므로
+ * JDBC 스레드는 파일 I/O 를 하지 않는다. 이미 남긴 fingerprint 는 boxing 없이 long 배열 hash set 으로 확인한다.</p>
+ */
+public final class StatementTracer {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementTracer.class);
+
+    static final int MAGIC = 0x53514C54;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 40;
+
+    static final int FLAG_FAILED = 1;
+    static final int FLAG_COMMITTED = 1 << 31;
+
+    static final byte DICTIONARY_TAG = 1;
+    static final byte DICTIONARY_SQL = 2;
+
+    static final String TRACE_SUFFIX = ".trace";
+    static final String DICTIONARY_SUFFIX = ".dict";
+
+    static final int DEFAULT_FILE_SIZE_MB = 64;
+    static final int MAX_FILE_SIZE_MB = 1024;
+    static final int DEFAULT_MAX_FILES = 8;
+    static final int MAX_FILES_LIMIT = 1000;
+
+    /**
+     * 구분할 태그의 최대 개수. 넘는 태그는 {@link #OVERFLOW_TAG_ID} 하나로 모은다.
+     */
+    static final int MAX_TAGS = 65536;
+    static final int OVERFLOW_TAG_ID = 0;
+
+    /**
+     * 사전 파일에 남길 fingerprint SQL 의 최대 개수와 길이. 넘으면 hash 만 남는다.
+     */
+    static final int MAX_DICTIONARY_SQLS = 65536;
+    static final int MAX_DICTIONARY_SQL_LENGTH = 4096;
+
+    /**
+     * 배경 스레드가 깨우는 신호를 놓쳤을 때 다시 살펴보는 간격
+     */
+    static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Path directory;
+    private final int fileSize;
+    private final int maxFiles;
+
+    private final Map<String, Integer> tagIds = new ConcurrentHashMap<>();
+    private final LongHashSet dictionarySqls = new LongHashSet(MAX_DICTIONARY_SQLS);
+    private final AtomicBoolean rotating = new AtomicBoolean();
+    private final LongAdder droppedCount = new LongAdder();
+
+    private volatile Segment segment;
+
+    /**
+     * start 부터 stop 까지 다음 파일과 사전 파일을 맡는 배경 스레드
+     */
+    private volatile Writer writer;
+
+    /**
+     * 현재 파일이 절반 넘게 차면 배경 스레드가 미리 만들어 두는 다음 파일. this 로 동기화한다.
+     */
+    private Segment next;
+
+    /*
+     * start 이후에만 쓰며 this 로 동기화한다.
+     */
+    private String prefix;
+    private final Deque<Path> files = new ArrayDeque<>();
+
+    /**
+     * @param directory 파일을 만들 디렉토리. 없으면 start 시점에 만든다.
+     * @param fileSize  파일 하나의 크기(byte)
+     * @param maxFiles  남겨 둘 최대 파일 개수
+     */
+    public StatementTracer(Path directory, int fileSize, int maxFiles) {
+        if (fileSize < HEADER_SIZE + RECORD_SIZE) {
+            throw new IllegalArgumentException("fileSize must be " + (HEADER_SIZE + RECORD_SIZE) + " or greater : " + fileSize);
+        }
+        if (maxFiles <= 0 || maxFiles > MAX_FILES_LIMIT) {
+            throw new IllegalArgumentException("maxFiles must be between 1 and " + MAX_FILES_LIMIT + " : " + maxFiles);
+        }
+        this.directory = directory;
+        this.fileSize = fileSize;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * 레코드 하나를 남긴다. 기다리지 않으며 할당하지 않는다. 시작 전이거나 파일을 바꾸는 중이면 버리고 개수만 센다.
+     *
+     * @param fingerprint  {@link #fingerprint(String)} 결과
+     * @param tagId        {@link #tagId(String)} 결과
+     * @param elapsedNanos 실행 시간
+     * @param rows         변경된 row 수. 모르면 -1
+     * @param failed       예외로 끝났으면 true
+     */
+    public void record(long fingerprint, int tagId, long elapsedNanos, long rows, boolean failed) {
+        final long timestamp = System.currentTimeMillis();
+        Segment current = segment;
+        while (current != null) {
+            final long offset = current.position.getAndAdd(RECORD_SIZE);
+            if (offset + RECORD_SIZE <= current.limit) {
+                final int index = (int) offset;
+                final MappedByteBuffer buffer = current.buffer;
+                buffer.putLong(index, timestamp);
+                buffer.putLong(index + 8, fingerprint);
+                buffer.putLong(index + 16, elapsedNanos);
+                buffer.putLong(index + 24, rows);
+                buffer.putInt(index + 32, tagId);
+                buffer.putInt(index + 36, failed ? FLAG_COMMITTED | FLAG_FAILED : FLAG_COMMITTED);
+                if (offset == current.prepareNextAt) {
+                    wakeWriter();
+                }
+                return;
+            }
+            if (!rotate(current)) {
+                break;
+            }
+            current = segment;
+        }
+        droppedCount.increment();
+    }
+
+    /**
+     * 호출자 태그의 id 를 돌려준다. 처음 보는 태그이면 사전 파일에 남기도록 배경 스레드에 넘긴다. Statement 를 만들 때 한 번 부르는 것을 전제로 한다.
+     *
+     * @return 1 부터 시작하는 id. 태그가 {@link #MAX_TAGS} 개를 넘으면 {@link #OVERFLOW_TAG_ID}
+     */
+    public int tagId(String tag) {
+        Integer id = tagIds.get(tag);
+        if (id != null) {
+            return id;
+        }
+        synchronized (tagIds) {
+            id = tagIds.get(tag);
+            if (id == null) {
+                if (tagIds.size() >= MAX_TAGS) {
+                    return OVERFLOW_TAG_ID;
+                }
+                id = tagIds.size() + 1;
+                tagIds.put(tag, id);
+                appendDictionary(DICTIONARY_TAG, id, tag);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * SQL 의 fingerprint 를 돌려준다. 처음 보는 fingerprint 이면 정규화 SQL 을 사전 파일에 남기도록 배경 스레드에 넘긴다.
+     *
+     * @return fingerprint. sql 이 null 이면 0
+     */
+    public long fingerprint(String sql) {
+        if (sql == null) {
+            return 0L;
+        }
+        final long hash = SqlFingerprint.hash(sql, false);
+        if (dictionarySqls.add(hash)) {
+            String normalized = SqlFingerprint.normalize(sql, false);
+            if (normalized.length() > MAX_DICTIONARY_SQL_LENGTH) {
+                normalized = normalized.substring(0, MAX_DICTIONARY_SQL_LENGTH);
+            }
+            appendDictionary(DICTIONARY_SQL, hash, normalized);
+        }
+        return hash;
+    }
+
+    /**
+     * 첫 파일과 사전 파일을 만들고 배경 스레드를 시작한다. 이미 알고 있는 태그는 사전에 다시 남긴다. 실패하면 WARN 로그를 남기고 기록하지 않는다.
+     *
+     * @param poolName tomcat jdbc pool 이름
+     */
+    synchronized void start(String poolName) {
+        if (segment != null) {
+            return;
+        }
+        prefix = (poolName == null ? "pool" : poolName).replaceAll("[^\\w.-]", "_")
+            + "-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        FileChannel dictionary = null;
+        try {
+            Files.createDirectories(directory);
+            dictionary = FileChannel.open(directory.resolve(prefix + DICTIONARY_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            Writer started = new Writer(dictionary, poolName);
+            for (Map.Entry<String, Integer> entry : tagIds.entrySet()) {
+                started.append(DICTIONARY_TAG, entry.getValue(), entry.getKey());
+            }
+            dictionarySqls.clear();
+            segment = activate(openSegment(1));
+            writer = started;
+            started.thread.start();
+            log.info("statement trace started : {}", segment.path);
+        } catch (IOException ex) {
+            log.warn("statement trace not started : {}", ex.toString());
+            close(dictionary);
+        }
+    }
+
+    /**
+     * 기록을 멈추고 현재 파일을 디스크에 내려 쓴다. 배경 스레드는 남은 사전 항목을 쓰고 오래된 파일을 지운 뒤 끝난다.
+     */
+    void stop() {
+        Writer stopping;
+        synchronized (this) {
+            stopping = writer;
+            writer = null;
+            Segment current = segment;
+            segment = null;
+            if (current != null) {
+                current.buffer.force();
+                log.info("statement trace stopped : {}, dropped {}", current.path, droppedCount.sum());
+            }
+            if (next != null) {
+                delete(next.path);
+                next = null;
+            }
+        }
+        if (stopping != null) {
+            stopping.stop();
+        }
+    }
+
+    /**
+     * @return 다음 파일로 넘어갔으면 true. 다른 스레드가 넘기는 중이거나 실패했으면 false
+     */
+    private boolean rotate(Segment full) {
+        if (segment != full) {
+            return true;
+        }
+        if (!rotating.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            synchronized (this) {
+                if (segment != full) {
+                    return segment != null;
+                }
+                // 다 쓴 파일의 dirty page 는 OS 가 내려 쓴다. 여기서 force 하면 그동안 들어온 레코드가 모두 버려진다.
+                // 배경 스레드가 아직 다음 파일을 만들지 못했을 때만 여기서 만든다.
+                Segment prepared = next != null ? next : openSegment(full.sequence + 1);
+                next = null;
+                segment = activate(prepared);
+                return true;
+            }
+        } catch (IOException ex) {
+            log.warn("statement trace stopped. next file not created : {}", ex.toString());
+            segment = null;
+            return false;
+        } finally {
+            rotating.set(false);
+            // 지울 파일이 생겼다.
+            wakeWriter();
+        }
+    }
+
+    /**
+     * 배경 스레드에서 부른다. 현재 파일이 절반 넘게 찼으면 다음 파일을 만들어 둔다.
+     */
+    private synchronized void prepareNext() {
+        Segment current = segment;
+        if (current == null || next != null || current.position.get() <= current.prepareNextAt) {
+            return;
+        }
+        try {
+            next = openSegment(current.sequence + 1);
+        } catch (IOException ex) {
+            // 파일이 찰 때 한 번 더 시도한다.
+            log.warn("next statement trace not prepared : {}", ex.toString());
+        }
+    }
+
+    private Segment openSegment(long sequence) throws IOException {
+        Path path = directory.resolve(String.format("%s-%06d%s", prefix, sequence, TRACE_SUFFIX));
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, HEADER_SIZE);
+        buffer.putLong(16, System.currentTimeMillis());
+
+        // 남은 공간이 레코드 크기로 나누어떨어지지 않으면 끝부분은 쓰지 않는다.
+        int records = (fileSize - HEADER_SIZE) / RECORD_SIZE;
+        return new Segment(sequence, path, buffer, HEADER_SIZE + records * RECORD_SIZE, HEADER_SIZE + records / 2 * RECORD_SIZE);
+    }
+
+    /**
+     * 기록할 파일로 정한다. maxFiles 를 넘는 오래된 파일은 배경 스레드가 {@link #deleteExpired()} 로 지운다.
+     */
+    private Segment activate(Segment opened) {
+        files.addLast(opened.path);
+        return opened;
+    }
+
+    /**
+     * 배경 스레드에서 부른다. maxFiles 를 넘는 오래된 파일을 지운다. 지우는 동안 락을 잡지 않는다.
+     */
+    private void deleteExpired() {
+        Path expired;
+        while ((expired = pollExpired()) != null) {
+            delete(expired);
+        }
+    }
+
+    private synchronized Path pollExpired() {
+        return files.size() > maxFiles ? files.removeFirst() : null;
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.warn("statement trace not deleted : {}, {}", path, ex.toString());
+        }
+    }
+
+    private void appendDictionary(byte kind, long key, String value) {
+        Writer current = writer;
+        if (current != null) {
+            current.append(kind, key, value);
+        }
+    }
+
+    private void wakeWriter() {
+        Writer current = writer;
+        if (current != null) {
+            LockSupport.unpark(current.thread);
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.debug("statement trace dictionary close failed", ex);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getFileSize() {
+        return fileSize;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    /**
+     * @return 현재 기록 중인 파일. 시작 전이거나 멈췄으면 null
+     */
+    public Path getCurrentFile() {
+        Segment current = segment;
+        return current == null ? null : current.path;
+    }
+
+    /**
+     * @return 시작 전이거나 파일을 바꾸는 중이라 버린 레코드 개수
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StatementTracer{" +
+            "directory=" + directory +
+            ", fileSize=" + fileSize +
+            ", maxFiles=" + maxFiles +
+            ", currentFile=" + getCurrentFile() +
+            ", droppedCount=" + getDroppedCount() +
+            '}';
+    }
+
+    /**
+     * start 한 번에 하나씩 만드는 배경 스레드. 멈춤 flag 와 사전 파일을 스레드마다 따로 가지므로,
+     * stop 에서 기다리다 끝나지 않은 스레드가 남아 있어도 다음 start 의 스레드와 섞이지 않는다.
+     */
+    private final class Writer implements Runnable {
+        private final Thread thread;
+        private final FileChannel dictionary;
+        private final Queue<ByteBuffer> entries = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        private Writer(FileChannel dictionary, String poolName) {
+            this.dictionary = dictionary;
+            this.thread = new Thread(this, "sql-caller-info-statement-trace-" + poolName);
+            this.thread.setDaemon(true);
+        }
+
+        /**
+         * 사전 항목을 큐에 넣는다. 태그와 SQL 은 각각 최대 개수가 정해져 있으므로 큐도 그 이상 자라지 않는다.
+         */
+        private void append(byte kind, long key, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer entry = ByteBuffer.allocate(1 + 8 + 4 + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            entry.put(kind).putLong(key).putInt(bytes.length).put(bytes);
+            entry.flip();
+            entries.add(entry);
+            LockSupport.unpark(thread);
+        }
+
+        private void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(IDLE_PARK_NANOS) * 10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                writeDictionary();
+                prepareNext();
+                deleteExpired();
+                if (running && entries.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+            writeDictionary();
+            deleteExpired();
+            close(dictionary);
+        }
+
+        private void writeDictionary() {
+            ByteBuffer entry;
+            while ((entry = entries.poll()) != null) {
+                try {
+                    while (entry.hasRemaining()) {
+                        dictionary.write(entry);
+                    }
+                } catch (IOException ex) {
+                    log.warn("statement trace dictionary not written : {}", ex.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * 0 이 아닌 long 값을 boxing 없이 담는 lock-free open addressing set. 지우지 않고 {@link #clear()} 로만 비운다.
+     * slot 을 최대 개수의 두 배 이상으로 잡으므로 탐색은 빈 slot 에서 끝난다.
+     */
+    static final class LongHashSet {
+        private final AtomicLongArray keys;
+        private final int mask;
+        private final int maxSize;
+        private final AtomicInteger size = new AtomicInteger();
+
+        LongHashSet(int maxSize) {
+            int capacity = Integer.highestOneBit(Math.max(maxSize, 1) * 2 - 1) << 1;
+            this.keys = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return 처음 넣었으면 true. 이미 있거나, 가득 찼거나, 0 이면 false
+         */
+        boolean add(long key) {
+            if (key == 0L) {
+                return false;
+            }
+            int index = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            for (; ; ) {
+                long current = keys.get(index);
+                if (current == key) {
+                    return false;
+                }
+                if (current == 0L) {
+                    if (size.get() >= maxSize) {
+                        return false;
+                    }
+                    if (keys.compareAndSet(index, 0L, key)) {
+                        size.incrementAndGet();
+                        return true;
+                    }
+                    // 다른 스레드가 먼저 차지했다. 같은 값일 수 있으므로 같은 slot 을 다시 본다.
+                    continue;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        int size() {
+            return size.get();
+        }
+
+        void clear() {
+            for (int i = 0; i < keys.length(); i++) {
+                keys.set(i, 0L);
+            }
+            size.set(0);
+        }
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int limit;
+
+        /**
+         * 이 위치에 레코드를 쓴 스레드가 다음 파일을 미리 만든다.
+         */
+        private final long prepareNextAt;
+        private final AtomicLong position = new AtomicLong(HEADER_SIZE);
+
+        private Segment(long sequence, Path path, MappedByteBuffer buffer, int limit, long prepareNextAt) {
+            this.sequence = sequence;
+            this.path = path;
+            this.buffer = buffer;
+            this.limit = limit;
+            this.prepareNextAt = prepareNextAt;
+        }
+    }
+}
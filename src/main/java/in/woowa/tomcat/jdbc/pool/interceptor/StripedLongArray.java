@@ -0,0 +1,90 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 스레드 id 로 고른 stripe 에 더하는 {@link AtomicLongArray} 묶음. {@link LatencyHistogram} 과 {@link ConnectionHoldStats} 의 counter 가 쓴다.
+ *
+ * <p>stripe 개수는 CPU 수에 맞추되 {@link #MAX_STRIPES} 를 넘지 않는 2 의 거듭제곱이고, stripe 는 처음 쓰일 때 만든다.
+ * 한두 스레드만 쓰는 값은 stripe 하나 분량만 차지한다. 조회는 모든 stripe 를 더하므로 기록과 동시에 읽으면 값끼리 조금 어긋날 수 있다.</p>
+ */
+final class StripedLongArray {
+
+    static final int MAX_STRIPES = 8;
+
+    private final int length;
+    private final int stripeMask;
+    private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+    /**
+     * @param length stripe 하나의 길이
+     */
+    StripedLongArray(int length) {
+        int stripeCount = Integer.highestOneBit(Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.length = length;
+        this.stripeMask = stripeCount - 1;
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+    }
+
+    /**
+     * @return 현재 스레드가 더할 stripe
+     */
+    AtomicLongArray stripe() {
+        final int index = (int) Thread.currentThread().getId() & stripeMask;
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(length));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    int stripeCount() {
+        return stripes.length();
+    }
+
+    /**
+     * @return index 번째 stripe. 아직 쓰이지 않았으면 null
+     */
+    AtomicLongArray stripe(int index) {
+        return stripes.get(index);
+    }
+
+    /**
+     * 모든 stripe 의 index 번째 값을 더한다.
+     */
+    long sum(int index) {
+        long sum = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                sum += stripe.get(index);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 모든 stripe 의 index 번째 값 중 가장 큰 값. 쓰인 stripe 가 없으면 0
+     */
+    long max(int index) {
+        long max = 0;
+        for (int i = 0; i < stripes.length(); i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if (stripe != null) {
+                max = Math.max(max, stripe.get(index));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 지금까지 기록을 버린다. 진행 중인 기록 일부는 버려진 stripe 에 남아 사라질 수 있다.
+     */
+    void reset() {
+        for (int i = 0; i < stripes.length(); i++) {
+            stripes.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * pool 하나의 주석 수준({@link TaggingLevel})을 실행 중에 바꾼다. 장애 중에 DataSource 를 다시 만들지 않고 interceptor 비용을 덜어내는 용도이다.
+ *
+ * <p>SQL 마다 읽는 값은 실제로 적용 중인 수준 하나뿐이며 volatile 읽기 한 번이다. interceptor 는 SQL 하나를 바꾸는 동안
+ * 이 값을 한 번만 읽어 끝까지 쓰므로, 수준을 바꾸는 중에 실행된 SQL 도 이전 수준이나 새 수준 중 하나로 온전하게 남는다.</p>
+ *
+ * <p>stepDownWaitCount 를 지정하면 커넥션을 빌려줄 때 pool 에서 기다리는 스레드 수를 보고, 그 수 이상이면 full 을 static 으로 낮춘다.
+ * 기다리는 스레드가 없어지면 지정한 수준으로 되돌린다. 낮추고 올리는 사이에 간격을 두어 경계에서 계속 오가지 않게 한다.</p>
+ *
+ * <p>주석을 만드는 쪽의 상태인 maxCommentVariants fallback 횟수와 sqlCacheSize 캐시의 조회 횟수도 함께 보여 준다.</p>
+ *
+ * <p>ObjectName : <code>in.woowa.tomcat.jdbc.pool.interceptor:type=TaggingControl,pool="poolName"</code></p>
+ */
+public final class TaggingControl implements TaggingControlMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TaggingControl.class);
+
+    private static final String MBEAN_TYPE = "TaggingControl";
+
+    /**
+     * 실제로 적용 중인 수준. SQL 마다 읽는 값이다.
+     */
+    private volatile TaggingLevel level;
+
+    private TaggingLevel configuredLevel;
+    private boolean steppedDown;
+    private volatile int stepDownWaitCount;
+    private final AtomicLong stepDownCount = new AtomicLong();
+    private final CommentVariantGuard variantGuard;
+    private final CommentedSqlCache sqlCache;
+
+    private final PoolMBeanRegistration registration = new PoolMBeanRegistration(this, MBEAN_TYPE);
+
+    /**
+     * @param stepDownWaitCount 0 이면 자동으로 낮추지 않는다.
+     */
+    public TaggingControl(TaggingLevel level, int stepDownWaitCount) {
+        this(level, stepDownWaitCount, null, null);
+    }
+
+    /**
+     * @param variantGuard fallback 횟수를 보여 줄 {@link CommentVariantGuard}. 없으면 null
+     * @param sqlCache     조회 횟수를 보여 줄 sqlCacheSize 캐시. 없으면 null
+     */
+    TaggingControl(TaggingLevel level, int stepDownWaitCount, CommentVariantGuard variantGuard, CommentedSqlCache sqlCache) {
+        if (level == null) {
+            throw new IllegalArgumentException("level must not be null.");
+        }
+        if (stepDownWaitCount < 0) {
+            throw new IllegalArgumentException("stepDownWaitCount must not be negative : " + stepDownWaitCount);
+        }
+        this.configuredLevel = level;
+        this.level = level;
+        this.stepDownWaitCount = stepDownWaitCount;
+        this.variantGuard = variantGuard;
+        this.sqlCache = sqlCache;
+    }
+
+    /**
+     * @return 실제로 적용 중인 수준
+     */
+    public TaggingLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * 커넥션을 빌려줄 때 부른다. stepDownWaitCount 를 지정하지 않았으면 volatile 읽기 한 번으로 끝난다.
+     *
+     * @param waitCount pool 에서 커넥션을 기다리는 스레드 수
+     */
+    void onBorrow(int waitCount) {
+        final int threshold = stepDownWaitCount;
+        if (threshold <= 0) {
+            return;
+        }
+        if (waitCount >= threshold ? !steppedDown : steppedDown && waitCount == 0) {
+            stepDown(waitCount >= threshold, waitCount);
+        }
+    }
+
+    private synchronized void stepDown(boolean down, int waitCount) {
+        if (steppedDown == down) {
+            return;
+        }
+        steppedDown = down;
+        TaggingLevel previous = level;
+        apply();
+        if (down) {
+            stepDownCount.incrementAndGet();
+        }
+        if (previous != level) {
+            log.warn("taggingLevel {} -> {}. {} threads waiting for connections.", previous.getPropertyValue(), level.getPropertyValue(), waitCount);
+        }
+    }
+
+    private void apply() {
+        level = steppedDown && configuredLevel == TaggingLevel.FULL ? TaggingLevel.STATIC : configuredLevel;
+    }
+
+    void start(String poolName) {
+        registration.register(poolName);
+    }
+
+    void stop() {
+        registration.unregister();
+    }
+
+    static ObjectName objectName(String poolName) throws JMException {
+        return PoolMBeanRegistration.objectName(MBEAN_TYPE, poolName);
+    }
+
+    @Override
+    public synchronized String getTaggingLevel() {
+        return configuredLevel.getPropertyValue();
+    }
+
+    @Override
+    public void setTaggingLevel(String level) {
+        TaggingLevel newLevel = TaggingLevel.of(level == null ? "" : level.trim());
+        synchronized (this) {
+            configuredLevel = newLevel;
+            apply();
+        }
+        log.info("taggingLevel set to {}. effective : {}", newLevel.getPropertyValue(), this.level.getPropertyValue());
+    }
+
+    @Override
+    public String getEffectiveTaggingLevel() {
+        return level.getPropertyValue();
+    }
+
+    @Override
+    public int getStepDownWaitCount() {
+        return stepDownWaitCount;
+    }
+
+    @Override
+    public synchronized void setStepDownWaitCount(int waitCount) {
+        if (waitCount < 0) {
+            throw new IllegalArgumentException("stepDownWaitCount must not be negative : " + waitCount);
+        }
+        stepDownWaitCount = waitCount;
+        if (waitCount == 0 && steppedDown) {
+            steppedDown = false;
+            apply();
+        }
+    }
+
+    @Override
+    public long getStepDownCount() {
+        return stepDownCount.get();
+    }
+
+    @Override
+    public long getCommentFallbackCount() {
+        return variantGuard == null ? 0 : variantGuard.getFallbackCount();
+    }
+
+    @Override
+    public int getSqlCacheSize() {
+        return sqlCache == null ? 0 : sqlCache.size();
+    }
+
+    @Override
+    public long getSqlCacheHitCount() {
+        return sqlCache == null ? 0 : sqlCache.getHitCount();
+    }
+
+    @Override
+    public long getSqlCacheMissCount() {
+        return sqlCache == null ? 0 : sqlCache.getMissCount();
+    }
+
+    @Override
+    public long getSqlCacheEvictionCount() {
+        return sqlCache == null ? 0 : sqlCache.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "TaggingControl{level=" + level.getPropertyValue() + ", stepDownWaitCount=" + stepDownWaitCount + '}';
+    }
+}
@@ -0,0 +1,63 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * pool 별 주석 수준 조절의 JMX 인터페이스. {@link TaggingControl} 참고
+ *
+ * <p>ObjectName : <code>in.woowa.tomcat.jdbc.pool.interceptor:type=TaggingControl,pool="poolName"</code></p>
+ */
+public interface TaggingControlMXBean {
+
+    /**
+     * @return 지정한 수준. <code>off</code>, <code>static</code>, <code>full</code>
+     */
+    String getTaggingLevel();
+
+    /**
+     * 지정한 수준을 바꾼다. 다음 SQL 부터 적용된다.
+     *
+     * @param level <code>off</code>, <code>static</code>, <code>full</code>. 대소문자를 가리지 않는다.
+     */
+    void setTaggingLevel(String level);
+
+    /**
+     * @return 실제로 적용 중인 수준. pool 대기 때문에 자동으로 낮췄으면 {@link #getTaggingLevel()} 보다 낮다.
+     */
+    String getEffectiveTaggingLevel();
+
+    /**
+     * @return 커넥션을 기다리는 스레드가 이 수 이상이면 full 을 static 으로 낮춘다. 0 이면 자동으로 낮추지 않는다.
+     */
+    int getStepDownWaitCount();
+
+    void setStepDownWaitCount(int waitCount);
+
+    /**
+     * @return 자동으로 낮춘 횟수
+     */
+    long getStepDownCount();
+
+    /**
+     * @return maxCommentVariants 를 넘어 fallback 주석으로 바꾼 횟수. maxCommentVariants 를 지정하지 않았으면 0
+     */
+    long getCommentFallbackCount();
+
+    /**
+     * @return sqlCacheSize 캐시에 있는 SQL 수. 캐시를 쓰지 않으면 0
+     */
+    int getSqlCacheSize();
+
+    /**
+     * @return sqlCacheSize 캐시에서 찾은 횟수
+     */
+    long getSqlCacheHitCount();
+
+    /**
+     * @return sqlCacheSize 캐시에 없어 주석 SQL 을 새로 만든 횟수
+     */
+    long getSqlCacheMissCount();
+
+    /**
+     * @return sqlCacheSize 캐시가 가득 차서 버린 SQL 수
+     */
+    long getSqlCacheEvictionCount();
+}
@@ -0,0 +1,43 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.Locale;
+
+/**
+ * SQL 에 호출자 정보를 얼마나 남길지. <code>taggingLevel</code> interceptor 프라퍼티로 처음 값을 정하고,
+ * 실행 중에는 {@link TaggingControlMXBean} 으로 pool 을 다시 만들지 않고 바꾼다.
+ */
+public enum TaggingLevel {
+
+    /**
+     * 아무것도 하지 않는다. 새로 만드는 Statement 는 감싸지 않고, 이미 감싼 Statement 도 SQL 을 바꾸거나 실행 시간을 재지 않는다.
+     * 단 holdKey 를 지정했으면 커넥션 점유의 실행 횟수와 row 수를 세기 위해 Statement 를 감싼다.
+     */
+    OFF,
+
+    /**
+     * 동적 segment 를 모두 <code>-</code> 로 채운 고정 주석만 넣는다. 예) <code>{project} {caller}</code> 이면 <code>woowahan -</code>.
+     * 호출자 탐색, fingerprint 계산, 문맥 값 치환을 하지 않으므로 SQL 당 비용은 문자열 이어 붙이기 하나이다.
+     */
+    STATIC,
+
+    /**
+     * commentTemplate 그대로 주석을 넣는다. 기본값.
+     */
+    FULL;
+
+    static TaggingLevel of(String value) {
+        for (TaggingLevel level : values()) {
+            if (level.name().equalsIgnoreCase(value)) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("taggingLevel '" + value + "' must be one of off, static, full.");
+    }
+
+    /**
+     * @return 프라퍼티와 JMX 에서 쓰는 소문자 이름
+     */
+    public String getPropertyValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
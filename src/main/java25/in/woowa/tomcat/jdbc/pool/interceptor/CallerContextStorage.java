@@ -0,0 +1,58 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Java 25 이상용 {@link CallerContext} 저장소. 문맥을 {@link ScopedValue} 에 묶는다.
+ *
+ * <p>ScopedValue 는 스레드마다 ThreadLocalMap 항목을 만들지 않고, 묶은 범위를 벗어나면 저절로 이전 값으로 돌아가므로
+ * 되돌릴 일도, 스레드에 남을 항목도 없다. 가상 스레드가 수백만 개여도 스레드당 비용이 없다.
+ * 대신 묶을 때마다 작은 binding 객체가 생긴다. 이미 같은 문맥이 묶여 있으면 다시 묶지 않는다.</p>
+ *
+ * <p><code>-Pjava25</code> 를 주거나 JDK 25 가 설치되어 있을 때만 빌드된다. <code>testJava25</code> 가 JDK 25 에서 CallerContext 테스트를 이 구현으로 실행한다.</p>
+ */
+final class CallerContextStorage {
+
+    private static final ScopedValue<CallerContext> CURRENT = ScopedValue.newInstance();
+
+    private CallerContextStorage() {
+    }
+
+    static String implementation() {
+        return "ScopedValue";
+    }
+
+    static CallerContext current() {
+        return CURRENT.orElse(CallerContext.EMPTY);
+    }
+
+    /**
+     * @return 이 스레드에 문맥이 열려 있으면 true
+     */
+    static boolean isBound() {
+        return CURRENT.isBound();
+    }
+
+    static void run(CallerContext context, Runnable task) {
+        if (CURRENT.orElse(CallerContext.EMPTY) == context) {
+            task.run();
+            return;
+        }
+        ScopedValue.where(CURRENT, context).run(task);
+    }
+
+    static <V> V call(CallerContext context, Callable<V> task) throws Exception {
+        if (CURRENT.orElse(CallerContext.EMPTY) == context) {
+            return task.call();
+        }
+        return ScopedValue.where(CURRENT, context).call(task::call);
+    }
+
+    static <T> T supply(CallerContext context, Supplier<T> supplier) {
+        if (CURRENT.orElse(CallerContext.EMPTY) == context) {
+            return supplier.get();
+        }
+        return ScopedValue.where(CURRENT, context).call(supplier::get);
+    }
+}
@@ -0,0 +1,29 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+/**
+ * Java 9 이상용 호출 스택 탐색. {@link StackWalker} 는 프레임을 필요한 만큼만 lazy 하게 읽으므로
+ * 건너뛰지 않은 첫 프레임을 찾는 즉시 멈추며, 전체 스택의 StackTraceElement 를 만들지 않는다.
+ *
+ * <p>건너뛸지는 프레임의 {@link Class} 로 판단하고, 비용이 큰 메소드 이름 해석은 고른 프레임 하나에 대해서만 한다.</p>
+ */
+final class CallerFrames {
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private CallerFrames() {
+    }
+
+    /** 실제로 로드된 구현 이름. 메소드인 이유는 Java 8 용 CallerFrames 참고 */
+    static String implementation() {
+        return "StackWalker";
+    }
+
+    static String find(CallerResolver resolver, int maxDepth) {
+        return WALKER.walk(frames -> frames
+            .limit(maxDepth)
+            .filter(frame -> !resolver.isSkipped(frame.getDeclaringClass()))
+            .findFirst()
+            .map(frame -> resolver.label(frame.getDeclaringClass(), frame.getMethodName()))
+            .orElse(null));
+    }
+}
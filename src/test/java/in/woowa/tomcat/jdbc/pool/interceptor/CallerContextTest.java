@@ -0,0 +1,188 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CallerContextTest {
+
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * build.gradle 의 test 는 ThreadLocal 구현을, testJava25 는 JDK 25 에서 ScopedValue 구현을 기대한다. 넘기지 않으면 확인하지 않는다.
+     */
+    @Test
+    public void multi_release_implementation() {
+        String expected = System.getProperty("expectedCallerContextStorage");
+        Assume.assumeNotNull(expected);
+
+        assertThat(CallerContext.implementation()).isEqualTo(expected);
+    }
+
+    @Test
+    public void with_returns_new_context() {
+        CallerContext first = CallerContext.EMPTY.with("traceId", "req-1");
+        CallerContext second = first.with("endpoint", "/orders").with("traceId", "req-2");
+
+        assertThat(CallerContext.EMPTY.get("traceId")).isNull();
+        assertThat(first.get("traceId")).isEqualTo("req-1");
+        assertThat(first.get("endpoint")).isNull();
+        assertThat(second.get("traceId")).isEqualTo("req-2");
+        assertThat(second.get("endpoint")).isEqualTo("/orders");
+        assertThat(second.with("endpoint", "/orders")).isSameAs(second);
+        assertThat(second.with("endpoint", null).toString()).isEqualTo("CallerContext{traceId=req-2}");
+        assertThat(first.with("traceId", null)).isSameAs(CallerContext.EMPTY);
+    }
+
+    @Test
+    public void run_restores_previous_context() throws Exception {
+        CallerContext outer = CallerContext.EMPTY.with("traceId", "outer");
+        CallerContext inner = outer.with("traceId", "inner");
+        AtomicReference<String> seen = new AtomicReference<>();
+
+        assertThat(CallerContext.current()).isSameAs(CallerContext.EMPTY);
+        outer.run(() -> {
+            inner.run(() -> seen.set(CallerContext.current().get("traceId")));
+            assertThat(CallerContext.current()).isSameAs(outer);
+        });
+        assertThat(seen.get()).isEqualTo("inner");
+        assertThat(CallerContext.current()).isSameAs(CallerContext.EMPTY);
+
+        try {
+            outer.call(() -> {
+                throw new IllegalStateException("task failure");
+            });
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage()).isEqualTo("task failure");
+        }
+        assertThat(CallerContext.current()).isSameAs(CallerContext.EMPTY);
+    }
+
+    @Test
+    public void outermost_run_leaves_nothing_on_thread() {
+        CallerContext outer = CallerContext.EMPTY.with("traceId", "outer");
+
+        outer.run(() -> {
+            outer.with("traceId", "inner").run(() -> assertThat(CallerContextStorage.isBound()).isTrue());
+            assertThat(CallerContextStorage.isBound()).isTrue();
+        });
+        assertThat(CallerContextStorage.isBound()).isFalse();
+
+        try {
+            outer.wrapSupplier(() -> {
+                throw new IllegalStateException("task failure");
+            }).get();
+        } catch (IllegalStateException ex) {
+            assertThat(ex.getMessage()).isEqualTo("task failure");
+        }
+        assertThat(CallerContextStorage.isBound()).isFalse();
+    }
+
+    @Test
+    public void executorService_carries_submitting_context() throws Exception {
+        ExecutorService executor = CallerContextExecutors.wrap(pool);
+
+        List<String> traceIds = CallerContext.EMPTY.with("traceId", "req-1").call(() -> {
+            Future<String> submitted = executor.submit(() -> CallerContext.current().get("traceId"));
+            List<Future<String>> invoked = executor.invokeAll(Arrays.asList(
+                () -> CallerContext.current().get("traceId"),
+                () -> CallerContext.current().get("traceId")));
+            List<String> result = invoked.stream().map(CallerContextTest::getQuietly).collect(Collectors.toList());
+            result.add(0, submitted.get());
+            return result;
+        });
+
+        assertThat(traceIds).containsExactly("req-1", "req-1", "req-1");
+        // 작업이 끝나면 풀 스레드에 문맥이 남지 않는다.
+        assertThat(pool.submit(() -> CallerContext.current().isEmpty()).get()).isTrue();
+        assertThat(CallerContextExecutors.wrap(executor)).isSameAs(executor);
+    }
+
+    @Test
+    public void completableFuture_stages_carry_context() throws Exception {
+        CallerContext context = CallerContext.EMPTY.with("traceId", "req-2");
+        CompletableFuture<Void> trigger = new CompletableFuture<>();
+
+        CompletableFuture<String> future = context.call(() -> CallerContextExecutors
+            .supplyAsync(() -> CallerContext.current().get("traceId"), pool)
+            .thenApplyAsync(context.wrapFunction(traceId -> traceId + "," + CallerContext.current().get("traceId")), pool)
+            .thenCombine(trigger, (traceIds, ignored) -> traceIds)
+            .thenApply(context.wrapFunction(traceIds -> traceIds + "," + CallerContext.current().get("traceId"))));
+        // 마지막 단계는 문맥이 없는 이 스레드가 trigger 를 끝내면서 실행된다.
+        trigger.complete(null);
+
+        assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("req-2,req-2,req-2");
+        assertThat(CallerContext.current()).isSameAs(CallerContext.EMPTY);
+    }
+
+    /**
+     * ThreadLocal 구현에서 중첩된 문맥은 바깥 참조를 다시 넣기만 하므로 할당이 없다.
+     * 가장 바깥 문맥은 닫힐 때 항목을 지우므로 열 때마다 ThreadLocalMap 항목을 만든다.
+     */
+    @Test
+    public void nested_run_does_not_allocate() {
+        Assume.assumeTrue("ThreadLocal".equals(CallerContext.implementation()));
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        CallerContext outer = CallerContext.EMPTY.with("traceId", "outer");
+        CallerContext context = outer.with("traceId", "req-3");
+        int[] found = new int[1];
+        long[] allocated = new long[1];
+        Runnable task = () -> {
+            if (CallerContext.current().get("traceId") != null) {
+                found[0]++;
+            }
+        };
+
+        outer.run(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                context.run(task);
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 1_000_000; i++) {
+                context.run(task);
+            }
+            allocated[0] = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        });
+
+        assertThat(allocated[0]).isLessThan(64 * 1024);
+        assertThat(found[0]).isEqualTo(1_100_000);
+    }
+
+    private static String getQuietly(Future<String> future) {
+        try {
+            return future.get();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class CallerLatencyStatsTest {
+
+    @Test
+    public void overflow_key() {
+        CallerLatencyStats stats = new CallerLatencyStats(2);
+
+        LatencyHistogram a = stats.histogram("A.a");
+        assertThat(stats.histogram("A.a")).isSameAs(a);
+        stats.histogram("B.b").record(10, false);
+        stats.histogram("C.c").record(20, false);
+        stats.histogram("D.d").record(30, true);
+
+        assertThat(stats.getCallerCount()).isEqualTo(2);
+        assertThat(stats.snapshot(CallerLatencyStats.OVERFLOW_KEY).getCount()).isEqualTo(2);
+        assertThat(stats.getCallers()).extracting(LatencySnapshot::getCaller).containsExactly("-", "B.b", "A.a");
+        assertThat(stats.getTotalCount()).isEqualTo(3);
+        assertThat(stats.getTotalErrorCount()).isEqualTo(1);
+
+        stats.reset();
+        assertThat(stats.getTotalCount()).isZero();
+        assertThat(stats.getCallerCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void maxCallers_illegal() {
+        try {
+            new CallerLatencyStats(0);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("maxCallers must be between 1 and 4096 : 0");
+        }
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        CallerLatencyStats stats = new CallerLatencyStats(16);
+        stats.histogram("UserRepository.findById").record(1_500_000, false);
+
+        stats.register("test[pool],1");
+        try {
+            ObjectName name = CallerLatencyStats.objectName("test[pool],1");
+            assertThat(stats.getObjectName()).isEqualTo(name);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(name, "TotalCount")).isEqualTo(1L);
+            CompositeData[] callers = (CompositeData[]) server.getAttribute(name, "Callers");
+            assertThat(callers).hasSize(1);
+            assertThat(callers[0].get("caller")).isEqualTo("UserRepository.findById");
+            assertThat((Double) callers[0].get("p99Micros")).isBetween(1500.0, 1500.0 * 1.125);
+
+            server.invoke(name, "reset", null, null);
+            assertThat(stats.getTotalCount()).isZero();
+        } finally {
+            stats.unregister();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(CallerLatencyStats.objectName("test[pool],1"))).isFalse();
+    }
+}
@@ -0,0 +1,92 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CallerResolverTest {
+
+    private static final String FRAMEWORK = CallerResolverTest.class.getName() + "$Framework";
+
+    /**
+     * build.gradle 의 test 는 src/main/java9 를 classpath 앞에 두고 expectedCallerFrames 를 넘긴다. IDE 처럼 넘기지 않으면 확인하지 않는다.
+     */
+    @Test
+    public void multi_release_implementation() {
+        String expected = System.getProperty("expectedCallerFrames");
+        Assume.assumeNotNull(expected);
+
+        assertThat(CallerFrames.implementation()).isEqualTo(expected);
+    }
+
+    @Test
+    public void resolve_test_method() {
+        CallerResolver resolver = new CallerResolver(CallerResolver.DEFAULT_SKIP_PACKAGES, CallerResolver.DEFAULT_MAX_DEPTH, 1.0d);
+
+        assertThat(resolver.resolve()).isEqualTo("CallerResolverTest.resolve_test_method");
+    }
+
+    @Test
+    public void resolve_skips_framework_frames() {
+        CallerResolver resolver = new CallerResolver(new String[]{FRAMEWORK}, CallerResolver.DEFAULT_MAX_DEPTH, 1.0d);
+
+        assertThat(Repository.findUser(resolver)).isEqualTo("CallerResolverTest$Repository.findUser");
+    }
+
+    @Test
+    public void resolve_label_is_cached_per_call_site() {
+        CallerResolver resolver = new CallerResolver(new String[]{FRAMEWORK}, CallerResolver.DEFAULT_MAX_DEPTH, 1.0d);
+
+        assertThat(Repository.findUser(resolver)).isSameAs(Repository.findUser(resolver));
+    }
+
+    @Test
+    public void resolve_beyond_max_depth() {
+        CallerResolver resolver = new CallerResolver(new String[]{FRAMEWORK}, 2, 1.0d);
+
+        assertThat(Repository.findUser(resolver)).isEqualTo(CallerResolver.UNKNOWN_CALLER);
+    }
+
+    @Test
+    public void resolve_not_sampled() {
+        CallerResolver resolver = new CallerResolver(CallerResolver.DEFAULT_SKIP_PACKAGES, CallerResolver.DEFAULT_MAX_DEPTH, 0.0d);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(resolver.resolve()).isEqualTo(CallerResolver.UNKNOWN_CALLER);
+        }
+    }
+
+    @Test
+    public void isSkipped() {
+        CallerResolver resolver = new CallerResolver(CallerResolver.DEFAULT_SKIP_PACKAGES, CallerResolver.DEFAULT_MAX_DEPTH, 1.0d);
+
+        assertThat(resolver.isSkipped("java.lang.reflect.Method")).isTrue();
+        assertThat(resolver.isSkipped("org.apache.tomcat.jdbc.pool.ProxyConnection")).isTrue();
+        assertThat(resolver.isSkipped("org.springframework.jdbc.core.JdbcTemplate")).isTrue();
+        assertThat(resolver.isSkipped("org.hibernate.loader.Loader")).isTrue();
+        assertThat(resolver.isSkipped("com.sun.proxy.$Proxy12")).isTrue();
+        assertThat(resolver.isSkipped("jdk.proxy2.$Proxy5")).isTrue();
+        assertThat(resolver.isSkipped("in.woowa.shop.UserService$$EnhancerBySpringCGLIB$$1a2b3c")).isTrue();
+        assertThat(resolver.isSkipped(SqlCallerInfoCommentInterceptor.class.getName() + "$SqlChangeStatementProxy")).isTrue();
+
+        assertThat(resolver.isSkipped("in.woowa.shop.UserRepository")).isFalse();
+        assertThat(resolver.isSkipped("javaxx.Foo")).isFalse();
+        assertThat(resolver.isSkipped("org.springframeworkx.Foo")).isFalse();
+        assertThat(resolver.isSkipped(SqlCallerInfoCommentInterceptorTest.class.getName())).isFalse();
+    }
+
+    static class Repository {
+        static String findUser(CallerResolver resolver) {
+            return Framework.execute(resolver::resolve);
+        }
+    }
+
+    static class Framework {
+        static String execute(Supplier<String> callback) {
+            return callback.get();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class CommentPlacementTest {
+
+    private static final String COMMENT = " /* woowahan */ ";
+
+    @Test
+    public void prefix() {
+        assertThat(CommentPlacement.PREFIX.place("SELECT 1", COMMENT)).isEqualTo(" /* woowahan */ SELECT 1");
+
+        String commented = CommentPlacement.PREFIX.place("SELECT 1", COMMENT);
+        assertThat(CommentPlacement.PREFIX.place(commented, COMMENT)).isSameAs(commented);
+    }
+
+    @Test
+    public void suffix() {
+        assertThat(CommentPlacement.SUFFIX.place("SELECT 1", COMMENT)).isEqualTo("SELECT 1 /* woowahan */");
+        assertThat(CommentPlacement.SUFFIX.place("SELECT 1 FOR UPDATE;\n", COMMENT)).isEqualTo("SELECT 1 FOR UPDATE /* woowahan */;\n");
+
+        String commented = CommentPlacement.SUFFIX.place("SELECT 1;", COMMENT);
+        assertThat(CommentPlacement.SUFFIX.place(commented, COMMENT)).isSameAs(commented);
+    }
+
+    @Test
+    public void suffix_line_comment() {
+        assertThat(CommentPlacement.SUFFIX.place("SELECT 1 -- trailing;", COMMENT)).isEqualTo("SELECT 1 -- trailing;\n/* woowahan */");
+        assertThat(CommentPlacement.SUFFIX.place("SELECT 1 # mysql", COMMENT)).isEqualTo("SELECT 1 # mysql\n/* woowahan */");
+        assertThat(CommentPlacement.SUFFIX.place("SELECT 1 -- first line\nFROM DUAL", COMMENT)).isEqualTo("SELECT 1 -- first line\nFROM DUAL /* woowahan */");
+
+        String commented = CommentPlacement.SUFFIX.place("SELECT 1 -- trailing", COMMENT);
+        assertThat(CommentPlacement.SUFFIX.place(commented, COMMENT)).isSameAs(commented);
+    }
+
+    @Test
+    public void afterKeyword() {
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("SELECT * FROM T", COMMENT)).isEqualTo("SELECT /* woowahan */ * FROM T");
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("  /* orm */ update T set A = 1", COMMENT)).isEqualTo("  /* orm */ update /* woowahan */ T set A = 1");
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("-- header\nDELETE FROM T", COMMENT)).isEqualTo("-- header\nDELETE /* woowahan */ FROM T");
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("SELECT(1)", COMMENT)).isEqualTo("SELECT /* woowahan */ (1)");
+
+        String commented = CommentPlacement.AFTER_KEYWORD.place("SELECT 1", COMMENT);
+        assertThat(CommentPlacement.AFTER_KEYWORD.place(commented, COMMENT)).isSameAs(commented);
+    }
+
+    @Test
+    public void afterKeyword_keeps_optimizer_hint_first() {
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("SELECT /*+ INDEX(T IDX_A) */ * FROM T", COMMENT))
+            .isEqualTo("SELECT /*+ INDEX(T IDX_A) */ /* woowahan */ * FROM T");
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("SELECT/*+ MAX_EXECUTION_TIME(1000) */1", COMMENT))
+            .isEqualTo("SELECT/*+ MAX_EXECUTION_TIME(1000) */ /* woowahan */ 1");
+    }
+
+    @Test
+    public void afterKeyword_falls_back_to_prefix() {
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("(SELECT 1) UNION (SELECT 2)", COMMENT)).isEqualTo(" /* woowahan */ (SELECT 1) UNION (SELECT 2)");
+        assertThat(CommentPlacement.AFTER_KEYWORD.place("SELECT /*+ unclosed", COMMENT)).isEqualTo(" /* woowahan */ SELECT /*+ unclosed");
+    }
+
+    @Test
+    public void insideEscape() {
+        assertThat(CommentPlacement.INSIDE_ESCAPE.place("{call GET_USER(?)}", COMMENT)).isEqualTo("{call GET_USER(?) /* woowahan */}");
+        assertThat(CommentPlacement.INSIDE_ESCAPE.place(" {? = call GET_USER(?)} ", COMMENT)).isEqualTo(" {? = call GET_USER(?) /* woowahan */} ");
+        assertThat(CommentPlacement.INSIDE_ESCAPE.place("CALL GET_USER(?)", COMMENT)).isEqualTo("CALL GET_USER(?) /* woowahan */");
+
+        String commented = CommentPlacement.INSIDE_ESCAPE.place("{call GET_USER(?)}", COMMENT);
+        assertThat(CommentPlacement.INSIDE_ESCAPE.place(commented, COMMENT)).isSameAs(commented);
+    }
+
+    @Test
+    public void of() {
+        assertThat(CommentPlacement.of("commentPlacement", "afterkeyword")).isEqualTo(CommentPlacement.AFTER_KEYWORD);
+        try {
+            CommentPlacement.of("commentPlacement", "middle");
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("commentPlacement 'middle' must be one of prefix, suffix, afterKeyword, insideEscape.");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommentSanitizerTest {
+
+    @Test
+    public void sanitize_clean_value_returns_same_instance() {
+        String value = "GET /api/orders/{id} trace=4bf92f3577b34da6";
+        assertThat(CommentSanitizer.sanitize(value)).isSameAs(value);
+    }
+
+    @Test
+    public void sanitize_null() {
+        assertThat(CommentSanitizer.sanitize(null)).isEmpty();
+    }
+
+    @Test
+    public void sanitize_comment_end() {
+        assertThat(CommentSanitizer.sanitize("abc*/ DROP TABLE USERS; /*")).isEqualTo("abc*_ DROP TABLE USERS; _*");
+    }
+
+    @Test
+    public void sanitize_nested_comment_start() {
+        assertThat(CommentSanitizer.sanitize("/*/*")).isEqualTo("_*_*");
+    }
+
+    @Test
+    public void sanitize_control_chars() {
+        assertThat(CommentSanitizer.sanitize("a\nb\tc\u007f")).isEqualTo("a b c ");
+    }
+
+    @Test
+    public void isClean() {
+        assertThat(CommentSanitizer.isClean("abc / def * ghi")).isTrue();
+        assertThat(CommentSanitizer.isClean("abc */")).isFalse();
+        assertThat(CommentSanitizer.isClean(null)).isFalse();
+    }
+
+    @Test
+    public void appendJoined() {
+        assertThat(join("x*", "/ DROP")).isEqualTo("x*_ DROP");
+        assertThat(join("x/", "* DROP")).isEqualTo("x_* DROP");
+        assertThat(join("x*", "* y")).isEqualTo("x** y");
+        assertThat(join("", "/x")).isEqualTo("/x");
+        assertThat(join("x*", "")).isEqualTo("x*");
+    }
+
+    private static String join(String previous, String value) {
+        StringBuilder builder = new StringBuilder(previous);
+        CommentSanitizer.appendJoined(builder, value);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,306 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class CommentTemplateTest {
+
+    private Map<String, PoolProperties.InterceptorProperty> properties;
+
+    @Before
+    public void setUp() {
+        properties = new HashMap<>();
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+    }
+
+    @Test
+    public void compile_default_template() {
+        CommentTemplate template = CommentTemplate.compile(CommentTemplate.DEFAULT_TEMPLATE, properties);
+
+        assertThat(template.isStatic()).isTrue();
+        assertThat(template.getStaticPrefix()).isEqualTo(" /* my_project */ ");
+    }
+
+    @Test
+    public void compile_literal_text() {
+        CommentTemplate template = CommentTemplate.compile("{project} env=prod v={test.counter:1.2}", properties);
+
+        assertThat(template.isStatic()).isFalse();
+        assertThat(template.render("SELECT 1")).startsWith(" /* my_project env=prod v=1.2 */ SELECT 1");
+    }
+
+    @Test
+    public void render_dynamic_segment() {
+        CommentTemplate template = CommentTemplate.compile("{project} seq={test.counter}", properties);
+
+        assertThat(template.isStatic()).isFalse();
+        assertThat(template.getStaticPrefix()).isNull();
+
+        long next = CountingSegmentProvider.counter.get() + 1;
+        assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project seq=" + next + " */ SELECT 1");
+        assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project seq=" + (next + 1) + " */ SELECT 1");
+    }
+
+    @Test
+    public void render_already_commented() {
+        CommentTemplate template = CommentTemplate.compile("{project} seq={test.counter}", properties);
+
+        String commented = template.render("SELECT 1");
+        assertThat(template.render(commented)).isSameAs(commented);
+    }
+
+    @Test
+    public void render_already_commented_dynamic_head() {
+        CommentTemplate template = CommentTemplate.compile("{caller} {project}", properties);
+
+        String commented = template.render("SELECT 1");
+        assertThat(commented).endsWith(" my_project */ SELECT 1");
+        assertThat(template.render(commented)).isSameAs(commented);
+
+        String fallback = template.getFallbackPrefix() + "SELECT 1";
+        assertThat(template.render(fallback)).isSameAs(fallback);
+    }
+
+    @Test
+    public void renderTag() {
+        assertThat(CommentTemplate.compile(CommentTemplate.DEFAULT_TEMPLATE, properties).renderTag()).isEqualTo("my_project");
+
+        CommentTemplate template = CommentTemplate.compile("{project} seq={test.counter}", properties);
+        long next = CountingSegmentProvider.counter.get() + 1;
+        assertThat(template.renderTag()).isEqualTo("my_project seq=" + next);
+    }
+
+    @Test
+    public void compile_unknown_segment() {
+        try {
+            CommentTemplate.compile("{project} {unknown}", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).startsWith("commentTemplate '{project} {unknown}' has unknown segment '{unknown}'.");
+        }
+    }
+
+    @Test
+    public void compile_unclosed_segment() {
+        try {
+            CommentTemplate.compile("{project", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("commentTemplate '{project' has unclosed '{'.");
+        }
+    }
+
+    @Test
+    public void compile_comment_delimiter_in_text() {
+        try {
+            CommentTemplate.compile("{project} */ DROP TABLE USERS", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("commentTemplate '{project} */ DROP TABLE USERS' must not contain comment delimiters or control characters.");
+        }
+    }
+
+    @Test
+    public void render_sanitizes_dynamic_value() {
+        CommentTemplate template = CommentTemplate.compile("{project} v={test.counter:a*/b}", properties);
+
+        assertThat(template.getStaticPrefix()).isNull();
+        assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project v=a*_b */ SELECT 1");
+    }
+
+    @Test
+    public void render_context_segment() {
+        properties.put(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, ThreadLocalContextValueSource.class.getName()));
+        CommentTemplate template = CommentTemplate.compile("{project} trace={context:traceId}", properties);
+
+        try {
+            assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project trace= */ SELECT 1");
+
+            ThreadLocalContextValueSource.put("traceId", "abc123");
+            assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project trace=abc123 */ SELECT 1");
+
+            ThreadLocalContextValueSource.put("traceId", "x*/ DROP TABLE USERS; /*");
+            assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project trace=x*_ DROP TABLE USERS; _* */ SELECT 1");
+        } finally {
+            ThreadLocalContextValueSource.clear();
+        }
+    }
+
+    @Test
+    public void render_context_segment_joined_delimiter() {
+        properties.put(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, ThreadLocalContextValueSource.class.getName()));
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "proj"));
+
+        try {
+            ThreadLocalContextValueSource.put("a", "x*");
+            ThreadLocalContextValueSource.put("b", "/ OR 1=1; DROP TABLE T; --");
+            assertThat(CommentTemplate.compile("{project} {context:a}{context:b}", properties).render("SELECT 1"))
+                .isEqualTo(" /* proj x*_ OR 1=1; DROP TABLE T; -- */ SELECT 1");
+            assertThat(CommentTemplate.compile("{context:a}/", properties).render("SELECT 1"))
+                .isEqualTo(" /* x*_ */ SELECT 1");
+
+            ThreadLocalContextValueSource.put("a", "x/");
+            ThreadLocalContextValueSource.put("b", "* DROP TABLE T");
+            assertThat(CommentTemplate.compile("{context:a}{context:b}", properties).renderTag())
+                .isEqualTo("x_* DROP TABLE T");
+        } finally {
+            ThreadLocalContextValueSource.clear();
+        }
+    }
+
+    @Test
+    public void compile_joined_delimiter_in_text() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "proj*"));
+        try {
+            CommentTemplate.compile("{project}/ DROP TABLE USERS", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("commentTemplate '{project}/ DROP TABLE USERS' must not contain comment delimiters or control characters.");
+        }
+
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "/proj"));
+        assertThat(CommentTemplate.compile("env=prod*{project}", properties).getStaticPrefix()).isEqualTo(" /* env=prod*_proj */ ");
+    }
+
+    @Test
+    public void render_mdc_segment_without_value() {
+        CommentTemplate template = CommentTemplate.compile("{project} trace={mdc:traceId}", properties);
+
+        assertThat(template.isStatic()).isFalse();
+        assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project trace= */ SELECT 1");
+    }
+
+    @Test
+    public void compile_context_segment_without_key() {
+        try {
+            CommentTemplate.compile("{project} {mdc}", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("commentTemplate segment '{mdc}' requires a key. ex) {mdc:traceId}");
+        }
+    }
+
+    @Test
+    public void compile_illegal_contextValueSource() {
+        properties.put(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CONTEXT_VALUE_SOURCE_KEY, "java.lang.String"));
+        try {
+            CommentTemplate.compile("{context:traceId}", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("contextValueSource 'java.lang.String' must implement in.woowa.tomcat.jdbc.pool.interceptor.ContextValueSource.");
+        }
+    }
+
+    @Test
+    public void render_with_variant_guard() {
+        CommentTemplate template = CommentTemplate.compile("{project} seq={test.counter}", properties)
+            .withVariantGuard(new CommentVariantGuard(2));
+
+        assertThat(template.getFallbackPrefix()).isEqualTo(" /* my_project seq=- */ ");
+        assertThat(template.render("SELECT 1")).doesNotStartWith(template.getFallbackPrefix());
+        assertThat(template.render("SELECT 1")).doesNotStartWith(template.getFallbackPrefix());
+        assertThat(template.render("SELECT 1")).isEqualTo(" /* my_project seq=- */ SELECT 1");
+        assertThat(template.render("SELECT 2")).doesNotStartWith(template.getFallbackPrefix());
+        assertThat(template.getVariantGuard().getFallbackCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void static_template_ignores_variant_guard() {
+        CommentTemplate template = CommentTemplate.compile(CommentTemplate.DEFAULT_TEMPLATE, properties)
+            .withVariantGuard(new CommentVariantGuard(1));
+
+        assertThat(template.getVariantGuard()).isNull();
+        assertThat(template.getStaticPrefix()).isEqualTo(" /* my_project */ ");
+    }
+
+    @Test
+    public void fingerprint_segment() {
+        CommentTemplate template = CommentTemplate.compile("{project} {fingerprint}", properties);
+        assertThat(template.isSqlDependent()).isTrue();
+
+        String hex = SqlFingerprint.toHex(SqlFingerprint.hash("SELECT * FROM T WHERE ID = ?", false));
+        assertThat(template.render("SELECT * FROM T WHERE ID = 1")).isEqualTo(" /* my_project " + hex + " */ SELECT * FROM T WHERE ID = 1");
+        assertThat(template.render("select * from t where id = 2", true)).isEqualTo(" /* my_project " + hex + " */ select * from t where id = 2");
+        assertThat(template.renderTag()).isEqualTo("my_project -");
+    }
+
+    @Test
+    public void fingerprint_segment_caches_prepared_sql_only() {
+        CommentSegment segment = CommentSegmentProviders.get("fingerprint").create(null, properties);
+        String sql = "SELECT * FROM T WHERE ID = ?";
+
+        assertThat(segment.getValue(sql, true)).isSameAs(segment.getValue(sql, true));
+        assertThat(segment.getValue(sql, false)).isEqualTo(segment.getValue(sql, true)).isNotSameAs(segment.getValue(sql, true));
+        assertThat(segment.getValue(null, true)).isEqualTo(CommentTemplate.FALLBACK_VALUE);
+
+        properties.put(SqlCallerInfoCommentInterceptor.FINGERPRINT_CACHE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.FINGERPRINT_CACHE_SIZE_KEY, "0"));
+        CommentSegment uncached = CommentSegmentProviders.get("fingerprint").create(null, properties);
+        assertThat(uncached.getValue(sql, true)).isNotSameAs(uncached.getValue(sql, true));
+    }
+
+    @Test
+    public void fingerprint_segment_illegal_argument() {
+        try {
+            CommentTemplate.compile("{fingerprint:oracle}", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("commentTemplate segment '{fingerprint:oracle}' argument must be mysql or omitted.");
+        }
+    }
+
+    @Test
+    public void rw_segment() {
+        CommentTemplate template = CommentTemplate.compile("{project} rw={rw}", properties);
+
+        assertThat(template.isSqlDependent()).isTrue();
+        assertThat(template.isConnectionDependent()).isFalse();
+        assertThat(template.render("SELECT 1", true)).isEqualTo(" /* my_project rw=read */ SELECT 1");
+        assertThat(template.render("SELECT 1", true)).isEqualTo(" /* my_project rw=read */ SELECT 1");
+        assertThat(template.render("UPDATE T SET A = 1", false)).isEqualTo(" /* my_project rw=write */ UPDATE T SET A = 1");
+        assertThat(template.render("CREATE TABLE T (A INT)", false)).isEqualTo(" /* my_project rw=ddl */ CREATE TABLE T (A INT)");
+        assertThat(template.renderTag()).isEqualTo("my_project rw=" + CommentTemplate.FALLBACK_VALUE);
+    }
+
+    @Test
+    public void rw_segment_illegal_cache_size() {
+        properties.put(SqlCallerInfoCommentInterceptor.STATEMENT_CLASS_CACHE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.STATEMENT_CLASS_CACHE_SIZE_KEY, "-1"));
+        try {
+            CommentTemplate.compile("{rw}", properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("statementClassCacheSize '-1' must be 0 or a positive integer.");
+        }
+    }
+
+    @Test
+    public void connection_state_segments() {
+        CommentTemplate template = CommentTemplate.compile("ro={readOnly} tx={tx}", properties);
+        ConnectionTagState readOnlyTransaction = new ConnectionTagState() {
+            @Override
+            public boolean isKnown() {
+                return true;
+            }
+
+            @Override
+            public boolean isReadOnly() {
+                return true;
+            }
+
+            @Override
+            public boolean isAutoCommit() {
+                return false;
+            }
+        };
+
+        assertThat(template.isConnectionDependent()).isTrue();
+        assertThat(template.render("SELECT 1", true, readOnlyTransaction)).isEqualTo(" /* ro=true tx=open */ SELECT 1");
+        assertThat(template.render("SELECT 1", true)).isEqualTo(" /* ro=- tx=- */ SELECT 1");
+    }
+}
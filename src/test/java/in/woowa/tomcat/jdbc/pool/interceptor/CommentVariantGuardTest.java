@@ -0,0 +1,95 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class CommentVariantGuardTest {
+
+    @Test
+    public void admit_up_to_max_variants() {
+        CommentVariantGuard guard = new CommentVariantGuard(3);
+        String sql = "SELECT * FROM TESTUSER";
+
+        assertThat(guard.admit(sql, 1)).isTrue();
+        assertThat(guard.admit(sql, 2)).isTrue();
+        assertThat(guard.admit(sql, 3)).isTrue();
+        assertThat(guard.admit(sql, 4)).isFalse();
+        assertThat(guard.admit(sql, 5)).isFalse();
+        assertThat(guard.getFallbackCount()).isEqualTo(2);
+
+        // 이미 내보낸 주석은 계속 허용한다.
+        assertThat(guard.admit(sql, 2)).isTrue();
+        assertThat(guard.getFallbackCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void other_sql_has_own_limit() {
+        CommentVariantGuard guard = new CommentVariantGuard(1);
+
+        assertThat(guard.admit("SELECT 1", 1)).isTrue();
+        assertThat(guard.admit("SELECT 1", 2)).isFalse();
+        assertThat(guard.admit("SELECT 2", 2)).isTrue();
+    }
+
+    @Test
+    public void sqls_in_same_slot_share_limit() {
+        CommentVariantGuard guard = new CommentVariantGuard(2);
+        // 끝의 "Aa" 와 "BB" 가 hashCode 에 같은 값을 더하므로 두 SQL 은 같은 칸을 쓴다.
+        assertThat("SELECT Aa".hashCode()).isEqualTo("SELECT BB".hashCode());
+
+        assertThat(guard.admit("SELECT Aa", 1)).isTrue();
+        assertThat(guard.admit("SELECT Aa", 2)).isTrue();
+        assertThat(guard.admit("SELECT BB", 3)).isFalse();
+        assertThat(guard.admit("SELECT Aa", 1)).isTrue();
+        assertThat(guard.getFallbackCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrent_admit_never_exceeds_max_variants() throws InterruptedException {
+        CommentVariantGuard guard = new CommentVariantGuard(16);
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int base = t * 1000;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (guard.admit("SELECT * FROM TESTUSER", base + i)) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(admitted.get()).isEqualTo(16);
+        assertThat(guard.getFallbackCount()).isEqualTo(8 * 1000 - 16);
+    }
+
+    @Test
+    public void illegal_max_variants() {
+        try {
+            new CommentVariantGuard(0);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("maxVariants must be between 1 and 1024 : 0");
+        }
+    }
+}
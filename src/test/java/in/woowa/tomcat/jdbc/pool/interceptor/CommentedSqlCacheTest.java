@@ -0,0 +1,86 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class CommentedSqlCacheTest {
+
+    private final UnaryOperator<String> commenter = sql -> " /* test */ " + sql;
+
+    @Test
+    public void maxSize_must_be_positive() {
+        try {
+            new CommentedSqlCache(0);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("maxSize must be positive : 0");
+        }
+    }
+
+    @Test
+    public void get_returns_same_instance() {
+        CommentedSqlCache cache = new CommentedSqlCache(10);
+
+        String first = cache.get("SELECT 1", commenter);
+        String second = cache.get(new String("SELECT 1"), commenter);
+
+        assertThat(first).isEqualTo(" /* test */ SELECT 1");
+        assertThat(second).isSameAs(first);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_evicts_when_full() {
+        CommentedSqlCache cache = new CommentedSqlCache(100);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.get("SELECT " + i, commenter);
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+        assertThat(cache.getMissCount()).isEqualTo(1000);
+        assertThat(cache.getEvictionCount()).isEqualTo(1000 - cache.size());
+    }
+
+    @Test
+    public void get_keeps_recently_used_entries() {
+        CommentedSqlCache cache = new CommentedSqlCache(100);
+        String hot = cache.get("SELECT hot", commenter);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(cache.get("SELECT hot", commenter)).isSameAs(hot);
+            cache.get("SELECT " + i, commenter);
+        }
+
+        assertThat(cache.getHitCount()).isEqualTo(1000);
+    }
+
+    @Test
+    public void entries_used_between_evictions_stay() {
+        CommentedSqlCache cache = new CommentedSqlCache(100);
+        int oneShot = 0;
+        long warmMissCount = 0;
+        for (int round = 0; round < 200; round++) {
+            // 한 번만 쓰이는 SQL 30 개가 들어와 세 번쯤 제거한 뒤 자주 쓰는 SQL 50 개를 다시 쓴다.
+            for (int i = 0; i < 30; i++) {
+                cache.get("SELECT once " + oneShot++, commenter);
+            }
+            long missCount = cache.getMissCount();
+            for (int i = 0; i < 50; i++) {
+                cache.get("SELECT warm " + i, commenter);
+            }
+            if (round >= 20) { // 모든 SQL 이 한 번씩 바늘을 지나간 뒤부터 센다.
+                warmMissCount += cache.getMissCount() - missCount;
+            }
+        }
+
+        // 바늘이 매번 처음부터 돌면 앞쪽 bucket 의 자주 쓰는 SQL 이 표시를 잃고 먼저 밀려난다.
+        assertThat(warmMissCount).isZero();
+    }
+}
@@ -0,0 +1,164 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class ConnectionHoldStatsTest {
+
+    private static ConnectionPool pool;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        PoolProperties properties = new PoolProperties();
+        properties.setUrl("jdbc:h2:mem:connectionHoldStats");
+        properties.setDriverClassName("org.h2.Driver");
+        properties.setInitialSize(0);
+        properties.setJmxEnabled(false);
+        pool = new ConnectionPool(properties);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.purge();
+    }
+
+    @Test
+    public void hold_accumulated_on_return() {
+        ConnectionHoldStats stats = new ConnectionHoldStats(16, 0);
+        ConnectionHoldStats.Hold hold = stats.borrowed(null, "OrderService.order", pooledConnection());
+        hold.executed(2);
+        hold.executed(-1);
+        hold.executed(3);
+        hold.startNanos -= TimeUnit.MILLISECONDS.toNanos(5);
+        stats.returned(hold);
+        stats.returned(hold);
+
+        HoldSnapshot snapshot = stats.snapshot("OrderService.order");
+        assertThat(snapshot.getHoldCount()).isEqualTo(1);
+        assertThat(snapshot.getStatementCount()).isEqualTo(3);
+        assertThat(snapshot.getRowCount()).isEqualTo(5);
+        assertThat(snapshot.getTotalHoldMillis()).isGreaterThanOrEqualTo(5.0).isEqualTo(snapshot.getMaxHoldMillis());
+        assertThat(stats.getHeldConnections()).isEmpty();
+
+        assertThat(stats.borrowed(hold, "OrderService.cancel", pooledConnection())).isSameAs(hold);
+        assertThat(hold.statements).isZero();
+        stats.returned(hold);
+        assertThat(stats.getCallers()).extracting(HoldSnapshot::getCaller).containsExactly("OrderService.order", "OrderService.cancel");
+    }
+
+    @Test
+    public void overflow_key_and_reset() {
+        ConnectionHoldStats stats = new ConnectionHoldStats(1, 0);
+        stats.returned(stats.borrowed(null, "A.a", pooledConnection()));
+        stats.returned(stats.borrowed(null, "B.b", pooledConnection()));
+        stats.returned(stats.borrowed(null, "C.c", pooledConnection()));
+
+        assertThat(stats.getCallerCount()).isEqualTo(1);
+        assertThat(stats.snapshot(ConnectionHoldStats.OVERFLOW_KEY).getHoldCount()).isEqualTo(2);
+        assertThat(stats.snapshot("B.b")).isNull();
+
+        stats.reset();
+        assertThat(stats.snapshot("A.a").getHoldCount()).isZero();
+        assertThat(stats.getCallers()).extracting(HoldSnapshot::getCaller).containsExactly("A.a");
+    }
+
+    @Test
+    public void sweep_reports_long_hold_once() {
+        // 기다리는 대신 시작 시각을 threshold 보다 앞으로 당긴다. 느린 환경에서도 fast 가 threshold 를 넘지 않는다.
+        ConnectionHoldStats stats = new ConnectionHoldStats(16, 60_000);
+        ConnectionHoldStats.Hold slow = stats.borrowed(null, "ReportService.export", pooledConnection());
+        slow.executed(-1);
+        slow.startNanos -= TimeUnit.MINUTES.toNanos(2);
+        ConnectionHoldStats.Hold fast = stats.borrowed(null, "OrderService.order", pooledConnection());
+
+        stats.sweep("test");
+        stats.sweep("test");
+        assertThat(stats.getLongHoldCount()).isEqualTo(1);
+        assertThat(stats.getHeldConnections()).extracting(HeldConnection::getCaller).containsExactly("ReportService.export", "OrderService.order");
+        assertThat(stats.getHeldConnections().get(0).getStatementCount()).isEqualTo(1);
+        assertThat(stats.getHeldConnections().get(0).getThreadName()).isEqualTo(Thread.currentThread().getName());
+
+        stats.returned(slow);
+        stats.returned(fast);
+        assertThat(stats.getHeldConnections()).isEmpty();
+
+        // 같은 물리 커넥션을 다시 빌려 오래 쥐면 다시 남긴다.
+        stats.borrowed(slow, "ReportService.export", pooledConnection());
+        slow.startNanos -= TimeUnit.MINUTES.toNanos(2);
+        stats.sweep("test");
+        assertThat(stats.getLongHoldCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void sweep_finishes_hold_released_without_close() {
+        ConnectionHoldStats stats = new ConnectionHoldStats(16, 0);
+        PooledConnection connection = pooledConnection();
+        ConnectionHoldStats.Hold hold = stats.borrowed(null, "LeakyService.run", connection);
+
+        connection.release();
+        stats.sweep("test");
+        stats.returned(hold);
+
+        assertThat(stats.getHeldConnections()).isEmpty();
+        assertThat(stats.snapshot("LeakyService.run").getHoldCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void warnThreshold_illegal() {
+        try {
+            new ConnectionHoldStats(16, -1);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("warnThresholdMillis must not be negative : -1");
+        }
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        ConnectionHoldStats stats = new ConnectionHoldStats(16, 0);
+        ConnectionHoldStats.Hold hold = stats.borrowed(null, "UserRepository.findById", pooledConnection());
+        hold.executed(1);
+        stats.returned(hold);
+        stats.borrowed(null, "ReportService.export", pooledConnection());
+
+        stats.start("test[pool],1");
+        try {
+            ObjectName name = ConnectionHoldStats.objectName("test[pool],1");
+            assertThat(stats.getObjectName()).isEqualTo(name);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            CompositeData[] callers = (CompositeData[]) server.getAttribute(name, "Callers");
+            assertThat(callers).hasSize(2);
+            assertThat(callers[0].get("caller")).isEqualTo("UserRepository.findById");
+            assertThat(callers[0].get("statementCount")).isEqualTo(1L);
+            assertThat(callers[0].get("rowCount")).isEqualTo(1L);
+            assertThat(callers[1].get("holdCount")).isEqualTo(0L);
+            CompositeData[] held = (CompositeData[]) server.getAttribute(name, "HeldConnections");
+            assertThat(held).hasSize(1);
+            assertThat(held[0].get("caller")).isEqualTo("ReportService.export");
+
+            server.invoke(name, "reset", null, null);
+            assertThat(stats.snapshot("UserRepository.findById").getHoldCount()).isZero();
+        } finally {
+            stats.stop();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(ConnectionHoldStats.objectName("test[pool],1"))).isFalse();
+    }
+
+    private static PooledConnection pooledConnection() {
+        return new PooledConnection(pool.getPoolProperties(), pool);
+    }
+}
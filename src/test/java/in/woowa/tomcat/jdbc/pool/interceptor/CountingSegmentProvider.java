@@ -0,0 +1,27 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 테스트용 동적 segment. <code>{test.counter}</code> 는 호출될 때마다 1 씩 증가한 값을, <code>{test.counter:value}</code> 는 value 를 그대로 돌려준다.
+ */
+public class CountingSegmentProvider implements CommentSegmentProvider {
+
+    static final AtomicLong counter = new AtomicLong();
+
+    @Override
+    public String getName() {
+        return "test.counter";
+    }
+
+    @Override
+    public CommentSegment create(String argument, Map<String, PoolProperties.InterceptorProperty> properties) {
+        if (argument != null) {
+            return () -> argument;
+        }
+        return () -> String.valueOf(counter.incrementAndGet());
+    }
+}
@@ -0,0 +1,269 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class HeavyHittersTest {
+
+    /**
+     * Zipf 분포로 만든 키를 정확한 counter 와 비교한다.
+     */
+    @Test
+    public void space_saving_bounds_on_skewed_stream() {
+        HeavyHitters heavyHitters = new HeavyHitters(32, 10, 0);
+        Map<String, Long> exact = new HashMap<>();
+        ZipfKeys keys = new ZipfKeys(2000, 1.1, 42);
+
+        final int executions = 100_000;
+        for (int i = 0; i < executions; i++) {
+            String key = keys.next();
+            heavyHitters.record(key, 1000);
+            exact.merge(key, 1L, Long::sum);
+        }
+
+        List<HeavyHitter> top = heavyHitters.getTopByCount();
+        assertThat(top).hasSize(10);
+        for (HeavyHitter hitter : top) {
+            long actual = exact.getOrDefault(hitter.getKey(), 0L);
+            assertThat(actual).isBetween(hitter.getCount() - hitter.getCountError(), hitter.getCount());
+        }
+        // 전체의 1/capacity 를 넘는 키는 반드시 추적된다.
+        List<String> frequent = exact.entrySet().stream()
+            .filter(entry -> entry.getValue() > executions / 32)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        assertThat(frequent).isNotEmpty();
+        assertThat(top).extracting(HeavyHitter::getKey).containsAll(frequent);
+        assertThat(top.subList(0, 5)).extracting(HeavyHitter::getKey).containsExactlyElementsOf(exactTop(exact, 5));
+        assertThat(heavyHitters.getTotalCount()).isEqualTo(executions);
+    }
+
+    @Test
+    public void rank_by_time() {
+        HeavyHitters heavyHitters = new HeavyHitters(4, 2, 0);
+        for (int i = 0; i < 100; i++) {
+            heavyHitters.record("Fast.query", 1_000);
+        }
+        heavyHitters.record("Slow.report", 5_000_000);
+
+        assertThat(heavyHitters.getTopByCount()).extracting(HeavyHitter::getKey).containsExactly("Fast.query", "Slow.report");
+        assertThat(heavyHitters.getTopByTime()).extracting(HeavyHitter::getKey).containsExactly("Slow.report", "Fast.query");
+        assertThat(heavyHitters.getTopByTime().get(0).getTotalMillis()).isEqualTo(5.0);
+        assertThat(heavyHitters.getTopByTime().get(0).getTotalMillisError()).isZero();
+    }
+
+    @Test
+    public void concurrent_record() throws InterruptedException {
+        final HeavyHitters heavyHitters = new HeavyHitters(16, 16, 0);
+        final int threads = 16;
+        final int perThread = 20_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    heavyHitters.record("Caller.m" + (i % 8), 10);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // 키가 capacity 보다 적으면 밀려나는 counter 가 없으므로 정확하다.
+        List<HeavyHitter> top = heavyHitters.getTopByCount();
+        assertThat(top).hasSize(8);
+        assertThat(top).allSatisfy(hitter -> {
+            assertThat(hitter.getCount()).isEqualTo(threads * perThread / 8);
+            assertThat(hitter.getCountError()).isZero();
+        });
+        assertThat(heavyHitters.getTotalCount()).isEqualTo(threads * perThread);
+    }
+
+    /**
+     * 새 키는 모두 처음 보는 키이고 상위 키는 밀려나지 않으므로, 후보를 기억해 두고 고르는 방식도
+     * 매번 모두 훑어 가장 작은 counter 를 고르는 방식과 counter 값의 분포가 같아야 한다.
+     */
+    @Test
+    public void candidate_eviction_matches_linear_scan() {
+        final int capacity = 48;
+        SpaceSavingSketch sketch = new SpaceSavingSketch(SpaceSavingSketch.Rank.COUNT, capacity);
+        assertThat(sketch.getStripeCount()).isEqualTo(1);
+        Map<String, Long> reference = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 8; i++) {
+            for (int n = 0; n < 10_000; n++) {
+                sketch.add("Heavy.m" + i, 1);
+                addLinearScan(reference, capacity, "Heavy.m" + i);
+            }
+        }
+        for (int i = 0; i < 100_000; i++) {
+            String key = random.nextInt(5) == 0 ? "Heavy.m" + random.nextInt(8) : "Tail.m" + i;
+            sketch.add(key, 1);
+            addLinearScan(reference, capacity, key);
+        }
+
+        List<HeavyHitter> top = sketch.top(capacity);
+        assertThat(top).extracting(HeavyHitter::getCount)
+            .containsExactlyElementsOf(reference.values().stream().sorted(Comparator.reverseOrder()).collect(Collectors.toList()));
+        assertThat(top.subList(0, 8)).extracting(HeavyHitter::getKey).allMatch(key -> key.startsWith("Heavy."));
+    }
+
+    private static void addLinearScan(Map<String, Long> counters, int capacity, String key) {
+        Long count = counters.get(key);
+        if (count == null && counters.size() >= capacity) {
+            String min = null;
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                if (min == null || entry.getValue() < counters.get(min)) {
+                    min = entry.getKey();
+                }
+            }
+            count = counters.remove(min);
+        }
+        counters.put(key, (count == null ? 0 : count) + 1);
+    }
+
+    @Test
+    public void stripes() {
+        assertThat(new SpaceSavingSketch(SpaceSavingSketch.Rank.COUNT, 32).getStripeCount()).isEqualTo(1);
+        assertThat(new SpaceSavingSketch(SpaceSavingSketch.Rank.COUNT, 128).getStripeCount()).isEqualTo(2);
+        assertThat(new SpaceSavingSketch(SpaceSavingSketch.Rank.COUNT, 4096).getStripeCount()).isEqualTo(16);
+        assertThat(new SpaceSavingSketch(SpaceSavingSketch.Rank.COUNT, 4095).getStripeCount()).isEqualTo(16);
+    }
+
+    /**
+     * 키 종류가 capacity 보다 많아 꼬리 키마다 counter 를 넘겨받아도 상위 키는 남고 counter 개수는 capacity 를 넘지 않는다.
+     */
+    @Test
+    public void concurrent_record_with_more_keys_than_capacity() throws InterruptedException {
+        final HeavyHitters heavyHitters = new HeavyHitters(256, 4, 0);
+        final int threads = 16;
+        final int perThread = 20_000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    heavyHitters.record(i % 2 == 0 ? "Heavy.m" + (i % 8) : "Tail.m" + thread + "_" + i, 10);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        List<HeavyHitter> top = heavyHitters.getTopByCount();
+        assertThat(top).extracting(HeavyHitter::getKey).containsOnly("Heavy.m0", "Heavy.m2", "Heavy.m4", "Heavy.m6");
+        assertThat(heavyHitters.getTopByTime()).extracting(HeavyHitter::getKey).containsOnly("Heavy.m0", "Heavy.m2", "Heavy.m4", "Heavy.m6");
+        assertThat(top).allSatisfy(hitter -> assertThat(hitter.getCount()).isGreaterThanOrEqualTo(threads * perThread / 8));
+        assertThat(heavyHitters.getTotalCount()).isEqualTo(threads * perThread);
+    }
+
+    @Test
+    public void illegal_arguments() {
+        try {
+            new HeavyHitters(0, 1, 0);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("capacity must be between 1 and 4096 : 0");
+        }
+        try {
+            new HeavyHitters(8, 9, 0);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("topK must be between 1 and capacity 8 : 9");
+        }
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        HeavyHitters heavyHitters = new HeavyHitters(8, 4, 0);
+        heavyHitters.record("UserRepository.findById", 2_000_000);
+
+        heavyHitters.start("heavy_hitters_pool");
+        try {
+            ObjectName name = HeavyHitters.objectName("heavy_hitters_pool");
+            assertThat(heavyHitters.getObjectName()).isEqualTo(name);
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(name, "TotalCount")).isEqualTo(1L);
+            CompositeData[] top = (CompositeData[]) server.getAttribute(name, "TopByTime");
+            assertThat(top).hasSize(1);
+            assertThat(top[0].get("key")).isEqualTo("UserRepository.findById");
+            assertThat(top[0].get("totalMillis")).isEqualTo(2.0);
+
+            server.invoke(name, "reset", null, null);
+            assertThat(heavyHitters.getTopByCount()).isEmpty();
+        } finally {
+            heavyHitters.stop();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(HeavyHitters.objectName("heavy_hitters_pool"))).isFalse();
+    }
+
+    static List<String> exactTop(Map<String, Long> exact, int limit) {
+        return exact.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * <code>Caller.m&lt;rank&gt;</code> 키를 Zipf 분포로 만든다.
+     */
+    static final class ZipfKeys {
+        private final double[] cumulative;
+        private final Random random;
+
+        ZipfKeys(int size, double exponent, long seed) {
+            cumulative = new double[size];
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < size; i++) {
+                cumulative[i] /= sum;
+            }
+            random = new Random(seed);
+        }
+
+        String next() {
+            int index = java.util.Arrays.binarySearch(cumulative, random.nextDouble());
+            return "Caller.m" + (index < 0 ? -index - 1 : index);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex_is_continuous_and_within_upper_bound() {
+        int previous = 0;
+        for (long nanos = 0; nanos < 1_000_000; nanos++) {
+            int index = LatencyHistogram.bucketIndex(nanos);
+            assertThat(index).isBetween(previous, previous + 1);
+            assertThat(LatencyHistogram.bucketUpperBound(index)).isGreaterThanOrEqualTo(nanos);
+            // bucket 상한과 실제 값의 차이는 1/8 이내
+            assertThat(LatencyHistogram.bucketUpperBound(index) - nanos).isLessThanOrEqualTo(Math.max(0, nanos / 8));
+            previous = index;
+        }
+    }
+
+    @Test
+    public void bucketIndex_clamps_large_values() {
+        assertThat(LatencyHistogram.bucketIndex(-1)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKET_COUNT - 1);
+        assertThat(LatencyHistogram.bucketIndex(1L << LatencyHistogram.MAX_EXPONENT)).isLessThan(LatencyHistogram.BUCKET_COUNT);
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i), i % 100 == 0);
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot("UserRepository.findById");
+        assertThat(snapshot.getCaller()).isEqualTo("UserRepository.findById");
+        assertThat(snapshot.getCount()).isEqualTo(1000);
+        assertThat(snapshot.getErrorCount()).isEqualTo(10);
+        assertThat(snapshot.getMeanMicros()).isCloseTo(500.5, within(0.01));
+        assertThat(snapshot.getP50Micros()).isBetween(500.0, 500.0 * 1.125);
+        assertThat(snapshot.getP99Micros()).isBetween(990.0, 990.0 * 1.125);
+        assertThat(snapshot.getP999Micros()).isBetween(999.0, 999.0 * 1.125);
+        assertThat(snapshot.getMaxMicros()).isBetween(1000.0, 1000.0 * 1.125);
+    }
+
+    @Test
+    public void empty_and_reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.snapshot("a").getP99Micros()).isEqualTo(0.0);
+
+        histogram.record(1000, false);
+        histogram.reset();
+        assertThat(histogram.snapshot("a").getCount()).isZero();
+    }
+
+    @Test
+    public void concurrent_record() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 16;
+        final int recordsPerThread = 100_000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < recordsPerThread; i++) {
+                    histogram.record(i, (i & 1) == 0);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot("a");
+        assertThat(snapshot.getCount()).isEqualTo((long) threads * recordsPerThread);
+        assertThat(snapshot.getErrorCount()).isEqualTo((long) threads * recordsPerThread / 2);
+    }
+}
@@ -0,0 +1,77 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocalHostResolverTest {
+
+    static Callable<InetAddress> slowLookup(long sleepMillis) {
+        return () -> {
+            Thread.sleep(sleepMillis);
+            return InetAddress.getByAddress("slow-host", new byte[]{10, 0, 0, 7});
+        };
+    }
+
+    private static void awaitSettled(LocalHostResolver resolver) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (!resolver.isSettled() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void slow_lookup_does_not_block() throws InterruptedException {
+        long start = System.nanoTime();
+        LocalHostResolver resolver = new LocalHostResolver(slowLookup(2000L), 5000L);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+
+        assertThat(elapsedMillis).isLessThan(1000L);
+        assertThat(resolver.isSettled()).isFalse();
+        assertThat(resolver.getHostName()).isNotEmpty();
+        assertThat(resolver.getHostAddress()).isNotEmpty();
+
+        awaitSettled(resolver);
+
+        assertThat(resolver.isSettled()).isTrue();
+        assertThat(resolver.getHostName()).isEqualTo("slow-host");
+        assertThat(resolver.getHostAddress()).isEqualTo("10.0.0.7");
+    }
+
+    @Test
+    public void lookup_timeout_keeps_fallback() throws InterruptedException {
+        LocalHostResolver resolver = new LocalHostResolver(slowLookup(2000L), 100L);
+        String fallbackHostName = resolver.getHostName();
+        String fallbackHostAddress = resolver.getHostAddress();
+
+        awaitSettled(resolver);
+
+        assertThat(resolver.isSettled()).isTrue();
+        assertThat(resolver.getHostName()).isEqualTo(fallbackHostName);
+        assertThat(resolver.getHostAddress()).isEqualTo(fallbackHostAddress);
+    }
+
+    @Test
+    public void lookup_failure_keeps_fallback() throws InterruptedException {
+        LocalHostResolver resolver = new LocalHostResolver(() -> {
+            throw new java.net.UnknownHostException("no dns");
+        }, 5000L);
+
+        awaitSettled(resolver);
+
+        assertThat(resolver.isSettled()).isTrue();
+        assertThat(resolver.getHostName()).isNotEmpty().isNotEqualTo("slow-host");
+    }
+
+    @Test
+    public void resolved_value_is_sanitized() throws InterruptedException {
+        LocalHostResolver resolver = new LocalHostResolver(() -> InetAddress.getByAddress("bad*/host", new byte[]{10, 0, 0, 7}), 5000L);
+
+        awaitSettled(resolver);
+
+        assertThat(resolver.getHostName()).isEqualTo("bad*_host");
+    }
+}
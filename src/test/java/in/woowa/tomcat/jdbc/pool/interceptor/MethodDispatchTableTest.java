@@ -0,0 +1,58 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MethodDispatchTableTest {
+
+    @Test
+    public void actionOf_classifies_once_per_method_instance() throws NoSuchMethodException {
+        AtomicInteger classified = new AtomicInteger();
+        MethodDispatchTable table = new MethodDispatchTable(method -> {
+            classified.incrementAndGet();
+            return MethodDispatchTable.Action.CLOSE;
+        });
+        Method close = Connection.class.getMethod("close");
+
+        assertThat(table.actionOf(close)).isEqualTo(MethodDispatchTable.Action.CLOSE);
+        assertThat(table.actionOf(close)).isEqualTo(MethodDispatchTable.Action.CLOSE);
+
+        assertThat(classified.get()).isEqualTo(1);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void actionOf_does_not_grow_beyond_max_size() throws NoSuchMethodException {
+        MethodDispatchTable table = new MethodDispatchTable(method -> MethodDispatchTable.Action.PASS_THROUGH);
+
+        for (int i = 0; i < MethodDispatchTable.MAX_SIZE + 10; i++) {
+            // getMethod 는 호출할 때마다 새 Method 인스턴스를 돌려준다.
+            assertThat(table.actionOf(Statement.class.getMethod("getFetchSize"))).isEqualTo(MethodDispatchTable.Action.PASS_THROUGH);
+        }
+
+        assertThat(table.size()).isEqualTo(MethodDispatchTable.MAX_SIZE);
+    }
+
+    @Test
+    public void hasSqlArgument() throws NoSuchMethodException {
+        assertThat(MethodDispatchTable.hasSqlArgument(Statement.class.getMethod("executeQuery", String.class))).isTrue();
+        assertThat(MethodDispatchTable.hasSqlArgument(Statement.class.getMethod("getFetchSize"))).isFalse();
+        assertThat(MethodDispatchTable.hasSqlArgument(Statement.class.getMethod("setFetchSize", int.class))).isFalse();
+    }
+
+    @Test
+    public void isParameterSetter() throws NoSuchMethodException {
+        assertThat(MethodDispatchTable.isParameterSetter(PreparedStatement.class.getMethod("setInt", int.class, int.class))).isTrue();
+        assertThat(MethodDispatchTable.isParameterSetter(PreparedStatement.class.getMethod("setObject", int.class, Object.class, int.class))).isTrue();
+        assertThat(MethodDispatchTable.isParameterSetter(Statement.class.getMethod("setFetchSize", int.class))).isFalse();
+        assertThat(MethodDispatchTable.isParameterSetter(CallableStatement.class.getMethod("setString", String.class, String.class))).isFalse();
+    }
+}
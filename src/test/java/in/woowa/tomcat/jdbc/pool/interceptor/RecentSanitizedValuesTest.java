@@ -0,0 +1,41 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RecentSanitizedValuesTest {
+
+    @Test
+    public void clean_value_is_returned_as_is() {
+        RecentSanitizedValues recentValues = new RecentSanitizedValues();
+        String traceId = "5f2b7c9e1a3d4f60";
+
+        assertThat(recentValues.sanitize(traceId)).isSameAs(traceId);
+        assertThat(recentValues.sanitize(traceId)).isSameAs(traceId);
+    }
+
+    @Test
+    public void dirty_value_is_sanitized_once() {
+        RecentSanitizedValues recentValues = new RecentSanitizedValues();
+
+        String sanitized = recentValues.sanitize("a*/ DROP TABLE x /*");
+
+        assertThat(sanitized).isEqualTo("a*_ DROP TABLE x _*");
+        assertThat(recentValues.sanitize("a*/ DROP TABLE x /*")).isSameAs(sanitized);
+    }
+
+    @Test
+    public void colliding_values() {
+        RecentSanitizedValues recentValues = new RecentSanitizedValues(1);
+
+        assertThat(recentValues.sanitize("a*/b")).isEqualTo("a*_b");
+        assertThat(recentValues.sanitize("c\nd")).isEqualTo("c d");
+        assertThat(recentValues.sanitize("a*/b")).isEqualTo("a*_b");
+    }
+
+    @Test
+    public void null_value() {
+        assertThat(new RecentSanitizedValues().sanitize(null)).isEmpty();
+    }
+}
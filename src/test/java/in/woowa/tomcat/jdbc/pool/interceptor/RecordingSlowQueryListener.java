@@ -0,0 +1,26 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 테스트용 {@link SlowQueryListener}. 배경 스레드에서 받은 이벤트를 테스트 스레드가 기다려 꺼낼 수 있게 모아 둔다.
+ */
+public class RecordingSlowQueryListener implements SlowQueryListener {
+
+    private static final BlockingQueue<SlowQuery> RECEIVED = new LinkedBlockingQueue<>();
+
+    public static SlowQuery poll() throws InterruptedException {
+        return RECEIVED.poll(5, TimeUnit.SECONDS);
+    }
+
+    public static void clear() {
+        RECEIVED.clear();
+    }
+
+    @Override
+    public void onSlowQuery(SlowQuery slowQuery) {
+        RECEIVED.add(slowQuery);
+    }
+}
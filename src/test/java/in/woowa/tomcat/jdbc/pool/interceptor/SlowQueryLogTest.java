@@ -0,0 +1,253 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class SlowQueryLogTest {
+
+    @Test
+    public void ringBuffer_rounds_capacity_up_to_power_of_two() {
+        assertThat(new MpscRingBuffer<String>(1).capacity()).isEqualTo(1);
+        assertThat(new MpscRingBuffer<String>(5).capacity()).isEqualTo(8);
+        assertThat(new MpscRingBuffer<String>(1024).capacity()).isEqualTo(1024);
+    }
+
+    @Test
+    public void ringBuffer_rejects_when_full_and_wraps_around() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.offer(round * 10 + i)).isTrue();
+            }
+            assertThat(buffer.offer(-1)).isFalse();
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.poll()).isEqualTo(round * 10 + i);
+            }
+            assertThat(buffer.poll()).isNull();
+            assertThat(buffer.isEmpty()).isTrue();
+        }
+    }
+
+    /**
+     * 여러 생산자가 동시에 넣어도 넣은 값과 버려진 값을 합하면 빠짐없다.
+     */
+    @Test
+    public void ringBuffer_concurrent_producers() throws InterruptedException {
+        final int threads = 8;
+        final int perThread = 20_000;
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(256);
+        CountDownLatch start = new CountDownLatch(1);
+        int[] rejected = new int[threads];
+
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    if (!buffer.offer(thread * perThread + i)) {
+                        rejected[thread]++;
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+
+        Set<Integer> received = new HashSet<>();
+        start.countDown();
+        boolean producing = true;
+        while (producing) {
+            producing = false;
+            for (Thread producer : producers) {
+                producing |= producer.isAlive();
+            }
+            Integer value;
+            while ((value = buffer.poll()) != null) {
+                assertThat(received.add(value)).isTrue();
+            }
+        }
+        Integer value;
+        while ((value = buffer.poll()) != null) {
+            assertThat(received.add(value)).isTrue();
+        }
+
+        int totalRejected = 0;
+        for (int count : rejected) {
+            totalRejected += count;
+        }
+        assertThat(received.size() + totalRejected).isEqualTo(threads * perThread);
+    }
+
+    @Test
+    public void offer_counts_drops_when_buffer_is_full() {
+        List<SlowQuery> delivered = new ArrayList<>();
+        SlowQueryLog slowQueryLog = new SlowQueryLog(0, 4, 8, delivered::add);
+
+        for (int i = 0; i < 10; i++) {
+            slowQueryLog.offer(slowQuery("SELECT " + i));
+        }
+
+        assertThat(slowQueryLog.getDroppedCount()).isEqualTo(6);
+        assertThat(slowQueryLog.drain()).isEqualTo(4);
+        assertThat(delivered).extracting(SlowQuery::getSql).containsExactly("SELECT 0", "SELECT 1", "SELECT 2", "SELECT 3");
+        assertThat(slowQueryLog.getDeliveredCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void listener_failure_does_not_stop_draining() {
+        List<SlowQuery> delivered = new ArrayList<>();
+        SlowQueryLog slowQueryLog = new SlowQueryLog(0, 4, 8, slowQuery -> {
+            if (slowQuery.getSql().equals("SELECT 1")) {
+                throw new IllegalStateException("listener failure");
+            }
+            delivered.add(slowQuery);
+        });
+
+        slowQueryLog.offer(slowQuery("SELECT 1"));
+        slowQueryLog.offer(slowQuery("SELECT 2"));
+
+        assertThat(slowQueryLog.drain()).isEqualTo(2);
+        assertThat(delivered).extracting(SlowQuery::getSql).containsExactly("SELECT 2");
+    }
+
+    @Test
+    public void background_thread_delivers_and_drains_on_stop() throws InterruptedException {
+        List<SlowQuery> delivered = new CopyOnWriteArrayList<>();
+        CountDownLatch first = new CountDownLatch(1);
+        SlowQueryLog slowQueryLog = new SlowQueryLog(0, 64, 8, slowQuery -> {
+            delivered.add(slowQuery);
+            first.countDown();
+        });
+
+        slowQueryLog.start("slow_query_test");
+        try {
+            slowQueryLog.offer(slowQuery("SELECT 1"));
+            assertThat(first.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 2; i <= 10; i++) {
+                slowQueryLog.offer(slowQuery("SELECT " + i));
+            }
+        } finally {
+            slowQueryLog.stop();
+        }
+
+        assertThat(delivered).hasSize(10);
+        assertThat(delivered.get(0).getSql()).isEqualTo("SELECT 1");
+    }
+
+    /**
+     * listener 가 멈춰 stop 이 기다리다 돌아와도, 이전 스레드가 끝나기 전에는 두 번째 배경 스레드를 만들지 않는다.
+     */
+    @Test
+    public void restart_waits_for_previous_thread() throws InterruptedException {
+        List<SlowQuery> delivered = new CopyOnWriteArrayList<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SlowQueryLog slowQueryLog = new SlowQueryLog(0, 64, 8, slowQuery -> {
+            if (slowQuery.getSql().equals("SELECT 1")) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            delivered.add(slowQuery);
+        });
+
+        slowQueryLog.start("slow_query_restart");
+        try {
+            slowQueryLog.offer(slowQuery("SELECT 1"));
+            assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            slowQueryLog.stop();
+            slowQueryLog.start("slow_query_restart");
+            assertThat(drainerThreads("slow_query_restart")).isEqualTo(1);
+
+            release.countDown();
+            slowQueryLog.offer(slowQuery("SELECT 2"));
+            slowQueryLog.start("slow_query_restart");
+            slowQueryLog.offer(slowQuery("SELECT 3"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (delivered.size() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(delivered).extracting(SlowQuery::getSql).containsExactly("SELECT 1", "SELECT 2", "SELECT 3");
+            assertThat(drainerThreads("slow_query_restart")).isEqualTo(1);
+        } finally {
+            release.countDown();
+            slowQueryLog.stop();
+        }
+        assertThat(drainerThreads("slow_query_restart")).isZero();
+    }
+
+    private static long drainerThreads(String poolName) {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("sql-caller-info-slow-query-" + poolName) && thread.isAlive())
+            .count();
+    }
+
+    @Test
+    public void isSlow() {
+        SlowQueryLog slowQueryLog = new SlowQueryLog(100, 4, 8, null);
+
+        assertThat(slowQueryLog.isSlow(TimeUnit.MILLISECONDS.toNanos(99))).isFalse();
+        assertThat(slowQueryLog.isSlow(TimeUnit.MILLISECONDS.toNanos(100))).isTrue();
+        assertThat(slowQueryLog.getBufferSize()).isEqualTo(4);
+    }
+
+    @Test
+    public void formatBinds() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < SlowQueryLog.MAX_BIND_LENGTH + 10; i++) {
+            longText.append('a');
+        }
+        Object[] binds = {7, "Baemin", SlowQueryLog.NULL, null, new byte[16], new ByteArrayInputStream(new byte[0]),
+            LocalDate.of(2020, 1, 2), longText.toString()};
+
+        assertThat(SlowQueryLog.formatBinds(binds, 7))
+            .isEqualTo("[1=7, 2='Baemin', 3=NULL, 4=?, 5=byte[16], 6=<ByteArrayInputStream>, 7='2020-01-02']");
+        assertThat(SlowQueryLog.formatBinds(binds, 8)).endsWith("8='" + longText.substring(0, SlowQueryLog.MAX_BIND_LENGTH) + "...']");
+        assertThat(SlowQueryLog.formatBinds(binds, 10)).endsWith("...(2 more)]");
+        assertThat(SlowQueryLog.formatBinds(null, 0)).isEqualTo("[]");
+        assertThat(SlowQueryLog.formatBinds(null, 2)).isEqualTo("[...(2 more)]");
+    }
+
+    @Test
+    public void illegal_arguments() {
+        try {
+            new SlowQueryLog(-1, 4, 8, null);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("thresholdMillis must not be negative : -1");
+        }
+        try {
+            new SlowQueryLog(0, SlowQueryLog.MAX_BUFFER_SIZE + 1, 8, null);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("bufferSize must be between 1 and 65536 : 65537");
+        }
+    }
+
+    private static SlowQuery slowQuery(String sql) {
+        return new SlowQuery(System.currentTimeMillis(), "test", "woowahan", sql, 1_000_000L, false, null);
+    }
+}
@@ -0,0 +1,147 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.ConnectionPool;
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.JdbcInterceptor;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.apache.tomcat.jdbc.pool.PooledConnection;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class SqlCallerInfoCommentConfigTest {
+
+    private static Map<String, PoolProperties.InterceptorProperty> properties(String projectName) {
+        Map<String, PoolProperties.InterceptorProperty> properties = new HashMap<>();
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, projectName));
+        return properties;
+    }
+
+    @Test
+    public void of_same_properties_instance() {
+        Map<String, PoolProperties.InterceptorProperty> properties = properties("config_test");
+
+        SqlCallerInfoCommentConfig config = SqlCallerInfoCommentConfig.of(properties);
+        long parseCount = SqlCallerInfoCommentConfig.getParseCount();
+
+        assertThat(SqlCallerInfoCommentConfig.of(properties)).isSameAs(config);
+        assertThat(SqlCallerInfoCommentConfig.getParseCount()).isEqualTo(parseCount);
+        assertThat(config.getProjectName()).isEqualTo("config_test");
+        assertThat(config.getCommentPrefix()).isEqualTo(" /* config_test */ ");
+    }
+
+    @Test
+    public void of_other_properties_instance() {
+        SqlCallerInfoCommentConfig config = SqlCallerInfoCommentConfig.of(properties("config_test"));
+
+        assertThat(SqlCallerInfoCommentConfig.of(properties("config_test"))).isNotSameAs(config);
+    }
+
+    @Test
+    public void parseIntRange() {
+        assertThat(SqlCallerInfoCommentConfig.parseIntRange("size", null, 7, 0, 10)).isEqualTo(7);
+        assertThat(SqlCallerInfoCommentConfig.parseIntRange("size", new PoolProperties.InterceptorProperty("size", " "), 7, 0, 10)).isEqualTo(7);
+        assertThat(SqlCallerInfoCommentConfig.parseIntRange("size", new PoolProperties.InterceptorProperty("size", " 10 "), 7, 0, 10)).isEqualTo(10);
+
+        assertThat(parseIntRangeError("12", 0, 10)).isEqualTo("size '12' must be between 0 and 10.");
+        assertThat(parseIntRangeError("-1", 0, Integer.MAX_VALUE)).isEqualTo("size '-1' must be 0 or a positive integer.");
+        assertThat(parseIntRangeError("0", 1, Integer.MAX_VALUE)).isEqualTo("size '0' must be 1 or greater.");
+        assertThat(parseIntRangeError("many", 1, Integer.MAX_VALUE)).isEqualTo("size 'many' must be 1 or greater.");
+    }
+
+    private static String parseIntRangeError(String value, int min, int max) {
+        try {
+            SqlCallerInfoCommentConfig.parseIntRange("size", new PoolProperties.InterceptorProperty("size", value), 7, min, max);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    @Test
+    public void borrow_after_first_connection_does_not_parse() throws SQLException {
+        DataSource dataSource = new DataSource();
+        dataSource.setUrl("jdbc:h2:mem:config_test");
+        dataSource.setInitialSize(0);
+        dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=config_test)");
+
+        try {
+            long parseCount = SqlCallerInfoCommentConfig.getParseCount();
+            dataSource.getConnection().close();
+            assertThat(SqlCallerInfoCommentConfig.getParseCount()).isEqualTo(parseCount + 1);
+
+            // 새 물리 커넥션(새 interceptor 인스턴스)을 여러 개 만들어도 다시 해석하지 않는다.
+            List<Connection> connections = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                connections.add(dataSource.getConnection());
+            }
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            dataSource.getConnection().close();
+
+            assertThat(SqlCallerInfoCommentConfig.getParseCount()).isEqualTo(parseCount + 1);
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    @Test
+    public void every_borrow_uses_pool_config() throws SQLException {
+        DataSource dataSource = new DataSource();
+        dataSource.setUrl("jdbc:h2:mem:config_borrow_test");
+        dataSource.setInitialSize(0);
+        dataSource.setJdbcInterceptors(BorrowRecordingInterceptor.class.getName()
+            + ";in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=config_test)");
+        BorrowRecordingInterceptor.borrowed.clear();
+
+        try {
+            List<Connection> connections = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                connections.add(dataSource.getConnection());
+            }
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            for (int i = 0; i < 10; i++) {
+                dataSource.getConnection().close();
+            }
+        } finally {
+            dataSource.close();
+        }
+
+        // 커넥션마다 interceptor 는 따로 만들어지지만 설정은 pool 이 처음 만든 하나를 그대로 쓴다.
+        List<SqlCallerInfoCommentInterceptor> interceptors = BorrowRecordingInterceptor.borrowed;
+        assertThat(interceptors).hasSize(13);
+        assertThat(interceptors.stream().distinct().count()).isEqualTo(3);
+        SqlCallerInfoCommentConfig config = interceptors.get(0).getConfig();
+        for (SqlCallerInfoCommentInterceptor interceptor : interceptors) {
+            assertThat(interceptor.getConfig()).isSameAs(config);
+        }
+    }
+
+    /**
+     * 빌려줄 때마다 바로 뒤의 {@link SqlCallerInfoCommentInterceptor} 를 기록한다.
+     */
+    public static class BorrowRecordingInterceptor extends JdbcInterceptor {
+
+        static final List<SqlCallerInfoCommentInterceptor> borrowed = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void reset(ConnectionPool parent, PooledConnection con) {
+            if (con != null) {
+                borrowed.add((SqlCallerInfoCommentInterceptor) getNext());
+            }
+        }
+    }
+}
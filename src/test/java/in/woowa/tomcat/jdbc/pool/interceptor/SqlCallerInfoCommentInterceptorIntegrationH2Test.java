@@ -7,9 +7,32 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 
 public class SqlCallerInfoCommentInterceptorIntegrationH2Test {
 
@@ -78,6 +101,936 @@ public class SqlCallerInfoCommentInterceptorIntegrationH2Test {
         }
     }
 
+    @Test
+    public void skipPreparedStatementProxy() throws SQLException {
+        DataSource skipDataSource = new DataSource();
+        skipDataSource.setUrl("jdbc:h2:mem:skip_proxy");
+        skipDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,skipPreparedStatementProxy=true)");
+
+        try (Connection con = skipDataSource.getConnection()) {
+            try (PreparedStatement stmt = con.prepareStatement("SELECT STATEMENT FROM INFORMATION_SCHEMA.SESSIONS WHERE ID = SESSION_ID()")) {
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getString(1)).startsWith(" /* woowahan */ SELECT STATEMENT");
+                }
+            }
+
+            try (Statement stmt = con.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT STATEMENT FROM INFORMATION_SCHEMA.SESSIONS WHERE ID = SESSION_ID()")) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getString(1)).startsWith(" /* woowahan */ SELECT STATEMENT");
+                }
+            }
+        } finally {
+            skipDataSource.close();
+        }
+    }
+
+    @Test
+    public void statementPaths() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("statement_paths", "projectName=woowahan");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                assertThat(stmt.execute("SELECT * FROM TESTUSER")).isTrue();
+                assertThat(stmt.execute("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.RETURN_GENERATED_KEYS)).isFalse();
+                assertThat(stmt.execute("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", new int[]{1})).isFalse();
+                assertThat(stmt.execute("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", new String[]{"ID"})).isFalse();
+                assertThat(stmt.executeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.RETURN_GENERATED_KEYS)).isEqualTo(1);
+                assertThat(stmt.executeLargeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7")).isEqualTo(1L);
+                assertThat(stmt.executeLargeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.NO_GENERATED_KEYS)).isEqualTo(1L);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .hasSize(7)
+                    .allMatch(sql -> sql.startsWith(" /* woowahan */ "));
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void addBatch_every() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("batch_every", "projectName=woowahan");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+                assertThat(stmt.executeBatch()).containsExactly(1, 1);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')",
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void addBatch_first() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("batch_first", "projectName=woowahan,batchComment=first");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+                assertThat(stmt.executeBatch()).containsExactly(1, 1);
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (3, 'c')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (4, 'd')");
+                assertThat(stmt.executeLargeBatch()).containsExactly(1L, 1L);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')",
+                        "INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')",
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (3, 'c')",
+                        "INSERT INTO TESTUSER (ID, NAME) VALUES (4, 'd')");
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void slow_host_lookup_does_not_block_first_connection() throws SQLException {
+        LocalHostResolver.install(new LocalHostResolver(LocalHostResolverTest.slowLookup(2000L), 5000L));
+        DataSource recordingDataSource = recordingDataSource("slow_host", "projectName=woowahan,commentTemplate={project} {host} {ip}");
+
+        try {
+            long start = System.nanoTime();
+            try (Connection con = recordingDataSource.getConnection()) {
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+                assertThat(elapsedMillis).isLessThan(1000L);
+
+                try (Statement stmt = con.createStatement()) {
+                    SqlRecordingInterceptor.clear();
+                    stmt.execute("SELECT * FROM TESTUSER");
+                    assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                        .hasSize(1)
+                        .allMatch(sql -> sql.startsWith(" /* woowahan ") && sql.endsWith(" */ SELECT * FROM TESTUSER"));
+                }
+            }
+        } finally {
+            LocalHostResolver.install(null);
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void configured_host() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("configured_host", "projectName=woowahan,commentTemplate={project} {host} {ip},hostName=api-1,hostAddress=10.0.0.1");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+                stmt.execute("SELECT * FROM TESTUSER");
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(" /* woowahan api-1 10.0.0.1 */ SELECT * FROM TESTUSER");
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void contextValue() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("context_value",
+            "projectName=woowahan,commentTemplate={project} trace={context:traceId},contextValueSource=in.woowa.tomcat.jdbc.pool.interceptor.ThreadLocalContextValueSource");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+
+            ThreadLocalContextValueSource.put("traceId", "req-1");
+            try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER")) {
+                stmt.executeQuery().close();
+            }
+
+            ThreadLocalContextValueSource.put("traceId", "req-2");
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("SELECT * FROM TESTUSER");
+            }
+
+            assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                .containsExactly(
+                    " /* woowahan trace=req-1 */ SELECT * FROM TESTUSER",
+                    " /* woowahan trace=req-2 */ SELECT * FROM TESTUSER");
+        } finally {
+            ThreadLocalContextValueSource.clear();
+            recordingDataSource.close();
+        }
+    }
+
+    /**
+     * contextValueSource 를 지정하지 않으면 {@link CallerContext} 를 읽으므로, 감싼 Executor 와 CompletableFuture 로 넘긴 작업의 SQL 에도
+     * 요청 스레드의 trace id 가 들어간다. 감싸지 않은 풀 스레드에서는 문맥이 없다.
+     */
+    @Test
+    public void callerContext_across_executor_handoffs() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("caller_context",
+            "projectName=woowahan,commentTemplate={project} trace={context:traceId}");
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        ExecutorService executor = CallerContextExecutors.wrap(pool);
+
+        try {
+            recordingDataSource.getConnection().close();
+            SqlRecordingInterceptor.clear();
+
+            CallerContext.EMPTY.with("traceId", "req-1").call(() -> executor.submit(() -> selectUser(recordingDataSource)).get());
+            CallerContext context = CallerContext.EMPTY.with("traceId", "req-2");
+            context.call(() -> CallerContextExecutors
+                .supplyAsync(() -> selectUser(recordingDataSource), pool)
+                .thenApplyAsync(context.wrapFunction(ignored -> selectUser(recordingDataSource)), pool)
+                .get(5, TimeUnit.SECONDS));
+            CallerContext.EMPTY.with("traceId", "req-3").call(() -> pool.submit(() -> selectUser(recordingDataSource)).get());
+
+            assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                .containsExactly(
+                    " /* woowahan trace=req-1 */ SELECT * FROM TESTUSER",
+                    " /* woowahan trace=req-2 */ SELECT * FROM TESTUSER",
+                    " /* woowahan trace=req-2 */ SELECT * FROM TESTUSER",
+                    " /* woowahan trace= */ SELECT * FROM TESTUSER");
+        } finally {
+            pool.shutdownNow();
+            recordingDataSource.close();
+        }
+    }
+
+    private static String selectUser(DataSource dataSource) {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getString("NAME") : null;
+        } catch (SQLException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * SQL Server 모드의 H2 로 plan cache 키(주석 포함 SQL 전문)가 maxCommentVariants + 1 종류를 넘지 않는지 확인한다.
+     */
+    @Test
+    public void maxCommentVariants() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("variant_guard;MODE=MSSQLServer",
+            "projectName=woowahan,commentTemplate={project} trace={context:traceId},maxCommentVariants=3,"
+                + "contextValueSource=in.woowa.tomcat.jdbc.pool.interceptor.ThreadLocalContextValueSource");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            for (int i = 0; i < 10; i++) {
+                ThreadLocalContextValueSource.put("traceId", "req-" + i);
+                try (PreparedStatement stmt = con.prepareStatement("SELECT NAME FROM TESTUSER WHERE ID = ?")) {
+                    stmt.setInt(1, 7);
+                    stmt.executeQuery().close();
+                }
+            }
+
+            assertThat(new java.util.HashSet<>(SqlRecordingInterceptor.getRecordedSqls()))
+                .containsExactlyInAnyOrder(
+                    " /* woowahan trace=req-0 */ SELECT NAME FROM TESTUSER WHERE ID = ?",
+                    " /* woowahan trace=req-1 */ SELECT NAME FROM TESTUSER WHERE ID = ?",
+                    " /* woowahan trace=req-2 */ SELECT NAME FROM TESTUSER WHERE ID = ?",
+                    " /* woowahan trace=- */ SELECT NAME FROM TESTUSER WHERE ID = ?");
+
+            assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                .filteredOn(sql -> sql.startsWith(" /* woowahan trace=- */ "))
+                .hasSize(7);
+        } finally {
+            ThreadLocalContextValueSource.clear();
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void caller() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("caller", "projectName=woowahan,commentTemplate={project} {caller}");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER")) {
+                stmt.executeQuery().close();
+            }
+            try (Statement stmt = con.createStatement()) {
+                stmt.execute("SELECT * FROM TESTUSER");
+            }
+
+            assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                .containsExactly(
+                    " /* woowahan SqlCallerInfoCommentInterceptorIntegrationH2Test.caller */ SELECT * FROM TESTUSER",
+                    " /* woowahan SqlCallerInfoCommentInterceptorIntegrationH2Test.caller */ SELECT * FROM TESTUSER");
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void commentPlacement() throws SQLException {
+        assertPlacement("suffix", "SELECT NAME FROM TESTUSER WHERE ID = ?;", "SELECT NAME FROM TESTUSER WHERE ID = ? /* woowahan */;");
+        assertPlacement("afterKeyword", "SELECT /* orm */ NAME FROM TESTUSER WHERE ID = ?", "SELECT /* woowahan */ /* orm */ NAME FROM TESTUSER WHERE ID = ?");
+        assertPlacement("prefix", "SELECT NAME FROM TESTUSER WHERE ID = ? -- by id", " /* woowahan */ SELECT NAME FROM TESTUSER WHERE ID = ? -- by id");
+        assertPlacement("suffix", "SELECT NAME FROM TESTUSER WHERE ID = ? -- by id", "SELECT NAME FROM TESTUSER WHERE ID = ? -- by id\n/* woowahan */");
+    }
+
+    private static void assertPlacement(String placement, String sql, String expected) throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("placement_" + placement, "projectName=woowahan,commentPlacement=" + placement);
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                stmt.setInt(1, 7);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getString(1)).isEqualTo("Baemin");
+                }
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(expected);
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void callablePlacement_insideEscape() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("callable_placement", "projectName=woowahan,callablePlacement=insideEscape");
+
+        try (Connection con = recordingDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (CallableStatement stmt = con.prepareCall("{call ABS(?)}")) {
+                stmt.setInt(1, -7);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                    assertThat(rs.getInt(1)).isEqualTo(7);
+                }
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("{call ABS(?) /* woowahan */}");
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    @Test
+    public void latencyStats() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("latency_stats", "projectName=woowahan,latencyKey={caller},skipPreparedStatementProxy=true");
+        recordingDataSource.setName("latency_stats_pool");
+        ObjectName objectName = CallerLatencyStats.objectName("latency_stats_pool");
+
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER WHERE ID = ?")) {
+                    for (int i = 0; i < 10; i++) {
+                        stmt.setInt(1, 7);
+                        stmt.executeQuery().close();
+                    }
+                }
+                try (Statement stmt = con.createStatement()) {
+                    stmt.execute("SELECT * FROM TESTUSER");
+                    stmt.addBatch("UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = 7");
+                    stmt.executeBatch();
+                    try {
+                        stmt.executeQuery("SELECT * FROM NO_SUCH_TABLE");
+                        failBecauseExceptionWasNotThrown(SQLException.class);
+                    } catch (SQLException ex) {
+                        // expected
+                    }
+                }
+            }
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.isRegistered(objectName)).isTrue();
+            CompositeData[] callers = (CompositeData[]) server.getAttribute(objectName, "Callers");
+            assertThat(callers).hasSize(1);
+            assertThat(callers[0].get("caller")).isEqualTo("SqlCallerInfoCommentInterceptorIntegrationH2Test.latencyStats");
+            assertThat(callers[0].get("count")).isEqualTo(13L);
+            assertThat(callers[0].get("errorCount")).isEqualTo(1L);
+            assertThat((Double) callers[0].get("p50Micros")).isPositive();
+        } finally {
+            recordingDataSource.close();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    /**
+     * 리터럴만 다른 SQL 은 같은 fingerprint 를 주석과 통계 키로 쓴다.
+     */
+    @Test
+    public void fingerprint() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("fingerprint", "projectName=woowahan,commentTemplate={fingerprint},latencyKey={fingerprint}");
+        recordingDataSource.setName("fingerprint_pool");
+        String hex = SqlFingerprint.toHex(SqlFingerprint.hash("SELECT * FROM TESTUSER WHERE ID IN (?)", false));
+
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                SqlRecordingInterceptor.clear();
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeQuery("SELECT * FROM TESTUSER WHERE ID IN (7, 8)").close();
+                    stmt.executeQuery("select * from TESTUSER where id in (9) -- other").close();
+                }
+                try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER WHERE ID IN (?, ?, ?)")) {
+                    stmt.setInt(1, 7);
+                    stmt.setInt(2, 8);
+                    stmt.setInt(3, 9);
+                    stmt.executeQuery().close();
+                }
+            }
+
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(
+                " /* " + hex + " */ SELECT * FROM TESTUSER WHERE ID IN (7, 8)",
+                " /* " + hex + " */ select * from TESTUSER where id in (9) -- other",
+                " /* " + hex + " */ SELECT * FROM TESTUSER WHERE ID IN (?, ?, ?)");
+            CompositeData[] callers = (CompositeData[]) ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(CallerLatencyStats.objectName("fingerprint_pool"), "Callers");
+            assertThat(callers).hasSize(1);
+            assertThat(callers[0].get("caller")).isEqualTo(hex);
+            assertThat(callers[0].get("count")).isEqualTo(3L);
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    /**
+     * 키 종류가 capacity 보다 훨씬 많은 치우친 부하에서 상위 호출자를 정확한 counter 와 비교한다.
+     */
+    @Test
+    public void heavyHitters() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("heavy_hitters",
+            "projectName=woowahan,topKey={context:site},topCapacity=64,topK=64,"
+                + "contextValueSource=in.woowa.tomcat.jdbc.pool.interceptor.ThreadLocalContextValueSource");
+        recordingDataSource.setName("heavy_hitters_pool");
+        ObjectName objectName = HeavyHitters.objectName("heavy_hitters_pool");
+
+        Map<String, Long> exact = new HashMap<>();
+        HeavyHittersTest.ZipfKeys keys = new HeavyHittersTest.ZipfKeys(300, 1.2, 7);
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                for (int i = 0; i < 3000; i++) {
+                    String key = keys.next();
+                    exact.merge(key, 1L, Long::sum);
+                    ThreadLocalContextValueSource.put("site", key);
+                    try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER WHERE ID = ?")) {
+                        stmt.setInt(1, 7);
+                        stmt.executeQuery().close();
+                    }
+                }
+            } finally {
+                ThreadLocalContextValueSource.clear();
+            }
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(objectName, "TotalCount")).isEqualTo(3000L);
+            CompositeData[] top = (CompositeData[]) server.getAttribute(objectName, "TopByCount");
+            assertThat(top).hasSize(64);
+            List<String> topKeys = new ArrayList<>();
+            for (CompositeData hitter : top) {
+                String key = (String) hitter.get("key");
+                long count = (Long) hitter.get("count");
+                assertThat(exact.get(key)).isBetween(count - (Long) hitter.get("countError"), count);
+                topKeys.add(key);
+            }
+            assertThat(topKeys.subList(0, 5)).containsExactlyElementsOf(HeavyHittersTest.exactTop(exact, 5));
+            // 전체의 1/topCapacity 를 넘는 키는 반드시 추적된다.
+            for (Map.Entry<String, Long> entry : exact.entrySet()) {
+                if (entry.getValue() > 3000 / 64 && !topKeys.contains(entry.getKey())) {
+                    fail("frequent key not in top : " + entry);
+                }
+            }
+            assertThat((CompositeData[]) server.getAttribute(objectName, "TopByTime")).hasSize(64);
+        } finally {
+            recordingDataSource.close();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    /**
+     * slowQueryThreshold=0 이면 모든 실행이 배경 스레드를 거쳐 listener 에 bind 값과 함께 전달된다.
+     */
+    @Test
+    public void slowQueryLog() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("slow_query_log",
+            "projectName=woowahan,slowQueryThreshold=0,slowQueryMaxBinds=3,"
+                + "slowQueryListener=in.woowa.tomcat.jdbc.pool.interceptor.RecordingSlowQueryListener");
+        RecordingSlowQueryListener.clear();
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                String sql = "SELECT * FROM TESTUSER WHERE ID = ? AND NAME = ? AND NAME <> COALESCE(?, 'x') AND ID <> ?";
+                try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                    stmt.setInt(1, 7);
+                    stmt.setString(2, "Baemin");
+                    stmt.setNull(3, Types.VARCHAR);
+                    stmt.setLong(4, 8L);
+                    stmt.executeQuery().close();
+
+                    SlowQuery slowQuery = RecordingSlowQueryListener.poll();
+                    assertThat(slowQuery.getSql()).isEqualTo(sql);
+                    assertThat(slowQuery.getTag()).isEqualTo("woowahan");
+                    assertThat(slowQuery.getBinds()).isEqualTo("[1=7, 2='Baemin', 3=NULL, ...(1 more)]");
+                    assertThat(slowQuery.isFailed()).isFalse();
+                    assertThat(slowQuery.getThreadName()).isEqualTo(Thread.currentThread().getName());
+
+                    stmt.clearParameters();
+                    stmt.setLong(4, 9L);
+                    stmt.setInt(1, 8);
+                    stmt.setString(2, "Baemin");
+                    stmt.setString(3, "Woowa");
+                    stmt.executeQuery().close();
+                    assertThat(RecordingSlowQueryListener.poll().getBinds()).isEqualTo("[1=8, 2='Baemin', 3='Woowa', ...(1 more)]");
+                }
+
+                try (Statement stmt = con.createStatement()) {
+                    try {
+                        stmt.executeQuery("SELECT * FROM NO_SUCH_TABLE");
+                        failBecauseExceptionWasNotThrown(SQLException.class);
+                    } catch (SQLException expected) {
+                        // failed 로 기록된다.
+                    }
+                }
+                SlowQuery failed = RecordingSlowQueryListener.poll();
+                assertThat(failed.getSql()).isEqualTo("SELECT * FROM NO_SUCH_TABLE");
+                assertThat(failed.getBinds()).isNull();
+                assertThat(failed.isFailed()).isTrue();
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    /**
+     * traceDir 를 지정하면 모든 실행이 trace 파일에 남고, pool 을 닫은 뒤 reader 로 모아 볼 수 있다.
+     */
+    @Test
+    public void statementTrace() throws Exception {
+        Path traceDir = Files.createTempDirectory("statement-trace-h2");
+        DataSource recordingDataSource = recordingDataSource("statement_trace", "projectName=woowahan,traceDir=" + traceDir);
+        recordingDataSource.setName("statement_trace_pool");
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                for (int i = 0; i < 5; i++) {
+                    try (PreparedStatement stmt = con.prepareStatement("SELECT * FROM TESTUSER WHERE ID = ?")) {
+                        stmt.setInt(1, i);
+                        stmt.executeQuery().close();
+                    }
+                }
+                try (PreparedStatement stmt = con.prepareStatement("INSERT INTO TESTUSER (ID, NAME) VALUES (?, ?)")) {
+                    for (int i = 0; i < 3; i++) {
+                        stmt.setInt(1, 100 + i);
+                        stmt.setString(2, "user" + i);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                try (Statement stmt = con.createStatement()) {
+                    assertThat(stmt.executeUpdate("UPDATE TESTUSER SET NAME = 'Woowa' WHERE ID >= 100")).isEqualTo(3);
+                }
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+
+        List<Path> traceFiles = StatementTraceReader.traceFiles(Collections.singletonList(traceDir));
+        try {
+            Map<String, StatementTraceReader.Summary> bySql = new HashMap<>();
+            for (StatementTraceReader.Summary summary : StatementTraceReader.summarize(traceFiles)) {
+                assertThat(summary.getTag()).isEqualTo("woowahan");
+                bySql.put(summary.getSql(), summary);
+            }
+            assertThat(bySql.get("select*from testuser where id=?").getCount()).isEqualTo(5);
+            assertThat(bySql.get("insert into testuser(id,name)values(?+)").getRows()).isEqualTo(3);
+            assertThat(bySql.get("update testuser set name=? where id>=?").getRows()).isEqualTo(3);
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(traceDir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(traceDir);
+        }
+    }
+
+    /**
+     * mode=session 이면 SQL 은 그대로 두고 세션 변수에 값을 넣으며, 값이 바뀌지 않았으면 다시 넣지 않는다.
+     */
+    @Test
+    public void sessionMode() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("session_mode",
+            "projectName=woowahan,mode=session,commentTemplate={project} trace={context:traceId},"
+                + "contextValueSource=in.woowa.tomcat.jdbc.pool.interceptor.ThreadLocalContextValueSource");
+        recordingDataSource.setName("session_mode_pool");
+        // 같은 물리 커넥션을 다시 빌리도록 한다.
+        recordingDataSource.setInitialSize(1);
+        recordingDataSource.setMaxActive(1);
+        recordingDataSource.setMaxIdle(1);
+        recordingDataSource.setMinIdle(1);
+
+        try {
+            ThreadLocalContextValueSource.put("traceId", "req-1");
+            try (Connection con = recordingDataSource.getConnection()) {
+                SqlRecordingInterceptor.clear();
+                assertThat(sessionTag(con)).isEqualTo("woowahan trace=req-1");
+                assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("SELECT @SQL_CALLER_INFO");
+
+                try (Statement stmt = con.createStatement()) {
+                    stmt.execute("SET @SQL_CALLER_INFO = 'changed by application'");
+                }
+            }
+
+            try (Connection con = recordingDataSource.getConnection()) {
+                assertThat(sessionTag(con)).isEqualTo("changed by application");
+            }
+
+            ThreadLocalContextValueSource.put("traceId", "req-2");
+            try (Connection con = recordingDataSource.getConnection()) {
+                assertThat(sessionTag(con)).isEqualTo("woowahan trace=req-2");
+            }
+
+            // off 이면 지난 대여의 값을 남기지 않고 비운다. static 이면 고정 값을 넣는다.
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = TaggingControl.objectName("session_mode_pool");
+            server.setAttribute(objectName, new Attribute("TaggingLevel", "off"));
+            try (Connection con = recordingDataSource.getConnection()) {
+                assertThat(sessionTag(con)).isEmpty();
+            }
+            server.setAttribute(objectName, new Attribute("TaggingLevel", "static"));
+            try (Connection con = recordingDataSource.getConnection()) {
+                assertThat(sessionTag(con)).isEqualTo("woowahan trace=-");
+            }
+            server.setAttribute(objectName, new Attribute("TaggingLevel", "full"));
+            try (Connection con = recordingDataSource.getConnection()) {
+                assertThat(sessionTag(con)).isEqualTo("woowahan trace=req-2");
+            }
+        } finally {
+            ThreadLocalContextValueSource.clear();
+            recordingDataSource.close();
+        }
+    }
+
+    /**
+     * {rw} 는 SQL 의 종류를, {readOnly}, {tx} 는 애플리케이션이 바꾼 커넥션 상태를 주석에 남긴다.
+     */
+    @Test
+    public void readWriteHints() throws SQLException {
+        DataSource recordingDataSource = recordingDataSource("read_write_hints",
+            "projectName=woowahan,commentTemplate={project} rw={rw} ro={readOnly} tx={tx}");
+        // 같은 물리 커넥션을 다시 빌리도록 한다.
+        recordingDataSource.setInitialSize(1);
+        recordingDataSource.setMaxActive(1);
+        recordingDataSource.setMaxIdle(1);
+        recordingDataSource.setMinIdle(1);
+
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                SqlRecordingInterceptor.clear();
+                try (PreparedStatement stmt = con.prepareStatement("SELECT NAME FROM TESTUSER WHERE ID = ?")) {
+                    stmt.setInt(1, 7);
+                    stmt.executeQuery().close();
+                }
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeUpdate("UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = 7");
+                }
+                con.setAutoCommit(false);
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeQuery("SELECT * FROM TESTUSER FOR UPDATE").close();
+                }
+                con.commit();
+                con.setAutoCommit(true);
+                con.setReadOnly(true);
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeQuery("/* report */ SELECT COUNT(*) FROM TESTUSER").close();
+                }
+                assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(
+                    " /* woowahan rw=read ro=false tx=auto */ SELECT NAME FROM TESTUSER WHERE ID = ?",
+                    " /* woowahan rw=write ro=false tx=auto */ UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = 7",
+                    " /* woowahan rw=write ro=false tx=open */ SELECT * FROM TESTUSER FOR UPDATE",
+                    " /* woowahan rw=read ro=true tx=auto */ /* report */ SELECT COUNT(*) FROM TESTUSER");
+            }
+
+            // 다시 빌리면 드라이버에게 다시 묻는다. H2 는 setReadOnly 를 무시하고 isReadOnly 로 false 를 돌려준다.
+            try (Connection con = recordingDataSource.getConnection()) {
+                SqlRecordingInterceptor.clear();
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeQuery("SELECT 1").close();
+                }
+                assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(" /* woowahan rw=read ro=false tx=auto */ SELECT 1");
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    /**
+     * ConnectionState interceptor 는 빌려줄 때 드라이버 커넥션을 직접 defaultReadOnly, defaultAutoCommit 으로 되돌린다.
+     * 앞 대여자가 바꾼 상태가 다음 대여자의 {readOnly}, {tx} 에 남지 않아야 한다.
+     */
+    @Test
+    public void readWriteHints_with_connectionState_defaults() throws SQLException {
+        DataSource recordingDataSource = new DataSource();
+        recordingDataSource.setUrl("jdbc:h2:mem:read_write_hints_defaults");
+        recordingDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,commentTemplate=ro={readOnly} tx={tx});"
+            + "org.apache.tomcat.jdbc.pool.interceptor.ConnectionState;"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+        recordingDataSource.setDefaultReadOnly(false);
+        recordingDataSource.setDefaultAutoCommit(true);
+        recordingDataSource.setInitialSize(1);
+        recordingDataSource.setMaxActive(1);
+        recordingDataSource.setMaxIdle(1);
+        recordingDataSource.setMinIdle(1);
+
+        try {
+            try (Connection con = recordingDataSource.getConnection()) {
+                con.setReadOnly(true);
+                con.setAutoCommit(false);
+                SqlRecordingInterceptor.clear();
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeQuery("SELECT 1").close();
+                }
+                // H2 는 setReadOnly 를 무시하므로 readOnly 는 드라이버가 알려 준 false 그대로이다.
+                assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(" /* ro=false tx=open */ SELECT 1");
+                con.rollback();
+            }
+
+            try (Connection con = recordingDataSource.getConnection()) {
+                SqlRecordingInterceptor.clear();
+                try (Statement stmt = con.createStatement()) {
+                    stmt.executeUpdate("CREATE TABLE IF NOT EXISTS T (A INT)");
+                }
+                assertThat(con.getAutoCommit()).isTrue();
+                assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(" /* ro=false tx=auto */ CREATE TABLE IF NOT EXISTS T (A INT)");
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    /**
+     * 64 스레드가 SQL 을 실행하는 동안 JMX 로 taggingLevel 을 계속 바꿔도 모든 SQL 은 원본, 고정 주석, 전체 주석 중 하나로 온전하게 남는다.
+     */
+    @Test
+    public void taggingLevel_switched_via_jmx_under_load() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("tagging_level;LOCK_TIMEOUT=10000",
+            "projectName=woowahan,commentTemplate={project} w={context:worker},batchComment=first");
+        recordingDataSource.setName("tagging_level_pool");
+        final int workers = 64;
+        recordingDataSource.setMaxActive(workers);
+        recordingDataSource.setMaxIdle(workers);
+        // initSQL 이 물리 연결마다 TESTUSER 를 지웠다 다시 만들므로 부하를 주기 전에 연결을 모두 만들어 둔다.
+        recordingDataSource.setInitialSize(workers);
+        ObjectName objectName = TaggingControl.objectName("tagging_level_pool");
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        try {
+            recordingDataSource.getConnection().close();
+            SqlRecordingInterceptor.clear();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertThat(server.getAttribute(objectName, "TaggingLevel")).isEqualTo("full");
+
+            CountDownLatch started = new CountDownLatch(workers);
+            for (int i = 0; i < workers; i++) {
+                CallerContext context = CallerContext.EMPTY.with("worker", String.valueOf(i));
+                executor.execute(context.wrap(() -> {
+                    started.countDown();
+                    try {
+                        while (running.get()) {
+                            runTaggingWorkload(recordingDataSource);
+                        }
+                    } catch (Throwable ex) {
+                        errors.add(ex);
+                    }
+                }));
+            }
+            started.await();
+            for (int round = 0; round < 3; round++) {
+                for (String level : new String[]{"static", "off", "full"}) {
+                    server.setAttribute(objectName, new Attribute("TaggingLevel", level));
+                    assertThat(server.getAttribute(objectName, "EffectiveTaggingLevel")).isEqualTo(level);
+                    Thread.sleep(30);
+                }
+            }
+            running.set(false);
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(errors).isEmpty();
+            List<String> sqls = SqlRecordingInterceptor.getRecordedSqls();
+            assertThat(sqls).allMatch(sql -> sql.matches("( /\\* woowahan w=(-|\\d+) \\*/ )?(SELECT \\* FROM TESTUSER|SELECT NAME FROM TESTUSER WHERE ID = \\?"
+                + "|UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = -1)"));
+            assertThat(sqls).anyMatch(sql -> sql.startsWith("SELECT"));
+            assertThat(sqls).anyMatch(sql -> sql.startsWith(" /* woowahan w=- */ "));
+            assertThat(sqls).anyMatch(sql -> sql.matches(" /\\* woowahan w=\\d+ \\*/ .*"));
+        } finally {
+            running.set(false);
+            executor.shutdownNow();
+            recordingDataSource.close();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    /**
+     * 커넥션을 빌린 채 오래 잡고 있는 호출자를 watchdog 이 잡아내고, 반납하면 호출자별 점유 시간과 Statement, row 수가 쌓인다.
+     */
+    @Test
+    public void connectionHold() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("connection_hold",
+            "projectName=woowahan,holdKey={context:worker},holdWarnThreshold=100");
+        recordingDataSource.setName("connection_hold_pool");
+        // initSQL 이 물리 연결마다 TESTUSER 를 지웠다 다시 만들므로 두 연결을 미리 만들어 둔다.
+        recordingDataSource.setInitialSize(2);
+        ObjectName objectName = ConnectionHoldStats.objectName("connection_hold_pool");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            CallerContext.EMPTY.with("worker", "fast").call(() -> selectUser(recordingDataSource));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.invoke(objectName, "reset", null, null);
+
+            Future<?> slowHolder = executor.submit(CallerContext.EMPTY.with("worker", "slow").wrap(() -> {
+                try (Connection con = recordingDataSource.getConnection()) {
+                    try (PreparedStatement stmt = con.prepareStatement("UPDATE TESTUSER SET NAME = ? WHERE ID = 7")) {
+                        stmt.setString(1, "Baemin");
+                        assertThat(stmt.executeUpdate()).isEqualTo(1);
+                    }
+                    try (Statement stmt = con.createStatement()) {
+                        stmt.executeQuery("SELECT * FROM TESTUSER").close();
+                    }
+                    holding.countDown();
+                    release.await();
+                    return null;
+                }
+            }));
+            assertThat(holding.await(10, TimeUnit.SECONDS)).isTrue();
+            CallerContext.EMPTY.with("worker", "fast").call(() -> selectUser(recordingDataSource));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while ((Long) server.getAttribute(objectName, "LongHoldCount") < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(server.getAttribute(objectName, "LongHoldCount")).isEqualTo(1L);
+            CompositeData[] held = (CompositeData[]) server.getAttribute(objectName, "HeldConnections");
+            assertThat(held).hasSize(1);
+            assertThat(held[0].get("caller")).isEqualTo("slow");
+            assertThat(held[0].get("statementCount")).isEqualTo(2L);
+            assertThat((Double) held[0].get("heldMillis")).isGreaterThanOrEqualTo(100.0);
+
+            release.countDown();
+            slowHolder.get(10, TimeUnit.SECONDS);
+
+            CompositeData[] callers = (CompositeData[]) server.getAttribute(objectName, "Callers");
+            assertThat(callers).extracting(caller -> caller.get("caller")).containsExactly("slow", "fast");
+            assertThat(callers[0].get("holdCount")).isEqualTo(1L);
+            assertThat(callers[0].get("statementCount")).isEqualTo(2L);
+            assertThat(callers[0].get("rowCount")).isEqualTo(1L);
+            assertThat((Double) callers[0].get("maxHoldMillis")).isGreaterThanOrEqualTo(100.0);
+            assertThat(callers[1].get("holdCount")).isEqualTo(1L);
+            assertThat(callers[1].get("statementCount")).isEqualTo(1L);
+            assertThat((CompositeData[]) server.getAttribute(objectName, "HeldConnections")).isEmpty();
+
+            server.invoke(objectName, "reset", null, null);
+            callers = (CompositeData[]) server.getAttribute(objectName, "Callers");
+            assertThat(callers).allMatch(caller -> caller.get("holdCount").equals(0L));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            recordingDataSource.close();
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+
+    /**
+     * taggingLevel 이 off 여도 커넥션 점유의 Statement 수와 row 수는 센다. 실행 중에 off 로 바뀐 Statement 도 마찬가지이다.
+     */
+    @Test
+    public void connectionHold_counts_statements_at_taggingLevel_off() throws Exception {
+        DataSource recordingDataSource = recordingDataSource("connection_hold_off", "projectName=woowahan,holdKey={context:worker},taggingLevel=off");
+        recordingDataSource.setName("connection_hold_off_pool");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            recordingDataSource.getConnection().close();
+            server.invoke(ConnectionHoldStats.objectName("connection_hold_off_pool"), "reset", null, null);
+            SqlRecordingInterceptor.clear();
+
+            CallerContext.EMPTY.with("worker", "off").call(() -> {
+                try (Connection con = recordingDataSource.getConnection()) {
+                    try (PreparedStatement stmt = con.prepareStatement("UPDATE TESTUSER SET NAME = ? WHERE ID = 7")) {
+                        stmt.setString(1, "Baemin");
+                        assertThat(stmt.executeUpdate()).isEqualTo(1);
+                    }
+                    try (Statement stmt = con.createStatement()) {
+                        stmt.executeQuery("SELECT * FROM TESTUSER").close();
+                    }
+                }
+                return null;
+            });
+            CallerContext.EMPTY.with("worker", "switched").call(() -> {
+                try (Connection con = recordingDataSource.getConnection()) {
+                    server.setAttribute(TaggingControl.objectName("connection_hold_off_pool"), new Attribute("TaggingLevel", "full"));
+                    try (Statement stmt = con.createStatement()) {
+                        server.setAttribute(TaggingControl.objectName("connection_hold_off_pool"), new Attribute("TaggingLevel", "off"));
+                        assertThat(stmt.executeUpdate("UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = 7")).isEqualTo(1);
+                    }
+                }
+                return null;
+            });
+
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("UPDATE TESTUSER SET NAME = ? WHERE ID = 7",
+                "SELECT * FROM TESTUSER", "UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = 7");
+            // reset 은 값만 0 으로 되돌리므로 처음 빌린 키("")도 남아 있다.
+            List<CompositeData> callers = Arrays.stream((CompositeData[]) server.getAttribute(ConnectionHoldStats.objectName("connection_hold_off_pool"), "Callers"))
+                .filter(caller -> !caller.get("holdCount").equals(0L))
+                .collect(Collectors.toList());
+            assertThat(callers).extracting(caller -> caller.get("caller")).containsOnly("off", "switched");
+            for (CompositeData caller : callers) {
+                assertThat(caller.get("holdCount")).isEqualTo(1L);
+                assertThat(caller.get("statementCount")).isEqualTo("off".equals(caller.get("caller")) ? 2L : 1L);
+                assertThat(caller.get("rowCount")).isEqualTo(1L);
+            }
+        } finally {
+            recordingDataSource.close();
+        }
+    }
+
+    private static void runTaggingWorkload(DataSource dataSource) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try (PreparedStatement stmt = con.prepareStatement("SELECT NAME FROM TESTUSER WHERE ID = ?")) {
+                stmt.setInt(1, 7);
+                stmt.executeQuery().close();
+            }
+            try (Statement stmt = con.createStatement()) {
+                stmt.executeQuery("SELECT * FROM TESTUSER").close();
+                stmt.addBatch("UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = -1");
+                stmt.addBatch("UPDATE TESTUSER SET NAME = 'Baemin' WHERE ID = -1");
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    private static String sessionTag(Connection con) throws SQLException {
+        try (PreparedStatement stmt = con.prepareStatement("SELECT @SQL_CALLER_INFO");
+             ResultSet rs = stmt.executeQuery()) {
+            assertThat(rs.next()).isTrue();
+            return rs.getString(1);
+        }
+    }
+
+    private static DataSource recordingDataSource(String database, String interceptorProperties) {
+        DataSource recordingDataSource = new DataSource();
+        recordingDataSource.setUrl("jdbc:h2:mem:" + database);
+        recordingDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(" + interceptorProperties + ");"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+        recordingDataSource.setInitSQL("DROP TABLE TESTUSER IF EXISTS; CREATE TABLE TESTUSER (ID INT, NAME VARCHAR(50)); INSERT INTO TESTUSER (ID, NAME) VALUES(7, 'Baemin');");
+        return recordingDataSource;
+    }
+
     @AfterClass
     public static void tearDownClass() {
         dataSource.close();
@@ -7,10 +7,12 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assume.assumeFalse;
@@ -35,7 +37,8 @@ public class SqlCallerInfoCommentInterceptorIntegrationMySqlTest {
         dataSource.setUrl("jdbc:mysql://localhost:3306/test?allowMultiQueries=true&useUnicode=true&characterEncoding=utf8&logger=com.mysql.cj.core.log.Slf4JLogger&profileSQL=true");
         dataSource.setUsername("root");
         dataSource.setPassword("root");
-        dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan)");
+        dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan);"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
         dataSource.setInitSQL("DROP TABLE IF EXISTS TESTUSER; CREATE TABLE TESTUSER (ID INT, NAME VARCHAR(50)); INSERT INTO TESTUSER (ID, NAME) VALUES(7, 'Baemin');");
         dataSource.setLogValidationErrors(true);
     }
@@ -59,6 +62,165 @@ public class SqlCallerInfoCommentInterceptorIntegrationMySqlTest {
         }
     }
 
+    @Test
+    public void statementPaths() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                assertThat(stmt.execute("SELECT * FROM TESTUSER")).isTrue();
+                assertThat(stmt.execute("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.RETURN_GENERATED_KEYS)).isFalse();
+                assertThat(stmt.execute("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", new String[]{"ID"})).isFalse();
+                assertThat(stmt.executeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.RETURN_GENERATED_KEYS)).isEqualTo(1);
+                assertThat(stmt.executeLargeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7")).isEqualTo(1L);
+                assertThat(stmt.executeLargeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.NO_GENERATED_KEYS)).isEqualTo(1L);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .hasSize(6)
+                    .allMatch(sql -> sql.startsWith(" /* woowahan */ "));
+            }
+        }
+    }
+
+    @Test
+    public void addBatch_every() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+                assertThat(stmt.executeBatch()).containsExactly(1, 1);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')",
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+            }
+        }
+    }
+
+    @Test
+    public void addBatch_first() throws SQLException {
+        DataSource firstDataSource = new DataSource();
+        firstDataSource.setUrl(dataSource.getUrl());
+        firstDataSource.setUsername(dataSource.getUsername());
+        firstDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        firstDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,batchComment=first);"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+
+        try (Connection con = firstDataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+                assertThat(stmt.executeBatch()).containsExactly(1, 1);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')",
+                        "INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+            }
+        } finally {
+            firstDataSource.close();
+        }
+    }
+
+    @Test
+    public void sessionMode() throws SQLException {
+        DataSource sessionDataSource = new DataSource();
+        sessionDataSource.setUrl(dataSource.getUrl());
+        sessionDataSource.setUsername(dataSource.getUsername());
+        sessionDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        sessionDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,mode=session);"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+
+        try (Connection con = sessionDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT @sql_caller_info")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getString(1)).isEqualTo("woowahan");
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("SELECT @sql_caller_info");
+        } finally {
+            sessionDataSource.close();
+        }
+    }
+
+    @Test
+    public void fingerprint() throws SQLException {
+        String first = "SELECT NAME FROM TESTUSER WHERE ID IN (7, 8) AND NAME <> 'it\\'s' # first";
+        String second = "select name from TESTUSER where id in (9) and name <> \"other\"";
+        String comment = " /* " + SqlFingerprint.toHex(SqlFingerprint.hash(first, true)) + " */ ";
+
+        DataSource fingerprintDataSource = placementDataSource("commentTemplate={fingerprint:mysql}");
+        try (Connection con = fingerprintDataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            SqlRecordingInterceptor.clear();
+            stmt.executeQuery(first).close();
+            stmt.executeQuery(second).close();
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(comment + first, comment + second);
+        } finally {
+            fingerprintDataSource.close();
+        }
+    }
+
+    @Test
+    public void commentPlacement() throws SQLException {
+        assertPlacement("commentPlacement=suffix", "SELECT NAME FROM TESTUSER WHERE ID = ? FOR UPDATE", "SELECT NAME FROM TESTUSER WHERE ID = ? FOR UPDATE /* woowahan */");
+        assertPlacement("commentPlacement=afterKeyword", "SELECT /*+ MAX_EXECUTION_TIME(1000) */ NAME FROM TESTUSER WHERE ID = ?", "SELECT /*+ MAX_EXECUTION_TIME(1000) */ /* woowahan */ NAME FROM TESTUSER WHERE ID = ?");
+    }
+
+    @Test
+    public void callablePlacement_insideEscape() throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute("DROP PROCEDURE IF EXISTS GET_USER_NAME");
+            stmt.execute("CREATE PROCEDURE GET_USER_NAME(IN P_ID INT) SELECT NAME FROM TESTUSER WHERE ID = P_ID");
+        }
+
+        DataSource callableDataSource = placementDataSource("callablePlacement=insideEscape");
+        try (Connection con = callableDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (CallableStatement stmt = con.prepareCall("{call GET_USER_NAME(?)}")) {
+                stmt.setInt(1, 7);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                }
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("{call GET_USER_NAME(?) /* woowahan */}");
+        } finally {
+            callableDataSource.close();
+        }
+    }
+
+    private void assertPlacement(String placementProperty, String sql, String expected) throws SQLException {
+        DataSource placementDataSource = placementDataSource(placementProperty);
+        try (Connection con = placementDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                stmt.setInt(1, 7);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                }
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(expected);
+        } finally {
+            placementDataSource.close();
+        }
+    }
+
+    private DataSource placementDataSource(String placementProperty) {
+        DataSource placementDataSource = new DataSource();
+        placementDataSource.setUrl(dataSource.getUrl());
+        placementDataSource.setUsername(dataSource.getUsername());
+        placementDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        placementDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan," + placementProperty + ");"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+        return placementDataSource;
+    }
 
     @AfterClass
     public static void tearDownClass() {
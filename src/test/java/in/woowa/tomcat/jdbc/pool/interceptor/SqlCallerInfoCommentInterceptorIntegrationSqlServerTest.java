@@ -8,10 +8,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 
@@ -44,7 +46,8 @@ public class SqlCallerInfoCommentInterceptorIntegrationSqlServerTest {
         dataSource.setUrl("jdbc:sqlserver://localhost:1433;loginTimeout=3;socketTimeout=10000");
         dataSource.setUsername("sa");
         dataSource.setPassword("password12!");
-        dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan)");
+        dataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan);"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
         dataSource.setInitSQL("DROP TABLE IF EXISTS TESTUSER; CREATE TABLE TESTUSER (ID INT, NAME VARCHAR(50)); INSERT INTO TESTUSER (ID, NAME) VALUES(7, 'Baemin');");
         dataSource.setLogValidationErrors(true);
     }
@@ -68,6 +71,200 @@ public class SqlCallerInfoCommentInterceptorIntegrationSqlServerTest {
         }
     }
 
+    @Test
+    public void statementPaths() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                assertThat(stmt.execute("SELECT * FROM TESTUSER")).isTrue();
+                assertThat(stmt.execute("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.RETURN_GENERATED_KEYS)).isFalse();
+                assertThat(stmt.executeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.RETURN_GENERATED_KEYS)).isEqualTo(1);
+                assertThat(stmt.executeLargeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7")).isEqualTo(1L);
+                assertThat(stmt.executeLargeUpdate("UPDATE TESTUSER SET NAME='Baemin' WHERE ID=7", Statement.NO_GENERATED_KEYS)).isEqualTo(1L);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .hasSize(5)
+                    .allMatch(sql -> sql.startsWith(" /* woowahan */ "));
+            }
+        }
+    }
+
+    @Test
+    public void addBatch_every() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+                assertThat(stmt.executeBatch()).containsExactly(1, 1);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')",
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+            }
+        }
+    }
+
+    @Test
+    public void addBatch_first() throws SQLException {
+        DataSource firstDataSource = new DataSource();
+        firstDataSource.setUrl(dataSource.getUrl());
+        firstDataSource.setUsername(dataSource.getUsername());
+        firstDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        firstDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,batchComment=first);"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+
+        try (Connection con = firstDataSource.getConnection()) {
+            try (Statement stmt = con.createStatement()) {
+                SqlRecordingInterceptor.clear();
+
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')");
+                stmt.addBatch("INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+                assertThat(stmt.executeBatch()).containsExactly(1, 1);
+
+                assertThat(SqlRecordingInterceptor.getRecordedSqls())
+                    .containsExactly(
+                        " /* woowahan */ INSERT INTO TESTUSER (ID, NAME) VALUES (1, 'a')",
+                        "INSERT INTO TESTUSER (ID, NAME) VALUES (2, 'b')");
+            }
+        } finally {
+            firstDataSource.close();
+        }
+    }
+
+    /**
+     * 주석의 trace id 가 매번 바뀌어도 plan cache 에 쌓이는 plan 이 maxCommentVariants + 1 개를 넘지 않는다.
+     */
+    @Test
+    public void maxCommentVariants_planCache() throws SQLException {
+        String alias = "VARIANT_GUARD_" + System.nanoTime();
+        DataSource guardedDataSource = new DataSource();
+        guardedDataSource.setUrl(dataSource.getUrl());
+        guardedDataSource.setUsername(dataSource.getUsername());
+        guardedDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        guardedDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,"
+            + "commentTemplate={project} trace={context:traceId},maxCommentVariants=3,"
+            + "contextValueSource=in.woowa.tomcat.jdbc.pool.interceptor.ThreadLocalContextValueSource)");
+
+        try (Connection con = guardedDataSource.getConnection()) {
+            for (int i = 0; i < 10; i++) {
+                ThreadLocalContextValueSource.put("traceId", "req-" + i);
+                try (PreparedStatement stmt = con.prepareStatement("SELECT NAME AS " + alias + " FROM TESTUSER WHERE ID = ?")) {
+                    stmt.setInt(1, 7);
+                    stmt.executeQuery().close();
+                }
+            }
+            ThreadLocalContextValueSource.clear();
+
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sys.dm_exec_cached_plans p CROSS APPLY sys.dm_exec_sql_text(p.plan_handle) t "
+                     + "WHERE t.text LIKE '%AS " + alias + " FROM%' AND t.text NOT LIKE '%dm_exec_cached_plans%'")) {
+                assertThat(rs.next()).isTrue();
+                log.debug("cached plans : {}", rs.getInt(1));
+                assertThat(rs.getInt(1)).isBetween(1, 4);
+            }
+        } finally {
+            ThreadLocalContextValueSource.clear();
+            guardedDataSource.close();
+        }
+    }
+
+    @Test
+    public void sessionMode() throws SQLException {
+        DataSource sessionDataSource = new DataSource();
+        sessionDataSource.setUrl(dataSource.getUrl());
+        sessionDataSource.setUsername(dataSource.getUsername());
+        sessionDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        sessionDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan,mode=session);"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+
+        try (Connection con = sessionDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT REPLACE(CAST(CONTEXT_INFO() AS VARCHAR(128)), CHAR(0), '')")) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getString(1)).isEqualTo("woowahan");
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("SELECT REPLACE(CAST(CONTEXT_INFO() AS VARCHAR(128)), CHAR(0), '')");
+        } finally {
+            sessionDataSource.close();
+        }
+    }
+
+    @Test
+    public void fingerprint() throws SQLException {
+        String first = "SELECT TOP 1 [NAME] FROM TESTUSER WHERE ID IN (7, 8) AND NAME <> N'Woowa'";
+        String second = "select top 5 [NAME] from testuser where id in (9) and name <> 'other'";
+        String comment = " /* " + SqlFingerprint.toHex(SqlFingerprint.hash(first, false)) + " */ ";
+
+        DataSource fingerprintDataSource = placementDataSource("commentTemplate={fingerprint}");
+        try (Connection con = fingerprintDataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            SqlRecordingInterceptor.clear();
+            stmt.executeQuery(first).close();
+            stmt.executeQuery(second).close();
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(comment + first, comment + second);
+        } finally {
+            fingerprintDataSource.close();
+        }
+    }
+
+    @Test
+    public void commentPlacement() throws SQLException {
+        assertPlacement("commentPlacement=suffix", "SELECT NAME FROM TESTUSER WHERE ID = ? OPTION (RECOMPILE);", "SELECT NAME FROM TESTUSER WHERE ID = ? OPTION (RECOMPILE) /* woowahan */;");
+        assertPlacement("commentPlacement=afterKeyword", "SELECT TOP 1 NAME FROM TESTUSER WITH (NOLOCK) WHERE ID = ?", "SELECT /* woowahan */ TOP 1 NAME FROM TESTUSER WITH (NOLOCK) WHERE ID = ?");
+    }
+
+    @Test
+    public void callablePlacement_insideEscape() throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             Statement stmt = con.createStatement()) {
+            stmt.execute("CREATE OR ALTER PROCEDURE GET_USER_NAME @P_ID INT AS SELECT NAME FROM TESTUSER WHERE ID = @P_ID");
+        }
+
+        DataSource callableDataSource = placementDataSource("callablePlacement=insideEscape");
+        try (Connection con = callableDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (CallableStatement stmt = con.prepareCall("{call GET_USER_NAME(?)}")) {
+                stmt.setInt(1, 7);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                }
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly("{call GET_USER_NAME(?) /* woowahan */}");
+        } finally {
+            callableDataSource.close();
+        }
+    }
+
+    private void assertPlacement(String placementProperty, String sql, String expected) throws SQLException {
+        DataSource placementDataSource = placementDataSource(placementProperty);
+        try (Connection con = placementDataSource.getConnection()) {
+            SqlRecordingInterceptor.clear();
+            try (PreparedStatement stmt = con.prepareStatement(sql)) {
+                stmt.setInt(1, 7);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertThat(rs.next()).isTrue();
+                }
+            }
+            assertThat(SqlRecordingInterceptor.getRecordedSqls()).containsExactly(expected);
+        } finally {
+            placementDataSource.close();
+        }
+    }
+
+    private DataSource placementDataSource(String placementProperty) {
+        DataSource placementDataSource = new DataSource();
+        placementDataSource.setUrl(dataSource.getUrl());
+        placementDataSource.setUsername(dataSource.getUsername());
+        placementDataSource.setPassword(dataSource.getPoolProperties().getPassword());
+        placementDataSource.setJdbcInterceptors("in.woowa.tomcat.jdbc.pool.interceptor.SqlCallerInfoCommentInterceptor(projectName=woowahan," + placementProperty + ");"
+            + "in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor");
+        return placementDataSource;
+    }
 
     @AfterClass
     public static void tearDownClass() {
@@ -4,7 +4,11 @@ import org.apache.tomcat.jdbc.pool.PoolProperties;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
@@ -169,6 +173,93 @@ public class SqlCallerInfoCommentInterceptorTest {
         assertThat(sqlCallerInfoCommentInterceptor.commentSql("SELECT 1 FROM DUAL")).isEqualTo(" /* my_project 007 */ SELECT 1 FROM DUAL");
     }
 
+    @Test
+    public void commentSql_commentTemplate() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "app={project} env=beta"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.commentSql("SELECT 1 FROM DUAL")).isEqualTo(" /* app=my_project env=beta */ SELECT 1 FROM DUAL");
+        assertThat(sqlCallerInfoCommentInterceptor.getConfig().getCommentPrefix()).isEqualTo(" /* app=my_project env=beta */ ");
+    }
+
+    @Test
+    public void commentSql_dynamic_commentTemplate_disables_sqlCache() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{project} seq={test.counter}"));
+        properties.put(SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, "100"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.getSqlCache()).isNull();
+        assertThat(sqlCallerInfoCommentInterceptor.commentSql("SELECT 1")).matches(" /\\* my_project seq=\\d+ \\*/ SELECT 1");
+    }
+
+    @Test
+    public void commentSql_already_commented() {
+        String projectName = "my_project";
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, projectName));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        String commented = sqlCallerInfoCommentInterceptor.commentSql("SELECT 1 FROM DUAL");
+        assertThat(sqlCallerInfoCommentInterceptor.commentSql(commented)).isSameAs(commented);
+    }
+
+    @Test
+    public void setProperty_sqlCacheSize_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, "-1"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("sqlCacheSize '-1' must be 0 or a positive integer.");
+        }
+    }
+
+    @Test
+    public void changeSql_prepareStatement_sqlCache() throws NoSuchMethodException {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_cached_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SQL_CACHE_SIZE_KEY, "100"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        Object[] first = sqlCallerInfoCommentInterceptor.changeSql(Connection.class.getMethod("prepareStatement", String.class), new Object[]{"select 1"});
+        Object[] second = sqlCallerInfoCommentInterceptor.changeSql(Connection.class.getMethod("prepareStatement", String.class), new Object[]{"select 1"});
+
+        assertThat(first).containsExactly(" /* my_cached_project */ select 1");
+        assertThat(second[0]).isSameAs(first[0]);
+        assertThat(sqlCallerInfoCommentInterceptor.getSqlCache().getHitCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void createStatement_skipPreparedStatementProxy() throws NoSuchMethodException {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, "true"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        Object preparedStatement = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> null);
+        Object statement = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class}, (proxy, method, args) -> null);
+
+        assertThat(sqlCallerInfoCommentInterceptor.createStatement(null, Connection.class.getMethod("prepareStatement", String.class), new Object[]{"select 1"}, preparedStatement, 0L))
+            .isSameAs(preparedStatement);
+        assertThat(sqlCallerInfoCommentInterceptor.createStatement(null, Connection.class.getMethod("createStatement"), null, statement, 0L))
+            .isNotSameAs(statement)
+            .isInstanceOf(Statement.class);
+    }
+
+    @Test
+    public void setProperty_skipPreparedStatementProxy_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, "yes"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("skipPreparedStatementProxy 'yes' must be true or false.");
+        }
+    }
+
     @Test
     public void changeExecuteSql_null_args() throws NoSuchMethodException {
         assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("executeQuery", String.class), null)).isNull();
@@ -176,9 +267,282 @@ public class SqlCallerInfoCommentInterceptorTest {
 
 
     @Test
-    public void changeExecuteSql_just_execute() throws NoSuchMethodException {
-        Object[] args = {"sql", 2};
-        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("execute", String.class, int.class), args)).isSameAs(args);
+    public void changeExecuteSql_just_setFetchSize() throws NoSuchMethodException {
+        Object[] args = {2};
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("setFetchSize", int.class), args)).isSameAs(args);
+    }
+
+    @Test
+    public void changeExecuteSql_execute_commentSql() throws NoSuchMethodException {
+        String projectName = "my_project";
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, projectName));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("execute", String.class), new Object[]{"select 1"}))
+            .containsExactly(" /* my_project */ select 1");
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("execute", String.class, int.class), new Object[]{"select 1", 1}))
+            .containsExactly(" /* my_project */ select 1", 1);
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("execute", String.class, String[].class), new Object[]{"select 1", null}))
+            .containsExactly(" /* my_project */ select 1", null);
+    }
+
+    @Test
+    public void changeExecuteSql_executeLargeUpdate_commentSql() throws NoSuchMethodException {
+        String projectName = "my_project";
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, projectName));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("executeLargeUpdate", String.class, int[].class), new Object[]{"UPDATE ...", null}))
+            .containsExactly(" /* my_project */ UPDATE ...", null);
+    }
+
+    @Test
+    public void changeExecuteSql_addBatch_commentSql() throws NoSuchMethodException {
+        String projectName = "my_project";
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, projectName));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("addBatch", String.class), new Object[]{"INSERT ..."}))
+            .containsExactly(" /* my_project */ INSERT ...");
+    }
+
+    @Test
+    public void setProperty_batchComment_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.BATCH_COMMENT_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.BATCH_COMMENT_KEY, "last"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("batchComment 'last' must be one of every, first.");
+        }
+    }
+
+    @Test
+    public void setProperty_maxCommentVariants_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.MAX_COMMENT_VARIANTS_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.MAX_COMMENT_VARIANTS_KEY, "2000"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("maxCommentVariants '2000' must be between 0 and 1024.");
+        }
+    }
+
+    @Test
+    public void setProperty_callerMaxDepth_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{project} {caller}"));
+        properties.put(SqlCallerInfoCommentInterceptor.CALLER_MAX_DEPTH_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CALLER_MAX_DEPTH_KEY, "0"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("callerMaxDepth '0' must be 1 or greater.");
+        }
+    }
+
+    @Test
+    public void setProperty_callerSamplingRate_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{project} {caller}"));
+        properties.put(SqlCallerInfoCommentInterceptor.CALLER_SAMPLING_RATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CALLER_SAMPLING_RATE_KEY, "150"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("callerSamplingRate '150' must be a percentage between 0 and 100.");
+        }
+    }
+
+    @Test
+    public void setProperty_mode_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.MODE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.MODE_KEY, "connection"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("mode 'connection' must be one of comment, session.");
+        }
+    }
+
+    @Test
+    public void setProperty_sessionDialect_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.MODE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.MODE_KEY, "session"));
+        properties.put(SqlCallerInfoCommentInterceptor.SESSION_DIALECT_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SESSION_DIALECT_KEY, "oracle"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("sessionDialect 'oracle' must be one of auto, h2, mysql, sqlserver, clientInfo.");
+        }
+    }
+
+    @Test
+    public void sessionTagDialect_detect() {
+        assertThat(SessionTagDialect.detect("H2")).isEqualTo(SessionTagDialect.H2);
+        assertThat(SessionTagDialect.detect("MySQL")).isEqualTo(SessionTagDialect.MYSQL);
+        assertThat(SessionTagDialect.detect("MariaDB")).isEqualTo(SessionTagDialect.MYSQL);
+        assertThat(SessionTagDialect.detect("Microsoft SQL Server")).isEqualTo(SessionTagDialect.SQLSERVER);
+        assertThat(SessionTagDialect.detect("PostgreSQL")).isEqualTo(SessionTagDialect.CLIENT_INFO);
+    }
+
+    @Test
+    public void applySessionTag_skips_unchanged_tag() throws SQLException {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.MODE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.MODE_KEY, "session"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        try (Connection first = DriverManager.getConnection("jdbc:h2:mem:apply_session_tag");
+             Connection second = DriverManager.getConnection("jdbc:h2:mem:apply_session_tag")) {
+            assertThat(sqlCallerInfoCommentInterceptor.applySessionTag(first)).isTrue();
+            assertThat(sqlCallerInfoCommentInterceptor.applySessionTag(first)).isFalse();
+            // reconnect 등으로 드라이버 커넥션이 바뀌면 다시 넣는다.
+            assertThat(sqlCallerInfoCommentInterceptor.applySessionTag(second)).isTrue();
+        }
+    }
+
+    @Test
+    public void setProperty_callablePlacement_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.CALLABLE_PLACEMENT_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CALLABLE_PLACEMENT_KEY, "before"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("callablePlacement 'before' must be one of prefix, suffix, afterKeyword, insideEscape.");
+        }
+    }
+
+    @Test
+    public void changeCallSql_insideEscape() throws NoSuchMethodException {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.CALLABLE_PLACEMENT_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.CALLABLE_PLACEMENT_KEY, "insideEscape"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.changeCallSql(Connection.class.getMethod("prepareCall", String.class), new Object[]{"{call SOME_SP(?)}"}))
+            .containsExactly("{call SOME_SP(?) /* my_project */}");
+    }
+
+    @Test
+    public void commentSql_afterKeyword() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_PLACEMENT_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_PLACEMENT_KEY, "afterKeyword"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        assertThat(sqlCallerInfoCommentInterceptor.getConfig().getCommentPrefix()).isNull();
+        assertThat(sqlCallerInfoCommentInterceptor.commentSql("SELECT /*+ NO_INDEX(T) */ * FROM T")).isEqualTo("SELECT /*+ NO_INDEX(T) */ /* my_project */ * FROM T");
+    }
+
+    @Test
+    public void setProperty_latencyMaxKeys_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.LATENCY_KEY_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.LATENCY_KEY_TEMPLATE_KEY, "{caller}"));
+        properties.put(SqlCallerInfoCommentInterceptor.LATENCY_MAX_KEYS_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.LATENCY_MAX_KEYS_KEY, "0"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("latencyMaxKeys '0' must be between 1 and 4096.");
+        }
+    }
+
+    @Test
+    public void setProperty_topK_greater_than_topCapacity() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.TOP_KEY_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TOP_KEY_TEMPLATE_KEY, "{caller}"));
+        properties.put(SqlCallerInfoCommentInterceptor.TOP_CAPACITY_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TOP_CAPACITY_KEY, "8"));
+        properties.put(SqlCallerInfoCommentInterceptor.TOP_K_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TOP_K_KEY, "9"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("topK '9' must be between 1 and 8.");
+        }
+    }
+
+    @Test
+    public void setProperty_slowQueryThreshold() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SKIP_PREPARED_STATEMENT_PROXY_KEY, "true"));
+        properties.put(SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY, "500"));
+        properties.put(SqlCallerInfoCommentInterceptor.SLOW_QUERY_BUFFER_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SLOW_QUERY_BUFFER_SIZE_KEY, "100"));
+
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+
+        SlowQueryLog slowQueryLog = sqlCallerInfoCommentInterceptor.getConfig().getSlowQueryLog();
+        assertThat(slowQueryLog.getThresholdMillis()).isEqualTo(500);
+        assertThat(slowQueryLog.getBufferSize()).isEqualTo(128);
+        assertThat(slowQueryLog.getMaxBinds()).isEqualTo(SlowQueryLog.DEFAULT_MAX_BINDS);
+        assertThat(sqlCallerInfoCommentInterceptor.getConfig().isSkipPreparedStatementProxy()).isFalse();
+    }
+
+    @Test
+    public void setProperty_slowQueryMaxBinds_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY, "500"));
+        properties.put(SqlCallerInfoCommentInterceptor.SLOW_QUERY_MAX_BINDS_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SLOW_QUERY_MAX_BINDS_KEY, "-1"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("slowQueryMaxBinds '-1' must be between 0 and 1024.");
+        }
+    }
+
+    @Test
+    public void setProperty_slowQueryListener_not_a_listener() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SLOW_QUERY_THRESHOLD_KEY, "500"));
+        properties.put(SqlCallerInfoCommentInterceptor.SLOW_QUERY_LISTENER_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.SLOW_QUERY_LISTENER_KEY, "java.lang.Object"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("slowQueryListener 'java.lang.Object' must implement in.woowa.tomcat.jdbc.pool.interceptor.SlowQueryListener.");
+        }
+    }
+
+    @Test
+    public void setProperty_traceFileSize_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.TRACE_DIR_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TRACE_DIR_KEY, "/tmp/trace"));
+        properties.put(SqlCallerInfoCommentInterceptor.TRACE_FILE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TRACE_FILE_SIZE_KEY, "2048"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("traceFileSize '2048' must be between 1 and 1024.");
+        }
+    }
+
+    @Test
+    public void setProperty_fingerprintCacheSize_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{fingerprint}"));
+        properties.put(SqlCallerInfoCommentInterceptor.FINGERPRINT_CACHE_SIZE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.FINGERPRINT_CACHE_SIZE_KEY, "-1"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("fingerprintCacheSize '-1' must be 0 or a positive integer.");
+        }
     }
 
     @Test
@@ -201,4 +565,39 @@ public class SqlCallerInfoCommentInterceptorTest {
             .containsExactly(" /* my_project_sp */ UPDATE ...");
     }
 
+    @Test
+    public void setProperty_taggingLevel_illegal() {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.TAGGING_LEVEL_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TAGGING_LEVEL_KEY, "partial"));
+
+        try {
+            sqlCallerInfoCommentInterceptor.setProperties(properties);
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("taggingLevel 'partial' must be one of off, static, full.");
+        }
+    }
+
+    @Test
+    public void changeExecuteSql_taggingLevel() throws NoSuchMethodException {
+        properties.put(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.PROJECT_NAME_KEY, "my_project"));
+        properties.put(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.COMMENT_TEMPLATE_KEY, "{project} seq={test.counter}"));
+        properties.put(SqlCallerInfoCommentInterceptor.TAGGING_LEVEL_KEY, new PoolProperties.InterceptorProperty(SqlCallerInfoCommentInterceptor.TAGGING_LEVEL_KEY, "static"));
+        sqlCallerInfoCommentInterceptor.setProperties(properties);
+        TaggingControl taggingControl = sqlCallerInfoCommentInterceptor.getConfig().getTaggingControl();
+
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("executeQuery", String.class), new Object[]{"select 1"}))
+            .containsExactly(" /* my_project seq=- */ select 1");
+        assertThat(sqlCallerInfoCommentInterceptor.changeSql(Connection.class.getMethod("prepareStatement", String.class), new Object[]{" /* my_project seq=- */ select 1"}))
+            .containsExactly(" /* my_project seq=- */ select 1");
+
+        taggingControl.setTaggingLevel("OFF");
+        assertThat(sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("executeQuery", String.class), new Object[]{"select 1"}))
+            .containsExactly("select 1");
+
+        taggingControl.setTaggingLevel("full");
+        assertThat((String) sqlCallerInfoCommentInterceptor.changeExecuteSql(Statement.class.getMethod("executeQuery", String.class), new Object[]{"select 1"})[0])
+            .matches(" /\\* my_project seq=\\d+ \\*/ select 1");
+    }
+
 }
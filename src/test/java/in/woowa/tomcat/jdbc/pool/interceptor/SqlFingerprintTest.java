@@ -0,0 +1,83 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void literals_whitespace_comments_and_case() {
+        assertThat(normalize("SELECT * FROM USERS WHERE ID = 7 AND NAME = 'Baemin'"))
+            .isEqualTo("select*from users where id=? and name=?");
+        assertThat(normalize("/* caller */ select *\n  from Users\twhere id=-1.5e-3 and name = 'it''s' -- tail"))
+            .isEqualTo("select*from users where id=-? and name=?");
+        assertThat(normalize("SELECT * FROM USERS WHERE ID = ?")).isEqualTo(normalize("select * from users where id = 42"));
+    }
+
+    @Test
+    public void in_lists_and_multi_row_values_collapse() {
+        assertThat(normalize("SELECT * FROM T WHERE ID IN (1, 2, 3) AND C IN ('a')"))
+            .isEqualTo("select*from t where id in(?+)and c in(?+)");
+        assertThat(normalize("INSERT INTO T (A, B) VALUES (1, 'x'), (2, 'y'), (?, ?)"))
+            .isEqualTo("insert into t(a,b)values(?+)");
+        // 리터럴로 시작하지 않는 목록은 그대로 둔다.
+        assertThat(normalize("SELECT COALESCE(A, 0), F(1, B) FROM T"))
+            .isEqualTo("select coalesce(a,?),f(?+,b)from t");
+        assertThat(normalize("INSERT INTO T VALUES (1, 2), (3, NOW())"))
+            .isEqualTo("insert into t values(?+),(?+,now())");
+    }
+
+    @Test
+    public void h2_dialect() {
+        assertThat(normalize("SELECT \"Name\", X'0AFF' FROM \"Users\" WHERE ID = 0x1F"))
+            .isEqualTo("select \"Name\",? from \"Users\" where id=?");
+        assertThat(normalize("{call ABS(?)}")).isEqualTo("{call abs(?+)}");
+    }
+
+    @Test
+    public void mysql_dialect() {
+        assertThat(SqlFingerprint.normalize("SELECT `Name` FROM USERS WHERE NAME = 'it\\'s' AND NICK = \"x\" # tail", true))
+            .isEqualTo("select `Name` from users where name=? and nick=?");
+        assertThat(SqlFingerprint.normalize("SELECT _utf8mb4'abc', B'101' FROM DUAL LIMIT 10, 20", true))
+            .isEqualTo("select ?,? from dual limit ?,?");
+        assertThat(SqlFingerprint.hash("SELECT 1 # a", true)).isEqualTo(SqlFingerprint.hash("SELECT 2 # b", true));
+    }
+
+    @Test
+    public void sqlserver_dialect() {
+        assertThat(normalize("SELECT TOP 10 [Order Details].ID FROM [Order Details] WHERE NAME = N'배민'"))
+            .isEqualTo("select top ? [Order Details].id from [Order Details] where name=?");
+        // # 은 SQL Server 임시 테이블 이름이다.
+        assertThat(normalize("SELECT * FROM #TMP1")).isEqualTo("select*from #tmp1");
+        assertThat(SqlFingerprint.hash("SELECT * FROM #TMP1", false)).isNotEqualTo(SqlFingerprint.hash("SELECT * FROM #TMP2", false));
+    }
+
+    @Test
+    public void different_shapes_differ() {
+        assertThat(SqlFingerprint.hash("SELECT * FROM A WHERE ID = 1", false))
+            .isNotEqualTo(SqlFingerprint.hash("SELECT * FROM B WHERE ID = 1", false))
+            .isNotEqualTo(SqlFingerprint.hash("SELECT * FROM A WHERE ID > 1", false));
+        // 문자열 안의 주석 구분자와 따옴표는 리터럴로 처리된다.
+        assertThat(normalize("SELECT '/* not a comment */', '-- nor this' FROM T")).isEqualTo("select ?,? from t");
+        // 닫히지 않은 리터럴과 주석도 끝까지 읽고 멈춘다.
+        assertThat(normalize("SELECT 'abc")).isEqualTo("select ?");
+        assertThat(normalize("SELECT 1 /* abc")).isEqualTo("select ?");
+    }
+
+    @Test
+    public void hash_matches_normalized_text() {
+        String sql = "SELECT * FROM USERS WHERE ID IN (1, 2)";
+        long expected = 0xcbf29ce484222325L;
+        for (char c : normalize(sql).toCharArray()) {
+            expected = (expected ^ c) * 0x100000001b3L;
+        }
+        assertThat(SqlFingerprint.hash(sql, false)).isEqualTo(expected);
+        assertThat(SqlFingerprint.toHex(expected)).hasSize(16).matches("[0-9a-f]{16}");
+        assertThat(SqlFingerprint.toHex(0x1FL)).isEqualTo("000000000000001f");
+    }
+
+    private static String normalize(String sql) {
+        return SqlFingerprint.normalize(sql, false);
+    }
+}
@@ -0,0 +1,65 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.apache.tomcat.jdbc.pool.interceptor.StatementDecoratorInterceptor;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 통합 테스트용 interceptor. {@link SqlCallerInfoCommentInterceptor} 뒤에 두면 실제로 드라이버에 전달되는 SQL 을 기록한다.
+ *
+ * <pre>SqlCallerInfoCommentInterceptor(projectName=woowahan);in.woowa.tomcat.jdbc.pool.interceptor.SqlRecordingInterceptor</pre>
+ */
+public class SqlRecordingInterceptor extends StatementDecoratorInterceptor {
+
+    private static final List<String> recordedSqls = Collections.synchronizedList(new ArrayList<>());
+
+    public static List<String> getRecordedSqls() {
+        synchronized (recordedSqls) {
+            return new ArrayList<>(recordedSqls);
+        }
+    }
+
+    public static void clear() {
+        recordedSqls.clear();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if ((compare(PREPARE_STATEMENT, method) || compare(PREPARE_CALL, method)) && args != null) {
+            recordedSqls.add((String) args[0]);
+        }
+        return super.invoke(proxy, method, args);
+    }
+
+    @Override
+    protected Object createDecorator(Object proxy, Method method, Object[] args, Object statement, Constructor<?> constructor, String sql) throws InstantiationException, IllegalAccessException, InvocationTargetException {
+        RecordingStatementProxy<Statement> statementProxy = new RecordingStatementProxy<>((Statement) statement, sql);
+        Object result = constructor.newInstance(statementProxy);
+        statementProxy.setActualProxy(result);
+        statementProxy.setConnection(proxy);
+        statementProxy.setConstructor(constructor);
+        return result;
+    }
+
+    protected class RecordingStatementProxy<T extends Statement> extends StatementProxy<T> {
+
+        public RecordingStatementProxy(T delegate, String sql) {
+            super(delegate, sql);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (args != null && args.length > 0 && args[0] instanceof String
+                && (method.getName().startsWith(EXECUTE) || method.getName().equals("addBatch"))) {
+                recordedSqls.add((String) args[0]);
+            }
+            return super.invoke(proxy, method, args);
+        }
+    }
+}
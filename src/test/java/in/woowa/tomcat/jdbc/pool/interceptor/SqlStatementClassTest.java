@@ -0,0 +1,157 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlStatementClass.DDL;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlStatementClass.OTHER;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlStatementClass.READ;
+import static in.woowa.tomcat.jdbc.pool.interceptor.SqlStatementClass.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlStatementClassTest {
+
+    @Test
+    public void common() {
+        assertClass(READ,
+            "SELECT * FROM ORDERS WHERE ID = ?",
+            "select 1",
+            " /* woowahan OrderRepository.find */ SELECT * FROM ORDERS",
+            "-- list orders\nSELECT * FROM ORDERS",
+            "/* a */ /* b */\n\t(SELECT ID FROM A) UNION (SELECT ID FROM B)",
+            "WITH RECURSIVE T(N) AS (SELECT 1 UNION ALL SELECT N + 1 FROM T WHERE N < 10) SELECT N FROM T",
+            "SELECT UPDATED_AT, DELETED FROM ORDERS WHERE STATUS = 'READY'",
+            "SELECT @update FROM DUAL",
+            "SELECT share_count FROM STOCK");
+        assertClass(WRITE,
+            "INSERT INTO ORDERS (ID) VALUES (?)",
+            "update ORDERS set STATUS = ? where ID = ?",
+            " /* woowahan */ DELETE FROM ORDERS WHERE ID = 1",
+            "MERGE INTO ORDERS USING DUAL ON (ID = 1) WHEN MATCHED THEN UPDATE SET STATUS = 'DONE'",
+            "SELECT * FROM ORDERS WHERE ID = ? FOR UPDATE",
+            "select * from orders where id = ? for share",
+            "SELECT * FROM ORDERS FOR NO KEY UPDATE SKIP LOCKED",
+            "WITH D AS (DELETE FROM ORDERS WHERE ID = 1 RETURNING *) SELECT * FROM D",
+            "{call CANCEL_ORDER(?)}",
+            "{? = call NEXT_ORDER_ID()}",
+            "VACUUM");
+        assertClass(DDL,
+            "CREATE TABLE ORDERS (ID BIGINT)",
+            "alter table ORDERS add column STATUS varchar(10)",
+            "DROP INDEX IDX_ORDERS_STATUS",
+            "TRUNCATE TABLE ORDERS",
+            "GRANT SELECT ON ORDERS TO reader",
+            "REVOKE SELECT ON ORDERS FROM reader",
+            "COMMENT ON TABLE ORDERS IS 'orders'");
+        assertClass(OTHER,
+            "SET @x = 1",
+            "COMMIT",
+            "rollback",
+            "SAVEPOINT sp1",
+            "RELEASE SAVEPOINT sp1",
+            "",
+            "   ",
+            "/* only a comment */",
+            "-- only a comment");
+    }
+
+    @Test
+    public void h2() {
+        assertClass(READ,
+            "SHOW TABLES",
+            "EXPLAIN SELECT * FROM ORDERS",
+            "VALUES (1, 'a'), (2, 'b')",
+            "TABLE ORDERS",
+            "HELP SELECT",
+            "SELECT * FROM INFORMATION_SCHEMA.TABLES");
+        assertClass(WRITE,
+            "CALL NEXT VALUE FOR ORDER_SEQ",
+            "SELECT NEXT VALUE FOR ORDER_SEQ",
+            "SELECT ORDER_SEQ.NEXTVAL",
+            "EXPLAIN ANALYZE DELETE FROM ORDERS WHERE ID = 1",
+            "MERGE INTO ORDERS KEY (ID) VALUES (1, 'READY')",
+            "SCRIPT TO 'backup.sql'",
+            "RUNSCRIPT FROM 'backup.sql'");
+        assertClass(READ, "EXPLAIN ANALYZE SELECT * FROM ORDERS");
+        assertClass(DDL, "CREATE MEMORY TABLE IF NOT EXISTS ORDERS (ID BIGINT)", "ALTER SEQUENCE ORDER_SEQ RESTART WITH 1");
+        assertClass(OTHER, "SET MODE MySQL", "SET @SQL_CALLER_INFO = 'woowahan'");
+    }
+
+    @Test
+    public void mysql() {
+        assertClass(READ,
+            "# list orders\nSELECT * FROM orders",
+            "SHOW VARIABLES LIKE 'transaction_read_only'",
+            "SHOW FULL PROCESSLIST",
+            "DESCRIBE orders",
+            "DESC orders",
+            "EXPLAIN FORMAT=JSON SELECT * FROM orders",
+            "/*!40001 SQL_NO_CACHE */ SELECT * FROM orders",
+            "SELECT * FROM orders WHERE name = 'it\\'s' ORDER BY id LIMIT 10");
+        assertClass(WRITE,
+            "REPLACE INTO orders (id, status) VALUES (1, 'READY')",
+            "INSERT IGNORE INTO orders (id) VALUES (1) ON DUPLICATE KEY UPDATE status = VALUES(status)",
+            "SELECT * FROM orders WHERE id = 1 LOCK IN SHARE MODE",
+            "SELECT id INTO @id FROM orders LIMIT 1",
+            "SELECT * FROM orders INTO OUTFILE '/tmp/orders.csv'",
+            "SELECT GET_LOCK('batch', 10)",
+            "SELECT * FROM orders WHERE name = 'it\\'s' FOR UPDATE",
+            "LOAD DATA INFILE 'orders.csv' INTO TABLE orders",
+            "LOCK TABLES orders WRITE",
+            "DO SLEEP(1)",
+            "HANDLER orders OPEN");
+        assertClass(DDL, "RENAME TABLE orders TO orders_old", "CREATE INDEX idx_status ON orders (status)");
+        assertClass(OTHER,
+            "USE order_db",
+            "START TRANSACTION READ ONLY",
+            "BEGIN",
+            "SET SESSION TRANSACTION ISOLATION LEVEL READ COMMITTED",
+            "SET NAMES utf8mb4");
+    }
+
+    @Test
+    public void sqlServer() {
+        assertClass(READ,
+            "SELECT TOP 10 * FROM [orders] WITH (NOLOCK) ORDER BY [id] DESC",
+            ";WITH cte AS (SELECT id FROM orders) SELECT * FROM cte",
+            "SELECT N'주문' AS name, #tmp_flag FROM orders");
+        assertClass(WRITE,
+            "SELECT * FROM orders WITH (UPDLOCK, ROWLOCK) WHERE id = 1",
+            "SELECT * FROM orders WITH (XLOCK) WHERE id = 1",
+            "SELECT * FROM orders WITH (HOLDLOCK) WHERE id = 1",
+            "SELECT * FROM orders WITH (TABLOCKX)",
+            "SELECT * INTO #orders_copy FROM orders",
+            "SELECT NEXT VALUE FOR dbo.order_seq",
+            "WITH cte AS (SELECT id FROM orders) UPDATE orders SET status = 'DONE' WHERE id IN (SELECT id FROM cte)",
+            "EXEC dbo.cancel_order @id = 1",
+            "EXECUTE sp_executesql N'SELECT 1'",
+            "DECLARE @id INT = 1; DELETE FROM orders WHERE id = @id",
+            "IF EXISTS (SELECT 1 FROM orders) DELETE FROM orders",
+            "BULK INSERT orders FROM 'orders.csv'",
+            "MERGE orders AS t USING staging AS s ON t.id = s.id WHEN MATCHED THEN UPDATE SET t.status = s.status;");
+        assertClass(DDL,
+            "CREATE NONCLUSTERED INDEX ix_status ON dbo.orders (status)",
+            "ALTER TABLE dbo.orders ADD status NVARCHAR(10)",
+            "DROP TABLE IF EXISTS #orders_copy");
+        assertClass(OTHER,
+            "SET NOCOUNT ON",
+            "BEGIN TRAN",
+            "COMMIT TRANSACTION",
+            "ROLLBACK TRAN",
+            "SET @SQL_CALLER_INFO = N'woowahan'");
+    }
+
+    @Test
+    public void quoted_words_are_counted_toward_write() {
+        assertClass(WRITE,
+            "SELECT `update` FROM t",
+            "SELECT [update] FROM [delete]",
+            "SELECT * FROM orders WHERE memo = 'please update'",
+            "SELECT * FROM orders /* for update */");
+    }
+
+    private static void assertClass(SqlStatementClass expected, String... sqls) {
+        for (String sql : sqls) {
+            assertThat(SqlStatementClass.classify(sql)).as(sql).isEqualTo(expected);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class StatementTracerTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("statement-trace");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    public void records_are_read_back_with_dictionary() throws IOException {
+        StatementTracer tracer = new StatementTracer(directory, 1024 * 1024, 2);
+        tracer.start("trace pool");
+        long select = tracer.fingerprint("SELECT * FROM ORDERS WHERE ID = 1");
+        long update = tracer.fingerprint("UPDATE ORDERS SET STATUS = 'DONE' WHERE ID = 2");
+        int orderRepository = tracer.tagId("woowahan OrderRepository.find");
+        assertThat(tracer.tagId("woowahan OrderRepository.find")).isEqualTo(orderRepository);
+        assertThat(tracer.fingerprint("SELECT * FROM ORDERS WHERE ID = 7")).isEqualTo(select);
+
+        tracer.record(select, orderRepository, 2_000_000L, -1L, false);
+        tracer.record(select, orderRepository, 4_000_000L, -1L, true);
+        tracer.record(update, tracer.tagId("woowahan OrderRepository.update"), 1_000_000L, 3L, false);
+        Path file = tracer.getCurrentFile();
+        tracer.stop();
+
+        assertThat(file.getFileName().toString()).matches("trace_pool-\\d{14}-000001\\.trace");
+        List<long[]> records = new ArrayList<>();
+        assertThat(StatementTraceReader.read(file, (timestampMillis, fingerprint, elapsedNanos, rows, tagId, failed) ->
+            records.add(new long[]{fingerprint, elapsedNanos, rows, tagId, failed ? 1 : 0}))).isEqualTo(3);
+        assertThat(records.get(1)).containsExactly(select, 4_000_000L, -1L, orderRepository, 1);
+
+        List<StatementTraceReader.Summary> summaries = StatementTraceReader.summarize(StatementTraceReader.traceFiles(Collections.singletonList(directory)));
+        assertThat(summaries).hasSize(2);
+        StatementTraceReader.Summary first = summaries.get(0);
+        assertThat(first.getTag()).isEqualTo("woowahan OrderRepository.find");
+        assertThat(first.getSql()).isEqualTo("select*from orders where id=?");
+        assertThat(first.getCount()).isEqualTo(2);
+        assertThat(first.getFailedCount()).isEqualTo(1);
+        assertThat(first.getTotalNanos()).isEqualTo(6_000_000L);
+        assertThat(first.getMaxNanos()).isEqualTo(4_000_000L);
+        assertThat(summaries.get(1).getRows()).isEqualTo(3);
+        assertThat(tracer.getDroppedCount()).isZero();
+    }
+
+    @Test
+    public void rotates_and_keeps_max_files() throws IOException {
+        // 파일 하나에 레코드 3 개
+        StatementTracer tracer = new StatementTracer(directory, StatementTracer.HEADER_SIZE + StatementTracer.RECORD_SIZE * 3 + 7, 2);
+        tracer.start("rotate");
+        for (int i = 1; i <= 10; i++) {
+            tracer.record(0L, 1, i, -1L, false);
+        }
+        tracer.stop();
+
+        List<Path> files = StatementTraceReader.traceFiles(Collections.singletonList(directory));
+        assertThat(files).extracting(path -> path.getFileName().toString().replaceAll(".*-", ""))
+            .containsExactly("000003.trace", "000004.trace");
+        List<Long> elapsed = new ArrayList<>();
+        for (Path file : files) {
+            StatementTraceReader.read(file, (timestampMillis, fingerprint, elapsedNanos, rows, tagId, failed) -> elapsed.add(elapsedNanos));
+        }
+        assertThat(elapsed).containsExactly(7L, 8L, 9L, 10L);
+        assertThat(tracer.getDroppedCount()).isZero();
+    }
+
+    /**
+     * 파일이 절반 차면 JDBC 스레드가 아니라 배경 스레드가 다음 파일을 만들어 둔다.
+     */
+    @Test
+    public void next_file_is_prepared_in_background() throws Exception {
+        // 파일 하나에 레코드 4 개. 세 번째 레코드가 배경 스레드를 깨운다.
+        StatementTracer tracer = new StatementTracer(directory, StatementTracer.HEADER_SIZE + StatementTracer.RECORD_SIZE * 4, 2);
+        tracer.start("prepare");
+        try {
+            for (int i = 1; i <= 3; i++) {
+                tracer.record(0L, 1, i, -1L, false);
+            }
+            Path first = tracer.getCurrentFile();
+            Path second = first.resolveSibling(first.getFileName().toString().replace("000001", "000002"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!Files.exists(second) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(second).exists();
+            assertThat(tracer.getCurrentFile()).isEqualTo(first);
+
+            for (int i = 4; i <= 5; i++) {
+                tracer.record(0L, 1, i, -1L, false);
+            }
+            assertThat(tracer.getCurrentFile()).isEqualTo(second);
+            assertThat(tracer.getDroppedCount()).isZero();
+            assertThat(writerThreads("prepare")).isEqualTo(1);
+        } finally {
+            tracer.stop();
+        }
+        assertThat(writerThreads("prepare")).isZero();
+    }
+
+    private static long writerThreads(String poolName) {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("sql-caller-info-statement-trace-" + poolName) && thread.isAlive())
+            .count();
+    }
+
+    @Test
+    public void long_hash_set() {
+        StatementTracer.LongHashSet set = new StatementTracer.LongHashSet(3);
+
+        assertThat(set.add(1L)).isTrue();
+        assertThat(set.add(1L)).isFalse();
+        assertThat(set.add(-1L)).isTrue();
+        assertThat(set.add(Long.MIN_VALUE)).isTrue();
+        // 가득 찼다.
+        assertThat(set.add(42L)).isFalse();
+        assertThat(set.add(-1L)).isFalse();
+        // 0 은 빈 slot 이므로 담지 않는다.
+        assertThat(set.add(0L)).isFalse();
+        assertThat(set.size()).isEqualTo(3);
+
+        set.clear();
+        assertThat(set.size()).isZero();
+        assertThat(set.add(42L)).isTrue();
+        assertThat(set.add(1L)).isTrue();
+    }
+
+    @Test
+    public void records_before_start_are_dropped() {
+        StatementTracer tracer = new StatementTracer(directory, 1024 * 1024, 2);
+
+        tracer.record(0L, 1, 1L, -1L, false);
+
+        assertThat(tracer.getDroppedCount()).isEqualTo(1);
+        assertThat(tracer.getCurrentFile()).isNull();
+    }
+
+    /**
+     * 여러 스레드가 동시에 기록해도 레코드가 겹치거나 빠지지 않는다.
+     */
+    @Test
+    public void concurrent_writers() throws Exception {
+        final int threads = 4;
+        final int perThread = 50_000;
+        StatementTracer tracer = new StatementTracer(directory, 16 * 1024 * 1024, 2);
+        tracer.start("concurrent");
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int tagId = t + 1;
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    tracer.record(tagId, tagId, i, tagId, false);
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        Path file = tracer.getCurrentFile();
+        tracer.stop();
+
+        long[] perTag = new long[threads + 1];
+        long records = StatementTraceReader.read(file, (timestampMillis, fingerprint, elapsedNanos, rows, tagId, failed) -> {
+            // 한 레코드의 값은 모두 같은 스레드가 쓴 것이어야 한다.
+            assertThat(fingerprint).isEqualTo(tagId);
+            assertThat(rows).isEqualTo(tagId);
+            perTag[tagId]++;
+        });
+        assertThat(records).isEqualTo(threads * perThread);
+        for (int t = 1; t <= threads; t++) {
+            assertThat(perTag[t]).isEqualTo(perThread);
+        }
+    }
+
+    @Test
+    public void record_does_not_allocate() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        // 측정 중에 다음 파일을 미리 만들지 않도록 충분히 크게 잡는다.
+        StatementTracer tracer = new StatementTracer(directory, 128 * 1024 * 1024, 2);
+        tracer.start("allocation");
+        try {
+            long fingerprint = tracer.fingerprint("SELECT 1");
+            int tagId = tracer.tagId("woowahan");
+            for (int i = 0; i < 100_000; i++) {
+                tracer.record(fingerprint, tagId, i, -1L, false);
+            }
+
+            long threadId = Thread.currentThread().getId();
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 1_000_000; i++) {
+                tracer.record(fingerprint, tagId, i, -1L, false);
+            }
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+            // getThreadAllocatedBytes 자체의 할당 정도만 허용한다. 레코드마다 할당하면 수십 MB 가 된다.
+            assertThat(allocated).isLessThan(64 * 1024);
+            assertThat(tracer.getDroppedCount()).isZero();
+        } finally {
+            tracer.stop();
+        }
+    }
+
+    @Test
+    public void reader_cli() throws IOException {
+        StatementTracer tracer = new StatementTracer(directory, 1024 * 1024, 2);
+        tracer.start("cli");
+        tracer.record(tracer.fingerprint("DELETE FROM ORDERS WHERE ID = 1"), tracer.tagId("woowahan"), 5_000_000L, 1L, false);
+        tracer.stop();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = StatementTraceReader.run(new String[]{"--top", "5", "--sort", "count", directory.toString()},
+            new PrintStream(out, true), System.err);
+
+        assertThat(exitCode).isZero();
+        String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertThat(output).contains("1 files, 1 records, 0 failed, 1 (tag, fingerprint) groups");
+        assertThat(output).contains("woowahan | delete from orders where id=?");
+    }
+
+    @Test
+    public void read_rejects_other_files() throws IOException {
+        Path other = Files.write(directory.resolve("other-000001.trace"), new byte[64]);
+
+        try {
+            StatementTraceReader.read(other, (timestampMillis, fingerprint, elapsedNanos, rows, tagId, failed) -> {
+            });
+            failBecauseExceptionWasNotThrown(IOException.class);
+        } catch (IOException ex) {
+            assertThat(ex.getMessage()).startsWith("not a statement trace file");
+        }
+    }
+}
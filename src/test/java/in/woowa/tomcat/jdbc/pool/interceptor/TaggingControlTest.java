@@ -0,0 +1,97 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class TaggingControlTest {
+
+    @Test
+    public void steps_down_while_threads_wait_and_back_up_when_none() {
+        TaggingControl control = new TaggingControl(TaggingLevel.FULL, 4);
+
+        control.onBorrow(3);
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.FULL);
+
+        control.onBorrow(4);
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.STATIC);
+        assertThat(control.getEffectiveTaggingLevel()).isEqualTo("static");
+        assertThat(control.getTaggingLevel()).isEqualTo("full");
+
+        // 기다리는 스레드가 남아 있으면 그대로 둔다.
+        control.onBorrow(1);
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.STATIC);
+
+        control.onBorrow(0);
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.FULL);
+        assertThat(control.getStepDownCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void step_down_does_not_raise_lower_levels() {
+        TaggingControl control = new TaggingControl(TaggingLevel.OFF, 1);
+
+        control.onBorrow(10);
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.OFF);
+
+        // 낮춰진 동안 full 로 바꾸면 static 이 되고, 대기가 풀리면 full 이 된다.
+        control.setTaggingLevel("full");
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.STATIC);
+        control.onBorrow(0);
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.FULL);
+    }
+
+    @Test
+    public void disabled_step_down_ignores_wait_count() {
+        TaggingControl control = new TaggingControl(TaggingLevel.FULL, 0);
+
+        control.onBorrow(100);
+
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.FULL);
+        assertThat(control.getStepDownCount()).isZero();
+    }
+
+    @Test
+    public void setTaggingLevel_illegal() {
+        TaggingControl control = new TaggingControl(TaggingLevel.FULL, 0);
+
+        try {
+            control.setTaggingLevel("minimal");
+            failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("taggingLevel 'minimal' must be one of off, static, full.");
+        }
+        assertThat(control.getLevel()).isEqualTo(TaggingLevel.FULL);
+    }
+
+    @Test
+    public void comment_fallback_count() {
+        CommentVariantGuard guard = new CommentVariantGuard(1);
+        TaggingControl control = new TaggingControl(TaggingLevel.FULL, 0, guard, null);
+
+        guard.admit("SELECT 1", 1);
+        guard.admit("SELECT 1", 2);
+        guard.admit("SELECT 1", 3);
+
+        assertThat(control.getCommentFallbackCount()).isEqualTo(2);
+        assertThat(new TaggingControl(TaggingLevel.FULL, 0).getCommentFallbackCount()).isZero();
+    }
+
+    @Test
+    public void sql_cache_counts() {
+        CommentedSqlCache cache = new CommentedSqlCache(2);
+        TaggingControl control = new TaggingControl(TaggingLevel.FULL, 0, null, cache);
+
+        cache.get("SELECT 1", sql -> " /* test */ " + sql);
+        cache.get("SELECT 1", sql -> " /* test */ " + sql);
+        cache.get("SELECT 2", sql -> " /* test */ " + sql);
+        cache.get("SELECT 3", sql -> " /* test */ " + sql);
+
+        assertThat(control.getSqlCacheSize()).isEqualTo(cache.size()).isLessThanOrEqualTo(2);
+        assertThat(control.getSqlCacheHitCount()).isEqualTo(1);
+        assertThat(control.getSqlCacheMissCount()).isEqualTo(3);
+        assertThat(control.getSqlCacheEvictionCount()).isEqualTo(3 - cache.size());
+        assertThat(new TaggingControl(TaggingLevel.FULL, 0).getSqlCacheHitCount()).isZero();
+    }
+}
@@ -0,0 +1,25 @@
+package in.woowa.tomcat.jdbc.pool.interceptor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 테스트용 {@link ContextValueSource}. slf4j-simple 의 MDC 는 값을 저장하지 않으므로 대신 사용한다.
+ */
+public class ThreadLocalContextValueSource implements ContextValueSource {
+
+    private static final ThreadLocal<Map<String, String>> VALUES = ThreadLocal.withInitial(HashMap::new);
+
+    public static void put(String key, String value) {
+        VALUES.get().put(key, value);
+    }
+
+    public static void clear() {
+        VALUES.remove();
+    }
+
+    @Override
+    public String get(String key) {
+        return VALUES.get().get(key);
+    }
+}